@@ -0,0 +1,175 @@
+package com.mcintyret.jvm.build;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the table of OpCodes at build time, so that the VM doesn't have to scan the classpath for them when it
+ * starts. Every top-level, non-abstract subclass of OpCode under OPCODE_PACKAGE is one of them, as nested OpCodes are
+ * internal to the interpreter. As most are package-private, each package gets a GeneratedOpCodes class that creates its
+ * own, and REGISTRY gathers them all together.
+ *
+ * The processor runs whenever an OpCode is compiled, as they all inherit RegisteredOpCode, but that needn't be all of
+ * them: an incremental compile may only include some. So each package's OpCodes are looked up in the package itself,
+ * which includes those already compiled, and REGISTRY records the packages it gathered, so that packages none of whose
+ * OpCodes were recompiled are still included.
+ */
+@SupportedAnnotationTypes("com.mcintyret.jvm.build.RegisteredOpCode")
+public class OpCodeProcessor extends AbstractProcessor {
+
+    private static final String OPCODE_PACKAGE = "com.mcintyret.jvm.core.opcode";
+
+    private static final String OPCODE = OPCODE_PACKAGE + ".OpCode";
+
+    private static final String REGISTRY = "OpCodeRegistry";
+
+    private static final String PACKAGE_REGISTRY = "GeneratedOpCodes";
+
+    private static final String PACKAGES = "PACKAGES";
+
+    private boolean generated;
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Elements elements = processingEnv.getElementUtils();
+        TypeElement opCode = elements.getTypeElement(OPCODE);
+        if (generated || opCode == null || annotations.isEmpty()) {
+            return false;
+        }
+
+        Set<String> packages = previouslyRegisteredPackages();
+        for (Element element : roundEnv.getElementsAnnotatedWith(RegisteredOpCode.class)) {
+            if (isOpCode(element, opCode.asType())) {
+                packages.add(elements.getPackageOf(element).getQualifiedName().toString());
+            }
+        }
+
+        // Package name -> simple names of the OpCodes in it
+        Map<String, Set<String>> opCodes = new TreeMap<>();
+        for (String pkg : packages) {
+            PackageElement packageElement = elements.getPackageElement(pkg);
+            if (packageElement == null) {
+                continue;
+            }
+            for (Element element : packageElement.getEnclosedElements()) {
+                if (isOpCode(element, opCode.asType())) {
+                    opCodes.computeIfAbsent(pkg, p -> new TreeSet<>()).add(element.getSimpleName().toString());
+                }
+            }
+        }
+        if (opCodes.isEmpty()) {
+            return false;
+        }
+
+        try {
+            for (Map.Entry<String, Set<String>> entry : opCodes.entrySet()) {
+                writePackageRegistry(entry.getKey(), entry.getValue());
+            }
+            writeRegistry(opCodes.keySet());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to generate OpCode registry: " + e);
+        }
+        generated = true;
+        return false;
+    }
+
+    // The packages REGISTRY gathered when it was last generated, if it's already been compiled
+    private Set<String> previouslyRegisteredPackages() {
+        Set<String> packages = new TreeSet<>();
+        TypeElement registry = processingEnv.getElementUtils().getTypeElement(OPCODE_PACKAGE + "." + REGISTRY);
+        if (registry != null) {
+            for (VariableElement field : ElementFilter.fieldsIn(registry.getEnclosedElements())) {
+                if (field.getSimpleName().contentEquals(PACKAGES) && field.getConstantValue() instanceof String) {
+                    for (String pkg : ((String) field.getConstantValue()).split(",")) {
+                        if (!pkg.isEmpty()) {
+                            packages.add(pkg);
+                        }
+                    }
+                }
+            }
+        }
+        return packages;
+    }
+
+    private boolean isOpCode(Element element, TypeMirror opCode) {
+        if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)
+            || ((TypeElement) element).getNestingKind() != NestingKind.TOP_LEVEL) {
+            return false;
+        }
+        String name = ((TypeElement) element).getQualifiedName().toString();
+        return name.startsWith(OPCODE_PACKAGE + ".")
+            && processingEnv.getTypeUtils().isSubtype(element.asType(), opCode);
+    }
+
+    private void writePackageRegistry(String pkg, Set<String> classNames) throws IOException {
+        try (PrintWriter out = newSourceFile(pkg + "." + PACKAGE_REGISTRY)) {
+            out.println("package " + pkg + ";");
+            out.println();
+            out.println("// Generated by " + OpCodeProcessor.class.getName());
+            out.println("public final class " + PACKAGE_REGISTRY + " {");
+            out.println();
+            out.println("    public static void addTo(java.util.List<" + OPCODE + "> opCodes) {");
+            for (String className : classNames) {
+                out.println("        opCodes.add(new " + className + "());");
+            }
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    private void writeRegistry(Set<String> packages) throws IOException {
+        try (PrintWriter out = newSourceFile(OPCODE_PACKAGE + "." + REGISTRY)) {
+            out.println("package " + OPCODE_PACKAGE + ";");
+            out.println();
+            out.println("// Generated by " + OpCodeProcessor.class.getName());
+            out.println("final class " + REGISTRY + " {");
+            out.println();
+            out.println("    // Read by OpCodeProcessor when only some OpCodes are recompiled");
+            out.print("    static final String " + PACKAGES + " =");
+            String separator = " ";
+            for (String pkg : packages) {
+                out.print(separator + "\"" + pkg + ",\"");
+                separator = System.lineSeparator() + "        + ";
+            }
+            out.println(";");
+            out.println();
+            out.println("    static java.util.List<OpCode> create() {");
+            out.println("        java.util.List<OpCode> opCodes = new java.util.ArrayList<>();");
+            for (String pkg : packages) {
+                out.println("        " + pkg + "." + PACKAGE_REGISTRY + ".addTo(opCodes);");
+            }
+            out.println("        return opCodes;");
+            out.println("    }");
+            out.println("}");
+        }
+    }
+
+    private PrintWriter newSourceFile(String className) throws IOException {
+        return new PrintWriter(processingEnv.getFiler().createSourceFile(className).openWriter());
+    }
+}
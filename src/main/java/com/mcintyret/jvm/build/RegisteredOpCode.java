@@ -0,0 +1,17 @@
+package com.mcintyret.jvm.build;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Inherited;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks OpCode, and so, as it's inherited, every subclass of it, for OpCodeProcessor to generate the table of OpCodes
+ * from whenever any of them is compiled.
+ */
+@Inherited
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface RegisteredOpCode {
+}
@@ -0,0 +1,40 @@
+package com.mcintyret.jvm.core;
+
+import com.mcintyret.jvm.core.oop.Arena;
+
+/**
+ * A thread's private supply of addresses, and of bytes of the Heap's capacity, to allocate Oops with, so that most
+ * allocations are a bump within it rather than something every thread has to take the Heap's lock for. Only its
+ * thread allocates from it. The Heap refills and retires it with its lock held, either for its thread or while the
+ * GarbageCollector has stopped its thread.
+ */
+public final class AllocationBuffer {
+
+    int[] addresses = new int[0];
+
+    // The sizes of the Oops allocated so far, for the Nursery
+    int[] sizes = new int[0];
+
+    int next;
+
+    int count;
+
+    long remaining;
+
+    // Where the Oops allocated from this buffer have their fields placed, with jvm.arena
+    final Arena.Cursor young = new Arena.Cursor();
+
+    public Arena.Cursor getArenaCursor() {
+        return young;
+    }
+
+    // Returns the address to allocate an Oop of size bytes at, or Heap.NULL_POINTER if this buffer needs refilling
+    int allocate(long size) {
+        if (next == count || size > remaining) {
+            return Heap.NULL_POINTER;
+        }
+        remaining -= size;
+        sizes[next] = (int) size;
+        return addresses[next++];
+    }
+}
@@ -1,22 +1,65 @@
 package com.mcintyret.jvm.core;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.IntConsumer;
 
+import com.mcintyret.jvm.core.exec.ExecutionListener;
+import com.mcintyret.jvm.core.exec.ExecutionListeners;
+import com.mcintyret.jvm.core.exec.FrameStack;
+import com.mcintyret.jvm.core.gc.GarbageCollector;
+import com.mcintyret.jvm.core.gc.Nursery;
+import com.mcintyret.jvm.core.metrics.AllocationProfiler;
+import com.mcintyret.jvm.core.oop.Arena;
 import com.mcintyret.jvm.core.oop.Oop;
 import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.oop.OopClass;
+import com.mcintyret.jvm.core.thread.Thread;
 import com.mcintyret.jvm.core.util.Utils;
 
+/**
+ * The guest heap. Oops are referred to by their address, an index into a handle table which grows a segment at a time,
+ * so neither growing it nor allocating ever copies what's already there. Sizes are given in bytes, as -Xms and -Xmx take
+ * them (eg 512k, 64m, 1g): jvm.Xms is the capacity to start with. The GarbageCollector runs when the Nursery is full or
+ * an allocation doesn't fit, and if that doesn't free enough the capacity is grown, up to jvm.Xmx. Allocating beyond that
+ * throws a HeapExhaustedException, which the interpreter turns into a guest OutOfMemoryError. Addresses freed by the
+ * collector are reused before any new ones. Each thread allocates from its own AllocationBuffer, so only refilling it
+ * (or allocating an Oop too large for one) takes the Heap's lock.
+ */
 public class Heap {
 
-    private static final int HEAP_SIZE = 3000;
+    public static final int NULL_POINTER = 0;
+
+    private static final long MAX_SIZE = parseSize(System.getProperty("jvm.Xmx", "256m"));
+
+    private static final long INITIAL_SIZE = Math.min(parseSize(System.getProperty("jvm.Xms", "16m")), MAX_SIZE);
+
+    // Kept back beyond MAX_SIZE for constructing the OutOfMemoryError thrown when the heap is exhausted
+    private static final long RESERVE_SIZE = 64 * 1024;
+
+    // An estimate of what an Oop takes besides its fields
+    private static final int OOP_HEADER_SIZE = 16;
+
+    private static final int SEGMENT_BITS = 12;
 
-    private static final Oop[] OOP_TABLE = new Oop[HEAP_SIZE];
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private static volatile Oop[][] segments = new Oop[16][];
 
     private static int heapAllocationPointer = 1;
 
-    public static final int NULL_POINTER = 0;
+    private static int[] freeAddresses = new int[256];
+
+    private static int freeCount;
+
+    private static long capacity = INITIAL_SIZE;
+
+    private static long used;
+
+    private static boolean usingReserve;
 
     private static final StringPool STRING_POOL = new StringPool();
 
@@ -24,7 +67,8 @@ public class Heap {
         if (address == NULL_POINTER) {
             return null;
         }
-        Oop oop = OOP_TABLE[address];
+        Oop[] segment = segments[address >>> SEGMENT_BITS];
+        Oop oop = segment == null ? null : segment[address & SEGMENT_MASK];
         if (oop == null) {
             throw new IllegalArgumentException("No Oop found at address " + address);
         }
@@ -39,14 +83,262 @@ public class Heap {
         return (OopArray) getOop(address);
     }
 
-
     public static int allocate(Oop oop) {
-        if (heapAllocationPointer >= OOP_TABLE.length) {
-            throw new OutOfMemoryError("No more heap space! Should probably do some kind of GC...");
+        long size = sizeOf(oop);
+        FrameStack frames = FrameStack.current();
+        int address = frames.getAllocationBuffer().allocate(size);
+        if (address == NULL_POINTER) {
+            address = allocateShared(size, frames.getAllocationBuffer());
+        }
+        if (Arena.ENABLED) {
+            Arena.place(oop, frames.getAllocationBuffer().young);
+        }
+        segments[address >>> SEGMENT_BITS][address & SEGMENT_MASK] = oop;
+        oop.setAddress(address);
+        // Recorded before the thread can reach a safepoint, so that the collector can't see the Oop without knowing that
+        // host code may still be holding on to it
+        frames.onAllocate(address);
+        if (AllocationProfiler.ENABLED && frames.countTowardsSample(size)) {
+            AllocationProfiler.sample(frames, oop, size);
+        }
+        ExecutionListener listener = ExecutionListeners.get();
+        if (listener != null) {
+            listener.onAllocate(oop);
+        }
+        return address;
+    }
+
+    // Refills buffer and allocates from it, or allocates directly if size is too big to be worth a buffer, collecting
+    // garbage first if neither fits
+    private static int allocateShared(long size, AllocationBuffer buffer) {
+        boolean direct = size > Nursery.ALLOCATION_BUFFER_SIZE / 4;
+        synchronized (Heap.class) {
+            int address = direct ? allocateDirect(size, false) : refillAndAllocate(size, buffer);
+            if (address != NULL_POINTER) {
+                return address;
+            }
+        }
+        GarbageCollector.collect(direct ? size : Nursery.ALLOCATION_BUFFER_SIZE);
+        synchronized (Heap.class) {
+            int address = direct ? NULL_POINTER : refillAndAllocate(size, buffer);
+            // Failing that, the Nursery is allowed to overflow, and the heap to grow
+            return address != NULL_POINTER ? address : allocateDirect(size, true);
+        }
+    }
+
+    private static int allocateDirect(long size, boolean expand) {
+        if (used + size > capacity || !Nursery.hasRoom(size)) {
+            if (!expand) {
+                return NULL_POINTER;
+            } else if (used + size > capacity) {
+                expand(used + size);
+            }
+        }
+        int address = takeAddress();
+        used += size;
+        Nursery.reserve(size);
+        Nursery.add(address, size);
+        return address;
+    }
+
+    private static int refillAndAllocate(long size, AllocationBuffer buffer) {
+        retire(buffer);
+        if (used + Nursery.ALLOCATION_BUFFER_SIZE > capacity || !Nursery.hasRoom(Nursery.ALLOCATION_BUFFER_SIZE)) {
+            return NULL_POINTER;
+        }
+        // Enough addresses for the smallest possible Oops, the ones left over being handed back when it's retired
+        int count = (int) (Nursery.ALLOCATION_BUFFER_SIZE / OOP_HEADER_SIZE);
+        if (buffer.addresses.length < count) {
+            buffer.addresses = new int[count];
+            buffer.sizes = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            buffer.addresses[i] = takeAddress();
+        }
+        buffer.next = 0;
+        buffer.count = count;
+        buffer.remaining = Nursery.ALLOCATION_BUFFER_SIZE;
+        used += Nursery.ALLOCATION_BUFFER_SIZE;
+        Nursery.reserve(Nursery.ALLOCATION_BUFFER_SIZE);
+        return buffer.allocate(size);
+    }
+
+    // Hands back what's left of buffer, and adds the Oops allocated from it to the Nursery
+    private static void retire(AllocationBuffer buffer) {
+        for (int i = 0; i < buffer.next; i++) {
+            Nursery.add(buffer.addresses[i], buffer.sizes[i]);
+        }
+        for (int i = buffer.next; i < buffer.count; i++) {
+            releaseAddress(buffer.addresses[i]);
+        }
+        used -= buffer.remaining;
+        Nursery.release(buffer.remaining);
+        buffer.next = buffer.count = 0;
+        buffer.remaining = 0;
+    }
+
+    // Called by the collector before it starts, as it must know about every Oop, and so that the buffers' unused
+    // capacity is counted as free
+    public static void retireAllocationBuffers() {
+        for (FrameStack frames : FrameStack.all()) {
+            retire(frames.getAllocationBuffer());
+            frames.getAllocationBuffer().young.release();
+        }
+    }
+
+    // Reuses a freed address if there is one. Makes sure there's a segment for it
+    private static int takeAddress() {
+        int address = freeCount > 0 ? freeAddresses[--freeCount] : heapAllocationPointer++;
+        segment(address);
+        return address;
+    }
+
+    private static void releaseAddress(int address) {
+        if (freeCount == freeAddresses.length) {
+            freeAddresses = Arrays.copyOf(freeAddresses, freeCount * 2);
+        }
+        freeAddresses[freeCount++] = address;
+    }
+
+    // Grows the capacity to at least required, doubling it if that's allowed
+    private static void expand(long required) {
+        long max = usingReserve ? MAX_SIZE + RESERVE_SIZE : MAX_SIZE;
+        if (required > max) {
+            throw new HeapExhaustedException(required - used, max);
         }
-        OOP_TABLE[heapAllocationPointer] = oop;
-        oop.setAddress(heapAllocationPointer);
-        return heapAllocationPointer++;
+        capacity = Math.min(Math.max(capacity * 2, required), max);
+    }
+
+    private static Oop[] segment(int address) {
+        int index = address >>> SEGMENT_BITS;
+        Oop[][] segments = Heap.segments;
+        if (index >= segments.length) {
+            Heap.segments = segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        if (segments[index] == null) {
+            segments[index] = new Oop[SEGMENT_SIZE];
+        }
+        return segments[index];
+    }
+
+    // The following are for the GarbageCollector, which holds the Heap's lock while it runs
+
+    // One more than the highest address that's been allocated
+    public static int getAddressLimit() {
+        return heapAllocationPointer;
+    }
+
+    // Unlike getOop, returns null if address isn't that of an Oop
+    public static Oop findOop(int address) {
+        if (address <= NULL_POINTER || address >= heapAllocationPointer) {
+            return null;
+        }
+        Oop[] segment = segments[address >>> SEGMENT_BITS];
+        return segment == null ? null : segment[address & SEGMENT_MASK];
+    }
+
+    // Returns the number of bytes freed
+    public static long free(int address) {
+        Oop oop = findOop(address);
+        segments[address >>> SEGMENT_BITS][address & SEGMENT_MASK] = null;
+        oop.setAddress(Oop.UNALLOCATED_ADDRESS);
+        releaseAddress(address);
+        long size = sizeOf(oop);
+        used -= size;
+        return size;
+    }
+
+    // Called after a collection. Grows the capacity if the heap is still more than half full, so that the next
+    // collection isn't straight away
+    public static void afterCollection() {
+        if (used * 2 > capacity) {
+            capacity = Math.min(Math.max(capacity, used * 2), MAX_SIZE);
+        }
+    }
+
+    public static void forEachInternedString(IntConsumer action) {
+        STRING_POOL.lookupMap.values().forEach(oop -> action.accept(oop.getAddress()));
+    }
+
+    // Each interned String's value and address
+    public static Map<String, Integer> getInternedStrings() {
+        Map<String, Integer> strings = new HashMap<>();
+        STRING_POOL.lookupMap.forEach((string, oop) -> strings.put(string, oop.getAddress()));
+        return strings;
+    }
+
+    // Restores a HeapSnapshot into the empty heap: oops[address] is the Oop at that address, or null if it's free. The
+    // Oops all start out old, as they've survived since the snapshot
+    public static synchronized void restore(Oop[] oops, Map<String, Integer> internedStrings) {
+        if (heapAllocationPointer != 1) {
+            throw new IllegalStateException("Can't restore into a heap that's been allocated from");
+        }
+        for (int address = 1; address < oops.length; address++) {
+            Oop oop = oops[address];
+            segment(address);
+            if (oop == null) {
+                releaseAddress(address);
+            } else {
+                segments[address >>> SEGMENT_BITS][address & SEGMENT_MASK] = oop;
+                oop.setAddress(address);
+                used += sizeOf(oop);
+            }
+        }
+        heapAllocationPointer = Math.max(oops.length, 1);
+        if (used > capacity) {
+            expand(used);
+        }
+        internedStrings.forEach((string, address) -> STRING_POOL.lookupMap.put(string, getOop(address)));
+    }
+
+    // Constructs the OutOfMemoryError to throw in place of a HeapExhaustedException, from the reserve kept back for it
+    public static OopClass newOutOfMemoryError(Thread thread) {
+        synchronized (Heap.class) {
+            if (usingReserve) {
+                throw new OutOfMemoryError("Guest heap exhausted while constructing an OutOfMemoryError");
+            }
+            usingReserve = true;
+        }
+        try {
+            return Utils.toThrowableOop(new OutOfMemoryError("Java heap space"), thread);
+        } finally {
+            synchronized (Heap.class) {
+                usingReserve = false;
+            }
+        }
+    }
+
+    public static long sizeOf(Oop oop) {
+        return OOP_HEADER_SIZE + oop.getDataSize();
+    }
+
+    public static synchronized long getUsed() {
+        return used;
+    }
+
+    public static synchronized long getCapacity() {
+        return capacity;
+    }
+
+    public static long getMaxSize() {
+        return MAX_SIZE;
+    }
+
+    public static long getInitialSize() {
+        return INITIAL_SIZE;
+    }
+
+    // An upper bound on the addresses there can be, as every Oop takes at least OOP_HEADER_SIZE bytes
+    public static int getMaxAddresses() {
+        return (int) Math.min((MAX_SIZE + RESERVE_SIZE) / OOP_HEADER_SIZE + 1, Integer.MAX_VALUE);
+    }
+
+    // A number of bytes, optionally suffixed with k, m or g
+    public static long parseSize(String size) {
+        String lower = size.trim().toLowerCase();
+        char unit = lower.charAt(lower.length() - 1);
+        int shift = unit == 'k' ? 10 : unit == 'm' ? 20 : unit == 'g' ? 30 : 0;
+        return Long.parseLong(shift == 0 ? lower : lower.substring(0, lower.length() - 1)) << shift;
     }
 
     public static <O extends Oop> O allocateAndGet(O oop) {
@@ -0,0 +1,12 @@
+package com.mcintyret.jvm.core;
+
+/**
+ * Thrown by Heap when an allocation would take it beyond its maximum size. ExecutionStack catches it and throws a guest
+ * OutOfMemoryError from the instruction that was allocating.
+ */
+public class HeapExhaustedException extends RuntimeException {
+
+    public HeapExhaustedException(long requested, long maxSize) {
+        super("Unable to allocate " + requested + " bytes with a maximum heap size of " + maxSize, null, false, false);
+    }
+}
@@ -42,8 +42,7 @@ public class ArrayClassObject extends AbstractClassObject {
     }
 
     public OopArray newArray(int length) {
-        length *= arrayType.getComponentType().getWidth();
-        return new OopArray(this, new int[length]);
+        return OopArray.create(this, length);
     }
 
     @Override
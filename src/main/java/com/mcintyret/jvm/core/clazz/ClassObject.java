@@ -1,11 +1,13 @@
 package com.mcintyret.jvm.core.clazz;
 
+import java.util.Arrays;
 import java.util.Set;
 
 import com.mcintyret.jvm.core.constantpool.ConstantPool;
 import com.mcintyret.jvm.core.oop.OopClass;
 import com.mcintyret.jvm.core.type.MethodSignature;
 import com.mcintyret.jvm.core.type.NonArrayType;
+import com.mcintyret.jvm.core.type.SimpleType;
 import com.mcintyret.jvm.load.ClassLoader;
 import com.mcintyret.jvm.parse.Modifier;
 
@@ -27,6 +29,12 @@ public class ClassObject extends AbstractClassObject {
 
     private final ClassLoader classLoader;
 
+    // The offsets of the instance and static fields that hold references, worked out when first needed. Volatile, as
+    // the collector's marking threads may be the first to need them
+    private volatile int[] referenceOffsets;
+
+    private volatile int[] staticReferenceOffsets;
+
     public ClassObject(NonArrayType type, Set<Modifier> modifiers, ClassObject parent, ClassObject[] interfaces,
                        ConstantPool constantPool, Method[] instanceMethods, Method[] constructors, Method[] staticMethods,
                        Field[] instanceFields, Field[] staticFields, ClassLoader classLoader) {
@@ -37,7 +45,7 @@ public class ClassObject extends AbstractClassObject {
         this.staticMethods = staticMethods;
         this.instanceFields = instanceFields;
         this.staticFields = staticFields;
-        this.staticFieldValues = newInstanceFieldsValuesArray(staticFields);
+        this.staticFieldValues = new int[countSlots(staticFields)];
         this.classLoader = classLoader;
 
         finalizeMembers(instanceFields);
@@ -63,21 +71,37 @@ public class ClassObject extends AbstractClassObject {
         return staticFields;
     }
 
+    public int[] getReferenceOffsets() {
+        int[] offsets = referenceOffsets;
+        return offsets == null ? (referenceOffsets = referenceOffsets(instanceFields)) : offsets;
+    }
+
+    public int[] getStaticReferenceOffsets() {
+        int[] offsets = staticReferenceOffsets;
+        return offsets == null ? (staticReferenceOffsets = referenceOffsets(staticFields)) : offsets;
+    }
+
+    private static int[] referenceOffsets(Field[] fields) {
+        return Arrays.stream(fields)
+            .filter(field -> field.getType().asSimpleType() == SimpleType.REF)
+            .mapToInt(Field::getOffset)
+            .toArray();
+    }
+
     public OopClass newObject() {
         return newObject(OopClass::new);
     }
 
     public <O extends OopClass> O newObject(NewObjectCreator<O> objectCreator) {
-        return objectCreator.newObject(this, newInstanceFieldsValuesArray(instanceFields));
+        return objectCreator.newObject(this, countSlots(instanceFields));
     }
 
-    private static int[] newInstanceFieldsValuesArray(Field[] fields) {
+    private static int countSlots(Field[] fields) {
         if (fields.length == 0) {
-            return new int[0];
+            return 0;
         }
         Field lastField = fields[fields.length - 1];
-        int size = lastField.getOffset() + lastField.getType().getWidth();
-        return new int[size];
+        return lastField.getOffset() + lastField.getType().getWidth();
     }
 
     public Method findMethod(String name, boolean isStatic) {
@@ -170,7 +194,7 @@ public class ClassObject extends AbstractClassObject {
 
     public interface NewObjectCreator<O extends OopClass> {
 
-        O newObject(ClassObject clazz, int[] fields);
+        O newObject(ClassObject clazz, int fieldCount);
 
     }
 
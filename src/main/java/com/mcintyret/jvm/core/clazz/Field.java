@@ -3,7 +3,9 @@ package com.mcintyret.jvm.core.clazz;
 import java.util.Set;
 
 import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.gc.CardTable;
 import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.type.SimpleType;
 import com.mcintyret.jvm.core.type.Type;
 import com.mcintyret.jvm.core.util.Utils;
 import com.mcintyret.jvm.parse.Modifier;
@@ -30,11 +32,19 @@ public class Field extends Member {
     }
 
     public void set(Oop thisOop, int i) {
-        getValues(thisOop)[getOffset()] = i;
+        getValues(thisOop)[index(thisOop)] = i;
+        if (thisOop != null && type.asSimpleType() == SimpleType.REF) {
+            CardTable.mark(thisOop);
+        }
     }
 
     private int[] getValues(Oop thisOop) {
-        return thisOop == null ? getClassObject().getStaticFieldValues() : thisOop.getFields();
+        return thisOop == null ? getClassObject().getStaticFieldValues() : thisOop.getStorage();
+    }
+
+    // Where the field is in getValues(thisOop)
+    private int index(Oop thisOop) {
+        return thisOop == null ? getOffset() : thisOop.getBase() + getOffset();
     }
 
     public void set(Oop thisOop, Oop oop) {
@@ -43,32 +53,36 @@ public class Field extends Member {
 
     public void set(Oop thisOop, long l) {
         int[] fields = getValues(thisOop);
-        fields[getOffset()] = (int) (l >> 32);
-        fields[getOffset() + 1] = (int) l & 0x0000FFFF;
+        int index = index(thisOop);
+        fields[index] = (int) (l >> 32);
+        fields[index + 1] = (int) l & 0x0000FFFF;
     }
 
     public void set(Oop thisOop, int l, int r) {
         int[] fields = getValues(thisOop);
-        fields[getOffset()] = l;
-        fields[getOffset() + 1] = r;
+        int index = index(thisOop);
+        fields[index] = l;
+        fields[index + 1] = r;
     }
 
     public void get(Oop thisOop, ValueReceiver valueReceiver) {
         int[] fields = getValues(thisOop);
+        int index = index(thisOop);
         if (type.isDoubleWidth()) {
-            valueReceiver.receiveDoubleWidth(Utils.toLong(fields[getOffset()], fields[getOffset() + 1]), type.asSimpleType());
+            valueReceiver.receiveDoubleWidth(Utils.toLong(fields[index], fields[index + 1]), type.asSimpleType());
         } else {
-            valueReceiver.receiveSingleWidth(fields[getOffset()], type.asSimpleType());
+            valueReceiver.receiveSingleWidth(fields[index], type.asSimpleType());
         }
     }
 
     public int getInt(Oop thisOop) {
-        return getValues(thisOop)[getOffset()];
+        return getValues(thisOop)[index(thisOop)];
     }
 
     public long getLong(Oop thisOop) {
         int[] values = getValues(thisOop);
-        return Utils.toLong(values[getOffset()], values[getOffset() + 1]);
+        int index = index(thisOop);
+        return Utils.toLong(values[index], values[index + 1]);
     }
 
     public Oop getOop(Oop thisOop) {
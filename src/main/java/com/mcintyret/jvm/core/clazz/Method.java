@@ -1,9 +1,14 @@
 package com.mcintyret.jvm.core.clazz;
 
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.jit.CompiledMethod;
 import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.opcode.Instruction;
+import com.mcintyret.jvm.core.opcode.InstructionDecoder;
+import com.mcintyret.jvm.core.opcode.SuperInstructions;
 import com.mcintyret.jvm.core.type.MethodSignature;
 import com.mcintyret.jvm.parse.Modifier;
 import com.mcintyret.jvm.parse.attribute.AttributeType;
@@ -14,13 +19,33 @@ public class Method extends Member {
 
     public static final String CONSTRUCTOR_METHOD_NAME = "<init>";
 
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private final int id = NEXT_ID.getAndIncrement();
+
     private final MethodSignature signature;
 
+    private volatile Instruction[] instructions;
+
+    // A copy of instructions with superinstructions in place of some sequences of them, once this method is warm
+    private volatile Instruction[] fusedInstructions;
+
+    // Written only when the Jit fails to compile this method. Invocations and backward branches are counted per thread,
+    // by ThreadMetrics
+    private volatile int failedCompilations;
+
+    private volatile CompiledMethod compiledMethod;
+
     public Method(Set<Modifier> modifiers, Attributes attributes, MethodSignature signature, int offset) {
         super(modifiers, attributes, offset);
         this.signature = signature;
     }
 
+    // Unique to this method, and allocated densely from 0
+    public int getId() {
+        return id;
+    }
+
     public MethodSignature getSignature() {
         return signature;
     }
@@ -29,12 +54,64 @@ public class Method extends Member {
         return (Code) getAttributes().getAttribute(AttributeType.CODE);
     }
 
+    // Decoded the first time it's needed, ie when this method is first invoked
+    public Instruction[] getInstructions() {
+        Instruction[] instructions = this.instructions;
+        if (instructions == null) {
+            this.instructions = instructions = InstructionDecoder.decode(getCode().getCode());
+        }
+        return instructions;
+    }
+
+    // Replaces an instruction with its quickened form, in fusedInstructions too if there are any, where it may let a
+    // sequence be fused that couldn't be before
+    public void quicken(Instruction instruction) {
+        int pos = instruction.getPos();
+        getInstructions()[pos] = instruction;
+        Instruction[] fused = fusedInstructions;
+        if (fused != null) {
+            fused[pos] = instruction;
+            SuperInstructions.refuse(this);
+        }
+    }
+
+    // null until SuperInstructions has fused this method's instructions
+    public Instruction[] getFusedInstructions() {
+        return fusedInstructions;
+    }
+
+    public void setFusedInstructions(Instruction[] fusedInstructions) {
+        this.fusedInstructions = fusedInstructions;
+    }
+
+    public int getFailedCompilations() {
+        return failedCompilations;
+    }
+
+    public void compilationFailed() {
+        failedCompilations++;
+    }
+
+    // Non-null once this method has been compiled to host bytecode
+    public CompiledMethod getCompiledMethod() {
+        return compiledMethod;
+    }
+
+    public void setCompiledMethod(CompiledMethod compiledMethod) {
+        this.compiledMethod = compiledMethod;
+    }
+
     @Override
     public String toString() {
         return getClassObject().getClassName() + "." + signature;
     }
 
 
+    // The number of local variable slots taken by the arguments, including this
+    public int getArgWidth() {
+        return signature.getTotalWidth() + (isStatic() ? 0 : 1);
+    }
+
     // TODO: what about primitive args??
     public Variables newArgArray(Oop... args) {
         Code code = getCode();
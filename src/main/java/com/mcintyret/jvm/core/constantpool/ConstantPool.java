@@ -62,53 +62,55 @@ public class ConstantPool {
     }
 
     public void getConstant(int i, ValueReceiver receiver) {
+        receiveConstant(resolveConstant(i), receiver);
+    }
+
+    // Returns a Variable, a WideVariable or an AbstractClassObject, which can be passed to receiveConstant()
+    public Object resolveConstant(int i) {
         Object constant = constantPool[i];
+        if (constant instanceof Variable || constant instanceof WideVariable || constant instanceof AbstractClassObject) {
+            return constant;
+        }
+
+        Object resolved;
+        if (constant instanceof Integer) {
+            resolved = Variable.forType(SimpleType.INT, (Integer) constant);
+        } else if (constant instanceof Long) {
+            resolved = new WideVariable(SimpleType.LONG, (Long) constant);
+        } else if (constant instanceof Float) {
+            resolved = Variable.forType(SimpleType.FLOAT, Utils.toInt((Float) constant));
+        } else if (constant instanceof Double) {
+            resolved = new WideVariable(SimpleType.DOUBLE, Utils.toLong((Double) constant));
+        } else if (constant instanceof Boolean) {
+            resolved = Variable.forType(SimpleType.BOOLEAN, Utils.toInt((Boolean) constant));
+        } else if (constant instanceof Byte) {
+            resolved = Variable.forType(SimpleType.BYTE, (Byte) constant);
+        } else if (constant instanceof Short) {
+            resolved = Variable.forType(SimpleType.SHORT, (Short) constant);
+        } else if (constant instanceof Character) {
+            resolved = Variable.forType(SimpleType.CHAR, (Character) constant);
+        } else if (constant instanceof CpString) {
+            int index = ((CpString) constant).getStringIndex();
+            String string = (String) constantPool[index];
+            resolved = Variable.forType(SimpleType.REF, Heap.intern(string));
+        } else if (constant instanceof CpClass) {
+            return translateClassObject(i);
+        } else {
+            throw new AssertionError("Can i get here??"); // TODO: less silly!
+        }
+        constantPool[i] = resolved;
+        return resolved;
+    }
+
+    public static void receiveConstant(Object constant, ValueReceiver receiver) {
         if (constant instanceof Variable) {
             Variable v = (Variable) constant;
             receiver.receiveSingleWidth(v.getValue(), v.getType());
         } else if (constant instanceof WideVariable) {
             WideVariable v = (WideVariable) constant;
             receiver.receiveDoubleWidth(v.getValue(), v.getType());
-        } else if (constant instanceof AbstractClassObject) {
-            receiver.receiveSingleWidth(((AbstractClassObject) constant).getOop().getAddress(), SimpleType.REF);
         } else {
-            switch (constant.getClass().getSimpleName().toLowerCase()) {
-                case "boolean":
-                    constantPool[i] = Variable.forType(SimpleType.BOOLEAN, Utils.toInt((Boolean) constant));
-                    break;
-                case "byte":
-                    constantPool[i] = Variable.forType(SimpleType.BYTE, (Byte) constant);
-                    break;
-                case "short":
-                    constantPool[i] = Variable.forType(SimpleType.SHORT, (Short) constant);
-                    break;
-                case "character":
-                    constantPool[i] = Variable.forType(SimpleType.CHAR, (Character) constant);
-                    break;
-                case "integer":
-                    constantPool[i] = Variable.forType(SimpleType.INT, (Integer) constant);
-                    break;
-                case "long":
-                    constantPool[i] = new WideVariable(SimpleType.LONG, (Long) constant);
-                    break;
-                case "float":
-                    constantPool[i] = Variable.forType(SimpleType.FLOAT, Utils.toInt((Float) constant));
-                    break;
-                case "double":
-                    constantPool[i] = new WideVariable(SimpleType.DOUBLE, Utils.toLong((Double) constant));
-                    break;
-                default:
-                    if (constant instanceof CpString) {
-                        int index = ((CpString) constant).getStringIndex();
-                        String string = (String) constantPool[index];
-                        constantPool[i] = Variable.forType(SimpleType.REF, Heap.intern(string));
-                    } else if (constantPool[i] instanceof CpClass) {
-                        constantPool[i] = translateClassObject(i);
-                    } else {
-                        throw new AssertionError("Can i get here??"); // TODO: less silly!
-                    }
-            }
-            getConstant(i, receiver);
+            receiver.receiveSingleWidth(((AbstractClassObject) constant).getOop().getAddress(), SimpleType.REF);
         }
     }
 }
@@ -0,0 +1,42 @@
+package com.mcintyret.jvm.core.exec;
+
+import com.mcintyret.jvm.core.clazz.AbstractClassObject;
+import com.mcintyret.jvm.core.clazz.ClassObject;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.oop.OopClass;
+
+/**
+ * Receives events from the interpreter, once registered with ExecutionListeners. Every method does nothing by default.
+ * Code compiled by the Jit runs without raising any events of its own.
+ */
+public interface ExecutionListener {
+
+    // Called before each instruction is executed, with ctx.getInstruction() being that instruction
+    default void onInstruction(OperationContext ctx) {
+    }
+
+    default void onInvoke(Method method) {
+    }
+
+    default void onReturn(Method method) {
+    }
+
+    default void onThrow(OopClass thrown, Method method) {
+    }
+
+    // catchType is null for a finally block
+    default void onCatch(OopClass thrown, Method method, AbstractClassObject catchType) {
+    }
+
+    // thrown was not caught by any frame, the last of which was method's
+    default void onUncaught(OopClass thrown, Method method) {
+    }
+
+    default void onAllocate(Oop oop) {
+    }
+
+    default void onClassLoad(ClassObject classObject) {
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.mcintyret.jvm.core.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mcintyret.jvm.core.clazz.AbstractClassObject;
+import com.mcintyret.jvm.core.clazz.ClassObject;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.oop.OopClass;
+
+/**
+ * The ExecutionListeners currently registered. Callers raise an event only if get() is non-null, so that tracing costs
+ * no more than that check while nothing is listening. Set jvm.trace=true to register a LoggingExecutionListener.
+ */
+public final class ExecutionListeners {
+
+    private static final List<ExecutionListener> LISTENERS = new ArrayList<>();
+
+    // null if there are no listeners
+    private static volatile ExecutionListener listener;
+
+    static {
+        if (Boolean.getBoolean("jvm.trace")) {
+            add(new LoggingExecutionListener());
+        }
+    }
+
+    private ExecutionListeners() {
+    }
+
+    public static ExecutionListener get() {
+        return listener;
+    }
+
+    public static synchronized void add(ExecutionListener listener) {
+        LISTENERS.add(listener);
+        update();
+    }
+
+    public static synchronized void remove(ExecutionListener listener) {
+        LISTENERS.remove(listener);
+        update();
+    }
+
+    private static void update() {
+        switch (LISTENERS.size()) {
+            case 0:
+                listener = null;
+                break;
+            case 1:
+                listener = LISTENERS.get(0);
+                break;
+            default:
+                listener = new Composite(LISTENERS.toArray(new ExecutionListener[LISTENERS.size()]));
+        }
+    }
+
+    private static class Composite implements ExecutionListener {
+
+        private final ExecutionListener[] listeners;
+
+        private Composite(ExecutionListener[] listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void onInstruction(OperationContext ctx) {
+            for (ExecutionListener listener : listeners) {
+                listener.onInstruction(ctx);
+            }
+        }
+
+        @Override
+        public void onInvoke(Method method) {
+            for (ExecutionListener listener : listeners) {
+                listener.onInvoke(method);
+            }
+        }
+
+        @Override
+        public void onReturn(Method method) {
+            for (ExecutionListener listener : listeners) {
+                listener.onReturn(method);
+            }
+        }
+
+        @Override
+        public void onThrow(OopClass thrown, Method method) {
+            for (ExecutionListener listener : listeners) {
+                listener.onThrow(thrown, method);
+            }
+        }
+
+        @Override
+        public void onCatch(OopClass thrown, Method method, AbstractClassObject catchType) {
+            for (ExecutionListener listener : listeners) {
+                listener.onCatch(thrown, method, catchType);
+            }
+        }
+
+        @Override
+        public void onUncaught(OopClass thrown, Method method) {
+            for (ExecutionListener listener : listeners) {
+                listener.onUncaught(thrown, method);
+            }
+        }
+
+        @Override
+        public void onAllocate(Oop oop) {
+            for (ExecutionListener listener : listeners) {
+                listener.onAllocate(oop);
+            }
+        }
+
+        @Override
+        public void onClassLoad(ClassObject classObject) {
+            for (ExecutionListener listener : listeners) {
+                listener.onClassLoad(classObject);
+            }
+        }
+    }
+}
@@ -3,7 +3,15 @@ package com.mcintyret.jvm.core.exec;
 import java.util.ArrayDeque;
 import java.util.Deque;
 
+import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.HeapExhaustedException;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.gc.GarbageCollector;
+import com.mcintyret.jvm.core.gc.HeapDumper;
+import com.mcintyret.jvm.core.metrics.ExecutionMetrics;
+import com.mcintyret.jvm.core.metrics.ThreadMetrics;
 import com.mcintyret.jvm.core.nativeimpls.NativeReturn;
+import com.mcintyret.jvm.core.opcode.AThrow;
 import com.mcintyret.jvm.core.thread.Thread;
 
 public class ExecutionStack {
@@ -12,6 +20,10 @@ public class ExecutionStack {
 
     private final Thread thread;
 
+    private final FrameStack frames = FrameStack.current();
+
+    private final ThreadMetrics metrics = ExecutionMetrics.forCurrentThread();
+
     private NativeReturn finalReturn;
 
     public ExecutionStack(Thread thread) {
@@ -19,24 +31,55 @@ public class ExecutionStack {
     }
 
     public void execute() {
-        ExecutionStackElement current;
-        while(true) {
-            current = stack.peek();
-            if (current == null) {
-                // Done!!
-                break;
-            } else {
-                current.executeNextInstruction();
+        boolean outermost = frames.enter(this);
+        try {
+            ExecutionStackElement current;
+            while (true) {
+                current = stack.peek();
+                if (current == null) {
+                    // Done!!
+                    break;
+                }
+                if (outermost) {
+                    frames.clearAllocated();
+                }
+                if (GarbageCollector.isSafepointRequested()) {
+                    GarbageCollector.safepoint();
+                }
+                try {
+                    current.executeNextInstruction();
+                } catch (HeapExhaustedException e) {
+                    HeapDumper.onOutOfMemory();
+                    current.getStack().pushOop(Heap.newOutOfMemoryError(thread));
+                    new AThrow().execute(current);
+                }
             }
+        } finally {
+            frames.exit();
         }
     }
 
-    public void push(ExecutionStackElement element) {
+    // Brackets running compiled code on this thread
+    public void enterCompiledCode() {
+        frames.enterCompiledCode();
+    }
+
+    public void exitCompiledCode() {
+        frames.exitCompiledCode();
+    }
+
+    // Pushes a frame for method, whose local variables start with args. Returns false if the thread has no room left for it
+    public boolean push(Method method, Variables args) {
+        ExecutionStackElement element = frames.push(method, args, this);
+        if (element == null) {
+            return false;
+        }
         stack.push(element);
+        return true;
     }
 
     public void pop() {
-        stack.pop();
+        frames.pop(stack.pop());
     }
 
     public ExecutionStackElement peek() {
@@ -56,6 +99,10 @@ public class ExecutionStack {
         return stack;
     }
 
+    public ThreadMetrics getMetrics() {
+        return metrics;
+    }
+
     public Thread getThread() {
         return thread;
     }
@@ -1,29 +1,31 @@
 package com.mcintyret.jvm.core.exec;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import com.mcintyret.jvm.core.Heap;
 import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.constantpool.ConstantPool;
-import com.mcintyret.jvm.core.opcode.OpCode;
+import com.mcintyret.jvm.core.jit.CompiledMethod;
+import com.mcintyret.jvm.core.jit.GuestException;
+import com.mcintyret.jvm.core.jit.Jit;
+import com.mcintyret.jvm.core.metrics.ThreadMetrics;
+import com.mcintyret.jvm.core.opcode.AThrow;
+import com.mcintyret.jvm.core.opcode.Instruction;
 import com.mcintyret.jvm.core.opcode.OpCodes;
+import com.mcintyret.jvm.core.opcode.QuickOpCode;
+import com.mcintyret.jvm.core.opcode.SuperInstructions;
 import com.mcintyret.jvm.core.thread.Thread;
-import com.mcintyret.jvm.core.util.ByteBufferIterator;
-import com.mcintyret.jvm.core.util.ByteIterator;
+import com.mcintyret.jvm.core.type.SimpleType;
 
 public class ExecutionStackElement implements OperationContext {
 
-    private static final Logger LOG = LoggerFactory.getLogger(ExecutionStackElement.class);
-
-    public final static AtomicInteger TOTAL_OPCODES_EXECUTED = new AtomicInteger();
-
     public static ExecutionStackElement current;
 
     private final Method method;
 
-    private final ByteIterator byteIterator;
+    private Instruction[] instructions;
+
+    private Instruction instruction;
+
+    private int nextPos;
 
     private final Variables localVariables;
 
@@ -31,28 +33,108 @@ public class ExecutionStackElement implements OperationContext {
 
     private final ExecutionStack executionStack;
 
-    private final VariableStack stack = new VariableStackImpl();
+    private final ThreadMetrics metrics;
 
-    public ExecutionStackElement(Method method, Variables localVariables, ConstantPool constantPool, ExecutionStack executionStack) {
+    private final VariableStack stack;
+
+    // The FrameStack's top before this frame was pushed
+    private final int savedTop;
+
+    ExecutionStackElement(Method method, Variables localVariables, VariableStack stack, ExecutionStack executionStack, int savedTop) {
         this.method = method;
-        this.byteIterator = method.getCode() == null ? null : new ByteBufferIterator(method.getCode().getCode());
+        this.instructions = SuperInstructions.forFrame(method, executionStack.getMetrics());
         this.localVariables = localVariables;
-        this.constantPool = constantPool;
+        this.stack = stack;
+        this.constantPool = method.getClassObject().getConstantPool();
         this.executionStack = executionStack;
+        this.metrics = executionStack.getMetrics();
+        this.savedTop = savedTop;
     }
 
     public void executeNextInstruction() {
         current = this;
-        int pos = byteIterator.getPos();
-        OpCode opCode = OpCodes.getOpcode(byteIterator.nextByte());
-        LOG.debug(String.format("%4d: %s", pos, opCode));
-        opCode.execute(this);
-        TOTAL_OPCODES_EXECUTED.incrementAndGet();
+        Instruction instruction = instructions[nextPos];
+        this.instruction = instruction;
+        nextPos = instruction.getNextPos();
+        ExecutionListener listener = ExecutionListeners.get();
+        if (listener != null) {
+            listener.onInstruction(this);
+        }
+        instruction.getOpCode().execute(this);
+        int[] fusedOpcodes = instruction.getFusedOpcodes();
+        if (fusedOpcodes == null) {
+            metrics.onInstruction(instruction.getOpcodeByte());
+        } else {
+            for (int opcode : fusedOpcodes) {
+                metrics.onInstruction(opcode);
+            }
+        }
+    }
+
+    @Override
+    public Instruction getInstruction() {
+        return instruction;
     }
 
     @Override
-    public ByteIterator getByteIterator() {
-        return byteIterator;
+    public void jump(int pos) {
+        nextPos = pos;
+        if (pos <= instruction.getPos()) {
+            long backedges = metrics.onBackedge(method);
+            instructions = SuperInstructions.onBackedge(method, instructions, backedges);
+            if (stack.isEmpty()) {
+                CompiledMethod osr = Jit.onBackedge(method, pos, backedges);
+                if (osr != null) {
+                    replaceWith(osr);
+                }
+            }
+        }
+    }
+
+    // Finishes this frame's execution in compiled code, then returns from it just as the interpreter would have, or
+    // throws on whatever the compiled code threw
+    private void replaceWith(CompiledMethod osr) {
+        try {
+            executionStack.enterCompiledCode();
+            try {
+                osr.invoke(localVariables, stack);
+            } finally {
+                executionStack.exitCompiledCode();
+            }
+        } catch (GuestException e) {
+            stack.pushOop(Heap.getOop(e.getThrowable()));
+            new AThrow().execute(this);
+            return;
+        }
+        OpCodes.getOpcode(getReturnOpcode(method.getSignature().getReturnType().asSimpleType())).execute(this);
+    }
+
+    private static byte getReturnOpcode(SimpleType returnType) {
+        switch (returnType) {
+            case VOID:
+                return (byte) 0xB1;
+            case REF:
+                return (byte) 0xB0;
+            case LONG:
+                return (byte) 0xAD;
+            case FLOAT:
+                return (byte) 0xAE;
+            case DOUBLE:
+                return (byte) 0xAF;
+            default:
+                return (byte) 0xAC;
+        }
+    }
+
+    @Override
+    public void quicken(QuickOpCode quickOpCode, Object resolved) {
+        instruction = instruction.quicken(quickOpCode, resolved);
+        method.quicken(instruction);
+    }
+
+    // The position of the instruction currently being executed
+    public int getPos() {
+        return instruction == null ? 0 : instruction.getPos();
     }
 
     @Override
@@ -84,4 +166,8 @@ public class ExecutionStackElement implements OperationContext {
     public Method getMethod() {
         return method;
     }
+
+    int getSavedTop() {
+        return savedTop;
+    }
 }
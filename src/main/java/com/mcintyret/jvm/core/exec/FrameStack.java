@@ -0,0 +1,267 @@
+package com.mcintyret.jvm.core.exec;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+import com.mcintyret.jvm.core.AllocationBuffer;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.gc.GarbageCollector;
+import com.mcintyret.jvm.core.metrics.AllocationProfiler;
+import com.mcintyret.jvm.parse.attribute.Code;
+
+/**
+ * The slots that hold the local variables and operand stacks of every frame on a host thread. Each frame is a window of
+ * its method's maxLocals + maxStack slots, starting where its caller's arguments were on the caller's operand stack, so
+ * that the arguments become the callee's first local variables without being copied. Set jvm.stackSlots to change how
+ * many slots each thread has.
+ *
+ * Compiled code keeps its values in host locals and on the host operand stack, but reserves a frame here too, into which
+ * it spills the references it's holding before it reaches a safepoint (see JitCompiler).
+ *
+ * It also holds its thread's state as far as the Heap and GarbageCollector are concerned: its AllocationBuffer, whether
+ * the thread is attached (ie may touch the heap, so must reach a safepoint before a collection can start), and the Oops
+ * it has allocated since its outermost instruction started, which host code may be holding on to without them being
+ * reachable from anywhere else.
+ */
+public final class FrameStack {
+
+    private static final int SIZE = Integer.getInteger("jvm.stackSlots", 256 * 1024);
+
+    // Invoked frames normally can't use the last RESERVED slots. Once one hasn't fitted they can, so that there's room
+    // to run the StackOverflowError's constructor, until the stack has unwound to well below them again
+    private static final int RESERVED = 4 * 1024;
+
+    private static final Queue<FrameStack> ALL = new ConcurrentLinkedQueue<>();
+
+    private static final ThreadLocal<FrameStack> CURRENT = ThreadLocal.withInitial(() -> {
+        FrameStack frames = new FrameStack(Thread.currentThread());
+        ALL.add(frames);
+        return frames;
+    });
+
+    private final Thread owner;
+
+    private final Variables slots = new Variables(SIZE);
+
+    // The first slot not used by any frame
+    private int top;
+
+    private int limit = SIZE - RESERVED;
+
+    // The ExecutionStacks executing on this thread, each nested inside an instruction of the one before
+    private ExecutionStack[] executing = new ExecutionStack[8];
+
+    private int depth;
+
+    private boolean attached;
+
+    // Greater than 0 while the thread is running compiled code
+    private int compiledDepth;
+
+    // top and allocatedCount when the thread started running compiled code
+    private int compiledTop;
+
+    private int compiledAllocatedCount;
+
+    private final AllocationBuffer allocationBuffer = new AllocationBuffer();
+
+    private int[] allocated = new int[64];
+
+    private int allocatedCount;
+
+    // The bytes left to allocate before the next allocation sample is taken
+    private long bytesUntilSample = AllocationProfiler.nextSampleInterval();
+
+    public static FrameStack current() {
+        return CURRENT.get();
+    }
+
+    // Those of every thread that has executed anything, including any that have died since removeDead() was last called
+    public static Iterable<FrameStack> all() {
+        return ALL;
+    }
+
+    public static void removeDead() {
+        ALL.removeIf(frames -> !frames.owner.isAlive());
+    }
+
+    private FrameStack(Thread owner) {
+        this.owner = owner;
+    }
+
+    public Thread getOwner() {
+        return owner;
+    }
+
+    // Returns a new frame for method, or null if there isn't room for it. If args is a window onto these slots (ie
+    // arguments just popped from a frame's operand stack) the new frame's local variables start in place over it,
+    // otherwise args are copied in above every existing frame.
+    ExecutionStackElement push(Method method, Variables args, ExecutionStack executionStack) {
+        Code code = method.getCode();
+        int maxLocals = Math.max(code.getMaxLocals(), args.length());
+        int base = args.offsetIn(slots);
+        boolean inPlace = base >= 0;
+        if (!inPlace) {
+            base = top;
+        }
+
+        int end = base + maxLocals + code.getMaxStack();
+        if (end > (inPlace ? limit : SIZE)) {
+            limit = SIZE;
+            return null;
+        }
+
+        Variables localVariables = slots.window(base, maxLocals);
+        if (!inPlace) {
+            args.copyTo(localVariables);
+        }
+        slots.clear(base + args.length(), end);
+
+        ExecutionStackElement element = new ExecutionStackElement(method, localVariables,
+            new VariableStackImpl(slots.window(base + maxLocals, code.getMaxStack())), executionStack, top);
+        top = Math.max(top, end);
+        return element;
+    }
+
+    // Called as an ExecutionStack starts executing. Returns whether it's the outermost one on this thread
+    boolean enter(ExecutionStack executionStack) {
+        if (depth == executing.length) {
+            executing = Arrays.copyOf(executing, depth * 2);
+        }
+        executing[depth++] = executionStack;
+        if (depth == 1) {
+            attach();
+        }
+        return depth == 1;
+    }
+
+    void exit() {
+        executing[--depth] = null;
+        if (depth == 0) {
+            detach();
+        }
+    }
+
+    // The innermost ExecutionStack executing on this thread, whose top frame called any compiled code that's running
+    public ExecutionStack getExecuting() {
+        return executing[depth - 1];
+    }
+
+    // Visits the frames of every ExecutionStack executing on this thread, innermost first
+    public void forEachFrame(Consumer<ExecutionStackElement> action) {
+        for (int i = depth - 1; i >= 0; i--) {
+            executing[i].getStack().forEach(action);
+        }
+    }
+
+    // Returns whether the thread was attached before
+    public boolean attach() {
+        if (attached) {
+            return true;
+        }
+        GarbageCollector.attach();
+        attached = true;
+        return false;
+    }
+
+    // Returns whether the thread was attached before
+    public boolean detach() {
+        if (!attached) {
+            return false;
+        }
+        attached = false;
+        GarbageCollector.detach();
+        return true;
+    }
+
+    public boolean isAttached() {
+        return attached;
+    }
+
+    public void enterCompiledCode() {
+        if (compiledDepth++ == 0) {
+            compiledTop = top;
+            compiledAllocatedCount = allocatedCount;
+        }
+    }
+
+    // Also releases any compiled frames that an exception left behind
+    public void exitCompiledCode() {
+        if (--compiledDepth == 0) {
+            top = compiledTop;
+        }
+    }
+
+    // Returns a frame of size slots for compiled code, above every other frame, or null if there isn't room for it
+    public Variables pushCompiledFrame(int size) {
+        int end = top + size;
+        if (end > limit) {
+            limit = SIZE;
+            return null;
+        }
+        Variables frame = slots.window(top, size);
+        slots.clear(top, end);
+        top = end;
+        return frame;
+    }
+
+    public void popCompiledFrame(Variables frame) {
+        top = frame.offsetIn(slots);
+        if (top < SIZE - 2 * RESERVED) {
+            limit = SIZE - RESERVED;
+        }
+    }
+
+    // Called by compiled code at a safepoint, having spilled every reference it holds into its frames. The Oops it has
+    // allocated needn't be roots of their own any more: those it still refers to were spilled
+    public void onCompiledSafepoint() {
+        allocatedCount = compiledAllocatedCount;
+    }
+
+    public AllocationBuffer getAllocationBuffer() {
+        return allocationBuffer;
+    }
+
+    // Called by the allocating thread, which can't reach a safepoint in the meantime
+    public void onAllocate(int address) {
+        if (allocatedCount == allocated.length) {
+            allocated = Arrays.copyOf(allocated, allocatedCount * 2);
+        }
+        allocated[allocatedCount++] = address;
+    }
+
+    // Counts an allocation of size bytes towards the next sample, returning whether it's the one to be sampled
+    public boolean countTowardsSample(long size) {
+        if ((bytesUntilSample -= size) > 0) {
+            return false;
+        }
+        bytesUntilSample = AllocationProfiler.nextSampleInterval();
+        return true;
+    }
+
+    // Called between the instructions of the outermost ExecutionStack, when no host code is holding on to anything
+    void clearAllocated() {
+        allocatedCount = 0;
+    }
+
+    // Visits every value that might be an Oop's address: anything in a frame's slots, as they aren't typed, and the
+    // Oops allocated since the thread's outermost instruction started
+    public void forEachRoot(IntConsumer action) {
+        for (int i = 0; i < top; i++) {
+            action.accept(slots.getRawValue(i));
+        }
+        for (int i = 0; i < allocatedCount; i++) {
+            action.accept(allocated[i]);
+        }
+    }
+
+    void pop(ExecutionStackElement element) {
+        top = element.getSavedTop();
+        if (top < SIZE - 2 * RESERVED) {
+            limit = SIZE - RESERVED;
+        }
+    }
+}
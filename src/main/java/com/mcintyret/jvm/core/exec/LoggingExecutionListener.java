@@ -0,0 +1,58 @@
+package com.mcintyret.jvm.core.exec;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcintyret.jvm.core.clazz.AbstractClassObject;
+import com.mcintyret.jvm.core.clazz.ClassObject;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.oop.OopClass;
+
+/**
+ * Logs instructions and class loads at DEBUG, invocations, returns and catches at INFO, and throws at WARN
+ */
+public class LoggingExecutionListener implements ExecutionListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingExecutionListener.class);
+
+    @Override
+    public void onInstruction(OperationContext ctx) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(ctx.getInstruction().toString());
+        }
+    }
+
+    @Override
+    public void onInvoke(Method method) {
+        LOG.info("Invoking {}.{}", method.getClassObject().getClassName(), method.getSignature());
+    }
+
+    @Override
+    public void onReturn(Method method) {
+        LOG.info("Returning from {}", method);
+    }
+
+    @Override
+    public void onThrow(OopClass thrown, Method method) {
+        LOG.warn("Throwing exception of type {} from method {}", thrown.getClassObject(), method);
+    }
+
+    @Override
+    public void onCatch(OopClass thrown, Method method, AbstractClassObject catchType) {
+        if (catchType == null) {
+            LOG.info("In finally block of method {}", method);
+        } else {
+            LOG.info("In catch block of method {} for Exception type {}", method, catchType);
+        }
+    }
+
+    @Override
+    public void onUncaught(OopClass thrown, Method method) {
+        LOG.warn("Did not catch error of type {}. Exiting from method {}", thrown.getClassObject(), method);
+    }
+
+    @Override
+    public void onClassLoad(ClassObject classObject) {
+        LOG.debug("Loaded {}", classObject.getClassName());
+    }
+}
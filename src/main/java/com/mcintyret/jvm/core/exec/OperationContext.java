@@ -2,12 +2,18 @@ package com.mcintyret.jvm.core.exec;
 
 import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.constantpool.ConstantPool;
+import com.mcintyret.jvm.core.opcode.Instruction;
+import com.mcintyret.jvm.core.opcode.QuickOpCode;
 import com.mcintyret.jvm.core.thread.Thread;
-import com.mcintyret.jvm.core.util.ByteIterator;
 
 public interface OperationContext {
 
-    ByteIterator getByteIterator();
+    Instruction getInstruction();
+
+    void jump(int pos);
+
+    // Replaces the current instruction in this method's code, so that later executions run quickOpCode instead
+    void quicken(QuickOpCode quickOpCode, Object resolved);
 
     Variables getLocalVariables();
 
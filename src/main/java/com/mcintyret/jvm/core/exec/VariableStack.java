@@ -10,10 +10,6 @@ public interface VariableStack extends ValueReceiver {
 
     int popSingleWidth(SimpleType type);
 
-    Variable pop();
-
-    WideVariable popWide();
-
     int popInt();
 
     float popFloat();
@@ -50,12 +46,18 @@ public interface VariableStack extends ValueReceiver {
 
     void pushNull();
 
-    void push(Variable v);
+    // Removes the top width slots, and returns them without copying. They stay valid until something else is pushed
+    Variables popArgs(int width);
 
-    void pushWide(WideVariable v);
+    // Copies the top count slots, inserting the copy beneath the top count + skip slots, as the dup family of opcodes do
+    void dup(int count, int skip);
+
+    void swap();
 
     void clear(); // Required when exceptions are thrown
 
+    boolean isEmpty();
+
     @Override
     default void receiveSingleWidth(int i, SimpleType type) {
         pushSingleWidth(i, type);
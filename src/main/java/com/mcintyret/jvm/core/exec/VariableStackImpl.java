@@ -17,7 +17,12 @@ public class VariableStackImpl implements ValueReceiver, VariableStack {
     private int head = 0;
 
     public VariableStackImpl(int size) {
-        stack = new Variables(size);
+        this(new Variables(size));
+    }
+
+    // An operand stack held in slots, such as a frame's window onto its FrameStack
+    VariableStackImpl(Variables slots) {
+        stack = slots;
     }
 
     public VariableStackImpl() {
@@ -51,31 +56,6 @@ public class VariableStackImpl implements ValueReceiver, VariableStack {
         return popInternal(type, true);
     }
 
-    @Override
-    public Variable pop() {
-        if (head == 0) {
-            throw new NoSuchElementException();
-        }
-        int pos = --head;
-        Variable ret = stack.get(pos);
-        stack.clear(pos);
-        return ret;
-    }
-
-    @Override
-    public WideVariable popWide() {
-        if (head <= 1) {
-            throw new NoSuchElementException();
-        }
-        WideVariable wv = stack.getWide(head - 2);
-        stack.clear(head - 1);
-        stack.clear(head - 2);
-
-        head -= 2;
-
-        return wv;
-    }
-
     @Override
     public int popInt() {
         return popSingleWidth(SimpleType.INT);
@@ -181,30 +161,48 @@ public class VariableStackImpl implements ValueReceiver, VariableStack {
     }
 
     @Override
-    public void push(Variable v) {
-        pushSingleWidth(v.getValue(), v.getType());
+    public Variables popArgs(int width) {
+        if (head < width) {
+            throw new NoSuchElementException();
+        }
+        head -= width;
+        return stack.window(head, width);
     }
 
     @Override
-    public void pushWide(WideVariable v) {
-        if (head >= stack.length() - 1) {
+    public void dup(int count, int skip) {
+        if (head < count + skip) {
+            throw new NoSuchElementException();
+        }
+        while (head + count > stack.length()) {
             resize();
         }
+        int from = head - count;
+        int to = from - skip;
+        stack.move(to, to + count, count + skip);
+        stack.move(from + count, to, count);
+        head += count;
+    }
 
-        stack.putWide(++head, v);
-        head++;
+    @Override
+    public void swap() {
+        // ..., a, b -> ..., b, a, b -> ..., b, a
+        dup(1, 1);
+        stack.clear(--head);
     }
 
     @Override
     public void clear() {
-        makeNewStack(stack.length(), false);
+        stack.clear(0, head);
+        head = 0;
     }
 
-    private void resize() {
-        makeNewStack(stack.length() * 2, true);
+    @Override
+    public boolean isEmpty() {
+        return head == 0;
     }
 
-    private void makeNewStack(int newSize, boolean copy) {
-        stack = copy ? stack.copy(newSize) : new Variables(newSize);
+    private void resize() {
+        stack = stack.copy(Math.max(stack.length() * 2, DEFAULT_SIZE));
     }
 }
@@ -10,21 +10,32 @@ import com.mcintyret.jvm.core.util.Utils;
 public class Variables {
 
     // TODO: can be smarter about this - ie only from non-library code, only the first time it is executed etc.
-    private static boolean checking = false;
+    // Set jvm.checkTypes=true to tag every slot with its type and check it on each typed read
+    private static final boolean CHECKING = Boolean.getBoolean("jvm.checkTypes");
 
-    private final Variable[] variables;
+    private static final SimpleType[] TYPES = SimpleType.values();
 
-    public Variables(int size) {
-        this.variables = new Variable[size];
-    }
+    private static final byte EMPTY = 0;
+
+    private final int[] values;
+
+    // null unless CHECKING. Each tag is EMPTY or 1 + the ordinal of the slot's SimpleType
+    private final byte[] tags;
 
-    // Copy constructor
-    private Variables(Variable[] variables) {
-        this.variables = variables;
+    // These variables are slots offset to offset + length of the arrays, which may be shared with others (see FrameStack)
+    private final int offset;
+
+    private final int length;
+
+    public Variables(int size) {
+        this(new int[size], CHECKING ? new byte[size] : null, 0, size);
     }
 
-    public boolean isEmpty(int i) {
-        return variables[i] == null;
+    private Variables(int[] values, byte[] tags, int offset, int length) {
+        this.values = values;
+        this.tags = tags;
+        this.offset = offset;
+        this.length = length;
     }
 
     public <O extends Oop> O getOop(int i) {
@@ -52,7 +63,7 @@ public class Variables {
     }
 
     public void putOop(int i, Oop val) {
-        variables[i] = Variable.forOop(val);
+        put(i, SimpleType.REF, val == null ? Heap.NULL_POINTER : val.getAddress());
     }
 
     public void putNull(int i) {
@@ -68,28 +79,15 @@ public class Variables {
     }
 
     public void put(int i, SimpleType type, int value) {
-        variables[i] = Variable.forType(type, value);
+        values[offset + i] = value;
+        if (tags != null) {
+            tags[offset + i] = (byte) (type.ordinal() + 1);
+        }
     }
 
     public void putWide(int i, SimpleType type, long value) {
-        putWide(i, new WideVariable(type, value));
-    }
-
-    public void put(int i, Variable v) {
-        put(i, v.getType(), v.getValue());
-    }
-
-    public void putWide(int i, WideVariable v) {
-        put(i, v.getType(), v.getLeft());
-        put(i + 1, v.getType(), v.getRight());
-    }
-
-    private SimpleType checkType(int i, SimpleType type) {
-        SimpleType currentType = variables[i].getType();
-        if (currentType != null && currentType != type) {
-//            throw new IllegalStateException("Expected value of type " + type + " but was of type " + types[i]); // this may be completely invalid!
-        }
-        return type;
+        put(i, type, (int) (value >> 32));
+        put(i + 1, type, (int) value);
     }
 
     private long getLongInternal(int i, SimpleType type) {
@@ -100,55 +98,80 @@ public class Variables {
     }
 
     public int getCheckedValue(int i, SimpleType type) {
-        Variable v = variables[i];
-        if (checking) {
-            // This condition will probably need to be made smarter to deal with automatic widening conversions, which are allowed
-            if (v.getType() != type) {
-                throw new IllegalStateException("Expected value of type " + type + " but was of type " + v.getType());
+        if (tags != null) {
+            byte tag = tags[offset + i];
+            if (tag == EMPTY) {
+                throw new IllegalStateException("Expected value of type " + type + " but slot " + i + " was empty");
             }
+            SimpleType actual = TYPES[tag - 1];
+            if (widen(actual) != widen(type)) {
+                throw new IllegalStateException("Expected value of type " + type + " but was of type " + actual);
+            }
+        }
+        return values[offset + i];
+    }
+
+    // booleans, bytes, chars and shorts are all ints once they're in a local variable or on the stack
+    private static SimpleType widen(SimpleType type) {
+        switch (type) {
+            case BOOLEAN:
+            case BYTE:
+            case CHAR:
+            case SHORT:
+                return SimpleType.INT;
+            default:
+                return type;
         }
-        return v.getValue();
     }
 
     public int getRawValue(int i) {
-        return variables[i].getValue();
+        return values[offset + i];
     }
 
-    public int[] getRawValues() {
-        int[] vals = new int[variables.length];
-        for (int i = 0; i < vals.length; i++) {
-            vals[i] = variables[i].getValue();
-        }
-        return vals;
+    public int length() {
+        return length;
     }
 
-    public SimpleType[] getTypes() {
-        return Utils.transformArray(variables, Variable::getType, SimpleType.class);
+    // A view of slots from to from + length of these variables, sharing their storage
+    Variables window(int from, int length) {
+        return new Variables(values, tags, offset + from, length);
     }
 
-    public SimpleType getType(int i) {
-        return variables[i].getType();
+    // Whether these variables are a window onto other's storage, and if so where they start in it
+    int offsetIn(Variables other) {
+        return values == other.values ? offset - other.offset : -1;
     }
 
-    public int length() {
-        return variables.length;
+    // Copies length slots from one position to another, as System.arraycopy does
+    void move(int from, int to, int length) {
+        System.arraycopy(values, offset + from, values, offset + to, length);
+        if (tags != null) {
+            System.arraycopy(tags, offset + from, tags, offset + to, length);
+        }
     }
 
-    public Variable get(int i) {
-        return variables[i];
+    void copyTo(Variables dest) {
+        System.arraycopy(values, offset, dest.values, dest.offset, length);
+        if (tags != null && dest.tags != null) {
+            System.arraycopy(tags, offset, dest.tags, dest.offset, length);
+        }
     }
 
-    public WideVariable getWide(int i) {
-        Variable v1 = variables[i];
-        Variable v2 = variables[i + 1];
-        return new WideVariable(v1.getType(), Utils.toLong(v1.getValue(), v2.getValue()));
+    void clear(int i) {
+        if (tags != null) {
+            tags[offset + i] = EMPTY;
+        }
     }
 
-    void clear(int i) {
-        variables[i] = null;
+    void clear(int from, int to) {
+        if (tags != null) {
+            Arrays.fill(tags, offset + from, offset + to, EMPTY);
+        }
     }
 
     public Variables copy(int newSize) {
-        return new Variables(Arrays.copyOf(variables, newSize));
+        Variables copy = new Variables(newSize);
+        window(0, Math.min(length, newSize)).copyTo(copy);
+        return copy;
     }
 }
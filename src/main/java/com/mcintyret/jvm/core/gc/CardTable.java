@@ -0,0 +1,48 @@
+package com.mcintyret.jvm.core.gc;
+
+import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.oop.Oop;
+
+/**
+ * Records which Oops may refer to young ones, so that a minor collection needn't look through the old generation to
+ * find them. Each card covers CARD_SIZE consecutive addresses, and is dirtied whenever a reference is stored in any of
+ * their Oops: anything that stores a reference in an Oop's fields must call mark() (static fields needn't, as they're
+ * roots anyway). The table covers every address there can be, so that marking never has to wait for it to grow.
+ */
+public final class CardTable {
+
+    private static final int CARD_BITS = 7;
+
+    static final int CARD_SIZE = 1 << CARD_BITS;
+
+    private static final byte CLEAN = 0;
+
+    private static final byte DIRTY = 1;
+
+    private static final byte[] CARDS = new byte[(Heap.getMaxAddresses() >>> CARD_BITS) + 1];
+
+    private CardTable() {
+    }
+
+    public static void mark(Oop oop) {
+        mark(oop.getAddress());
+    }
+
+    // Oops that haven't been allocated yet needn't be marked, as they'll be young once they are
+    public static void mark(int address) {
+        if (address > Heap.NULL_POINTER) {
+            CARDS[address >>> CARD_BITS] = DIRTY;
+        }
+    }
+
+    static int cardOf(int address) {
+        return address >>> CARD_BITS;
+    }
+
+    // Cleans the card, returning whether it was dirty
+    static boolean clean(int card) {
+        boolean dirty = CARDS[card] == DIRTY;
+        CARDS[card] = CLEAN;
+        return dirty;
+    }
+}
@@ -0,0 +1,346 @@
+package com.mcintyret.jvm.core.gc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.clazz.ClassObject;
+import com.mcintyret.jvm.core.exec.FrameStack;
+import com.mcintyret.jvm.core.oop.Arena;
+import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.oop.OopClass;
+import com.mcintyret.jvm.core.oop.OopClassClass;
+import com.mcintyret.jvm.core.oop.OopRefArray;
+import com.mcintyret.jvm.core.thread.Thread;
+import com.mcintyret.jvm.core.thread.Threads;
+import com.mcintyret.jvm.load.ClassLoader;
+
+/**
+ * A stop-the-world, generational mark-sweep collector, run by Heap when the Nursery is full or an allocation doesn't fit.
+ * A minor collection frees the young Oops that aren't reachable, without looking at the old generation other than the
+ * Oops on cards dirtied since the last one (see CardTable). If the allocation still doesn't fit, a full collection
+ * follows, which traces everything.
+ *
+ * The roots are the slots of every thread's frames, the static fields of every loaded class, interned Strings, Thread
+ * objects and Class mirrors (which are never freed, as classes are never unloaded). Frame slots aren't typed, so any
+ * slot value that's the address of an Oop is taken to refer to it. Oops allocated since a thread's outermost
+ * instruction started are roots too, as the host code running that instruction may be holding on to them.
+ *
+ * A thread is attached while it's executing, and holds MUTATORS' read lock for as long as it is. It lets go at a
+ * safepoint once a collection has been requested, and while it's blocked (see enterSafeRegion), so that the collecting
+ * thread can take the write lock once every other thread has stopped. Interpreted code reaches a safepoint between
+ * instructions, and compiled code on entering a method and at each backward branch (see JitCompiler).
+ */
+public class GarbageCollector {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GarbageCollector.class);
+
+    private static final ReadWriteLock MUTATORS = new ReentrantReadWriteLock();
+
+    // The number of threads waiting to collect
+    private static final AtomicInteger REQUESTED = new AtomicInteger();
+
+    private static final boolean COMPARE_SERIAL = Boolean.getBoolean("jvm.gc.compareSerial");
+
+    // The number of addresses in each of the root sets that find Class mirrors in a full collection
+    private static final int MIRROR_SCAN_CHUNK = 1 << 16;
+
+    private static int minorCollections;
+
+    private static int collections;
+
+    private static long totalPauseNanos;
+
+    public static boolean isSafepointRequested() {
+        return REQUESTED.get() > 0;
+    }
+
+    // Called by an attached thread between instructions once isSafepointRequested(). Waits for the collection to finish
+    public static void safepoint() {
+        MUTATORS.readLock().unlock();
+        MUTATORS.readLock().lock();
+    }
+
+    public static void attach() {
+        MUTATORS.readLock().lock();
+    }
+
+    public static void detach() {
+        MUTATORS.readLock().unlock();
+    }
+
+    // Brackets something that may block without touching the heap, eg waiting on a monitor, so that a collection can go
+    // ahead in the meantime. Returns what to pass to exitSafeRegion
+    public static boolean enterSafeRegion() {
+        return FrameStack.current().detach();
+    }
+
+    public static void exitSafeRegion(boolean detached) {
+        if (detached) {
+            FrameStack.current().attach();
+        }
+    }
+
+    // Collects garbage. required is the size of the allocation that didn't fit, for the log
+    public static void collect(long required) {
+        FrameStack frames = FrameStack.current();
+        stopTheWorld(frames, () -> collect(required, frames));
+    }
+
+    // Runs action once every other thread has stopped, with the Heap locked. frames are the calling thread's
+    static void stopTheWorld(FrameStack frames, Runnable action) {
+        boolean detached = frames.detach();
+        REQUESTED.incrementAndGet();
+        MUTATORS.writeLock().lock();
+        try {
+            REQUESTED.decrementAndGet();
+            synchronized (Heap.class) {
+                action.run();
+            }
+        } finally {
+            MUTATORS.writeLock().unlock();
+            if (detached) {
+                frames.attach();
+            }
+        }
+    }
+
+    // Collects the whole heap, with the world already stopped
+    static void collectAll(FrameStack collecting) {
+        Heap.retireAllocationBuffers();
+        FrameStack.removeDead();
+        fullCollect(0, collecting);
+    }
+
+    private static void collect(long required, FrameStack collecting) {
+        Heap.retireAllocationBuffers();
+        FrameStack.removeDead();
+        minorCollect(required, collecting);
+        if (Heap.getUsed() + required > Heap.getCapacity()) {
+            fullCollect(required, collecting);
+        }
+    }
+
+    // Collects just the young generation. Old Oops are taken to be live, so the only ones looked at are those on dirty
+    // cards, for references to young ones
+    private static void minorCollect(long required, FrameStack collecting) {
+        long start = System.nanoTime();
+        long usedBefore = Heap.getUsed();
+        long youngBefore = Nursery.getUsed();
+
+        int[] dirty = cleanDirtyCards();
+        List<Consumer<IntConsumer>> rootSets = rootSets(collecting);
+        rootSets.add(action -> Nursery.forEach(address -> {
+            if (Heap.findOop(address) instanceof OopClassClass) {
+                action.accept(address);
+            }
+        }));
+        rootSets.add(action -> {
+            for (int address : dirty) {
+                forEachReference(Heap.findOop(address), action);
+            }
+        });
+        Marker marker = mark(Nursery::isYoung, rootSets);
+
+        // The cards of the old Oops that still refer to young ones must stay dirty
+        IntStream.Builder referrers = IntStream.builder();
+        int freed;
+        if (Arena.ENABLED) {
+            Arena.startMinorCollection();
+            freed = Nursery.sweep(marker::isMarked, address -> Arena.survived(Heap.findOop(address)), address -> {
+                Arena.promoted(Heap.findOop(address));
+                referrers.add(address);
+            });
+        } else {
+            freed = Nursery.sweep(marker::isMarked, address -> {}, referrers::add);
+        }
+        IntStream.concat(Arrays.stream(dirty), referrers.build()).forEach(address -> {
+            if (referencesYoung(Heap.findOop(address))) {
+                CardTable.mark(address);
+            }
+        });
+
+        long pause = recordPause(start, true);
+        LOG.info("Minor GC #{} for {} bytes: reclaimed {} bytes from {} objects, young {} -> {} bytes, {} -> {} of {} bytes in use, paused {}ms",
+            minorCollections, required, usedBefore - Heap.getUsed(), freed, youngBefore, Nursery.getUsed(), usedBefore,
+            Heap.getUsed(), Heap.getCapacity(), pause / 1000000.0);
+    }
+
+    // Returns the addresses of the old Oops on dirty cards, cleaning them
+    private static int[] cleanDirtyCards() {
+        IntStream.Builder dirty = IntStream.builder();
+        int limit = Heap.getAddressLimit();
+        int lastCard = CardTable.cardOf(limit - 1);
+        for (int card = 0; card <= lastCard; card++) {
+            if (CardTable.clean(card)) {
+                int end = Math.min((card + 1) * CardTable.CARD_SIZE, limit);
+                for (int address = Math.max(card * CardTable.CARD_SIZE, 1); address < end; address++) {
+                    if (Heap.findOop(address) != null && !Nursery.isYoung(address)) {
+                        dirty.add(address);
+                    }
+                }
+            }
+        }
+        return dirty.build().toArray();
+    }
+
+    private static void fullCollect(long required, FrameStack collecting) {
+        long start = System.nanoTime();
+        long usedBefore = Heap.getUsed();
+        int limit = Heap.getAddressLimit();
+
+        List<Consumer<IntConsumer>> rootSets = rootSets(collecting);
+        for (int from = 1; from < limit; from += MIRROR_SCAN_CHUNK) {
+            int chunkStart = from;
+            int chunkEnd = Math.min(from + MIRROR_SCAN_CHUNK, limit);
+            rootSets.add(action -> {
+                for (int address = chunkStart; address < chunkEnd; address++) {
+                    if (Heap.findOop(address) instanceof OopClassClass) {
+                        action.accept(address);
+                    }
+                }
+            });
+        }
+        Marker marker = mark(address -> true, rootSets);
+
+        int freed = 0;
+        long reclaimed = 0;
+        List<Oop> liveOld = Arena.ENABLED ? new ArrayList<>() : null;
+        for (int address = 1; address < limit; address++) {
+            Oop oop = Heap.findOop(address);
+            if (oop == null) {
+                continue;
+            }
+            if (!marker.isMarked(address)) {
+                reclaimed += Heap.free(address);
+                freed++;
+            } else if (liveOld != null && !Nursery.isYoung(address)) {
+                liveOld.add(oop);
+            }
+        }
+        // The cards are left as they are: the Oops that referred to young ones still do, if they're still live
+        Nursery.removeFreed();
+        if (liveOld != null && Arena.compact(liveOld)) {
+            LOG.info("Compacted the fields of {} old objects", liveOld.size());
+        }
+        Heap.afterCollection();
+
+        long pause = recordPause(start, false);
+        LOG.info("Full GC #{} for {} bytes: reclaimed {} bytes from {} objects, {} -> {} of {} bytes in use, paused {}ms",
+            collections, required, reclaimed, freed, usedBefore, Heap.getUsed(), Heap.getCapacity(), pause / 1000000.0);
+    }
+
+    // The roots common to both kinds of collection, split up so that they can be marked in parallel: each thread's
+    // frames, static fields, interned Strings and Thread objects. They're gathered on the collecting thread, as
+    // the marking threads can't take the locks that guard them
+    private static List<Consumer<IntConsumer>> rootSets(FrameStack collecting) {
+        List<Consumer<IntConsumer>> rootSets = new ArrayList<>();
+        Set<FrameStack> allFrames = new HashSet<>();
+        FrameStack.all().forEach(allFrames::add);
+        allFrames.add(collecting); // In case this thread's is new since all() was called
+        for (FrameStack frames : allFrames) {
+            rootSets.add(frames::forEachRoot);
+        }
+
+        List<ClassObject> classes = ClassLoader.getDefaultClassLoader().getLoadedClasses();
+        rootSets.add(action -> {
+            for (ClassObject classObject : classes) {
+                int[] values = classObject.getStaticFieldValues();
+                for (int offset : classObject.getStaticReferenceOffsets()) {
+                    action.accept(values[offset]);
+                }
+            }
+        });
+
+        IntStream.Builder interned = IntStream.builder();
+        Heap.forEachInternedString(interned::add);
+        int[] internedStrings = interned.build().toArray();
+        rootSets.add(action -> Arrays.stream(internedStrings).forEach(action));
+
+        int[] threads = Threads.getAll().stream().mapToInt(thread -> thread.getThisThread().getAddress()).toArray();
+        rootSets.add(action -> Arrays.stream(threads).forEach(action));
+        return rootSets;
+    }
+
+    // Marks from rootSets, and if jvm.gc.compareSerial is set, marks from them again serially and logs the speedup
+    private static Marker mark(IntPredicate traced, List<Consumer<IntConsumer>> rootSets) {
+        long start = System.nanoTime();
+        Marker marker = new Marker(Heap.getAddressLimit(), traced);
+        marker.mark(rootSets);
+        if (COMPARE_SERIAL) {
+            long parallelNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            Marker serial = new Marker(Heap.getAddressLimit(), traced, false);
+            serial.mark(rootSets);
+            long serialNanos = System.nanoTime() - start;
+            LOG.info("Marked {} objects from {} root sets in {}ms with {} threads, {}ms serially: a speedup of {}",
+                marker.getMarkedCount(), rootSets.size(), parallelNanos / 1000000.0, Marker.getThreads(),
+                serialNanos / 1000000.0, (double) serialNanos / parallelNanos);
+            if (serial.getMarkedCount() != marker.getMarkedCount()) {
+                LOG.warn("Serial marking marked {} objects, but parallel marking marked {}", serial.getMarkedCount(),
+                    marker.getMarkedCount());
+            }
+        }
+        return marker;
+    }
+
+    private static long recordPause(long start, boolean minor) {
+        long pause = System.nanoTime() - start;
+        synchronized (GarbageCollector.class) {
+            if (minor) {
+                minorCollections++;
+            } else {
+                collections++;
+            }
+            totalPauseNanos += pause;
+        }
+        return pause;
+    }
+
+    // Fields are typed, unlike frame slots, so only those holding references are visited
+    static void forEachReference(Oop oop, IntConsumer action) {
+        int[] storage = oop.getStorage();
+        int base = oop.getBase();
+        if (oop instanceof OopRefArray) {
+            for (int i = base; i < base + oop.getFieldCount(); i++) {
+                action.accept(storage[i]);
+            }
+        } else if (oop instanceof OopClass) {
+            for (int offset : ((OopClass) oop).getClassObject().getReferenceOffsets()) {
+                action.accept(storage[base + offset]);
+            }
+        }
+    }
+
+    private static boolean referencesYoung(Oop oop) {
+        boolean[] found = new boolean[1];
+        forEachReference(oop, address -> found[0] |= Nursery.isYoung(address));
+        return found[0];
+    }
+
+    public static synchronized int getMinorCollectionCount() {
+        return minorCollections;
+    }
+
+    // The number of full collections
+    public static synchronized int getCollectionCount() {
+        return collections;
+    }
+
+    public static synchronized long getTotalPauseNanos() {
+        return totalPauseNanos;
+    }
+}
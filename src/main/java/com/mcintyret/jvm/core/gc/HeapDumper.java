@@ -0,0 +1,492 @@
+package com.mcintyret.jvm.core.gc;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.clazz.AbstractClassObject;
+import com.mcintyret.jvm.core.clazz.ClassObject;
+import com.mcintyret.jvm.core.clazz.Field;
+import com.mcintyret.jvm.core.exec.FrameStack;
+import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopByteArray;
+import com.mcintyret.jvm.core.oop.OopCharArray;
+import com.mcintyret.jvm.core.oop.OopClass;
+import com.mcintyret.jvm.core.oop.OopDoubleArray;
+import com.mcintyret.jvm.core.oop.OopFloatArray;
+import com.mcintyret.jvm.core.oop.OopIntArray;
+import com.mcintyret.jvm.core.oop.OopLongArray;
+import com.mcintyret.jvm.core.oop.OopRefArray;
+import com.mcintyret.jvm.core.oop.OopShortArray;
+import com.mcintyret.jvm.core.thread.Thread;
+import com.mcintyret.jvm.core.thread.Threads;
+import com.mcintyret.jvm.core.type.SimpleType;
+import com.mcintyret.jvm.core.util.Utils;
+import com.mcintyret.jvm.load.ClassLoader;
+
+/**
+ * Writes the heap out in the HPROF binary format (as written by jmap -dump:format=b), which heap analysers such as
+ * VisualVM and Eclipse MAT can open. The GC roots in the dump are those the GarbageCollector uses: every thread's frame
+ * slots that hold an Oop's address, Thread objects, interned Strings (as JNI globals) and every class, whose static
+ * fields are in its class dump.
+ *
+ * IDs are 8 bytes: an Oop's is its address, and classes and strings, which aren't Oops here (a class's mirror is only
+ * allocated when it's first asked for), are given IDs above any address. Set jvm.heapDumpOnOutOfMemory to a file to have
+ * the heap dumped there, and a HeapHistogram logged, the first time the heap is exhausted.
+ */
+public final class HeapDumper {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HeapDumper.class);
+
+    private static final String DUMP_ON_OUT_OF_MEMORY = System.getProperty("jvm.heapDumpOnOutOfMemory");
+
+    private static final AtomicBoolean DUMPED_ON_OUT_OF_MEMORY = new AtomicBoolean();
+
+    private static final long CLASS_IDS = 1L << 32;
+
+    private static final long STRING_IDS = 2L << 32;
+
+    // Heap dump segments are written out once they're this big
+    private static final int SEGMENT_SIZE = 1 << 20;
+
+    private static final int STACK_TRACE_SERIAL = 1;
+
+    // Top-level record tags
+    private static final int UTF8 = 0x01;
+
+    private static final int LOAD_CLASS = 0x02;
+
+    private static final int STACK_TRACE = 0x05;
+
+    private static final int HEAP_DUMP_SEGMENT = 0x1C;
+
+    private static final int HEAP_DUMP_END = 0x2C;
+
+    // Heap dump sub-record tags
+    private static final int ROOT_JNI_GLOBAL = 0x01;
+
+    private static final int ROOT_JAVA_FRAME = 0x03;
+
+    private static final int ROOT_STICKY_CLASS = 0x05;
+
+    private static final int ROOT_THREAD_OBJECT = 0x08;
+
+    private static final int ROOT_UNKNOWN = 0xFF;
+
+    private static final int CLASS_DUMP = 0x20;
+
+    private static final int INSTANCE_DUMP = 0x21;
+
+    private static final int OBJECT_ARRAY_DUMP = 0x22;
+
+    private static final int PRIMITIVE_ARRAY_DUMP = 0x23;
+
+    private static final int OBJECT = 2;
+
+    private final DataOutputStream out;
+
+    private final Map<String, Long> strings = new HashMap<>();
+
+    private final Map<AbstractClassObject, Long> classIds = new LinkedHashMap<>();
+
+    private final ByteArrayOutputStream segmentBytes = new ByteArrayOutputStream(SEGMENT_SIZE + 1024);
+
+    private final DataOutputStream segment = new DataOutputStream(segmentBytes);
+
+    private int objects;
+
+    private HeapDumper(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    }
+
+    // Stops every other thread while it writes the dump
+    public static void dump(Path file) throws IOException {
+        long start = System.nanoTime();
+        int[] objects = new int[1];
+        try (OutputStream out = Files.newOutputStream(file)) {
+            GarbageCollector.stopTheWorld(FrameStack.current(), () -> {
+                try {
+                    objects[0] = new HeapDumper(out).write();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        LOG.info("Dumped {} objects to {} in {}ms", objects[0], file, (System.nanoTime() - start) / 1000000.0);
+    }
+
+    // Called when the heap is exhausted, before the OutOfMemoryError is constructed
+    public static void onOutOfMemory() {
+        if (DUMP_ON_OUT_OF_MEMORY == null || !DUMPED_ON_OUT_OF_MEMORY.compareAndSet(false, true)) {
+            return;
+        }
+        LOG.info("Heap exhausted\n{}", HeapHistogram.take().format(20));
+        try {
+            dump(Paths.get(DUMP_ON_OUT_OF_MEMORY));
+        } catch (IOException e) {
+            LOG.error("Couldn't write a heap dump to " + DUMP_ON_OUT_OF_MEMORY, e);
+        }
+    }
+
+    // Returns the number of objects written
+    private int write() throws IOException {
+        out.write("JAVA PROFILE 1.0.2".getBytes(StandardCharsets.US_ASCII));
+        out.writeByte(0);
+        out.writeInt(8);
+        out.writeLong(System.currentTimeMillis());
+
+        List<Oop> oops = new ArrayList<>();
+        for (ClassObject classObject : ClassLoader.getDefaultClassLoader().getLoadedClasses()) {
+            classId(classObject);
+        }
+        int limit = Heap.getAddressLimit();
+        for (int address = 1; address < limit; address++) {
+            Oop oop = Heap.findOop(address);
+            if (oop != null) {
+                oops.add(oop);
+                classId(oop.getClassObject());
+            }
+        }
+        for (AbstractClassObject classObject : new ArrayList<>(classIds.keySet())) {
+            for (ClassObject superClass = classObject.getSuperClass(); superClass != null;
+                 superClass = superClass.getSuperClass()) {
+                classId(superClass);
+            }
+        }
+
+        beginRecord(STACK_TRACE, 12);
+        out.writeInt(STACK_TRACE_SERIAL);
+        out.writeInt(0); // thread serial
+        out.writeInt(0); // frames
+        int classSerial = 0;
+        for (Map.Entry<AbstractClassObject, Long> entry : classIds.entrySet()) {
+            long nameId = stringId(HeapHistogram.className(entry.getKey()));
+            beginRecord(LOAD_CLASS, 24);
+            out.writeInt(++classSerial);
+            out.writeLong(entry.getValue());
+            out.writeInt(STACK_TRACE_SERIAL);
+            out.writeLong(nameId);
+        }
+
+        writeRoots();
+        for (AbstractClassObject classObject : new ArrayList<>(classIds.keySet())) {
+            writeClassDump(classObject);
+        }
+        for (Oop oop : oops) {
+            if (oop instanceof OopClass) {
+                writeInstanceDump((OopClass) oop);
+            } else {
+                writeArrayDump((OopArray) oop);
+            }
+        }
+        endSegment();
+        beginRecord(HEAP_DUMP_END, 0);
+        out.flush();
+        return objects;
+    }
+
+    private void writeRoots() throws IOException {
+        for (long classId : classIds.values()) {
+            segment.writeByte(ROOT_STICKY_CLASS);
+            segment.writeLong(classId);
+        }
+
+        Map<java.lang.Thread, Integer> threadSerials = new HashMap<>();
+        for (Thread thread : Threads.getAll()) {
+            int serial = threadSerials.size() + 1;
+            threadSerials.put(thread.getThread(), serial);
+            segment.writeByte(ROOT_THREAD_OBJECT);
+            segment.writeLong(thread.getThisThread().getAddress());
+            segment.writeInt(serial);
+            segment.writeInt(STACK_TRACE_SERIAL);
+        }
+
+        for (FrameStack frames : FrameStack.all()) {
+            // Frames on host threads with no guest Thread (eg while it's being created) can't be attributed to one
+            Integer serial = threadSerials.get(frames.getOwner());
+            BitSet seen = new BitSet();
+            frames.forEachRoot(address -> {
+                if (address > Heap.NULL_POINTER && !seen.get(address) && Heap.findOop(address) != null) {
+                    seen.set(address);
+                    try {
+                        if (serial == null) {
+                            segment.writeByte(ROOT_UNKNOWN);
+                            segment.writeLong(address);
+                        } else {
+                            segment.writeByte(ROOT_JAVA_FRAME);
+                            segment.writeLong(address);
+                            segment.writeInt(serial);
+                            segment.writeInt(-1); // frame number: unknown
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+
+        List<Integer> interned = new ArrayList<>();
+        Heap.forEachInternedString(interned::add);
+        for (int address : interned) {
+            segment.writeByte(ROOT_JNI_GLOBAL);
+            segment.writeLong(address);
+            segment.writeLong(address);
+        }
+        endSegmentIfFull();
+    }
+
+    private void writeClassDump(AbstractClassObject classObject) throws IOException {
+        ClassObject superClass = classObject.getSuperClass();
+        segment.writeByte(CLASS_DUMP);
+        segment.writeLong(classIds.get(classObject));
+        segment.writeInt(STACK_TRACE_SERIAL);
+        segment.writeLong(superClass == null ? 0 : classIds.get(superClass));
+        segment.writeLong(0); // class loader
+        segment.writeLong(0); // signers
+        segment.writeLong(0); // protection domain
+        segment.writeLong(0); // reserved
+        segment.writeLong(0); // reserved
+        if (!(classObject instanceof ClassObject)) {
+            segment.writeInt(0); // instance size
+            segment.writeShort(0); // constant pool
+            segment.writeShort(0); // static fields
+            segment.writeShort(0); // instance fields
+            endSegmentIfFull();
+            return;
+        }
+
+        ClassObject clazz = (ClassObject) classObject;
+        List<Field> declared = declaredFields(clazz);
+        int instanceSize = 0;
+        for (Field field : clazz.getInstanceFields()) {
+            instanceSize += size(field.getType().asSimpleType());
+        }
+        segment.writeInt(instanceSize);
+        segment.writeShort(0); // constant pool
+
+        Field[] statics = clazz.getStaticFields();
+        segment.writeShort(statics.length);
+        for (Field field : statics) {
+            SimpleType type = field.getType().asSimpleType();
+            segment.writeLong(stringId(field.getName()));
+            segment.writeByte(typeCode(type));
+            writeValue(type, clazz.getStaticFieldValues(), field.getOffset());
+        }
+
+        segment.writeShort(declared.size());
+        for (Field field : declared) {
+            segment.writeLong(stringId(field.getName()));
+            segment.writeByte(typeCode(field.getType().asSimpleType()));
+        }
+        endSegmentIfFull();
+    }
+
+    // The values are in the order of the class dumps' fields, each class's own before its superclass's
+    private void writeInstanceDump(OopClass oop) throws IOException {
+        ClassObject classObject = oop.getClassObject();
+        int size = 0;
+        for (Field field : classObject.getInstanceFields()) {
+            size += size(field.getType().asSimpleType());
+        }
+        segment.writeByte(INSTANCE_DUMP);
+        segment.writeLong(oop.getAddress());
+        segment.writeInt(STACK_TRACE_SERIAL);
+        segment.writeLong(classIds.get(classObject));
+        segment.writeInt(size);
+        int[] fields = oop.copyFields();
+        for (ClassObject clazz = classObject; clazz != null; clazz = clazz.getSuperClass()) {
+            for (Field field : declaredFields(clazz)) {
+                writeValue(field.getType().asSimpleType(), fields, field.getOffset());
+            }
+        }
+        objects++;
+        endSegmentIfFull();
+    }
+
+    private void writeArrayDump(OopArray array) throws IOException {
+        int length = array.getLength();
+        if (array instanceof OopRefArray) {
+            segment.writeByte(OBJECT_ARRAY_DUMP);
+            segment.writeLong(array.getAddress());
+            segment.writeInt(STACK_TRACE_SERIAL);
+            segment.writeInt(length);
+            segment.writeLong(classIds.get(array.getClassObject()));
+            for (int i = 0; i < length; i++) {
+                segment.writeLong(array.getField(i));
+            }
+        } else {
+            segment.writeByte(PRIMITIVE_ARRAY_DUMP);
+            segment.writeLong(array.getAddress());
+            segment.writeInt(STACK_TRACE_SERIAL);
+            segment.writeInt(length);
+            segment.writeByte(typeCode(array.getClassObject().getType().getComponentType().asSimpleType()));
+            writeElements(array);
+        }
+        objects++;
+        endSegmentIfFull();
+    }
+
+    private void writeElements(OopArray array) throws IOException {
+        if (array instanceof OopByteArray) {
+            segment.write(((OopByteArray) array).getArray());
+        } else if (array instanceof OopCharArray) {
+            for (char c : ((OopCharArray) array).getArray()) {
+                segment.writeChar(c);
+            }
+        } else if (array instanceof OopShortArray) {
+            for (short s : ((OopShortArray) array).getArray()) {
+                segment.writeShort(s);
+            }
+        } else if (array instanceof OopIntArray) {
+            for (int i : ((OopIntArray) array).getArray()) {
+                segment.writeInt(i);
+            }
+        } else if (array instanceof OopLongArray) {
+            for (long l : ((OopLongArray) array).getArray()) {
+                segment.writeLong(l);
+            }
+        } else if (array instanceof OopFloatArray) {
+            for (float f : ((OopFloatArray) array).getArray()) {
+                segment.writeFloat(f);
+            }
+        } else {
+            for (double d : ((OopDoubleArray) array).getArray()) {
+                segment.writeDouble(d);
+            }
+        }
+    }
+
+    // A field's value, from values starting at offset, as an instance or class dump holds it
+    private void writeValue(SimpleType type, int[] values, int offset) throws IOException {
+        switch (type) {
+            case BOOLEAN:
+            case BYTE:
+                segment.writeByte(values[offset]);
+                break;
+            case CHAR:
+            case SHORT:
+                segment.writeShort(values[offset]);
+                break;
+            case LONG:
+            case DOUBLE:
+                segment.writeLong(Utils.toLong(values[offset], values[offset + 1]));
+                break;
+            case REF:
+                segment.writeLong(values[offset]);
+                break;
+            default:
+                segment.writeInt(values[offset]);
+        }
+    }
+
+    // Those of the class's instance fields that aren't its superclass's
+    private static List<Field> declaredFields(ClassObject classObject) {
+        Field[] fields = classObject.getInstanceFields();
+        ClassObject superClass = classObject.getSuperClass();
+        int inherited = superClass == null ? 0 : superClass.getInstanceFields().length;
+        List<Field> declared = new ArrayList<>(fields.length - inherited);
+        for (int i = inherited; i < fields.length; i++) {
+            declared.add(fields[i]);
+        }
+        return declared;
+    }
+
+    private static int size(SimpleType type) {
+        switch (type) {
+            case BOOLEAN:
+            case BYTE:
+                return 1;
+            case CHAR:
+            case SHORT:
+                return 2;
+            case LONG:
+            case DOUBLE:
+            case REF:
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+    private static int typeCode(SimpleType type) {
+        switch (type) {
+            case BOOLEAN:
+                return 4;
+            case CHAR:
+                return 5;
+            case FLOAT:
+                return 6;
+            case DOUBLE:
+                return 7;
+            case BYTE:
+                return 8;
+            case SHORT:
+                return 9;
+            case INT:
+                return 10;
+            case LONG:
+                return 11;
+            default:
+                return OBJECT;
+        }
+    }
+
+    private long classId(AbstractClassObject classObject) {
+        return classIds.computeIfAbsent(classObject, c -> CLASS_IDS + classIds.size() + 1);
+    }
+
+    // Writes a UTF8 record for the string the first time it's seen
+    private long stringId(String string) throws IOException {
+        Long id = strings.get(string);
+        if (id == null) {
+            id = STRING_IDS + strings.size() + 1;
+            strings.put(string, id);
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            beginRecord(UTF8, 8 + bytes.length);
+            out.writeLong(id);
+            out.write(bytes);
+        }
+        return id;
+    }
+
+    private void beginRecord(int tag, int length) throws IOException {
+        out.writeByte(tag);
+        out.writeInt(0); // microseconds since the header's timestamp
+        out.writeInt(length);
+    }
+
+    private void endSegmentIfFull() throws IOException {
+        if (segmentBytes.size() >= SEGMENT_SIZE) {
+            endSegment();
+        }
+    }
+
+    private void endSegment() throws IOException {
+        if (segmentBytes.size() > 0) {
+            beginRecord(HEAP_DUMP_SEGMENT, segmentBytes.size());
+            segmentBytes.writeTo(out);
+            segmentBytes.reset();
+        }
+    }
+}
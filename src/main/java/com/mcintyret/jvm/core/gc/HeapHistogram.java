@@ -0,0 +1,116 @@
+package com.mcintyret.jvm.core.gc;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.clazz.AbstractClassObject;
+import com.mcintyret.jvm.core.clazz.ClassObject;
+import com.mcintyret.jvm.core.exec.FrameStack;
+import com.mcintyret.jvm.core.oop.Oop;
+
+/**
+ * The number of Oops of each class on the heap, and the bytes they take up (as the Heap counts them), at the time take()
+ * was called. Unreachable Oops that haven't been collected yet are counted too.
+ */
+public final class HeapHistogram {
+
+    private final List<Entry> entries;
+
+    private final long totalCount;
+
+    private final long totalBytes;
+
+    private HeapHistogram(List<Entry> entries) {
+        entries.sort(Comparator.comparingLong(Entry::getBytes).reversed());
+        this.entries = entries;
+        this.totalCount = entries.stream().mapToLong(Entry::getCount).sum();
+        this.totalBytes = entries.stream().mapToLong(Entry::getBytes).sum();
+    }
+
+    // Stops every other thread while it looks through the heap
+    public static HeapHistogram take() {
+        HeapHistogram[] histogram = new HeapHistogram[1];
+        GarbageCollector.stopTheWorld(FrameStack.current(), () -> histogram[0] = compute());
+        return histogram[0];
+    }
+
+    // Only called with the world stopped
+    static HeapHistogram compute() {
+        Map<AbstractClassObject, Entry> byClass = new HashMap<>();
+        int limit = Heap.getAddressLimit();
+        for (int address = 1; address < limit; address++) {
+            Oop oop = Heap.findOop(address);
+            if (oop != null) {
+                Entry entry = byClass.computeIfAbsent(oop.getClassObject(), Entry::new);
+                entry.count++;
+                entry.bytes += Heap.sizeOf(oop);
+            }
+        }
+        return new HeapHistogram(new ArrayList<>(byClass.values()));
+    }
+
+    // The most bytes first
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    // A human-readable table of the n classes taking up the most bytes, in the style of jmap -histo
+    public String format(int n) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(" num     #instances         #bytes  class name%n"));
+        sb.append(String.format("----------------------------------------------%n"));
+        for (int i = 0; i < Math.min(n, entries.size()); i++) {
+            Entry entry = entries.get(i);
+            sb.append(String.format("%4d: %14d %14d  %s%n", i + 1, entry.count, entry.bytes, entry.getClassName()));
+        }
+        sb.append(String.format("Total %14d %14d%n", totalCount, totalBytes));
+        return sb.toString();
+    }
+
+    public static final class Entry {
+
+        private final AbstractClassObject classObject;
+
+        private long count;
+
+        private long bytes;
+
+        private Entry(AbstractClassObject classObject) {
+            this.classObject = classObject;
+        }
+
+        public AbstractClassObject getClassObject() {
+            return classObject;
+        }
+
+        public String getClassName() {
+            return className(classObject);
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    // eg java/lang/String, or [I or [Ljava/lang/String; for arrays
+    public static String className(AbstractClassObject classObject) {
+        return classObject instanceof ClassObject
+            ? ((ClassObject) classObject).getClassName() : classObject.getType().toString();
+    }
+}
@@ -0,0 +1,365 @@
+package com.mcintyret.jvm.core.gc;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.ImportantClasses;
+import com.mcintyret.jvm.core.clazz.ArrayClassObject;
+import com.mcintyret.jvm.core.clazz.ClassObject;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.exec.FrameStack;
+import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopByteArray;
+import com.mcintyret.jvm.core.oop.OopCharArray;
+import com.mcintyret.jvm.core.oop.OopClass;
+import com.mcintyret.jvm.core.oop.OopClassClass;
+import com.mcintyret.jvm.core.oop.OopClassMethod;
+import com.mcintyret.jvm.core.oop.OopDoubleArray;
+import com.mcintyret.jvm.core.oop.OopFloatArray;
+import com.mcintyret.jvm.core.oop.OopIntArray;
+import com.mcintyret.jvm.core.oop.OopLongArray;
+import com.mcintyret.jvm.core.oop.OopRefArray;
+import com.mcintyret.jvm.core.oop.OopShortArray;
+import com.mcintyret.jvm.core.thread.Thread;
+import com.mcintyret.jvm.core.thread.Threads;
+import com.mcintyret.jvm.core.type.ArrayType;
+import com.mcintyret.jvm.core.type.Type;
+import com.mcintyret.jvm.core.type.Types;
+import com.mcintyret.jvm.load.ClassLoader;
+import com.mcintyret.jvm.load.ZipClassPath;
+
+/**
+ * The state the VM is in once it's bootstrapped (see Runner), saved so that later runs can start from it rather than
+ * bootstrapping again: the loaded classes and their static field values, every Oop at its address, the interned Strings
+ * and the main Thread. Restoring links the classes afresh without running their static initializers, puts the Oops back
+ * at the same addresses, so that every reference in a field or static is still good, and registers the main Thread
+ * against the restoring host thread.
+ *
+ * Host resources aren't saved. The only ones a bootstrapped VM has are stdout and stderr, which FileOutputStreamNatives
+ * maps file descriptors 1 and 2 to in every run, so the guest FileDescriptors in the snapshot refer to them as before.
+ * Snapshots are taken with no guest code running, after a full collection, so no Oop is locked or garbage. A snapshot
+ * records the standard library's checksum (see ZipClassPath.getChecksum()), and isn't restored if it no longer matches.
+ */
+public final class HeapSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HeapSnapshot.class);
+
+    private static final int MAGIC = 0x4A534E50;
+
+    private static final int VERSION = 1;
+
+    private static final byte INSTANCE = 0;
+
+    private static final byte CLASS = 1;
+
+    private static final byte CONSTRUCTOR = 2;
+
+    private static final byte REF_ARRAY = 3;
+
+    private static final byte PRIMITIVE_ARRAY = 4;
+
+    private HeapSnapshot() {
+    }
+
+    // Collects the heap, then writes the snapshot, first to a temporary file so that a run starting meanwhile never sees
+    // half of it
+    public static void write(Path path, ClassLoader loader, Thread mainThread) {
+        // The main Thread's Oop is only put on the heap once the guest first asks for it
+        if (mainThread.getThisThread().getAddress() == Oop.UNALLOCATED_ADDRESS) {
+            Heap.allocate(mainThread.getThisThread());
+        }
+        GarbageCollector.stopTheWorld(FrameStack.current(), () -> {
+            GarbageCollector.collectAll(FrameStack.current());
+            try {
+                Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    write(out, loader, mainThread);
+                }
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        LOG.info("Wrote heap snapshot {} of {} bytes in use", path, Heap.getUsed());
+    }
+
+    private static void write(DataOutputStream out, ClassLoader loader, Thread mainThread) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(libraryChecksum());
+
+        List<ClassObject> classes = loader.getLoadedClasses();
+        out.writeInt(classes.size());
+        for (ClassObject classObject : classes) {
+            out.writeUTF(classObject.getClassName());
+            writeInts(out, classObject.getStaticFieldValues(), 0, classObject.getStaticFieldValues().length);
+        }
+
+        int limit = Heap.getAddressLimit();
+        out.writeInt(limit);
+        for (int address = 1; address < limit; address++) {
+            Oop oop = Heap.findOop(address);
+            if (oop != null) {
+                out.writeInt(address);
+                writeOop(out, oop);
+            }
+        }
+        out.writeInt(Heap.NULL_POINTER);
+
+        Map<String, Integer> strings = Heap.getInternedStrings();
+        out.writeInt(strings.size());
+        for (Map.Entry<String, Integer> string : strings.entrySet()) {
+            writeString(out, string.getKey());
+            out.writeInt(string.getValue());
+        }
+
+        out.writeInt(mainThread.getThisThread().getAddress());
+    }
+
+    private static void writeOop(DataOutputStream out, Oop oop) throws IOException {
+        if (oop instanceof OopArray) {
+            OopArray array = (OopArray) oop;
+            out.writeByte(array instanceof OopRefArray ? REF_ARRAY : PRIMITIVE_ARRAY);
+            out.writeUTF(array.getClassObject().getType().toString());
+            out.writeInt(array.getLength());
+            writeElements(out, array);
+            return;
+        }
+        if (oop instanceof OopClassClass) {
+            out.writeByte(CLASS);
+            out.writeUTF(((OopClassClass) oop).getThisType().toString());
+        } else if (oop instanceof OopClassMethod) {
+            Method method = ((OopClassMethod) oop).getMethod();
+            ClassObject declaring = method.getClassObject();
+            out.writeByte(CONSTRUCTOR);
+            out.writeUTF(((OopClass) oop).getClassObject().getClassName());
+            out.writeUTF(declaring.getClassName());
+            out.writeInt(indexOf(declaring.getConstructors(), method));
+        } else if (oop.getClass() == OopClass.class) {
+            out.writeByte(INSTANCE);
+            out.writeUTF(((OopClass) oop).getClassObject().getClassName());
+        } else {
+            throw new IllegalStateException("Can't snapshot a " + oop.getClass().getSimpleName());
+        }
+        writeInts(out, oop.getStorage(), oop.getBase(), oop.getFieldCount());
+    }
+
+    private static void writeElements(DataOutputStream out, OopArray array) throws IOException {
+        int length = array.getLength();
+        if (array instanceof OopRefArray) {
+            for (int i = 0; i < length; i++) {
+                out.writeInt(array.getField(i));
+            }
+        } else if (array instanceof OopByteArray) {
+            out.write(((OopByteArray) array).getArray(), 0, length);
+        } else if (array instanceof OopCharArray) {
+            for (char c : ((OopCharArray) array).getArray()) {
+                out.writeChar(c);
+            }
+        } else if (array instanceof OopShortArray) {
+            for (short s : ((OopShortArray) array).getArray()) {
+                out.writeShort(s);
+            }
+        } else if (array instanceof OopIntArray) {
+            for (int i : ((OopIntArray) array).getArray()) {
+                out.writeInt(i);
+            }
+        } else if (array instanceof OopLongArray) {
+            for (long l : ((OopLongArray) array).getArray()) {
+                out.writeLong(l);
+            }
+        } else if (array instanceof OopFloatArray) {
+            for (float f : ((OopFloatArray) array).getArray()) {
+                out.writeFloat(f);
+            }
+        } else {
+            for (double d : ((OopDoubleArray) array).getArray()) {
+                out.writeDouble(d);
+            }
+        }
+    }
+
+    // Returns the restored main Thread, or null if there's no snapshot at path or it was taken with a different standard
+    // library, in which case the VM should bootstrap as usual. Must be called before anything's been allocated
+    public static Thread restore(Path path, ClassLoader loader) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOG.warn("{} isn't a heap snapshot", path);
+                return null;
+            }
+            if (in.readLong() != libraryChecksum()) {
+                LOG.info("Ignoring heap snapshot {}, as the standard library has changed since it was taken", path);
+                return null;
+            }
+            Thread mainThread = restore(in, loader);
+            LOG.info("Restored heap snapshot {} of {} bytes in use in {}ms", path, Heap.getUsed(),
+                (System.nanoTime() - start) / 1000000);
+            return mainThread;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Thread restore(DataInputStream in, ClassLoader loader) throws IOException {
+        int classCount = in.readInt();
+        List<String> classNames = new ArrayList<>(classCount);
+        List<int[]> staticFieldValues = new ArrayList<>(classCount);
+        for (int i = 0; i < classCount; i++) {
+            classNames.add(in.readUTF());
+            staticFieldValues.add(readInts(in));
+        }
+        loader.linkWithoutInitializing(classNames);
+        for (int i = 0; i < classCount; i++) {
+            int[] values = staticFieldValues.get(i);
+            System.arraycopy(values, 0, loader.getClassObject(classNames.get(i)).getStaticFieldValues(), 0, values.length);
+        }
+
+        Oop[] oops = new Oop[in.readInt()];
+        for (int address = in.readInt(); address != Heap.NULL_POINTER; address = in.readInt()) {
+            oops[address] = readOop(in, loader);
+        }
+
+        int stringCount = in.readInt();
+        Map<String, Integer> strings = new HashMap<>();
+        for (int i = 0; i < stringCount; i++) {
+            strings.put(readString(in), in.readInt());
+        }
+        Heap.restore(oops, strings);
+
+        for (Oop oop : oops) {
+            if (oop instanceof OopClassClass) {
+                ((OopClassClass) oop).getThisType().setOopClassClass((OopClassClass) oop);
+            }
+        }
+
+        Thread mainThread = new Thread(Heap.getOopClass(in.readInt()), java.lang.Thread.currentThread());
+        Threads.register(mainThread);
+        return mainThread;
+    }
+
+    private static Oop readOop(DataInputStream in, ClassLoader loader) throws IOException {
+        byte kind = in.readByte();
+        switch (kind) {
+            case INSTANCE:
+                return new OopClass(loader.getClassObject(in.readUTF()), readInts(in));
+            case CLASS:
+                Type type = Types.parseType(in.readUTF());
+                return new OopClassClass(loader.getClassObject(ImportantClasses.JAVA_LANG_CLASS), readInts(in), type);
+            case CONSTRUCTOR:
+                ClassObject classObject = loader.getClassObject(in.readUTF());
+                Method constructor = loader.getClassObject(in.readUTF()).getConstructors()[in.readInt()];
+                return new OopClassMethod(classObject, readInts(in), constructor);
+            case REF_ARRAY:
+            case PRIMITIVE_ARRAY:
+                ArrayClassObject arrayClass = ArrayClassObject.forType((ArrayType) Types.parseType(in.readUTF()));
+                OopArray array = OopArray.create(arrayClass, in.readInt());
+                readElements(in, array);
+                return array;
+            default:
+                throw new IllegalStateException("Corrupt heap snapshot: unknown kind of Oop " + kind);
+        }
+    }
+
+    private static void readElements(DataInputStream in, OopArray array) throws IOException {
+        int length = array.getLength();
+        if (array instanceof OopRefArray) {
+            for (int i = 0; i < length; i++) {
+                array.setField(i, in.readInt());
+            }
+        } else if (array instanceof OopByteArray) {
+            in.readFully(((OopByteArray) array).getArray(), 0, length);
+        } else if (array instanceof OopCharArray) {
+            char[] chars = ((OopCharArray) array).getArray();
+            for (int i = 0; i < length; i++) {
+                chars[i] = in.readChar();
+            }
+        } else if (array instanceof OopShortArray) {
+            short[] shorts = ((OopShortArray) array).getArray();
+            for (int i = 0; i < length; i++) {
+                shorts[i] = in.readShort();
+            }
+        } else if (array instanceof OopIntArray) {
+            int[] ints = ((OopIntArray) array).getArray();
+            for (int i = 0; i < length; i++) {
+                ints[i] = in.readInt();
+            }
+        } else if (array instanceof OopLongArray) {
+            long[] longs = ((OopLongArray) array).getArray();
+            for (int i = 0; i < length; i++) {
+                longs[i] = in.readLong();
+            }
+        } else if (array instanceof OopFloatArray) {
+            float[] floats = ((OopFloatArray) array).getArray();
+            for (int i = 0; i < length; i++) {
+                floats[i] = in.readFloat();
+            }
+        } else {
+            double[] doubles = ((OopDoubleArray) array).getArray();
+            for (int i = 0; i < length; i++) {
+                doubles[i] = in.readDouble();
+            }
+        }
+    }
+
+    private static long libraryChecksum() {
+        return new ZipClassPath(System.getProperty("java.lib.jar.path")).getChecksum();
+    }
+
+    private static int indexOf(Method[] methods, Method method) {
+        for (int i = 0; i < methods.length; i++) {
+            if (methods[i] == method) {
+                return i;
+            }
+        }
+        throw new IllegalStateException(method + " isn't one of its class's constructors");
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int from, int count) throws IOException {
+        out.writeInt(count);
+        for (int i = from; i < from + count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    // Unlike writeUTF, not limited to 64k
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        out.writeInt(string.length());
+        out.writeChars(string);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        char[] chars = new char[in.readInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = in.readChar();
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,172 @@
+package com.mcintyret.jvm.core.gc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import com.mcintyret.jvm.core.Heap;
+
+/**
+ * Marks the Oops reachable from a number of root sets, each of which passes the addresses it holds to the IntConsumer
+ * it's given. With jvm.gc.threads greater than 1 (by default, one per core) each root set is marked by its own task in a
+ * work-stealing ForkJoinPool, with its own mark stack, and a task whose stack grows large forks off half of it for idle
+ * workers to steal. Mark bits are claimed atomically, so each Oop is traced by exactly one task.
+ *
+ * Only addresses that traced accepts are marked; the rest are taken to be live, and their references aren't followed.
+ */
+final class Marker {
+
+    private static final int THREADS = Integer.getInteger("jvm.gc.threads", Runtime.getRuntime().availableProcessors());
+
+    // A task won't split its stack until it's at least twice this size
+    private static final int SPLIT_SIZE = 128;
+
+    private static volatile ForkJoinPool pool;
+
+    private final AtomicLongArray bits;
+
+    private final IntPredicate traced;
+
+    private final boolean parallel;
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    Marker(int addressLimit, IntPredicate traced) {
+        this(addressLimit, traced, THREADS > 1);
+    }
+
+    Marker(int addressLimit, IntPredicate traced, boolean parallel) {
+        this.bits = new AtomicLongArray((addressLimit >>> 6) + 1);
+        this.traced = traced;
+        this.parallel = parallel;
+    }
+
+    static int getThreads() {
+        return THREADS;
+    }
+
+    void mark(List<Consumer<IntConsumer>> rootSets) {
+        if (!parallel) {
+            MarkTask task = new MarkTask(null);
+            for (Consumer<IntConsumer> roots : rootSets) {
+                roots.accept(task::markIfOop);
+                task.drain();
+            }
+            return;
+        }
+        List<MarkTask> tasks = new ArrayList<>(rootSets.size());
+        for (Consumer<IntConsumer> roots : rootSets) {
+            tasks.add(new MarkTask(roots));
+        }
+        getPool().invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+    }
+
+    boolean isMarked(int address) {
+        return (bits.get(address >>> 6) & (1L << address)) != 0;
+    }
+
+    int getMarkedCount() {
+        return count.get();
+    }
+
+    // Returns whether this call is the one that marked the address
+    private boolean claim(int address) {
+        int index = address >>> 6;
+        long bit = 1L << address;
+        while (true) {
+            long word = bits.get(index);
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (bits.compareAndSet(index, word, word | bit)) {
+                count.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    private static ForkJoinPool getPool() {
+        ForkJoinPool p = pool;
+        if (p == null) {
+            synchronized (Marker.class) {
+                if ((p = pool) == null) {
+                    pool = p = new ForkJoinPool(THREADS);
+                }
+            }
+        }
+        return p;
+    }
+
+    private final class MarkTask extends RecursiveAction {
+
+        // null for a task that was forked off with part of another's stack
+        private final Consumer<IntConsumer> roots;
+
+        private int[] stack;
+
+        private int size;
+
+        private MarkTask(Consumer<IntConsumer> roots) {
+            this.roots = roots;
+            this.stack = new int[SPLIT_SIZE * 2];
+        }
+
+        private MarkTask(int[] stack, int size) {
+            this.roots = null;
+            this.stack = stack;
+            this.size = size;
+        }
+
+        @Override
+        protected void compute() {
+            if (roots != null) {
+                roots.accept(this::markIfOop);
+            }
+            drain();
+        }
+
+        private void markIfOop(int address) {
+            if (traced.test(address) && Heap.findOop(address) != null && claim(address)) {
+                if (size == stack.length) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                }
+                stack[size++] = address;
+            }
+        }
+
+        private void drain() {
+            List<MarkTask> forked = null;
+            while (size > 0) {
+                if (parallel && size >= SPLIT_SIZE * 2 && getSurplusQueuedTaskCount() < 2) {
+                    int half = size / 2;
+                    MarkTask split = new MarkTask(Arrays.copyOfRange(stack, size - half, size + SPLIT_SIZE), half);
+                    size -= half;
+                    split.fork();
+                    if (forked == null) {
+                        forked = new ArrayList<>();
+                    }
+                    forked.add(split);
+                }
+                GarbageCollector.forEachReference(Heap.findOop(stack[--size]), this::markIfOop);
+            }
+            if (forked != null) {
+                for (ForkJoinTask<?> task : forked) {
+                    task.join();
+                }
+            }
+        }
+    }
+}
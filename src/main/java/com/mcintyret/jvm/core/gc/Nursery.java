@@ -0,0 +1,137 @@
+package com.mcintyret.jvm.core.gc;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+import com.mcintyret.jvm.core.Heap;
+
+/**
+ * The young generation: the Oops that haven't yet survived TENURING_THRESHOLD minor collections. Oops can't be moved,
+ * as the frame slots that refer to them can't be told apart from ints, so rather than being a region of the heap that
+ * survivors are copied out of, the nursery is the set of young addresses, and promotion just takes an address out of it.
+ * jvm.Xmn is how many bytes of young Oops there may be before a minor collection, by default a quarter of jvm.Xms.
+ *
+ * Only used with the Heap locked.
+ */
+public final class Nursery {
+
+    private static final long CAPACITY = System.getProperty("jvm.Xmn") == null
+        ? Heap.getInitialSize() / 4 : Heap.parseSize(System.getProperty("jvm.Xmn"));
+
+    // The bytes each thread's AllocationBuffer is refilled with (jvm.tlabSize), no more than an eighth of the nursery
+    public static final long ALLOCATION_BUFFER_SIZE = Math.max(
+        Math.min(Heap.parseSize(System.getProperty("jvm.tlabSize", "16k")), CAPACITY / 8), 1024);
+
+    private static final int TENURING_THRESHOLD = Integer.getInteger("jvm.gc.tenuringThreshold", 3);
+
+    private static final BitSet YOUNG = new BitSet();
+
+    // The young Oops' addresses, sizes and the number of minor collections each has survived
+    private static int[] addresses = new int[1024];
+
+    private static int[] sizes = new int[1024];
+
+    private static byte[] ages = new byte[1024];
+
+    private static int count;
+
+    private static long used;
+
+    private Nursery() {
+    }
+
+    public static boolean hasRoom(long size) {
+        return used + size <= CAPACITY;
+    }
+
+    public static void reserve(long size) {
+        used += size;
+    }
+
+    public static void release(long size) {
+        used -= size;
+    }
+
+    // Adds an Oop whose size has already been reserved
+    public static void add(int address, long size) {
+        if (count == addresses.length) {
+            addresses = Arrays.copyOf(addresses, count * 2);
+            sizes = Arrays.copyOf(sizes, count * 2);
+            ages = Arrays.copyOf(ages, count * 2);
+        }
+        addresses[count] = address;
+        sizes[count] = (int) size;
+        ages[count++] = 0;
+        YOUNG.set(address);
+    }
+
+    public static boolean isYoung(int address) {
+        return address > Heap.NULL_POINTER && YOUNG.get(address);
+    }
+
+    static void forEach(IntConsumer action) {
+        for (int i = 0; i < count; i++) {
+            action.accept(addresses[i]);
+        }
+    }
+
+    // Frees the young Oops that aren't marked, and ages the rest. Those that have survived TENURING_THRESHOLD
+    // collections are promoted, as are all of them if they'd otherwise fill more than half the nursery, so that it isn't
+    // straight away full again. Returns how many were freed
+    static int sweep(IntPredicate marked, IntConsumer survived, IntConsumer promoted) {
+        long surviving = 0;
+        for (int i = 0; i < count; i++) {
+            if (marked.test(addresses[i])) {
+                surviving += sizes[i];
+            }
+        }
+        boolean promoteAll = surviving > CAPACITY / 2;
+
+        int freed = 0;
+        int kept = 0;
+        used = 0;
+        for (int i = 0; i < count; i++) {
+            int address = addresses[i];
+            if (!marked.test(address)) {
+                YOUNG.clear(address);
+                Heap.free(address);
+                freed++;
+            } else if (promoteAll || ages[i] + 1 >= TENURING_THRESHOLD) {
+                YOUNG.clear(address);
+                promoted.accept(address);
+            } else {
+                addresses[kept] = address;
+                sizes[kept] = sizes[i];
+                ages[kept++] = (byte) (ages[i] + 1);
+                used += sizes[i];
+                survived.accept(address);
+            }
+        }
+        count = kept;
+        return freed;
+    }
+
+    // Called after a full collection, which frees young Oops along with old ones
+    static void removeFreed() {
+        int kept = 0;
+        used = 0;
+        for (int i = 0; i < count; i++) {
+            int address = addresses[i];
+            if (Heap.findOop(address) == null) {
+                YOUNG.clear(address);
+            } else {
+                addresses[kept] = address;
+                sizes[kept] = sizes[i];
+                ages[kept++] = ages[i];
+                used += sizes[i];
+            }
+        }
+        count = kept;
+    }
+
+    static long getUsed() {
+        return used;
+    }
+}
@@ -0,0 +1,15 @@
+package com.mcintyret.jvm.core.jit;
+
+import com.mcintyret.jvm.core.exec.VariableStack;
+import com.mcintyret.jvm.core.exec.Variables;
+
+/**
+ * The entry point into a Method that has been compiled to host bytecode. Implementations are generated by
+ * JitCompiler, and take their arguments in the same layout that an interpreted frame's local variables would.
+ */
+public interface CompiledMethod {
+
+    // Any return value is pushed onto returnTo
+    void invoke(Variables args, VariableStack returnTo);
+
+}
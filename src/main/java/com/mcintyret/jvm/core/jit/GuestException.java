@@ -0,0 +1,20 @@
+package com.mcintyret.jvm.core.jit;
+
+/**
+ * A guest Throwable on its way out of compiled code, which has no exception handlers of its own, to the interpreted
+ * frame that called into it. That frame throws it on from the instruction that did so.
+ */
+public class GuestException extends RuntimeException {
+
+    private final int throwable;
+
+    public GuestException(int throwable) {
+        super(null, null, false, false);
+        this.throwable = throwable;
+    }
+
+    // The guest Throwable's Heap address
+    public int getThrowable() {
+        return throwable;
+    }
+}
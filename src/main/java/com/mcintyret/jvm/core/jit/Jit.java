@@ -0,0 +1,205 @@
+package com.mcintyret.jvm.core.jit;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.metrics.ThreadMetrics;
+
+/**
+ * The second execution tier. Methods are interpreted until they have been invoked jvm.jit.threshold times, or have
+ * taken jvm.jit.backedgeThreshold backward branches, by any one thread (see ThreadMetrics), after which the next
+ * invocation compiles them to host bytecode (see JitCompiler) if they can be. A frame that is still running a hot loop
+ * is moved onto compiled code at its next backward branch instead (on-stack replacement). Set jvm.jit=false to only
+ * ever interpret.
+ */
+public class Jit {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Jit.class);
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("jvm.jit", "true"));
+
+    private static final int INVOCATION_THRESHOLD = Integer.getInteger("jvm.jit.threshold", 1000);
+
+    private static final int BACKEDGE_THRESHOLD = Integer.getInteger("jvm.jit.backedgeThreshold", 10000);
+
+    private static final Set<Method> COMPILABLE = ConcurrentHashMap.newKeySet();
+
+    // Keyed by the number in the compiled class's name. Nothing here holds a lock while a compiled class is loaded, as
+    // compiled code loads its callees' classes lazily, from whichever thread first calls them
+    private static final Map<Integer, Compilation> COMPILATIONS = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger COMPILATION_COUNT = new AtomicInteger();
+
+    private static final Map<Method, String> CLASS_NAMES = new ConcurrentHashMap<>();
+
+    // Keyed by entry position
+    private static final Map<Method, Map<Integer, CompiledMethod>> OSR_METHODS = new ConcurrentHashMap<>();
+
+    private static final JitCompiler COMPILER = new JitCompiler(new JitCompiler.Callees() {
+        @Override
+        public boolean isCompilable(Method method) {
+            return Jit.isCompilable(method);
+        }
+
+        @Override
+        public String getClassName(Method method) {
+            return Jit.getClassName(method);
+        }
+    });
+
+    private static final HostClassLoader HOST_CLASS_LOADER = new HostClassLoader();
+
+    // Called on each interpreted invocation of method, once metrics has counted it. Returns the CompiledMethod to run
+    // instead, if there is one
+    public static CompiledMethod onInvoke(Method method, ThreadMetrics metrics) {
+        CompiledMethod compiled = method.getCompiledMethod();
+        if (compiled == null && ENABLED && (isHot(method, metrics.getInvocations(method), INVOCATION_THRESHOLD)
+            || isHot(method, metrics.getBackedges(method), BACKEDGE_THRESHOLD))) {
+            compiled = compile(method);
+        }
+        return compiled;
+    }
+
+    // Called on each interpreted backward branch to pos, the backedges'th this thread has taken in method, with the
+    // frame's operand stack empty. Returns a CompiledMethod taking the frame's local variables that will run the rest
+    // of the method, if the loop is hot enough to warrant it
+    public static CompiledMethod onBackedge(Method method, int pos, long backedges) {
+        if (ENABLED && isHot(method, backedges, BACKEDGE_THRESHOLD)) {
+            return compileOsr(method, pos);
+        }
+        return null;
+    }
+
+    // Each failed compilation puts the next attempt off until the method is just as hot again, as some of its
+    // instructions may just not have been executed yet
+    private static boolean isHot(Method method, long count, int threshold) {
+        return count >= (long) threshold * (method.getFailedCompilations() + 1);
+    }
+
+    // Threads racing to compile the same loop each load a class for it, but only the first to finish is kept
+    private static CompiledMethod compileOsr(Method method, int pos) {
+        Map<Integer, CompiledMethod> osrMethods = OSR_METHODS.computeIfAbsent(method, m -> new ConcurrentHashMap<>());
+        CompiledMethod compiled = osrMethods.get(pos);
+        if (compiled == null) {
+            if (isCompilable(method)) {
+                compiled = newInstance(method, newClassName(new Compilation(method, pos)));
+                CompiledMethod raced = osrMethods.putIfAbsent(pos, compiled);
+                compiled = raced == null ? compiled : raced;
+            } else {
+                method.compilationFailed();
+            }
+        }
+        return compiled;
+    }
+
+    // Threads racing to compile the same method share its class, which the HostClassLoader only loads once
+    private static CompiledMethod compile(Method method) {
+        if (method.getCompiledMethod() == null) {
+            if (isCompilable(method)) {
+                method.setCompiledMethod(newInstance(method, getClassName(method)));
+            } else {
+                method.compilationFailed();
+            }
+        }
+        return method.getCompiledMethod();
+    }
+
+    private static CompiledMethod newInstance(Method method, String className) {
+        try {
+            return (CompiledMethod) HOST_CLASS_LOADER.loadClass(className.replace('/', '.')).newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unable to compile " + method, e);
+        }
+    }
+
+    // Only a method's own instructions decide whether it can be compiled, and once they can they always can: the
+    // interpreter only ever resolves more of them
+    private static boolean isCompilable(Method method) {
+        if (COMPILABLE.contains(method)) {
+            return true;
+        }
+        boolean result = COMPILER.canCompile(method);
+        if (result) {
+            COMPILABLE.add(method);
+        }
+        return result;
+    }
+
+    private static String getClassName(Method method) {
+        return CLASS_NAMES.computeIfAbsent(method, m -> newClassName(new Compilation(m, -1)));
+    }
+
+    private static String newClassName(Compilation compilation) {
+        int number = COMPILATION_COUNT.getAndIncrement();
+        COMPILATIONS.put(number, compilation);
+        return JitCompiler.CLASS_NAME_PREFIX + number;
+    }
+
+    private static class Compilation {
+
+        private final Method method;
+
+        private final int osrEntryPos; // -1 if this is a normal compilation
+
+        private Compilation(Method method, int osrEntryPos) {
+            this.method = method;
+            this.osrEntryPos = osrEntryPos;
+        }
+
+        private byte[] compile(String className, List<Object> constants) {
+            return osrEntryPos < 0
+                ? COMPILER.compile(method, className, constants)
+                : COMPILER.compileOsr(method, className, osrEntryPos, constants);
+        }
+    }
+
+    // Parallel capable, so that loading one compiled class only locks that class's name
+    private static class HostClassLoader extends java.lang.ClassLoader {
+
+        static {
+            registerAsParallelCapable();
+        }
+
+        HostClassLoader() {
+            super(Jit.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            String internalName = name.replace('.', '/');
+            if (!internalName.startsWith(JitCompiler.CLASS_NAME_PREFIX)) {
+                throw new ClassNotFoundException(name);
+            }
+            Compilation compilation =
+                COMPILATIONS.get(Integer.parseInt(internalName.substring(JitCompiler.CLASS_NAME_PREFIX.length())));
+            if (compilation == null) {
+                throw new ClassNotFoundException(name);
+            }
+
+            List<Object> constants = new ArrayList<>();
+            byte[] bytes = compilation.compile(internalName, constants);
+            Class<?> clazz = defineClass(name, bytes, 0, bytes.length);
+            try {
+                clazz.getField(JitCompiler.CONSTANTS_FIELD).set(null, constants.toArray());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+            if (compilation.osrEntryPos < 0) {
+                LOG.info("Compiled {} to {}", compilation.method, name);
+            } else {
+                LOG.info("Compiled {} to {} for on-stack replacement at {}", compilation.method, name,
+                    compilation.osrEntryPos);
+            }
+            return clazz;
+        }
+    }
+
+}
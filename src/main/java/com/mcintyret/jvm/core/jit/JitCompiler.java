@@ -0,0 +1,987 @@
+package com.mcintyret.jvm.core.jit;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import com.mcintyret.jvm.core.clazz.AbstractClassObject;
+import com.mcintyret.jvm.core.clazz.Field;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.exec.FrameStack;
+import com.mcintyret.jvm.core.exec.Variable;
+import com.mcintyret.jvm.core.exec.VariableStack;
+import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.exec.WideVariable;
+import com.mcintyret.jvm.core.opcode.Instruction;
+import com.mcintyret.jvm.core.type.SimpleType;
+import com.mcintyret.jvm.core.type.Type;
+import com.mcintyret.jvm.parse.Modifier;
+import com.mcintyret.jvm.parse.attribute.Code;
+
+/**
+ * Translates a guest Method into a host class. The guest bytecode maps almost one-to-one onto host bytecode: references
+ * are just their int Heap addresses, so every guest local and stack slot keeps its width, and anything touching the Heap
+ * goes through JitRuntime.
+ * <p>
+ * Only a subset of methods can be compiled: those with no exception handlers, and that don't allocate objects, throw or
+ * synchronize, so compiled code never needs an interpreted frame of its own. Calls to static and private methods that
+ * can be compiled too go straight to the callee's compiled code. Any other call, whether virtual, through an interface
+ * or to a native or uncompilable method, goes back through the interpreter (see JitRuntime.invoke()), and anything the
+ * callee throws unwinds every compiled frame up to the interpreted one that called into them, as a GuestException.
+ * Every constant pool entry a method uses must also already have been resolved by the interpreter (ie its instruction
+ * quickened), so that compiling never causes a class to be loaded or initialized earlier than it otherwise would be.
+ * <p>
+ * Compiled code polls for a safepoint on entry and before each backward branch, and may reach one in any call or
+ * newarray. As the GarbageCollector can't see into host frames, it first spills every reference in its guest locals and
+ * operand stack into a frame of its own on the FrameStack, whose slots are roots.
+ */
+class JitCompiler implements Opcodes {
+
+    static final String CLASS_NAME_PREFIX = "com/mcintyret/jvm/core/jit/Compiled_";
+
+    static final String RUN_METHOD = "run";
+
+    static final String CONSTANTS_FIELD = "CONSTANTS";
+
+    private static final String RUNTIME = internalName(JitRuntime.class);
+
+    private static final String FIELD_DESC = "L" + internalName(Field.class) + ";";
+
+    private static final String METHOD_DESC = "L" + internalName(Method.class) + ";";
+
+    private static final String VARIABLES = internalName(Variables.class);
+
+    private static final String SIMPLE_TYPE_DESC = "L" + internalName(SimpleType.class) + ";";
+
+    // The type stored by each of the xstore family, in opcode order
+    private static final SimpleType[] STORE_TYPES = {
+        SimpleType.INT, SimpleType.LONG, SimpleType.FLOAT, SimpleType.DOUBLE, SimpleType.REF
+    };
+
+    // The type produced by each conversion, i2l to i2s
+    private static final SimpleType[] CONVERSION_TYPES = {
+        SimpleType.LONG, SimpleType.FLOAT, SimpleType.DOUBLE,
+        SimpleType.INT, SimpleType.FLOAT, SimpleType.DOUBLE,
+        SimpleType.INT, SimpleType.LONG, SimpleType.DOUBLE,
+        SimpleType.INT, SimpleType.LONG, SimpleType.FLOAT,
+        SimpleType.INT, SimpleType.INT, SimpleType.INT
+    };
+
+    interface Callees {
+
+        boolean isCompilable(Method method);
+
+        String getClassName(Method method);
+
+    }
+
+    private final Callees callees;
+
+    JitCompiler(Callees callees) {
+        this.callees = callees;
+    }
+
+    boolean canCompile(Method method) {
+        if (method.getCode() == null || method.hasModifier(Modifier.SYNCHRONIZED)
+            || !method.getCode().getCodeExceptions().isEmpty()) {
+            return false;
+        }
+        for (Instruction instruction : method.getInstructions()) {
+            if (instruction != null && !canCompile(instruction)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean canCompile(Instruction instruction) {
+        int b = instruction.getOpCode().getByte() & 0xFF;
+        if (b <= 0x11 || (b >= 0x15 && b <= 0x98) || (b >= 0x99 && b <= 0xA7) || b == 0xAB
+            || (b >= 0xAC && b <= 0xB1) || b == 0xBC || b == 0xBE || (b >= 0xC6 && b <= 0xC8)) {
+            return true;
+        }
+        Object resolved = instruction.getResolved();
+        switch (b) {
+            case 0x12: // ldc
+            case 0x13: // ldc_w
+            case 0x14: // ldc2_w
+            case 0xB2: // getstatic
+            case 0xB3: // putstatic
+            case 0xB4: // getfield
+            case 0xB5: // putfield
+            case 0xB6: // invokevirtual
+            case 0xB7: // invokespecial
+            case 0xB8: // invokestatic
+            case 0xB9: // invokeinterface
+                return resolved != null;
+            default:
+                return false;
+        }
+    }
+
+    // The types of run()'s parameters: one per guest local variable it starts with, the long and double ones covering
+    // two slots each
+    private static SimpleType[] getParams(Method method) {
+        List<Type> argTypes = method.getSignature().getArgTypes();
+        int shift = method.isStatic() ? 0 : 1;
+        SimpleType[] params = new SimpleType[argTypes.size() + shift];
+        if (!method.isStatic()) {
+            params[0] = SimpleType.REF;
+        }
+        for (int i = 0; i < argTypes.size(); i++) {
+            params[i + shift] = argTypes.get(i).asSimpleType();
+        }
+        return params;
+    }
+
+    // For on-stack replacement, run() takes the frame's entire set of local variables, typed as they are at entryPos.
+    // Frames don't record the types of their slots, so they are worked out from the method's store instructions. Slots
+    // with no single type there can't be read before they are next stored to, so are passed as a 0 int.
+    private static SimpleType[] getOsrParams(Method method, int entryPos) {
+        SimpleType[] localTypes = new FrameTypes(method).locals[entryPos];
+        List<SimpleType> params = new ArrayList<>(localTypes.length);
+        for (int i = 0; i < localTypes.length; i++) {
+            SimpleType type = localTypes[i];
+            params.add(type);
+            if (type != null && type.isDoubleWidth()) {
+                i++;
+            }
+        }
+        return params.toArray(new SimpleType[params.size()]);
+    }
+
+    // The types of a method's local variable slots and operand stack words on reaching each of its instructions, found by
+    // following every path through it from its start. Only the types that the host distinguishes are used, so booleans,
+    // bytes etc are all INT. A long or double takes the first of its two slots or words, and the second is null.
+    private static final class FrameTypes {
+
+        private final SimpleType[][] locals;
+
+        private final SimpleType[][] stacks;
+
+        FrameTypes(Method method) {
+            Instruction[] instructions = method.getInstructions();
+            locals = new SimpleType[instructions.length][];
+            stacks = new SimpleType[instructions.length][];
+
+            SimpleType[] initial = new SimpleType[method.getCode().getMaxLocals()];
+            int slot = 0;
+            for (SimpleType param : getParams(method)) {
+                initial[slot] = hostType(param);
+                slot += param.getWidth();
+            }
+
+            Deque<Integer> worklist = new ArrayDeque<>();
+            locals[0] = initial;
+            stacks[0] = new SimpleType[0];
+            worklist.add(0);
+            while (!worklist.isEmpty()) {
+                Instruction instruction = instructions[worklist.poll()];
+                SimpleType[] state = locals[instruction.getPos()].clone();
+                List<SimpleType> stack = new ArrayList<>(Arrays.asList(stacks[instruction.getPos()]));
+                int b = instruction.getOpCode().getByte() & 0xFF;
+                if (b >= 0x36 && b <= 0x3A) { // xstore
+                    store(state, instruction.getOperand(0), STORE_TYPES[b - 0x36]);
+                } else if (b >= 0x3B && b <= 0x4E) { // xstore_n
+                    store(state, (b - 0x3B) % 4, STORE_TYPES[(b - 0x3B) / 4]);
+                } else if (b == 0x84) { // iinc
+                    store(state, instruction.getOperand(0), SimpleType.INT);
+                }
+                execute(instruction, stack);
+                SimpleType[] words = stack.toArray(new SimpleType[stack.size()]);
+
+                for (int successor : getSuccessors(instruction, instructions)) {
+                    boolean changed = merge(locals, successor, state);
+                    if (merge(stacks, successor, words) || changed) {
+                        worklist.add(successor);
+                    }
+                }
+            }
+        }
+    }
+
+    private static SimpleType hostType(SimpleType type) {
+        return type.isDoubleWidth() || type == SimpleType.FLOAT || type == SimpleType.REF ? type : SimpleType.INT;
+    }
+
+    private static void store(SimpleType[] state, int slot, SimpleType type) {
+        if (slot > 0 && state[slot - 1] != null && state[slot - 1].isDoubleWidth()) {
+            state[slot - 1] = null;
+        }
+        state[slot] = type;
+        if (type.isDoubleWidth()) {
+            state[slot + 1] = null;
+        }
+    }
+
+    // Returns whether the state at pos changed. The first state to reach pos is copied, as the same state reaches all of
+    // an instruction's successors and merging into one mustn't change the others
+    private static boolean merge(SimpleType[][] states, int pos, SimpleType[] state) {
+        SimpleType[] existing = states[pos];
+        if (existing == null) {
+            states[pos] = state.clone();
+            return true;
+        }
+        boolean changed = false;
+        for (int i = 0; i < existing.length; i++) {
+            if (existing[i] != null && existing[i] != state[i]) {
+                existing[i] = null;
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    // The effect of instruction on the types of the operand stack's words. Only covers the instructions that
+    // canCompile() allows
+    private static void execute(Instruction instruction, List<SimpleType> stack) {
+        int b = instruction.getOpCode().getByte() & 0xFF;
+        if (b == 0x00 || b == 0x84 || b == 0xA7 || b == 0xC8 || (b >= 0xAC && b <= 0xB1)) {
+            // nop, iinc, goto, goto_w and the returns leave it alone, or don't matter
+        } else if (b == 0x01) { // aconst_null
+            push(stack, SimpleType.REF);
+        } else if (b <= 0x08 || b == 0x10 || b == 0x11) { // iconst_n, bipush, sipush
+            push(stack, SimpleType.INT);
+        } else if (b <= 0x0A) { // lconst_n
+            push(stack, SimpleType.LONG);
+        } else if (b <= 0x0D) { // fconst_n
+            push(stack, SimpleType.FLOAT);
+        } else if (b <= 0x0F) { // dconst_n
+            push(stack, SimpleType.DOUBLE);
+        } else if (b <= 0x14) { // ldc, ldc_w, ldc2_w
+            Object constant = instruction.getResolved();
+            if (constant instanceof Variable) {
+                push(stack, hostType(((Variable) constant).getType()));
+            } else if (constant instanceof WideVariable) {
+                push(stack, ((WideVariable) constant).getType());
+            } else {
+                push(stack, SimpleType.REF);
+            }
+        } else if (b <= 0x19) { // xload
+            push(stack, STORE_TYPES[b - 0x15]);
+        } else if (b <= 0x2D) { // xload_n
+            push(stack, STORE_TYPES[(b - 0x1A) / 4]);
+        } else if (b <= 0x35) { // xaload
+            pop(stack, 2);
+            push(stack, b == 0x2F ? SimpleType.LONG : b == 0x30 ? SimpleType.FLOAT : b == 0x31 ? SimpleType.DOUBLE
+                : b == 0x32 ? SimpleType.REF : SimpleType.INT);
+        } else if (b <= 0x3A) { // xstore
+            pop(stack, STORE_TYPES[b - 0x36].getWidth());
+        } else if (b <= 0x4E) { // xstore_n
+            pop(stack, STORE_TYPES[(b - 0x3B) / 4].getWidth());
+        } else if (b <= 0x56) { // xastore
+            pop(stack, b == 0x50 || b == 0x52 ? 4 : 3);
+        } else if (b <= 0x5F) { // pop, pop2, the dup family and swap
+            manipulate(b, stack);
+        } else if (b <= 0x73 || (b >= 0x7E && b <= 0x83)) { // binary arithmetic and logic
+            SimpleType type = STORE_TYPES[b <= 0x73 ? (b - 0x60) % 4 : (b - 0x7E) % 2];
+            pop(stack, 2 * type.getWidth());
+            push(stack, type);
+        } else if (b <= 0x77) { // xneg
+            // Leaves the type alone
+        } else if (b <= 0x7D) { // shifts
+            pop(stack, 1);
+        } else if (b <= 0x93) { // conversions
+            int i = b - 0x85;
+            pop(stack, i < 12 ? STORE_TYPES[i / 3].getWidth() : 1);
+            push(stack, CONVERSION_TYPES[i]);
+        } else if (b <= 0x98) { // comparisons
+            pop(stack, b == 0x94 || b >= 0x97 ? 4 : 2);
+            push(stack, SimpleType.INT);
+        } else if (b <= 0x9E || b == 0xAB || b == 0xC6 || b == 0xC7) { // if<cond>, lookupswitch, ifnull, ifnonnull
+            pop(stack, 1);
+        } else if (b <= 0xA6) { // if_icmp<cond>, if_acmp<cond>
+            pop(stack, 2);
+        } else if (b <= 0xB5) { // getstatic, putstatic, getfield, putfield
+            SimpleType type = hostType(((Field) instruction.getResolved()).getType().asSimpleType());
+            if (b == 0xB4 || b == 0xB5) {
+                pop(stack, 1);
+            }
+            if (b == 0xB2 || b == 0xB4) {
+                push(stack, type);
+            } else {
+                pop(stack, type.getWidth());
+            }
+        } else if (isInvoke(b)) {
+            Method callee = (Method) instruction.getResolved();
+            pop(stack, getArgWords(callee));
+            SimpleType returnType = callee.getSignature().getReturnType().asSimpleType();
+            if (returnType != SimpleType.VOID) {
+                push(stack, hostType(returnType));
+            }
+        } else if (b == 0xBC) { // newarray
+            pop(stack, 1);
+            push(stack, SimpleType.REF);
+        } else if (b == 0xBE) { // arraylength
+            pop(stack, 1);
+            push(stack, SimpleType.INT);
+        } else {
+            throw new IllegalStateException("Can't compile " + instruction);
+        }
+    }
+
+    private static boolean isInvoke(int b) {
+        return b >= 0xB6 && b <= 0xB9;
+    }
+
+    private static int getArgWords(Method method) {
+        int words = method.isStatic() ? 0 : 1;
+        for (Type argType : method.getSignature().getArgTypes()) {
+            words += argType.asSimpleType().getWidth();
+        }
+        return words;
+    }
+
+    // pop, pop2, dup, dup_x1, dup_x2, dup2, dup2_x1, dup2_x2 and swap work on words regardless of their types
+    private static void manipulate(int b, List<SimpleType> stack) {
+        int size = stack.size();
+        switch (b) {
+            case 0x57: // pop
+                pop(stack, 1);
+                break;
+            case 0x58: // pop2
+                pop(stack, 2);
+                break;
+            case 0x59: // dup
+                stack.add(stack.get(size - 1));
+                break;
+            case 0x5A: // dup_x1
+                stack.add(size - 2, stack.get(size - 1));
+                break;
+            case 0x5B: // dup_x2
+                stack.add(size - 3, stack.get(size - 1));
+                break;
+            case 0x5C: // dup2
+                stack.addAll(new ArrayList<>(stack.subList(size - 2, size)));
+                break;
+            case 0x5D: // dup2_x1
+                stack.addAll(size - 3, new ArrayList<>(stack.subList(size - 2, size)));
+                break;
+            case 0x5E: // dup2_x2
+                stack.addAll(size - 4, new ArrayList<>(stack.subList(size - 2, size)));
+                break;
+            default: // swap
+                stack.add(size - 2, stack.remove(size - 1));
+        }
+    }
+
+    private static void push(List<SimpleType> stack, SimpleType type) {
+        stack.add(type);
+        if (type.isDoubleWidth()) {
+            stack.add(null);
+        }
+    }
+
+    private static void pop(List<SimpleType> stack, int words) {
+        for (int i = 0; i < words; i++) {
+            stack.remove(stack.size() - 1);
+        }
+    }
+
+    // Only covers the instructions that canCompile() allows
+    private static List<Integer> getSuccessors(Instruction instruction, Instruction[] instructions) {
+        int b = instruction.getOpCode().getByte() & 0xFF;
+        List<Integer> successors = new ArrayList<>();
+        if (b == 0xAB) { // lookupswitch
+            successors.add(instruction.getOperand(0));
+            for (int i = 2; i < instruction.getOperandCount(); i += 2) {
+                successors.add(instruction.getOperand(i));
+            }
+        } else if ((b >= 0x99 && b <= 0xA7) || b == 0xC6 || b == 0xC7 || b == 0xC8) { // branches
+            successors.add(instruction.getOperand(0));
+        }
+        if (b != 0xA7 && b != 0xC8 && b != 0xAB && (b < 0xAC || b > 0xB1)) {
+            int next = instruction.getPos() + 1;
+            while (next < instructions.length && instructions[next] == null) {
+                next++;
+            }
+            if (next < instructions.length) {
+                successors.add(next);
+            }
+        }
+        return successors;
+    }
+
+    static String getRunDescriptor(Method method) {
+        return getRunDescriptor(getParams(method), method);
+    }
+
+    private static String getRunDescriptor(SimpleType[] params, Method method) {
+        StringBuilder sb = new StringBuilder("(");
+        for (SimpleType param : params) {
+            sb.append(param == null ? "I" : hostDescriptor(param));
+        }
+        return sb.append(')').append(hostDescriptor(method.getSignature().getReturnType())).toString();
+    }
+
+    // Returns the host class file for method, and adds every Field and Method it references to constants, in the order
+    // that the class's CONSTANTS array must hold them
+    byte[] compile(Method method, String className, List<Object> constants) {
+        return compile(method, className, getParams(method), -1, constants);
+    }
+
+    // As compile(), but the class's CompiledMethod takes the whole of a running frame's local variables and starts
+    // executing at entryPos, which must be a point where the operand stack is empty
+    byte[] compileOsr(Method method, String className, int entryPos, List<Object> constants) {
+        return compile(method, className, getOsrParams(method, entryPos), entryPos, constants);
+    }
+
+    private byte[] compile(Method method, String className, SimpleType[] params, int entryPos, List<Object> constants) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        // Version 49 so that no stack map frames are required
+        cw.visit(V1_5, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, className, null, "java/lang/Object",
+            new String[]{internalName(CompiledMethod.class)});
+
+        cw.visitField(ACC_PUBLIC | ACC_STATIC, CONSTANTS_FIELD, "[Ljava/lang/Object;", null, null).visitEnd();
+
+        String descriptor = getRunDescriptor(params, method);
+        writeConstructor(cw);
+        writeInvoke(cw, method, className, params, descriptor);
+        writeRun(cw, method, className, descriptor, entryPos, constants);
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void writeConstructor(ClassWriter cw) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // CompiledMethod.invoke(): unpacks the args, calls run() and pushes its result
+    private static void writeInvoke(ClassWriter cw, Method method, String className, SimpleType[] params, String descriptor) {
+        String variables = internalName(Variables.class);
+        String stack = internalName(VariableStack.class);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "invoke", "(L" + variables + ";L" + stack + ";)V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 2);
+
+        int slot = 0;
+        for (SimpleType type : params) {
+            if (type == null) {
+                mv.visitInsn(ICONST_0);
+                slot++;
+                continue;
+            }
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitLdcInsn(slot);
+            switch (type) {
+                case LONG:
+                    mv.visitMethodInsn(INVOKEVIRTUAL, variables, "getLong", "(I)J", false);
+                    break;
+                case FLOAT:
+                    mv.visitMethodInsn(INVOKEVIRTUAL, variables, "getFloat", "(I)F", false);
+                    break;
+                case DOUBLE:
+                    mv.visitMethodInsn(INVOKEVIRTUAL, variables, "getDouble", "(I)D", false);
+                    break;
+                default:
+                    mv.visitMethodInsn(INVOKEVIRTUAL, variables, "getRawValue", "(I)I", false);
+            }
+            slot += type.getWidth();
+        }
+        mv.visitMethodInsn(INVOKESTATIC, className, RUN_METHOD, descriptor, false);
+
+        SimpleType returnType = method.getSignature().getReturnType().asSimpleType();
+        switch (returnType) {
+            case VOID:
+                mv.visitInsn(POP);
+                break;
+            case LONG:
+                mv.visitMethodInsn(INVOKEINTERFACE, stack, "pushLong", "(J)V", true);
+                break;
+            case FLOAT:
+                mv.visitMethodInsn(INVOKEINTERFACE, stack, "pushFloat", "(F)V", true);
+                break;
+            case DOUBLE:
+                mv.visitMethodInsn(INVOKEINTERFACE, stack, "pushDouble", "(D)V", true);
+                break;
+            default:
+                // The same types that the interpreter's ireturn and areturn push
+                String type = returnType == SimpleType.REF ? "REF" : "INT";
+                mv.visitFieldInsn(GETSTATIC, internalName(SimpleType.class), type, "L" + internalName(SimpleType.class) + ";");
+                mv.visitMethodInsn(INVOKEINTERFACE, stack, "pushSingleWidth", "(IL" + internalName(SimpleType.class) + ";)V", true);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private void writeRun(ClassWriter cw, Method method, String className, String descriptor, int entryPos,
+                          List<Object> constants) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, RUN_METHOD, descriptor, null, null);
+        mv.visitCode();
+
+        Instruction[] instructions = method.getInstructions();
+        Label[] labels = new Label[instructions.length];
+        for (int i = 0; i < instructions.length; i++) {
+            if (instructions[i] != null) {
+                labels[i] = new Label();
+            }
+        }
+
+        FrameTypes types = new FrameTypes(method);
+        Spiller spiller = needsFrame(instructions, types) ? new Spiller(method.getCode()) : null;
+        if (spiller != null) {
+            spiller.pushFrame(mv);
+        }
+        if (entryPos >= 0) {
+            // Anything only reachable from the method's real start is never verified, as it can't be executed
+            mv.visitJumpInsn(GOTO, labels[entryPos]);
+        } else {
+            poll(mv, spiller, types.locals[0], types.stacks[0]);
+        }
+
+        for (Instruction instruction : instructions) {
+            if (instruction != null) {
+                int pos = instruction.getPos();
+                mv.visitLabel(labels[pos]);
+                int b = instruction.getOpCode().getByte() & 0xFF;
+                if (types.locals[pos] == null) {
+                    // Unreachable
+                } else if (isBackwardBranch(instruction)) {
+                    poll(mv, spiller, types.locals[pos], types.stacks[pos]);
+                } else if (spiller != null && (b == 0xBC || isInvoke(b))) {
+                    spiller.spill(mv, types.locals[pos], types.stacks[pos]);
+                } else if (spiller != null && b >= 0xAC && b <= 0xB1) {
+                    spiller.popFrame(mv);
+                }
+                if (!isInvoke(b)) {
+                    translate(mv, instruction, labels, className, constants);
+                } else if (types.locals[pos] == null) {
+                    // Unreachable, so there are no arguments to call it with
+                } else if (callsCompiledCode(instruction)) {
+                    translate(mv, instruction, labels, className, constants);
+                } else {
+                    invokeInterpreted(mv, instruction, method.getCode(), types.stacks[pos], className, constants);
+                }
+            }
+        }
+
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    // Whether any of the points where compiled code may have to let the GarbageCollector run has references to spill
+    private static boolean needsFrame(Instruction[] instructions, FrameTypes types) {
+        for (Instruction instruction : instructions) {
+            if (instruction != null && types.locals[instruction.getPos()] != null) {
+                int b = instruction.getOpCode().getByte() & 0xFF;
+                if ((b == 0xBC || isInvoke(b) || isBackwardBranch(instruction) || instruction.getPos() == 0)
+                    && (hasRef(types.locals[instruction.getPos()]) || hasRef(types.stacks[instruction.getPos()]))) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean hasRef(SimpleType[] types) {
+        return Arrays.asList(types).contains(SimpleType.REF);
+    }
+
+    private static boolean isBackwardBranch(Instruction instruction) {
+        int b = instruction.getOpCode().getByte() & 0xFF;
+        if (b == 0xAB) { // lookupswitch
+            for (int i = 0; i < instruction.getOperandCount(); i += 2) { // the default, then each pair's target
+                if (instruction.getOperand(i) <= instruction.getPos()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return ((b >= 0x99 && b <= 0xA7) || b == 0xC6 || b == 0xC7 || b == 0xC8) && instruction.getOperand(0) <= instruction.getPos();
+    }
+
+    // Reaches a safepoint if one has been requested
+    private static void poll(MethodVisitor mv, Spiller spiller, SimpleType[] locals, SimpleType[] stack) {
+        Label skip = new Label();
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "isSafepointRequested", "()Z", false);
+        mv.visitJumpInsn(IFEQ, skip);
+        if (spiller != null) {
+            spiller.spill(mv, locals, stack);
+        }
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "safepoint", "()V", false);
+        mv.visitLabel(skip);
+    }
+
+    // Copies the references that compiled code holds into a frame on the FrameStack, so that they're roots while it's at
+    // a safepoint. The FrameStack is kept in the host local after the guest's, the frame in the next one, and values
+    // taken off the operand stack to get at the references under them in those after that, one per guest word.
+    private static final class Spiller {
+
+        private final int maxLocals;
+
+        private final int frameSize;
+
+        Spiller(Code code) {
+            maxLocals = code.getMaxLocals();
+            frameSize = maxLocals + code.getMaxStack();
+        }
+
+        void pushFrame(MethodVisitor mv) {
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "frames", "()L" + internalName(FrameStack.class) + ";", false);
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ASTORE, maxLocals);
+            mv.visitLdcInsn(frameSize);
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "pushFrame",
+                "(L" + internalName(FrameStack.class) + ";I)L" + internalName(Variables.class) + ";", false);
+            mv.visitVarInsn(ASTORE, maxLocals + 1);
+        }
+
+        void popFrame(MethodVisitor mv) {
+            mv.visitVarInsn(ALOAD, maxLocals);
+            mv.visitVarInsn(ALOAD, maxLocals + 1);
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "popFrame",
+                "(L" + internalName(FrameStack.class) + ";L" + internalName(Variables.class) + ";)V", false);
+        }
+
+        void spill(MethodVisitor mv, SimpleType[] locals, SimpleType[] stack) {
+            for (int i = 0; i < locals.length; i++) {
+                if (locals[i] == SimpleType.REF) {
+                    put(mv, i);
+                    mv.visitVarInsn(ILOAD, i);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, internalName(Variables.class), "put",
+                        "(IL" + internalName(SimpleType.class) + ";I)V", false);
+                }
+            }
+
+            int lowest = Arrays.asList(stack).indexOf(SimpleType.REF);
+            if (lowest < 0) {
+                return;
+            }
+            for (int i = stack.length - 1; i >= lowest; i--) {
+                SimpleType type = stack[i];
+                if (type == null) {
+                    type = stack[--i];
+                    if (type == null || !type.isDoubleWidth()) {
+                        throw new IllegalStateException("Unknown operand stack type at a safepoint");
+                    }
+                }
+                mv.visitVarInsn(hostLoadOrStore(ISTORE, kind(type)), temp(i));
+                if (type == SimpleType.REF) {
+                    put(mv, maxLocals + i);
+                    mv.visitVarInsn(ILOAD, temp(i));
+                    mv.visitMethodInsn(INVOKEVIRTUAL, internalName(Variables.class), "put",
+                        "(IL" + internalName(SimpleType.class) + ";I)V", false);
+                }
+            }
+            for (int i = lowest; i < stack.length; i += stack[i].getWidth()) {
+                mv.visitVarInsn(hostLoadOrStore(ILOAD, kind(stack[i])), temp(i));
+            }
+        }
+
+        // Pushes the frame, slot and type arguments of Variables.put()
+        private void put(MethodVisitor mv, int slot) {
+            mv.visitVarInsn(ALOAD, maxLocals + 1);
+            mv.visitLdcInsn(slot);
+            mv.visitFieldInsn(GETSTATIC, internalName(SimpleType.class), "REF", "L" + internalName(SimpleType.class) + ";");
+        }
+
+        private int temp(int word) {
+            return JitCompiler.temp(maxLocals, word);
+        }
+    }
+
+    // The host local that holds the operand stack's word'th word while it's off the stack, after the guest's locals and
+    // the Spiller's FrameStack and frame
+    private static int temp(int maxLocals, int word) {
+        return maxLocals + 2 + word;
+    }
+
+    // Whether instruction, an invoke, calls straight into its callee's compiled code rather than going through the
+    // interpreter. Only static and private methods are bound to a single implementation
+    private boolean callsCompiledCode(Instruction instruction) {
+        int b = instruction.getOpCode().getByte() & 0xFF;
+        return (b == 0xB7 || b == 0xB8) && callees.isCompilable((Method) instruction.getResolved());
+    }
+
+    // Moves the arguments off the host operand stack into a Variables, as the interpreter would pop them, and calls
+    // JitRuntime.invoke() with them. stack holds the types of the operand stack's words before the call
+    private static void invokeInterpreted(MethodVisitor mv, Instruction instruction, Code code, SimpleType[] stack,
+                                          String className, List<Object> constants) {
+        Method callee = (Method) instruction.getResolved();
+        int maxLocals = code.getMaxLocals();
+        int base = stack.length - getArgWords(callee);
+        for (int i = stack.length - 1; i >= base; i--) {
+            if (stack[i] == null) {
+                i--;
+            }
+            mv.visitVarInsn(hostLoadOrStore(ISTORE, kind(stack[i])), temp(maxLocals, i));
+        }
+
+        mv.visitLdcInsn(stack.length - base);
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "newArgs", "(I)L" + VARIABLES + ";", false);
+        for (int i = base; i < stack.length; i += stack[i].getWidth()) {
+            SimpleType type = stack[i];
+            mv.visitInsn(DUP);
+            mv.visitLdcInsn(i - base);
+            mv.visitFieldInsn(GETSTATIC, internalName(SimpleType.class), type.name(), SIMPLE_TYPE_DESC);
+            mv.visitVarInsn(hostLoadOrStore(ILOAD, kind(type)), temp(maxLocals, i));
+            if (type == SimpleType.FLOAT) {
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Float", "floatToRawIntBits", "(F)I", false);
+            } else if (type == SimpleType.DOUBLE) {
+                mv.visitMethodInsn(INVOKESTATIC, "java/lang/Double", "doubleToRawLongBits", "(D)J", false);
+            }
+            mv.visitMethodInsn(INVOKEVIRTUAL, VARIABLES, type.isDoubleWidth() ? "putWide" : "put",
+                "(I" + SIMPLE_TYPE_DESC + (type.isDoubleWidth() ? "J" : "I") + ")V", false);
+        }
+
+        loadConstant(mv, callee, className, constants);
+        mv.visitTypeInsn(CHECKCAST, internalName(Method.class));
+        int b = instruction.getOpCode().getByte() & 0xFF;
+        mv.visitInsn(b == 0xB6 || b == 0xB9 ? ICONST_1 : ICONST_0);
+        Type returnType = callee.getSignature().getReturnType();
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, getInvokeHelper(returnType.asSimpleType()),
+            "(L" + VARIABLES + ";" + METHOD_DESC + "Z)" + hostDescriptor(returnType), false);
+    }
+
+    private static String getInvokeHelper(SimpleType returnType) {
+        switch (returnType) {
+            case VOID:
+                return "invokeVoid";
+            case LONG:
+                return "invokeLong";
+            case FLOAT:
+                return "invokeFloat";
+            case DOUBLE:
+                return "invokeDouble";
+            default:
+                return "invokeInt";
+        }
+    }
+
+    // Pushes constants' element for constant, adding it if it isn't there yet
+    private static void loadConstant(MethodVisitor mv, Object constant, String className, List<Object> constants) {
+        int index = constants.indexOf(constant);
+        if (index < 0) {
+            index = constants.size();
+            constants.add(constant);
+        }
+        mv.visitFieldInsn(GETSTATIC, className, CONSTANTS_FIELD, "[Ljava/lang/Object;");
+        mv.visitLdcInsn(index);
+        mv.visitInsn(AALOAD);
+    }
+
+    private void translate(MethodVisitor mv, Instruction instruction, Label[] labels, String className,
+                           List<Object> constants) {
+        int b = instruction.getOpCode().getByte() & 0xFF;
+
+        if (b == 0x01) { // aconst_null
+            mv.visitInsn(ICONST_0); // Heap.NULL_POINTER
+        } else if (b <= 0x0F) { // nop and the xconst_n family
+            mv.visitInsn(b);
+        } else if (b == 0x10) { // bipush
+            mv.visitIntInsn(BIPUSH, instruction.getOperand(0));
+        } else if (b == 0x11) { // sipush
+            mv.visitIntInsn(SIPUSH, instruction.getOperand(0));
+        } else if (b <= 0x14) { // ldc, ldc_w, ldc2_w
+            pushConstant(mv, instruction.getResolved());
+        } else if (b <= 0x19) { // xload
+            mv.visitVarInsn(hostLoadOrStore(ILOAD, b - 0x15), instruction.getOperand(0));
+        } else if (b <= 0x2D) { // xload_n
+            mv.visitVarInsn(hostLoadOrStore(ILOAD, (b - 0x1A) / 4), (b - 0x1A) % 4);
+        } else if (b <= 0x35) { // xaload
+            arrayLoad(mv, b);
+        } else if (b <= 0x3A) { // xstore
+            mv.visitVarInsn(hostLoadOrStore(ISTORE, b - 0x36), instruction.getOperand(0));
+        } else if (b <= 0x4E) { // xstore_n
+            mv.visitVarInsn(hostLoadOrStore(ISTORE, (b - 0x3B) / 4), (b - 0x3B) % 4);
+        } else if (b <= 0x56) { // xastore
+            arrayStore(mv, b);
+        } else if (b <= 0x83) { // stack manipulation, arithmetic and logic
+            mv.visitInsn(b);
+        } else if (b == 0x84) { // iinc
+            mv.visitIincInsn(instruction.getOperand(0), instruction.getOperand(1));
+        } else if (b <= 0x98) { // conversions and comparisons
+            mv.visitInsn(b);
+        } else if (b <= 0xA4) { // if<cond>, if_icmp<cond>
+            mv.visitJumpInsn(b, labels[instruction.getOperand(0)]);
+        } else if (b == 0xA5 || b == 0xA6) { // if_acmpeq, if_acmpne
+            mv.visitJumpInsn(b == 0xA5 ? IF_ICMPEQ : IF_ICMPNE, labels[instruction.getOperand(0)]);
+        } else if (b == 0xA7 || b == 0xC8) { // goto, goto_w
+            mv.visitJumpInsn(GOTO, labels[instruction.getOperand(0)]);
+        } else if (b == 0xAB) { // lookupswitch
+            int npairs = (instruction.getOperandCount() - 1) / 2;
+            int[] keys = new int[npairs];
+            Label[] targets = new Label[npairs];
+            for (int i = 0; i < npairs; i++) {
+                keys[i] = instruction.getOperand(1 + i * 2);
+                targets[i] = labels[instruction.getOperand(2 + i * 2)];
+            }
+            mv.visitLookupSwitchInsn(labels[instruction.getOperand(0)], keys, targets);
+        } else if (b == 0xB0) { // areturn
+            mv.visitInsn(IRETURN);
+        } else if (b <= 0xB1) { // the other returns
+            mv.visitInsn(b);
+        } else if (b <= 0xB5) { // getstatic, putstatic, getfield, putfield
+            fieldOp(mv, b, (Field) instruction.getResolved(), className, constants);
+        } else if (b == 0xB7 || b == 0xB8) { // invokespecial, invokestatic
+            Method callee = (Method) instruction.getResolved();
+            mv.visitMethodInsn(INVOKESTATIC, callees.getClassName(callee), RUN_METHOD, getRunDescriptor(callee), false);
+        } else if (b == 0xBC) { // newarray
+            mv.visitIntInsn(BIPUSH, instruction.getOperand(0));
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "newArray", "(II)I", false);
+        } else if (b == 0xBE) { // arraylength
+            mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "arrayLength", "(I)I", false);
+        } else if (b == 0xC6) { // ifnull
+            mv.visitJumpInsn(IFEQ, labels[instruction.getOperand(0)]);
+        } else if (b == 0xC7) { // ifnonnull
+            mv.visitJumpInsn(IFNE, labels[instruction.getOperand(0)]);
+        } else {
+            throw new IllegalStateException("Can't compile " + instruction);
+        }
+    }
+
+    // kind is 0-4 for i, l, f, d, a
+    private static int hostLoadOrStore(int base, int kind) {
+        return kind == 4 ? base : base + kind;
+    }
+
+    private static int kind(SimpleType type) {
+        return Arrays.asList(STORE_TYPES).indexOf(type);
+    }
+
+    private static void pushConstant(MethodVisitor mv, Object constant) {
+        if (constant instanceof Variable) {
+            Variable v = (Variable) constant;
+            if (v.getType() == SimpleType.FLOAT) {
+                mv.visitLdcInsn(Float.intBitsToFloat(v.getValue()));
+            } else {
+                mv.visitLdcInsn(v.getValue());
+            }
+        } else if (constant instanceof WideVariable) {
+            WideVariable v = (WideVariable) constant;
+            if (v.getType() == SimpleType.DOUBLE) {
+                mv.visitLdcInsn(Double.longBitsToDouble(v.getValue()));
+            } else {
+                mv.visitLdcInsn(v.getValue());
+            }
+        } else {
+            mv.visitLdcInsn(((AbstractClassObject) constant).getOop().getAddress());
+        }
+    }
+
+    private static void arrayLoad(MethodVisitor mv, int b) {
+        switch (b) {
+            case 0x2F: // laload
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "laload", "(II)J", false);
+                break;
+            case 0x30: // faload
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "faload", "(II)F", false);
+                break;
+            case 0x31: // daload
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "daload", "(II)D", false);
+                break;
+            case 0x32: // aaload
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "aaload", "(II)I", false);
+                break;
+            case 0x33: // baload
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "baload", "(II)I", false);
+                break;
+            case 0x34: // caload
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "caload", "(II)I", false);
+                break;
+            case 0x35: // saload
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "saload", "(II)I", false);
+                break;
+            default:
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "iaload", "(II)I", false);
+        }
+    }
+
+    private static void arrayStore(MethodVisitor mv, int b) {
+        switch (b) {
+            case 0x50: // lastore
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "lastore", "(IIJ)V", false);
+                break;
+            case 0x51: // fastore
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "fastore", "(IIF)V", false);
+                break;
+            case 0x52: // dastore
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "dastore", "(IID)V", false);
+                break;
+            case 0x53: // aastore
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "aastore", "(III)V", false);
+                break;
+            case 0x54: // bastore
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "bastore", "(III)V", false);
+                break;
+            case 0x55: // castore
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "castore", "(III)V", false);
+                break;
+            case 0x56: // sastore
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "sastore", "(III)V", false);
+                break;
+            default:
+                mv.visitMethodInsn(INVOKESTATIC, RUNTIME, "iastore", "(III)V", false);
+        }
+    }
+
+    private static void fieldOp(MethodVisitor mv, int b, Field field, String className, List<Object> constants) {
+        loadConstant(mv, field, className, constants);
+        mv.visitTypeInsn(CHECKCAST, internalName(Field.class));
+
+        boolean isStatic = b == 0xB2 || b == 0xB3;
+        boolean isGet = b == 0xB2 || b == 0xB4;
+        String kind;
+        String desc;
+        switch (field.getType().asSimpleType()) {
+            case LONG:
+                kind = "Long";
+                desc = "J";
+                break;
+            case FLOAT:
+                kind = "Float";
+                desc = "F";
+                break;
+            case DOUBLE:
+                kind = "Double";
+                desc = "D";
+                break;
+            case REF:
+                kind = isGet || isStatic ? "Int" : "Oop"; // Only stores in instance fields need marking in the CardTable
+                desc = "I";
+                break;
+            default:
+                kind = "Int";
+                desc = "I";
+        }
+        String name = (isGet ? "get" : "put") + (isStatic ? "Static" : "") + kind;
+        String args = (isStatic ? "" : "I") + (isGet ? "" : desc) + FIELD_DESC;
+        mv.visitMethodInsn(INVOKESTATIC, RUNTIME, name, "(" + args + ")" + (isGet ? desc : "V"), false);
+    }
+
+    private static String hostDescriptor(Type type) {
+        switch (type.asSimpleType()) {
+            case VOID:
+                return "V";
+            case LONG:
+                return "J";
+            case FLOAT:
+                return "F";
+            case DOUBLE:
+                return "D";
+            default:
+                return "I";
+        }
+    }
+
+    private static String internalName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/');
+    }
+
+}
@@ -0,0 +1,323 @@
+package com.mcintyret.jvm.core.jit;
+
+import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.clazz.Field;
+import com.mcintyret.jvm.core.clazz.InterfaceMethod;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.clazz.NativeMethod;
+import com.mcintyret.jvm.core.exec.ExecutionStack;
+import com.mcintyret.jvm.core.exec.FrameStack;
+import com.mcintyret.jvm.core.exec.VariableStackImpl;
+import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.gc.CardTable;
+import com.mcintyret.jvm.core.gc.GarbageCollector;
+import com.mcintyret.jvm.core.nativeimpls.NativeImplementation;
+import com.mcintyret.jvm.core.nativeimpls.NativeReturn;
+import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.oop.OopByteArray;
+import com.mcintyret.jvm.core.oop.OopCharArray;
+import com.mcintyret.jvm.core.oop.OopClass;
+import com.mcintyret.jvm.core.oop.OopDoubleArray;
+import com.mcintyret.jvm.core.oop.OopFloatArray;
+import com.mcintyret.jvm.core.oop.OopIntArray;
+import com.mcintyret.jvm.core.oop.OopLongArray;
+import com.mcintyret.jvm.core.oop.OopShortArray;
+import com.mcintyret.jvm.core.type.SimpleType;
+import com.mcintyret.jvm.core.util.Utils;
+import com.mcintyret.jvm.parse.Modifier;
+
+/**
+ * Static helpers called from compiled code for anything that touches the Heap, so that compiled and interpreted code
+ * always see the same Oop representation. These must stay public: compiled classes live in their own host class loader.
+ */
+public final class JitRuntime {
+
+    private JitRuntime() {
+    }
+
+    private static Oop oop(int address) {
+        return Heap.getOop(address);
+    }
+
+    private static int[] staticValues(Field field) {
+        return field.getClassObject().getStaticFieldValues();
+    }
+
+    // Fields
+
+    public static int getInt(int address, Field field) {
+        return oop(address).getField(field.getOffset());
+    }
+
+    public static long getLong(int address, Field field) {
+        Oop oop = oop(address);
+        return Utils.toLong(oop.getField(field.getOffset()), oop.getField(field.getOffset() + 1));
+    }
+
+    public static float getFloat(int address, Field field) {
+        return Float.intBitsToFloat(getInt(address, field));
+    }
+
+    public static double getDouble(int address, Field field) {
+        return Double.longBitsToDouble(getLong(address, field));
+    }
+
+    public static void putInt(int address, int value, Field field) {
+        oop(address).setField(field.getOffset(), value);
+    }
+
+    public static void putOop(int address, int value, Field field) {
+        putInt(address, value, field);
+        CardTable.mark(address);
+    }
+
+    public static void putLong(int address, long value, Field field) {
+        putLong(oop(address), field.getOffset(), value);
+    }
+
+    public static void putFloat(int address, float value, Field field) {
+        putInt(address, Float.floatToRawIntBits(value), field);
+    }
+
+    public static void putDouble(int address, double value, Field field) {
+        putLong(address, Double.doubleToRawLongBits(value), field);
+    }
+
+    public static int getStaticInt(Field field) {
+        return staticValues(field)[field.getOffset()];
+    }
+
+    public static long getStaticLong(Field field) {
+        int[] values = staticValues(field);
+        return Utils.toLong(values[field.getOffset()], values[field.getOffset() + 1]);
+    }
+
+    public static float getStaticFloat(Field field) {
+        return Float.intBitsToFloat(getStaticInt(field));
+    }
+
+    public static double getStaticDouble(Field field) {
+        return Double.longBitsToDouble(getStaticLong(field));
+    }
+
+    public static void putStaticInt(int value, Field field) {
+        staticValues(field)[field.getOffset()] = value;
+    }
+
+    public static void putStaticLong(long value, Field field) {
+        putLong(staticValues(field), field.getOffset(), value);
+    }
+
+    public static void putStaticFloat(float value, Field field) {
+        putStaticInt(Float.floatToRawIntBits(value), field);
+    }
+
+    public static void putStaticDouble(double value, Field field) {
+        putStaticLong(Double.doubleToRawLongBits(value), field);
+    }
+
+    // Frames and safepoints
+
+    public static FrameStack frames() {
+        return FrameStack.current();
+    }
+
+    public static Variables pushFrame(FrameStack frames, int size) {
+        Variables frame = frames.pushCompiledFrame(size);
+        if (frame == null) {
+            throw new StackOverflowError();
+        }
+        return frame;
+    }
+
+    public static void popFrame(FrameStack frames, Variables frame) {
+        frames.popCompiledFrame(frame);
+    }
+
+    public static boolean isSafepointRequested() {
+        return GarbageCollector.isSafepointRequested();
+    }
+
+    // Called once the compiled code has spilled its references
+    public static void safepoint() {
+        FrameStack.current().onCompiledSafepoint();
+        GarbageCollector.safepoint();
+    }
+
+    // Calls
+
+    public static Variables newArgs(int size) {
+        return new Variables(size);
+    }
+
+    public static void invokeVoid(Variables args, Method method, boolean virtual) {
+        invoke(args, method, virtual);
+    }
+
+    public static int invokeInt(Variables args, Method method, boolean virtual) {
+        return invoke(args, method, virtual).popRaw();
+    }
+
+    public static long invokeLong(Variables args, Method method, boolean virtual) {
+        VariableStackImpl returned = invoke(args, method, virtual);
+        int low = returned.popRaw();
+        return Utils.toLong(returned.popRaw(), low);
+    }
+
+    public static float invokeFloat(Variables args, Method method, boolean virtual) {
+        return Float.intBitsToFloat(invokeInt(args, method, virtual));
+    }
+
+    public static double invokeDouble(Variables args, Method method, boolean virtual) {
+        return Double.longBitsToDouble(invokeLong(args, method, virtual));
+    }
+
+    // Calls method as the interpreter would, with a virtual call dispatching on args' receiver, and returns a stack
+    // holding whatever it returned. Called once the compiled code has spilled its references, as the callee may collect
+    // garbage. Anything the callee throws is thrown on as a GuestException
+    private static VariableStackImpl invoke(Variables args, Method method, boolean virtual) {
+        FrameStack frames = FrameStack.current();
+        frames.onCompiledSafepoint();
+        ExecutionStack caller = frames.getExecuting();
+
+        Method implementation = method;
+        if (virtual) {
+            Oop receiver = args.getOop(0);
+            if (receiver == null) {
+                throw guestException(new NullPointerException("Calling " + method + " on null"), caller);
+            }
+            implementation = getImplementation(method, receiver);
+        }
+
+        NativeReturn returned;
+        if (implementation.hasModifier(Modifier.NATIVE)) {
+            NativeImplementation nativeImplementation = ((NativeMethod) implementation).getNativeImplementation();
+            if (nativeImplementation == null) {
+                throw new IllegalStateException("No Native implementation for " + implementation);
+            }
+            returned = nativeImplementation.execute(args, caller.peek());
+        } else {
+            caller.getMetrics().onInvoke(implementation);
+            CompiledMethod compiled = Jit.onInvoke(implementation, caller.getMetrics());
+            if (compiled != null) {
+                VariableStackImpl stack = new VariableStackImpl(2);
+                compiled.invoke(args, stack);
+                return stack;
+            }
+            ExecutionStack callee = new ExecutionStack(caller.getThread());
+            if (!callee.push(implementation, args)) {
+                throw guestException(new StackOverflowError(), caller);
+            }
+            callee.execute();
+            returned = callee.getFinalReturn();
+        }
+
+        VariableStackImpl stack = new VariableStackImpl(2);
+        returned.applyValue(stack);
+        if (returned.isThrowable()) {
+            throw new GuestException(stack.popRaw());
+        }
+        return stack;
+    }
+
+    // As InvokeVirtual and InvokeInterface choose it
+    private static Method getImplementation(Method method, Oop receiver) {
+        if (method instanceof InterfaceMethod) {
+            return ((InterfaceMethod) method).getMethodForImplementation(((OopClass) receiver).getClassObject());
+        } else if (receiver.getClassObject() != method.getClassObject()) {
+            return receiver.getClassObject().getInstanceMethods()[method.getOffset()];
+        }
+        return method;
+    }
+
+    private static GuestException guestException(Throwable t, ExecutionStack caller) {
+        return new GuestException(Utils.toThrowableOop(t, caller.getThread()).getAddress());
+    }
+
+    // Arrays
+
+    // Called once the compiled code has spilled its references, as allocating may collect garbage
+    public static int newArray(int count, int type) {
+        FrameStack.current().onCompiledSafepoint();
+        return Heap.allocate(Utils.newArray(SimpleType.forByte((byte) type), count));
+    }
+
+    public static int arrayLength(int address) {
+        return Heap.getOopArray(address).getLength();
+    }
+
+    public static int iaload(int address, int index) {
+        return ((OopIntArray) oop(address)).getArray()[index];
+    }
+
+    public static long laload(int address, int index) {
+        return ((OopLongArray) oop(address)).getArray()[index];
+    }
+
+    public static float faload(int address, int index) {
+        return ((OopFloatArray) oop(address)).getArray()[index];
+    }
+
+    public static double daload(int address, int index) {
+        return ((OopDoubleArray) oop(address)).getArray()[index];
+    }
+
+    public static int aaload(int address, int index) {
+        return oop(address).getField(index);
+    }
+
+    public static int baload(int address, int index) {
+        return ((OopByteArray) oop(address)).getArray()[index];
+    }
+
+    public static int caload(int address, int index) {
+        return ((OopCharArray) oop(address)).getArray()[index];
+    }
+
+    public static int saload(int address, int index) {
+        return ((OopShortArray) oop(address)).getArray()[index];
+    }
+
+    public static void iastore(int address, int index, int value) {
+        ((OopIntArray) oop(address)).getArray()[index] = value;
+    }
+
+    public static void lastore(int address, int index, long value) {
+        ((OopLongArray) oop(address)).getArray()[index] = value;
+    }
+
+    public static void fastore(int address, int index, float value) {
+        ((OopFloatArray) oop(address)).getArray()[index] = value;
+    }
+
+    public static void dastore(int address, int index, double value) {
+        ((OopDoubleArray) oop(address)).getArray()[index] = value;
+    }
+
+    public static void aastore(int address, int index, int value) {
+        oop(address).setField(index, value);
+        CardTable.mark(address);
+    }
+
+    public static void bastore(int address, int index, int value) {
+        ((OopByteArray) oop(address)).getArray()[index] = (byte) value;
+    }
+
+    public static void castore(int address, int index, int value) {
+        ((OopCharArray) oop(address)).getArray()[index] = (char) value;
+    }
+
+    public static void sastore(int address, int index, int value) {
+        ((OopShortArray) oop(address)).getArray()[index] = (short) value;
+    }
+
+    private static void putLong(int[] values, int offset, long value) {
+        values[offset] = (int) (value >> 32);
+        values[offset + 1] = (int) value;
+    }
+
+    private static void putLong(Oop oop, int offset, long value) {
+        oop.setField(offset, (int) (value >> 32));
+        oop.setField(offset + 1, (int) value);
+    }
+}
@@ -0,0 +1,271 @@
+package com.mcintyret.jvm.core.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.clazz.AbstractClassObject;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.exec.ExecutionStackElement;
+import com.mcintyret.jvm.core.exec.FrameStack;
+import com.mcintyret.jvm.core.gc.HeapHistogram;
+import com.mcintyret.jvm.core.oop.Oop;
+
+/**
+ * Samples the guest stacks that allocate, enabled by setting jvm.allocationSampleInterval to a number of bytes (eg 512k).
+ * Rather than every Nth allocation, which would miss large allocations made between small ones, each thread samples the
+ * allocation that takes it past a randomly chosen number of bytes averaging the interval, so the only cost to those that
+ * aren't sampled is a subtraction. Each sample is weighted by the bytes it stands for, so the bytes reported for a site
+ * are an estimate of everything it allocated.
+ *
+ * Every allocation, whether by an opcode, compiled code or a native, goes through Heap.allocate(), which is where samples
+ * are taken. A sample's stack is the frames of the thread's ExecutionStacks, with each frame's position being the
+ * bytecode index of the instruction it's executing, so compiled code is attributed to the interpreted frame that entered
+ * it. Set jvm.allocationProfile.dumpInterval to a number of seconds to have the top sites logged that often, and
+ * jvm.allocationProfile.file to have the collapsed stacks written there at the same time.
+ */
+public final class AllocationProfiler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AllocationProfiler.class);
+
+    private static final long INTERVAL = System.getProperty("jvm.allocationSampleInterval") == null
+        ? 0 : Heap.parseSize(System.getProperty("jvm.allocationSampleInterval"));
+
+    public static final boolean ENABLED = INTERVAL > 0;
+
+    private static final int DUMP_INTERVAL = Integer.getInteger("jvm.allocationProfile.dumpInterval", 0);
+
+    private static final String FILE = System.getProperty("jvm.allocationProfile.file");
+
+    private static final int DUMP_SIZE = 20;
+
+    // {samples, estimated bytes} for each distinct stack and allocated class
+    private static final Map<Sample, long[]> SAMPLES = new HashMap<>();
+
+    static {
+        if (ENABLED && DUMP_INTERVAL > 0) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "allocation-profile-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(AllocationProfiler::dump, DUMP_INTERVAL, DUMP_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    private AllocationProfiler() {
+    }
+
+    // The bytes a thread allocates before its next sample: exponentially distributed, so that which allocations are
+    // sampled doesn't line up with any pattern in the guest's allocations
+    public static long nextSampleInterval() {
+        if (!ENABLED) {
+            return Long.MAX_VALUE;
+        }
+        return 1 + (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) * INTERVAL);
+    }
+
+    // Called by the allocating thread, with oop just allocated
+    public static void sample(FrameStack frames, Oop oop, long size) {
+        List<ExecutionStackElement> elements = new ArrayList<>();
+        frames.forEachFrame(elements::add);
+        Method[] methods = new Method[elements.size()];
+        int[] positions = new int[elements.size()];
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = elements.get(i).getMethod();
+            positions[i] = elements.get(i).getPos();
+        }
+        // An allocation of size bytes is sampled with probability 1 - e^(-size / INTERVAL), so stands for this many bytes
+        long weight = Math.round(size / -Math.expm1(-(double) size / INTERVAL));
+
+        Sample sample = new Sample(methods, positions, oop.getClassObject());
+        synchronized (SAMPLES) {
+            long[] counts = SAMPLES.computeIfAbsent(sample, s -> new long[2]);
+            counts[0]++;
+            counts[1] += weight;
+        }
+    }
+
+    public static void reset() {
+        synchronized (SAMPLES) {
+            SAMPLES.clear();
+        }
+    }
+
+    // The sampled allocation sites, each the innermost frame of the samples' stacks, the most bytes first
+    public static List<Site> getSites() {
+        Map<Site, Site> sites = new HashMap<>();
+        synchronized (SAMPLES) {
+            SAMPLES.forEach((sample, counts) -> {
+                Site site = sample.methods.length == 0 ? new Site(null, 0) : new Site(sample.methods[0], sample.positions[0]);
+                site = sites.computeIfAbsent(site, s -> s);
+                site.samples += counts[0];
+                site.bytes += counts[1];
+            });
+        }
+        List<Site> sorted = new ArrayList<>(sites.values());
+        sorted.sort(Comparator.comparingLong(Site::getBytes).reversed());
+        return sorted;
+    }
+
+    // A human-readable table of the n sites that allocated the most bytes
+    public static String format(int n) {
+        List<Site> sites = getSites();
+        long totalSamples = sites.stream().mapToLong(Site::getSamples).sum();
+        long totalBytes = sites.stream().mapToLong(Site::getBytes).sum();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(" num       #samples      ~#bytes      %%  site%n"));
+        sb.append(String.format("--------------------------------------------------%n"));
+        for (int i = 0; i < Math.min(n, sites.size()); i++) {
+            Site site = sites.get(i);
+            sb.append(String.format("%4d: %14d %12d %6.2f  %s%n", i + 1, site.samples, site.bytes,
+                100.0 * site.bytes / Math.max(totalBytes, 1), site));
+        }
+        sb.append(String.format("Total %14d %12d%n", totalSamples, totalBytes));
+        return sb.toString();
+    }
+
+    // Writes a line for each sampled stack in the collapsed format taken by flame graph tools: the frames, outermost first,
+    // then the allocated class, separated by semicolons, then the estimated bytes allocated there
+    public static void writeCollapsedStacks(Writer writer) throws IOException {
+        Map<Sample, long[]> samples;
+        synchronized (SAMPLES) {
+            samples = new HashMap<>(SAMPLES);
+        }
+        Map<String, Long> stacks = new HashMap<>();
+        samples.forEach((sample, counts) -> stacks.merge(sample.collapse(), counts[1], Long::sum));
+        for (Map.Entry<String, Long> stack : stacks.entrySet()) {
+            writer.write(stack.getKey() + " " + stack.getValue() + "\n");
+        }
+    }
+
+    public static void writeCollapsedStacks(Path path) {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writeCollapsedStacks(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void dump() {
+        LOG.info("Allocation sites\n{}", format(DUMP_SIZE));
+        if (FILE != null) {
+            writeCollapsedStacks(Paths.get(FILE));
+        }
+    }
+
+    public static final class Site {
+
+        // null for allocations made by host code with no guest frame executing
+        private final Method method;
+
+        private final int pos;
+
+        private long samples;
+
+        private long bytes;
+
+        private Site(Method method, int pos) {
+            this.method = method;
+            this.pos = pos;
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public int getPos() {
+            return pos;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        // An estimate of every byte allocated here, not just those sampled
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Site)) {
+                return false;
+            }
+            Site site = (Site) o;
+            return method == site.method && pos == site.pos;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(method) * 31 + pos;
+        }
+
+        @Override
+        public String toString() {
+            return method == null ? "<host>" : method + " @" + pos;
+        }
+    }
+
+    private static final class Sample {
+
+        // Innermost first
+        private final Method[] methods;
+
+        private final int[] positions;
+
+        private final AbstractClassObject classObject;
+
+        private final int hash;
+
+        private Sample(Method[] methods, int[] positions, AbstractClassObject classObject) {
+            this.methods = methods;
+            this.positions = positions;
+            this.classObject = classObject;
+            this.hash = (Arrays.hashCode(methods) * 31 + Arrays.hashCode(positions)) * 31 + classObject.hashCode();
+        }
+
+        // Frames are just the methods, as flame graphs merge by name. Semicolons separate frames, so aren't in the names
+        private String collapse() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = methods.length - 1; i >= 0; i--) {
+                sb.append(methods[i].getClassObject().getClassName()).append('.')
+                    .append(methods[i].getSignature().getName()).append(';');
+            }
+            return sb.append(HeapHistogram.className(classObject).replace(";", "")).toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Sample)) {
+                return false;
+            }
+            Sample sample = (Sample) o;
+            return hash == sample.hash && classObject == sample.classObject && Arrays.equals(methods, sample.methods)
+                && Arrays.equals(positions, sample.positions);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
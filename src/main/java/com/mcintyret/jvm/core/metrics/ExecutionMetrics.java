@@ -0,0 +1,60 @@
+package com.mcintyret.jvm.core.metrics;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counts the opcodes executed, the invocations of each Method and the backward branches taken in each, separately for
+ * every host thread so that counting never contends. snapshot() sums them. Set jvm.metrics.dumpInterval to a number of
+ * seconds to have a summary logged that often.
+ */
+public final class ExecutionMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutionMetrics.class);
+
+    private static final int DUMP_INTERVAL = Integer.getInteger("jvm.metrics.dumpInterval", 0);
+
+    private static final int DUMP_SIZE = 20;
+
+    // Including those of threads that have finished
+    private static final Queue<ThreadMetrics> ALL = new ConcurrentLinkedQueue<>();
+
+    private static final ThreadLocal<ThreadMetrics> CURRENT = ThreadLocal.withInitial(() -> {
+        ThreadMetrics metrics = new ThreadMetrics();
+        ALL.add(metrics);
+        return metrics;
+    });
+
+    static {
+        if (DUMP_INTERVAL > 0) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "metrics-dump");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleAtFixedRate(() -> LOG.info("Execution metrics\n{}", snapshot().format(DUMP_SIZE)),
+                DUMP_INTERVAL, DUMP_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    private ExecutionMetrics() {
+    }
+
+    public static ThreadMetrics forCurrentThread() {
+        return CURRENT.get();
+    }
+
+    public static MetricsSnapshot snapshot() {
+        MetricsSnapshot snapshot = new MetricsSnapshot();
+        for (ThreadMetrics metrics : ALL) {
+            metrics.addTo(snapshot);
+        }
+        return snapshot;
+    }
+}
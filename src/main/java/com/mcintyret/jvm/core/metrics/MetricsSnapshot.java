@@ -0,0 +1,145 @@
+package com.mcintyret.jvm.core.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.opcode.OpCode;
+import com.mcintyret.jvm.core.opcode.OpCodes;
+import com.mcintyret.jvm.core.opcode.SuperInstructions;
+
+/**
+ * The execution counters of every thread, summed at the time ExecutionMetrics.snapshot() was called. Only interpreted
+ * execution is counted: code compiled by the Jit is not.
+ */
+public final class MetricsSnapshot {
+
+    private final long[] opcodes = new long[256];
+
+    // null unless pairs were counted (see ThreadMetrics). Indexed by first opcode << 8 | second opcode
+    private long[] pairs;
+
+    private final Map<Method, long[]> methods = new HashMap<>(); // {invocations, backedges}
+
+    MetricsSnapshot() {
+    }
+
+    void addOpcodes(int opcode, long count) {
+        opcodes[opcode] += count;
+    }
+
+    void addPairs(int pair, long count) {
+        if (pairs == null) {
+            pairs = new long[256 * 256];
+        }
+        pairs[pair] += count;
+    }
+
+    void addMethod(Method method, long invocations, long backedges) {
+        long[] counts = methods.computeIfAbsent(method, m -> new long[2]);
+        counts[0] += invocations;
+        counts[1] += backedges;
+    }
+
+    // opcode is the unsigned value of the opcode's byte
+    public long getOpcodeCount(int opcode) {
+        return opcodes[opcode];
+    }
+
+    public long getTotalOpcodes() {
+        long total = 0;
+        for (long count : opcodes) {
+            total += count;
+        }
+        return total;
+    }
+
+    // The number of times second was executed immediately after first, or -1 if that wasn't counted
+    public long getPairCount(int first, int second) {
+        return pairs == null ? -1 : pairs[first << 8 | second];
+    }
+
+    // The n most frequent opcode pairs, each as first opcode << 8 | second opcode, the most frequent first. Empty if pairs
+    // weren't counted
+    public List<Integer> getMostFrequentPairs(int n) {
+        List<Integer> byCount = new ArrayList<>();
+        if (pairs != null) {
+            for (int i = 0; i < pairs.length; i++) {
+                if (pairs[i] > 0) {
+                    byCount.add(i);
+                }
+            }
+            byCount.sort(Comparator.comparingLong((Integer i) -> pairs[i]).reversed());
+        }
+        return byCount.subList(0, Math.min(n, byCount.size()));
+    }
+
+    // The number of times method was called by an invoke instruction
+    public long getInvocationCount(Method method) {
+        long[] counts = methods.get(method);
+        return counts == null ? 0 : counts[0];
+    }
+
+    public long getBackedgeCount(Method method) {
+        long[] counts = methods.get(method);
+        return counts == null ? 0 : counts[1];
+    }
+
+    public long getTotalBackedges() {
+        long total = 0;
+        for (long[] counts : methods.values()) {
+            total += counts[1];
+        }
+        return total;
+    }
+
+    // The n methods with the most invocations plus backedges, the hottest first
+    public List<Method> getHottestMethods(int n) {
+        List<Method> hottest = new ArrayList<>(methods.keySet());
+        hottest.sort(Comparator.comparingLong((Method m) -> {
+            long[] counts = methods.get(m);
+            return counts[0] + counts[1];
+        }).reversed());
+        return hottest.subList(0, Math.min(n, hottest.size()));
+    }
+
+    // A human-readable summary: totals, the most executed opcodes (and pairs of them, if counted) and the hottest methods
+    public String format(int n) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Opcodes executed: ").append(getTotalOpcodes())
+            .append(", backedges taken: ").append(getTotalBackedges()).append('\n');
+
+        List<Integer> byCount = new ArrayList<>();
+        for (int i = 0; i < opcodes.length; i++) {
+            if (opcodes[i] > 0) {
+                byCount.add(i);
+            }
+        }
+        byCount.sort(Comparator.comparingLong((Integer i) -> opcodes[i]).reversed());
+        for (int i : byCount.subList(0, Math.min(n, byCount.size()))) {
+            sb.append(String.format("  %-16s %d%n", name(i), opcodes[i]));
+        }
+
+        if (pairs != null) {
+            sb.append("Most frequent opcode pairs:\n");
+            for (int pair : getMostFrequentPairs(n)) {
+                sb.append(String.format("  %-33s %d%n", name(pair >> 8) + " " + name(pair & 0xFF), pairs[pair]));
+            }
+            sb.append("Suggested superinstructions: ").append(SuperInstructions.suggest(this)).append('\n');
+        }
+
+        sb.append("Hottest methods (invocations, backedges):\n");
+        for (Method method : getHottestMethods(n)) {
+            sb.append(String.format("  %s %d %d%n", method, getInvocationCount(method), getBackedgeCount(method)));
+        }
+        return sb.toString();
+    }
+
+    private static String name(int opcode) {
+        OpCode opCode = OpCodes.findOpcode((byte) opcode);
+        return opCode == null ? String.format("0x%02X", opcode) : opCode.toString();
+    }
+}
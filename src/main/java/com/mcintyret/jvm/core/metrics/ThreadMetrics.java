@@ -0,0 +1,99 @@
+package com.mcintyret.jvm.core.metrics;
+
+import java.util.Arrays;
+
+import com.mcintyret.jvm.core.clazz.Method;
+
+/**
+ * The execution counters of a single host thread. Only that thread ever writes to them, so they need no synchronization;
+ * ExecutionMetrics reads them all whenever a snapshot is taken, which may see counts that are slightly out of date.
+ */
+public final class ThreadMetrics {
+
+    private static final int INITIAL_METHODS = 256;
+
+    // Set jvm.metrics.pairs=true to also count how often each opcode is immediately followed by each other one
+    private static final boolean PAIRS = Boolean.getBoolean("jvm.metrics.pairs");
+
+    private final long[] opcodes = new long[256];
+
+    // null unless PAIRS. Indexed by previous opcode << 8 | opcode
+    private final long[] pairs = PAIRS ? new long[256 * 256] : null;
+
+    private int previous;
+
+    // All indexed by Method.getId()
+    private Method[] methods = new Method[INITIAL_METHODS];
+
+    private long[] invocations = new long[INITIAL_METHODS];
+
+    private long[] backedges = new long[INITIAL_METHODS];
+
+    ThreadMetrics() {
+    }
+
+    public void onInstruction(int opcode) {
+        opcodes[opcode]++;
+        if (pairs != null) {
+            pairs[previous << 8 | opcode]++;
+            previous = opcode;
+        }
+    }
+
+    // Returns the number of times this thread has now invoked method
+    public long onInvoke(Method method) {
+        int id = slot(method);
+        return ++invocations[id];
+    }
+
+    // Returns the number of backward branches this thread has now taken in method
+    public long onBackedge(Method method) {
+        int id = slot(method);
+        return ++backedges[id];
+    }
+
+    public long getInvocations(Method method) {
+        int id = method.getId();
+        return id < invocations.length ? invocations[id] : 0;
+    }
+
+    public long getBackedges(Method method) {
+        int id = method.getId();
+        return id < backedges.length ? backedges[id] : 0;
+    }
+
+    private int slot(Method method) {
+        int id = method.getId();
+        if (id >= methods.length) {
+            int newLength = Math.max(methods.length * 2, id + 1);
+            methods = Arrays.copyOf(methods, newLength);
+            invocations = Arrays.copyOf(invocations, newLength);
+            backedges = Arrays.copyOf(backedges, newLength);
+        }
+        if (methods[id] == null) {
+            methods[id] = method;
+        }
+        return id;
+    }
+
+    void addTo(MetricsSnapshot snapshot) {
+        for (int i = 0; i < opcodes.length; i++) {
+            snapshot.addOpcodes(i, opcodes[i]);
+        }
+        if (pairs != null) {
+            for (int i = 0; i < pairs.length; i++) {
+                snapshot.addPairs(i, pairs[i]);
+            }
+        }
+        // Read each array once, as this thread may replace them at any time
+        Method[] methods = this.methods;
+        long[] invocations = this.invocations;
+        long[] backedges = this.backedges;
+        int length = Math.min(methods.length, Math.min(invocations.length, backedges.length));
+        for (int i = 0; i < length; i++) {
+            if (methods[i] != null) {
+                snapshot.addMethod(methods[i], invocations[i], backedges[i]);
+            }
+        }
+    }
+}
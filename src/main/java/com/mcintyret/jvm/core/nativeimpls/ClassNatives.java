@@ -98,7 +98,7 @@ public enum ClassNatives implements NativeImplementation {
                 Variables ctorArgs = ctor.newArgArray();
 
                 OopClass fieldObj = fieldClass.newObject();
-                array.getFields()[i] = Heap.allocate(fieldObj);
+                array.setField(i, Heap.allocate(fieldObj));
 
                 ctorArgs.putOop(0, fieldObj);
                 ctorArgs.putOop(1, thisType.getOopClassClass());
@@ -217,7 +217,7 @@ public enum ClassNatives implements NativeImplementation {
                 OopArray result = ctorArrayClass.newArray(ctors.size());
                 for (int i = 0; i < ctors.size(); i++) {
                     Method ctor = ctors.get(i);
-                    OopClass ctorObj = ctorClass.newObject((thisClazz, fields) -> new OopClassMethod(thisClazz, fields, ctor));
+                    OopClass ctorObj = ctorClass.newObject((thisClazz, fieldCount) -> new OopClassMethod(thisClazz, fieldCount, ctor));
                     Variables ctorArgs = ctorCtor.newArgArray();
 
                     ctorArgs.put(0, SimpleType.REF, Heap.allocate(ctorObj));
@@ -226,7 +226,7 @@ public enum ClassNatives implements NativeImplementation {
                     OopArray paramTypes = classArray.newArray(ctor.getSignature().getArgTypes().size());
                     int j = 0;
                     for (Type type : ctor.getSignature().getArgTypes()) {
-                        paramTypes.getFields()[j++] = type.getOopClassClass().getAddress();
+                        paramTypes.setField(j++, type.getOopClassClass().getAddress());
                     }
 
                     ctorArgs.put(2, SimpleType.REF, Heap.allocate(paramTypes));
@@ -240,7 +240,7 @@ public enum ClassNatives implements NativeImplementation {
 
                     Utils.executeMethodAndThrow(ctorCtor, ctorArgs, ctx.getThread());
 
-                    result.getFields()[i] = ctorObj.getAddress();
+                    result.setField(i, ctorObj.getAddress());
                 }
 
                 return NativeReturn.forReference(result);
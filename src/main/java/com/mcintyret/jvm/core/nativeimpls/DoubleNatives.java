@@ -8,8 +8,7 @@ public enum DoubleNatives implements NativeImplementation {
     DOUBLE_TO_RAW_LONG_BITS("doubleToRawLongBits", "(D)J") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
-            // Already in that state
-            return NativeReturn.forLong(args.getLong(0));
+            return NativeReturn.forLong(Double.doubleToRawLongBits(args.getDouble(0)));
         }
     };
 
@@ -10,7 +10,7 @@ import java.util.Map;
 
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
-import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopByteArray;
 import com.mcintyret.jvm.core.oop.OopClass;
 import com.mcintyret.jvm.core.type.MethodSignature;
 import com.mcintyret.jvm.core.util.Utils;
@@ -59,11 +59,7 @@ public enum FileOutputStreamNatives implements NativeImplementation {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
             FileOutputStream fos = OPEN_FOSES.get(getFileDescriptor(args.getOop(0)));
-            OopArray bytesOop = args.getOop(1);
-            byte[] bytes = new byte[bytesOop.getLength()];
-            for (int i = 0; i < bytes.length; i++) {
-                bytes[i] = (byte) bytesOop.getFields()[i];
-            }
+            byte[] bytes = args.<OopByteArray>getOop(1).getArray();
 
             try {
                 fos.write(bytes, args.getInt(2), args.getInt(3));
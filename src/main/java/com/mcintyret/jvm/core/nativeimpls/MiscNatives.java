@@ -12,6 +12,7 @@ import com.mcintyret.jvm.core.oop.OopClassClass;
 import com.mcintyret.jvm.core.oop.OopClassMethod;
 import com.mcintyret.jvm.core.type.MethodSignature;
 import com.mcintyret.jvm.core.type.NonArrayType;
+import com.mcintyret.jvm.core.type.SimpleType;
 import com.mcintyret.jvm.core.util.Utils;
 import com.mcintyret.jvm.load.ClassLoader;
 
@@ -104,8 +105,10 @@ public enum MiscNatives implements NativeImplementation {
             ctorArgs.putOop(0, instance);
 
             OopArray givenArgs = args.getOop(1);
-            int[] argInts = givenArgs == null ? new int[0] : givenArgs.getFields();
-            System.arraycopy(argInts, 0, ctorArgs.getRawValues(), 1, argInts.length);
+            int[] argInts = givenArgs == null ? new int[0] : givenArgs.copyFields();
+            for (int i = 0; i < argInts.length; i++) {
+                ctorArgs.put(i + 1, SimpleType.REF, argInts[i]);
+            }
 
             Utils.executeMethodAndThrow(ctor, ctorArgs, ctx.getThread());
 
@@ -7,8 +7,10 @@ import java.util.concurrent.locks.Condition;
 import org.reflections.Reflections;
 
 import com.mcintyret.jvm.core.ImportantClasses;
+import com.mcintyret.jvm.core.gc.GarbageCollector;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.oop.MarkRef;
 import com.mcintyret.jvm.core.oop.Oop;
 import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.oop.OopClass;
@@ -38,6 +40,7 @@ public enum ObjectNatives implements NativeImplementation {
         public NativeReturn execute(Variables args, OperationContext ctx) {
             long timeout = args.getLong(1);
             Condition condition = args.getOop(0).getMarkRef().getMonitorCondition();
+            boolean detached = GarbageCollector.enterSafeRegion();
             try {
                 if (timeout == 0) {
                     condition.await();
@@ -46,6 +49,8 @@ public enum ObjectNatives implements NativeImplementation {
                 }
             } catch (InterruptedException e) {
                 Thread.interrupted();
+            } finally {
+                GarbageCollector.exitSafeRegion(detached);
             }
             return NativeReturn.forVoid();
         }
@@ -53,14 +58,21 @@ public enum ObjectNatives implements NativeImplementation {
     NOTIFY("notify", "()V") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
-            args.getOop(0).getMarkRef().getMonitorCondition().signal();
+            Oop oop = args.getOop(0);
+            // A thin locked Oop has no waiters, as waiting inflates it
+            if (!MarkRef.isThinLockedByCurrentThread(oop)) {
+                oop.getMarkRef().getMonitorCondition().signal();
+            }
             return NativeReturn.forVoid();
         }
     },
     NOTIFY_ALL("notifyAll", "()V") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
-            args.getOop(0).getMarkRef().getMonitorCondition().signalAll();
+            Oop oop = args.getOop(0);
+            if (!MarkRef.isThinLockedByCurrentThread(oop)) {
+                oop.getMarkRef().getMonitorCondition().signalAll();
+            }
             return NativeReturn.forVoid();
         }
     },
@@ -78,13 +90,15 @@ public enum ObjectNatives implements NativeImplementation {
             Oop clone;
             if (oop instanceof OopArray) {
                 OopArray array = (OopArray) oop;
-                clone = array.getClassObject().newArray(array.getLength());
+                OopArray arrayClone = array.getClassObject().newArray(array.getLength());
+                System.arraycopy(array.getArray(), array.getArrayOffset(), arrayClone.getArray(), arrayClone.getArrayOffset(),
+                    array.getLength());
+                clone = arrayClone;
             } else {
                 clone = ((OopClass) oop).getClassObject().newObject();
+                System.arraycopy(oop.getStorage(), oop.getBase(), clone.getStorage(), clone.getBase(), oop.getFieldCount());
             }
 
-            System.arraycopy(oop.getFields(), 0, clone.getFields(), 0, oop.getFields().length);
-
             return NativeReturn.forReference(clone);
         }
     },
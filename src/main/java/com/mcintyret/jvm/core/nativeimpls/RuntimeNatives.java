@@ -1,5 +1,6 @@
 package com.mcintyret.jvm.core.nativeimpls;
 
+import com.mcintyret.jvm.core.Heap;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
 import com.mcintyret.jvm.core.type.MethodSignature;
@@ -8,7 +9,19 @@ public enum RuntimeNatives implements NativeImplementation {
     FREE_MEMORY("freeMemory", "()J") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
-            return NativeReturn.forLong(Runtime.getRuntime().freeMemory());
+            return NativeReturn.forLong(Heap.getCapacity() - Heap.getUsed());
+        }
+    },
+    TOTAL_MEMORY("totalMemory", "()J") {
+        @Override
+        public NativeReturn execute(Variables args, OperationContext ctx) {
+            return NativeReturn.forLong(Heap.getCapacity());
+        }
+    },
+    MAX_MEMORY("maxMemory", "()J") {
+        @Override
+        public NativeReturn execute(Variables args, OperationContext ctx) {
+            return NativeReturn.forLong(Heap.getMaxSize());
         }
     },
     AVAILABLE_PROCESSORS("availableProcessors", "()I") {
@@ -6,6 +6,7 @@ import com.mcintyret.jvm.core.clazz.Field;
 import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.gc.CardTable;
 import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.oop.OopClass;
 import com.mcintyret.jvm.core.type.MethodSignature;
@@ -34,13 +35,22 @@ public enum SystemNatives implements NativeImplementation {
                 // TODO: move isInstanceOf around - might need to be a Type property?
             }
 
-            int width = srcType.getWidth();
-
-            int srcPos = args.getInt(1) * width;
-            int destPos = args.getInt(3) * width;
-            int len = args.getInt(4) * width;
+            // The host arrays may be pages shared with other Oops, so won't catch a copy out of range themselves
+            int srcPos = args.getInt(1);
+            int destPos = args.getInt(3);
+            int length = args.getInt(4);
+            if (srcPos < 0 || destPos < 0 || length < 0
+                || length > src.getLength() - srcPos || length > dest.getLength() - destPos) {
+                return NativeReturn.forThrowable(Utils.toThrowableOop(new ArrayIndexOutOfBoundsException(
+                    "arraycopy: copying " + length + " from " + srcPos + " of " + src.getLength() + " to " + destPos
+                        + " of " + dest.getLength()), ctx.getThread()));
+            }
 
-            System.arraycopy(src.getFields(), srcPos, dest.getFields(), destPos, len);
+            System.arraycopy(src.getArray(), src.getArrayOffset() + srcPos, dest.getArray(),
+                dest.getArrayOffset() + destPos, length);
+            if (!srcType.isPrimitive()) {
+                CardTable.mark(dest);
+            }
 
             return NativeReturn.forVoid();
         }
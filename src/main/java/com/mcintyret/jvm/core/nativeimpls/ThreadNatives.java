@@ -2,6 +2,7 @@ package com.mcintyret.jvm.core.nativeimpls;
 
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.gc.GarbageCollector;
 import com.mcintyret.jvm.core.oop.OopClass;
 import com.mcintyret.jvm.core.thread.Thread;
 import com.mcintyret.jvm.core.thread.Threads;
@@ -72,12 +73,15 @@ public enum ThreadNatives implements NativeImplementation {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
             Thread thread = ctx.getThread();
+            boolean detached = GarbageCollector.enterSafeRegion();
             try {
                 thread.sleep(args.getLong(0));
-                return NativeReturn.forVoid();
             } catch (InterruptedException e) {
+                GarbageCollector.exitSafeRegion(detached);
                 return NativeReturn.forThrowable(Utils.toThrowableOop(e, thread));
             }
+            GarbageCollector.exitSafeRegion(detached);
+            return NativeReturn.forVoid();
         }
     };
 
@@ -10,6 +10,7 @@ import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.exec.ExecutionStackElement;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.gc.CardTable;
 import com.mcintyret.jvm.core.oop.Oop;
 import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.oop.OopClass;
@@ -34,7 +35,8 @@ public enum ThrowableNatives implements NativeImplementation {
             OopArray stes = ArrayClassObject.forType(ArrayType.create(stackTraceElemCo.getType(), 1)).newArray(stack.size());
 
             Oop thisThrowable = args.getOop(0);
-            thisThrowable.getFields()[3] = Heap.allocate(stes);
+            int stesAddress = Heap.allocate(stes);
+            thisThrowable.setField(3, stesAddress);
 
 
             int i = 0;
@@ -42,8 +44,11 @@ public enum ThrowableNatives implements NativeImplementation {
             for (ExecutionStackElement ese : stack) {
                 OopClass ste = makeStackTraceElement(stackTraceElemCo, ctor, ese, ctx.getThread());
 
-                stes.getFields()[i++] = ste.getAddress();
+                stes.setField(i++, ste.getAddress());
             }
+            // Either may have been promoted by now
+            CardTable.mark(thisThrowable);
+            CardTable.mark(stes);
 
             // Return this
             return NativeReturn.forReference(thisThrowable);
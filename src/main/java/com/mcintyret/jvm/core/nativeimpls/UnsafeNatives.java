@@ -7,9 +7,13 @@ import java.security.PrivilegedAction;
 import com.mcintyret.jvm.core.clazz.ClassObject;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.gc.CardTable;
+import com.mcintyret.jvm.core.gc.GarbageCollector;
 import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.oop.OopClass;
 import com.mcintyret.jvm.core.oop.OopClassClass;
+import com.mcintyret.jvm.core.oop.OopRefArray;
 import com.mcintyret.jvm.core.thread.Threads;
 import com.mcintyret.jvm.core.type.MethodSignature;
 import com.mcintyret.jvm.core.type.NonArrayType;
@@ -81,7 +85,7 @@ public enum UnsafeNatives implements NativeImplementation {
             int expect = args.getInt(4);
             int update = args.getInt(5);
 
-            boolean ret = THE_UNSAFE.compareAndSwapInt(oop.getFields(), byteOffset(offset), expect, update);
+            boolean ret = THE_UNSAFE.compareAndSwapInt(target(oop), byteOffset(oop, offset), expect, update);
             return NativeReturn.forBool(ret);
         }
     },
@@ -98,13 +102,14 @@ public enum UnsafeNatives implements NativeImplementation {
             long expect = Utils.toLong(args.getCheckedValue(5, SimpleType.LONG), args.getCheckedValue(4, SimpleType.LONG));
             long update = Utils.toLong(args.getCheckedValue(7, SimpleType.LONG), args.getCheckedValue(6, SimpleType.LONG));
 
-            boolean ret = THE_UNSAFE.compareAndSwapLong(oop.getFields(), byteOffset(offset), expect, update);
+            boolean ret = THE_UNSAFE.compareAndSwapLong(target(oop), byteOffset(oop, offset), expect, update);
             return NativeReturn.forBool(ret);
         }
     },
     COMPARE_AND_SWAP_OBJECT("compareAndSwapObject", "(Ljava/lang/Object;JLjava/lang/Object;Ljava/lang/Object;)Z") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
+            CardTable.mark(args.getOop(1));
             return COMPARE_AND_SWAP_INT.execute(args, ctx);
         }
     },
@@ -125,16 +130,16 @@ public enum UnsafeNatives implements NativeImplementation {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
             long offset = args.getLong(2);
-            int[] fields = args.getOop(1).getFields();
-            return NativeReturn.forInt(THE_UNSAFE.getInt(fields, byteOffset(offset)));
+            Oop oop = args.getOop(1);
+            return NativeReturn.forInt(THE_UNSAFE.getInt(target(oop), byteOffset(oop, offset)));
         }
     },
     GET_INT_VOLATILE("getIntVolatile", "(Ljava/lang/Object;J)I") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
             long offset = args.getLong(2);
-            int[] fields = args.getOop(1).getFields();
-            return NativeReturn.forInt(THE_UNSAFE.getIntVolatile(fields, byteOffset(offset)));
+            Oop oop = args.getOop(1);
+            return NativeReturn.forInt(THE_UNSAFE.getIntVolatile(target(oop), byteOffset(oop, offset)));
         }
     },
     GET_OBJECT("getObject", "(Ljava/lang/Object;J)Ljava/lang/Object;") {
@@ -153,9 +158,9 @@ public enum UnsafeNatives implements NativeImplementation {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
             long offset = args.getLong(2);
-            int[] fields = args.getOop(1).getFields();
+            Oop oop = args.getOop(1);
 
-            THE_UNSAFE.putInt(fields, byteOffset(offset), args.getInt(4));
+            THE_UNSAFE.putInt(target(oop), byteOffset(oop, offset), args.getInt(4));
             return NativeReturn.forVoid();
         }
     },
@@ -163,9 +168,9 @@ public enum UnsafeNatives implements NativeImplementation {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
             long offset = args.getLong(2);
-            int[] fields = args.getOop(1).getFields();
+            Oop oop = args.getOop(1);
 
-            THE_UNSAFE.putIntVolatile(fields, byteOffset(offset), args.getInt(4));
+            THE_UNSAFE.putIntVolatile(target(oop), byteOffset(oop, offset), args.getInt(4));
             return NativeReturn.forVoid();
         }
     },
@@ -173,9 +178,9 @@ public enum UnsafeNatives implements NativeImplementation {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
             long offset = args.getLong(2);
-            int[] fields = args.getOop(1).getFields();
+            Oop oop = args.getOop(1);
 
-            THE_UNSAFE.putOrderedInt(fields, byteOffset(offset), args.getInt(4));
+            THE_UNSAFE.putOrderedInt(target(oop), byteOffset(oop, offset), args.getInt(4));
             return NativeReturn.forVoid();
         }
     },
@@ -189,25 +194,33 @@ public enum UnsafeNatives implements NativeImplementation {
     PUT_OBJECT("putObject", "(Ljava/lang/Object;JLjava/lang/Object;)V") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
+            CardTable.mark(args.getOop(1));
             return PUT_INT.execute(args, ctx);
         }
     },
     PUT_OBJECT_VOLATILE("putObjectVolatile", "(Ljava/lang/Object;JLjava/lang/Object;)V") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
+            CardTable.mark(args.getOop(1));
             return PUT_INT_VOLATILE.execute(args, ctx);
         }
     },
     PUT_ORDERED_OBJECT("putOrderedObject", "(Ljava/lang/Object;JLjava/lang/Object;)V") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
+            CardTable.mark(args.getOop(1));
             return PUT_ORDERED_INT.execute(args, ctx);
         }
     },
     PARK("park", "(ZJ)V") {
         @Override
         public NativeReturn execute(Variables args, OperationContext ctx) {
-            THE_UNSAFE.park(args.getBoolean(1), args.getLong(2));
+            boolean detached = GarbageCollector.enterSafeRegion();
+            try {
+                THE_UNSAFE.park(args.getBoolean(1), args.getLong(2));
+            } finally {
+                GarbageCollector.exitSafeRegion(detached);
+            }
             return NativeReturn.forVoid();
         }
     },
@@ -229,6 +242,20 @@ public enum UnsafeNatives implements NativeImplementation {
         return (l << SHIFT) + BASE;
     }
 
+    // Arrays' offsets are element indexes, as arrayIndexScale is 1
+    private static long byteOffset(Oop oop, long offset) {
+        if (oop instanceof OopArray && !(oop instanceof OopRefArray)) {
+            Class<?> arrayClass = ((OopArray) oop).getArray().getClass();
+            return THE_UNSAFE.arrayBaseOffset(arrayClass) + offset * THE_UNSAFE.arrayIndexScale(arrayClass);
+        }
+        return byteOffset(oop.getBase() + offset);
+    }
+
+    // The host object holding the Oop's fields or, for an array, its elements
+    private static Object target(Oop oop) {
+        return oop instanceof OopArray ? ((OopArray) oop).getArray() : oop.getStorage();
+    }
+
     private static int calculateShift() {
         int scale = THE_UNSAFE.arrayIndexScale(int[].class);
         if ((scale & (scale - 1)) != 0)
@@ -0,0 +1,125 @@
+package com.mcintyret.jvm.core.oop;
+
+import com.mcintyret.jvm.core.exec.FrameStack;
+
+/**
+ * Optional storage for Oops' fields, enabled with jvm.arena=true. Rather than each Oop keeping its own int[], their
+ * fields are packed into large pages, which saves an array per Oop and keeps Oops that were allocated together close
+ * together. As addresses are handles, the collector is free to move fields from one page to another, which it does much
+ * as a copying collector would:
+ *
+ * - an Oop is placed in a page belonging to the allocating thread (see Cursor) as it's constructed, or if it was
+ *   constructed with fields of its own, when it's allocated
+ * - a minor collection moves the young Oops that survive it to survivor pages, and those promoted to old pages, so
+ *   that the pages they were in before are left for the host to collect
+ * - a full collection moves the live old Oops to new old pages, if more than half of the old pages is garbage
+ *
+ * Oops with no fields, or more than MAX_FIELDS of them, keep their own arrays. Besides placing Oops with a thread's own
+ * Cursor, only used by the collector, with the Heap locked.
+ */
+public final class Arena {
+
+    public static final boolean ENABLED = Boolean.getBoolean("jvm.arena");
+
+    // In ints
+    private static final int PAGE_SIZE = Integer.getInteger("jvm.arena.pageSize", 1 << 14);
+
+    private static final int MAX_FIELDS = PAGE_SIZE / 8;
+
+    private static final Cursor SURVIVORS = new Cursor();
+
+    private static final Cursor OLD = new Cursor();
+
+    // The number of ints taken from old pages since they were last compacted
+    private static long oldUsed;
+
+    private Arena() {
+    }
+
+    // Where Oops are placed: the free part of a page
+    public static final class Cursor {
+
+        private int[] page;
+
+        private int top;
+
+        // Forgets the page, so that the host can collect it once nothing's left in it
+        public void release() {
+            page = null;
+            top = 0;
+        }
+
+        private void place(Oop oop) {
+            int base = reserve(oop.getFieldCount());
+            oop.relocate(page, base);
+        }
+
+        // Pages are only ever new arrays, so what's reserved is zeroed
+        private int reserve(int count) {
+            if (page == null || top + count > page.length) {
+                page = new int[PAGE_SIZE];
+                top = 0;
+            }
+            top += count;
+            return top - count;
+        }
+    }
+
+    // Called as oop is allocated, in case it was constructed with fields of its own
+    public static void place(Oop oop, Cursor cursor) {
+        if (isPlaced(oop) && !oop.isInPage()) {
+            cursor.place(oop);
+        }
+    }
+
+    // Called as oop is constructed without any fields of its own, to give it some in the current thread's page. Unlike
+    // place(), needs no copying
+    static void placeNew(Oop oop) {
+        Cursor cursor = FrameStack.current().getAllocationBuffer().getArenaCursor();
+        int base = cursor.reserve(oop.getFieldCount());
+        oop.setStorage(cursor.page, base);
+    }
+
+    // Whether the Oop's fields are (or would be) in a page
+    static boolean isPlaced(Oop oop) {
+        return oop.getFieldCount() > 0 && oop.getFieldCount() <= MAX_FIELDS;
+    }
+
+    // Called as a minor collection starts, so that the survivors of the last one are moved out of their pages
+    public static void startMinorCollection() {
+        SURVIVORS.release();
+    }
+
+    public static void survived(Oop oop) {
+        if (isPlaced(oop)) {
+            SURVIVORS.place(oop);
+        }
+    }
+
+    public static void promoted(Oop oop) {
+        if (isPlaced(oop)) {
+            OLD.place(oop);
+            oldUsed += oop.getFieldCount();
+        }
+    }
+
+    // Called after a full collection with the live old Oops, which are moved to new pages if they're taking up less than
+    // half of the old ones. Returns whether they were
+    public static boolean compact(Iterable<Oop> live) {
+        long liveFields = 0;
+        for (Oop oop : live) {
+            if (isPlaced(oop)) {
+                liveFields += oop.getFieldCount();
+            }
+        }
+        if (liveFields * 2 >= oldUsed) {
+            return false;
+        }
+        OLD.release();
+        oldUsed = 0;
+        for (Oop oop : live) {
+            promoted(oop);
+        }
+        return true;
+    }
+}
@@ -1,11 +1,39 @@
 package com.mcintyret.jvm.core.oop;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
 
+import com.mcintyret.jvm.core.gc.GarbageCollector;
+
+/**
+ * An Oop's inflated monitor. Most Oops are never synchronized on, and most of those that are never contended, so an Oop
+ * starts out with just a lock word: 0 when unlocked, the owning host thread's id and its recursion count when thin
+ * locked, which takes a single CAS, or INFLATED once it has a MarkRef. An Oop is inflated when a thread has to wait for
+ * another to unlock it, when it's waited on, or when its recursion count overflows, and is never deflated.
+ */
 public class MarkRef {
 
+    private static final AtomicLongFieldUpdater<Oop> LOCK_WORD = AtomicLongFieldUpdater.newUpdater(Oop.class, "lockWord");
+
+    private static final AtomicReferenceFieldUpdater<Oop, MarkRef> MARK_REF =
+        AtomicReferenceFieldUpdater.newUpdater(Oop.class, MarkRef.class, "markRef");
+
+    private static final long UNLOCKED = 0;
+
+    private static final long INFLATED = -1;
+
+    private static final int COUNT_BITS = 16;
+
+    private static final long MAX_COUNT = (1 << COUNT_BITS) - 1;
+
+    // How long a thread waiting for a thin lock to be released sleeps between looks, at most
+    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
     private final Lock monitor = new ReentrantLock();
 
     private final Condition monitorCondition = monitor.newCondition();
@@ -17,4 +45,108 @@ public class MarkRef {
     public Condition getMonitorCondition() {
         return monitorCondition;
     }
+
+    public static void enter(Oop oop) {
+        long self = thinWord(1);
+        long word = oop.lockWord;
+        if (word == UNLOCKED && LOCK_WORD.compareAndSet(oop, UNLOCKED, self)) {
+            return;
+        }
+        if (word != INFLATED && owner(word) == owner(self)) {
+            if ((word & MAX_COUNT) < MAX_COUNT) {
+                // Only the owner changes the word while it's thin locked
+                oop.lockWord = word + 1;
+            } else {
+                inflateOwned(oop, word).monitor.lock();
+            }
+            return;
+        }
+        MarkRef markRef = word == INFLATED ? oop.markRef : contended(oop);
+        if (!markRef.monitor.tryLock()) {
+            boolean detached = GarbageCollector.enterSafeRegion();
+            try {
+                markRef.monitor.lock();
+            } finally {
+                GarbageCollector.exitSafeRegion(detached);
+            }
+        }
+    }
+
+    public static void exit(Oop oop) {
+        long word = oop.lockWord;
+        if (word == INFLATED) {
+            oop.markRef.monitor.unlock();
+        } else if (word == UNLOCKED || owner(word) != owner(thinWord(0))) {
+            throw new IllegalMonitorStateException();
+        } else {
+            oop.lockWord = (word & MAX_COUNT) == 1 ? UNLOCKED : word - 1;
+        }
+    }
+
+    // Returns the Oop's MarkRef, inflating it if the current thread holds its thin lock
+    public static MarkRef inflate(Oop oop) {
+        long word = oop.lockWord;
+        if (word == INFLATED) {
+            return oop.markRef;
+        }
+        if (word == UNLOCKED || owner(word) != owner(thinWord(0))) {
+            throw new IllegalMonitorStateException();
+        }
+        return inflateOwned(oop, word);
+    }
+
+    // Whether the current thread can notify the Oop's waiters without inflating it: there are none while it's thin locked
+    public static boolean isThinLockedByCurrentThread(Oop oop) {
+        long word = oop.lockWord;
+        return word != INFLATED && word != UNLOCKED && owner(word) == owner(thinWord(0));
+    }
+
+    // Waits for the thin lock's owner to release it, then inflates it so that the threads contending for it from now on
+    // block on the monitor rather than spinning. Another thread may take the monitor between the inflation and this
+    // thread taking it, which is fine, as nobody held the Oop in between
+    private static MarkRef contended(Oop oop) {
+        MarkRef markRef = getOrCreate(oop);
+        boolean detached = GarbageCollector.enterSafeRegion();
+        try {
+            long backoff = 1000;
+            while (true) {
+                long word = oop.lockWord;
+                if (word == INFLATED || (word == UNLOCKED && LOCK_WORD.compareAndSet(oop, UNLOCKED, INFLATED))) {
+                    return markRef;
+                }
+                LockSupport.parkNanos(backoff);
+                backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+            }
+        } finally {
+            GarbageCollector.exitSafeRegion(detached);
+        }
+    }
+
+    // Inflates an Oop the current thread holds the thin lock of. Nobody else can hold its monitor until it's inflated,
+    // so the monitor can be taken as many times as the thin lock was without blocking
+    private static MarkRef inflateOwned(Oop oop, long word) {
+        MarkRef markRef = getOrCreate(oop);
+        for (long i = word & MAX_COUNT; i > 0; i--) {
+            markRef.monitor.lock();
+        }
+        oop.lockWord = INFLATED;
+        return markRef;
+    }
+
+    private static MarkRef getOrCreate(Oop oop) {
+        MarkRef markRef = oop.markRef;
+        if (markRef == null) {
+            MARK_REF.compareAndSet(oop, null, new MarkRef());
+            markRef = oop.markRef;
+        }
+        return markRef;
+    }
+
+    private static long thinWord(int count) {
+        return (Thread.currentThread().getId() << COUNT_BITS) | count;
+    }
+
+    private static long owner(long word) {
+        return word >>> COUNT_BITS;
+    }
 }
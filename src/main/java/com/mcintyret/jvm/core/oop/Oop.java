@@ -6,24 +6,99 @@ public abstract class Oop {
 
     public static final int UNALLOCATED_ADDRESS = -1;
 
-    private final MarkRef markRef = new MarkRef();
+    // See MarkRef
+    volatile long lockWord;
 
-    private final int[] fields;
+    volatile MarkRef markRef;
+
+    // The fields are storage[base] to storage[base + fieldCount - 1], either in an array of the Oop's own or in one of
+    // the Arena's pages
+    private int[] storage;
+
+    private int base;
+
+    private final int fieldCount;
 
     private int address = UNALLOCATED_ADDRESS;
 
+    // The Oop keeps fields as its own until it's allocated, when they're copied into an Arena page if they're to go in one
     public Oop(int[] fields) {
-        this.fields = fields;
+        this.storage = fields;
+        this.fieldCount = fields.length;
+    }
+
+    // The fields start out zeroed, and straight away in the current thread's Arena page if they're to go in one
+    public Oop(int fieldCount) {
+        this.fieldCount = fieldCount;
+        if (Arena.ENABLED && Arena.isPlaced(this)) {
+            Arena.placeNew(this);
+        } else {
+            this.storage = new int[fieldCount];
+        }
     }
 
     public abstract AbstractClassObject getClassObject();
 
+    // Inflates the Oop's lock, which the current thread must hold
     public MarkRef getMarkRef() {
-        return markRef;
+        return MarkRef.inflate(this);
+    }
+
+    public int getField(int i) {
+        checkIndex(i);
+        return storage[base + i];
+    }
+
+    public void setField(int i, int value) {
+        checkIndex(i);
+        storage[base + i] = value;
+    }
+
+    // Needed now that storage may be shared, as the array itself won't always catch i being out of range
+    private void checkIndex(int i) {
+        if (i < 0 || i >= fieldCount) {
+            throw new ArrayIndexOutOfBoundsException(i);
+        }
+    }
+
+    public int getFieldCount() {
+        return fieldCount;
+    }
+
+    // For bulk and Unsafe access to the fields, which start at getBase() in getStorage(). Not to be held on to across an
+    // allocation, as the collector may move the fields
+    public int[] getStorage() {
+        return storage;
+    }
+
+    public int getBase() {
+        return base;
+    }
+
+    // The bytes the Oop's data takes up, not counting its header
+    public long getDataSize() {
+        return 4L * fieldCount;
+    }
+
+    public int[] copyFields() {
+        int[] copy = new int[fieldCount];
+        System.arraycopy(storage, base, copy, 0, fieldCount);
+        return copy;
+    }
+
+    void relocate(int[] storage, int base) {
+        System.arraycopy(this.storage, this.base, storage, base, fieldCount);
+        setStorage(storage, base);
+    }
+
+    void setStorage(int[] storage, int base) {
+        this.storage = storage;
+        this.base = base;
     }
 
-    public int[] getFields() {
-        return fields;
+    // Pages are always bigger than the largest Oop placed in one
+    boolean isInPage() {
+        return storage.length != fieldCount;
     }
 
     public int getAddress() {
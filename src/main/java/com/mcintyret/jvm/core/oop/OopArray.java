@@ -2,20 +2,66 @@ package com.mcintyret.jvm.core.oop;
 
 import com.mcintyret.jvm.core.clazz.ArrayClassObject;
 
-public class OopArray extends Oop {
+/**
+ * An array, whose elements are held in a host array of their own type: references in the Oop's fields, like any other
+ * Oop's, and primitives in a byte[], char[] etc. of the same length, so that a byte[] takes a byte per element and a
+ * long[] a single long, and the aload and astore opcodes needn't convert anything.
+ */
+public abstract class OopArray extends Oop {
+
+    private static final int[] NO_FIELDS = new int[0];
 
     private final ArrayClassObject arrayClassObject;
 
-    private final int width;
+    // For arrays of primitives, which have no fields
+    OopArray(ArrayClassObject classObject) {
+        this(classObject, NO_FIELDS);
+    }
 
-    public OopArray(ArrayClassObject classObject, int[] fields) {
+    OopArray(ArrayClassObject classObject, int[] fields) {
         super(fields);
         this.arrayClassObject = classObject;
-        this.width = classObject.getType().getComponentType().getWidth();
     }
 
-    public int getLength() {
-        return getFields().length / width;
+    OopArray(ArrayClassObject classObject, int fieldCount) {
+        super(fieldCount);
+        this.arrayClassObject = classObject;
+    }
+
+    public static OopArray create(ArrayClassObject classObject, int length) {
+        // The component type of a type parsed from a descriptor like [[I is int, though its elements are int[]s
+        if (classObject.getType().getDimensions() > 1) {
+            return new OopRefArray(classObject, length);
+        }
+        switch (classObject.getType().getComponentType().asSimpleType()) {
+            case BOOLEAN:
+            case BYTE:
+                return new OopByteArray(classObject, new byte[length]);
+            case CHAR:
+                return new OopCharArray(classObject, new char[length]);
+            case SHORT:
+                return new OopShortArray(classObject, new short[length]);
+            case INT:
+                return new OopIntArray(classObject, new int[length]);
+            case LONG:
+                return new OopLongArray(classObject, new long[length]);
+            case FLOAT:
+                return new OopFloatArray(classObject, new float[length]);
+            case DOUBLE:
+                return new OopDoubleArray(classObject, new double[length]);
+            default:
+                return new OopRefArray(classObject, length);
+        }
+    }
+
+    public abstract int getLength();
+
+    // The host array the elements are in, starting at getArrayOffset(), for copying them in bulk. Like getStorage(), not
+    // to be held on to across an allocation
+    public abstract Object getArray();
+
+    public int getArrayOffset() {
+        return 0;
     }
 
     @Override
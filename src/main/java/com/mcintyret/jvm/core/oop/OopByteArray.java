@@ -0,0 +1,29 @@
+package com.mcintyret.jvm.core.oop;
+
+import com.mcintyret.jvm.core.clazz.ArrayClassObject;
+
+// Also used for boolean[]s, as the baload and bastore opcodes are
+public class OopByteArray extends OopArray {
+
+    private final byte[] array;
+
+    public OopByteArray(ArrayClassObject classObject, byte[] array) {
+        super(classObject);
+        this.array = array;
+    }
+
+    @Override
+    public int getLength() {
+        return array.length;
+    }
+
+    @Override
+    public byte[] getArray() {
+        return array;
+    }
+
+    @Override
+    public long getDataSize() {
+        return array.length;
+    }
+}
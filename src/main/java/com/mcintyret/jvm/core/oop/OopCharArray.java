@@ -0,0 +1,28 @@
+package com.mcintyret.jvm.core.oop;
+
+import com.mcintyret.jvm.core.clazz.ArrayClassObject;
+
+public class OopCharArray extends OopArray {
+
+    private final char[] array;
+
+    public OopCharArray(ArrayClassObject classObject, char[] array) {
+        super(classObject);
+        this.array = array;
+    }
+
+    @Override
+    public int getLength() {
+        return array.length;
+    }
+
+    @Override
+    public char[] getArray() {
+        return array;
+    }
+
+    @Override
+    public long getDataSize() {
+        return 2L * array.length;
+    }
+}
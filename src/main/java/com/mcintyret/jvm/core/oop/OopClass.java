@@ -11,6 +11,11 @@ public class OopClass extends Oop {
         this.classObject = classObject;
     }
 
+    public OopClass(ClassObject classObject, int fieldCount) {
+        super(fieldCount);
+        this.classObject = classObject;
+    }
+
     @Override
     public ClassObject getClassObject() {
         return classObject;
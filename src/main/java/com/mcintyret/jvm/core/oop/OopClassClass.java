@@ -16,6 +16,11 @@ public class OopClassClass extends OopClass {
         this.thisType = thisType;
     }
 
+    public OopClassClass(ClassObject classObject, int fieldCount, Type thisType) {
+        super(classObject, fieldCount);
+        this.thisType = thisType;
+    }
+
     public Type getThisType() {
         return thisType;
     }
@@ -16,6 +16,11 @@ public class OopClassMethod extends OopClass {
         this.method = method;
     }
 
+    public OopClassMethod(ClassObject classObject, int fieldCount, Method method) {
+        super(classObject, fieldCount);
+        this.method = method;
+    }
+
     public Method getMethod() {
         return method;
     }
@@ -0,0 +1,28 @@
+package com.mcintyret.jvm.core.oop;
+
+import com.mcintyret.jvm.core.clazz.ArrayClassObject;
+
+public class OopDoubleArray extends OopArray {
+
+    private final double[] array;
+
+    public OopDoubleArray(ArrayClassObject classObject, double[] array) {
+        super(classObject);
+        this.array = array;
+    }
+
+    @Override
+    public int getLength() {
+        return array.length;
+    }
+
+    @Override
+    public double[] getArray() {
+        return array;
+    }
+
+    @Override
+    public long getDataSize() {
+        return 8L * array.length;
+    }
+}
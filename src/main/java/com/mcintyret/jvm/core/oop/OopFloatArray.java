@@ -0,0 +1,28 @@
+package com.mcintyret.jvm.core.oop;
+
+import com.mcintyret.jvm.core.clazz.ArrayClassObject;
+
+public class OopFloatArray extends OopArray {
+
+    private final float[] array;
+
+    public OopFloatArray(ArrayClassObject classObject, float[] array) {
+        super(classObject);
+        this.array = array;
+    }
+
+    @Override
+    public int getLength() {
+        return array.length;
+    }
+
+    @Override
+    public float[] getArray() {
+        return array;
+    }
+
+    @Override
+    public long getDataSize() {
+        return 4L * array.length;
+    }
+}
@@ -0,0 +1,28 @@
+package com.mcintyret.jvm.core.oop;
+
+import com.mcintyret.jvm.core.clazz.ArrayClassObject;
+
+public class OopIntArray extends OopArray {
+
+    private final int[] array;
+
+    public OopIntArray(ArrayClassObject classObject, int[] array) {
+        super(classObject);
+        this.array = array;
+    }
+
+    @Override
+    public int getLength() {
+        return array.length;
+    }
+
+    @Override
+    public int[] getArray() {
+        return array;
+    }
+
+    @Override
+    public long getDataSize() {
+        return 4L * array.length;
+    }
+}
@@ -0,0 +1,28 @@
+package com.mcintyret.jvm.core.oop;
+
+import com.mcintyret.jvm.core.clazz.ArrayClassObject;
+
+public class OopLongArray extends OopArray {
+
+    private final long[] array;
+
+    public OopLongArray(ArrayClassObject classObject, long[] array) {
+        super(classObject);
+        this.array = array;
+    }
+
+    @Override
+    public int getLength() {
+        return array.length;
+    }
+
+    @Override
+    public long[] getArray() {
+        return array;
+    }
+
+    @Override
+    public long getDataSize() {
+        return 8L * array.length;
+    }
+}
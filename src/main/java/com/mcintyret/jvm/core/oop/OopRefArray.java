@@ -0,0 +1,30 @@
+package com.mcintyret.jvm.core.oop;
+
+import com.mcintyret.jvm.core.clazz.ArrayClassObject;
+
+// The elements are the addresses in the Oop's fields, so that the collector and the Arena treat them like any others
+public class OopRefArray extends OopArray {
+
+    public OopRefArray(ArrayClassObject classObject, int[] addresses) {
+        super(classObject, addresses);
+    }
+
+    public OopRefArray(ArrayClassObject classObject, int length) {
+        super(classObject, length);
+    }
+
+    @Override
+    public int getLength() {
+        return getFieldCount();
+    }
+
+    @Override
+    public int[] getArray() {
+        return getStorage();
+    }
+
+    @Override
+    public int getArrayOffset() {
+        return getBase();
+    }
+}
@@ -0,0 +1,28 @@
+package com.mcintyret.jvm.core.oop;
+
+import com.mcintyret.jvm.core.clazz.ArrayClassObject;
+
+public class OopShortArray extends OopArray {
+
+    private final short[] array;
+
+    public OopShortArray(ArrayClassObject classObject, short[] array) {
+        super(classObject);
+        this.array = array;
+    }
+
+    @Override
+    public int getLength() {
+        return array.length;
+    }
+
+    @Override
+    public short[] getArray() {
+        return array;
+    }
+
+    @Override
+    public long getDataSize() {
+        return 2L * array.length;
+    }
+}
@@ -2,17 +2,15 @@ package com.mcintyret.jvm.core.opcode;
 
 import java.util.List;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
 import com.mcintyret.jvm.core.clazz.AbstractClassObject;
 import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.constantpool.ConstantPool;
+import com.mcintyret.jvm.core.exec.ExecutionListener;
+import com.mcintyret.jvm.core.exec.ExecutionListeners;
 import com.mcintyret.jvm.core.exec.ExecutionStackElement;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.nativeimpls.NativeReturn;
 import com.mcintyret.jvm.core.oop.OopClass;
-import com.mcintyret.jvm.core.util.ByteIterator;
 import com.mcintyret.jvm.parse.attribute.CodeException;
 
 /**
@@ -21,12 +19,13 @@ import com.mcintyret.jvm.parse.attribute.CodeException;
  */
 public class AThrow extends OpCode {
 
-    private static final Logger LOG = LoggerFactory.getLogger(AThrow.class);
-
     @Override
     public void execute(OperationContext ctx) {
         OopClass thrown = ctx.getStack().popOop();
-        LOG.warn("Throwing exception of type {} from method {}", thrown.getClassObject(), ctx.getMethod());
+        ExecutionListener listener = ExecutionListeners.get();
+        if (listener != null) {
+            listener.onThrow(thrown, ctx.getMethod());
+        }
 
         ExecutionStackElement elem = ctx.getExecutionStack().peek();
         ExecutionStackElement prev = null;
@@ -34,27 +33,19 @@ public class AThrow extends OpCode {
             Method m = elem.getMethod();
             ConstantPool cp = m.getClassObject().getConstantPool();
             List<CodeException> exceptions = m.getCode().getCodeExceptions();
-            ByteIterator bi = elem.getByteIterator();
-            int pos = bi.getPos();
+            int pos = elem.getPos();
 
             for (CodeException exception : exceptions) {
-                if (pos >= exception.getStartPc() && pos <= exception.getEndPc()) {
+                if (pos >= exception.getStartPc() && pos < exception.getEndPc()) {
                     int catchType = exception.getCatchType();
-                    boolean caught = false;
+                    AbstractClassObject catchTypeClass = catchType == 0 ? null : cp.getClassObject(catchType);
 
-                    if (catchType == 0) {
-                        LOG.info("In finally block of method {}", ctx.getMethod());
-                        caught = true;
-                    } else {
-                        AbstractClassObject catchTypeClass = cp.getClassObject(catchType);
-                        if (thrown.getClassObject().isInstanceOf(catchTypeClass)) {
-                            LOG.info("In catch block of method {} for Exception type {}", elem.getMethod(), catchTypeClass);
-                            caught = true;
+                    if (catchTypeClass == null || thrown.getClassObject().isInstanceOf(catchTypeClass)) {
+                        if (listener != null) {
+                            listener.onCatch(thrown, m, catchTypeClass);
                         }
-                    }
 
-                    if (caught) {
-                        bi.setPos(exception.getHandlerPc());
+                        elem.jump(exception.getHandlerPc());
 
                         elem.getStack().clear();
                         elem.getStack().pushOop(thrown);
@@ -69,7 +60,9 @@ public class AThrow extends OpCode {
         }
 
         // If we're here, the Exception has gone all the way to the top.
-        LOG.warn("Did not catch error of type {}. Exiting from method {}", thrown.getClassObject(), prev.getMethod());
+        if (listener != null) {
+            listener.onUncaught(thrown, prev.getMethod());
+        }
         ctx.getExecutionStack().setFinalReturn(NativeReturn.forThrowable(thrown));
     }
 
@@ -0,0 +1,83 @@
+package com.mcintyret.jvm.core.opcode;
+
+/**
+ * A single decoded instruction: an OpCode together with its already-read operands. Branch targets are stored as
+ * absolute positions in the method's bytecode. Quickened instructions also carry whatever their operand resolved to.
+ */
+public final class Instruction {
+
+    private final OpCode opCode;
+
+    private final int opcodeByte;
+
+    private final int pos;
+
+    private final int nextPos;
+
+    private final int[] operands;
+
+    private final Object resolved;
+
+    // null unless this is a superinstruction, in which case the opcodes of the instructions it stands for
+    private final int[] fusedOpcodes;
+
+    public Instruction(OpCode opCode, int pos, int nextPos, int[] operands) {
+        this(opCode, pos, nextPos, operands, null);
+    }
+
+    public Instruction(OpCode opCode, int pos, int nextPos, int[] operands, Object resolved) {
+        this(opCode, pos, nextPos, operands, resolved, null);
+    }
+
+    Instruction(OpCode opCode, int pos, int nextPos, int[] operands, Object resolved, int[] fusedOpcodes) {
+        this.opCode = opCode;
+        this.opcodeByte = opCode.getByte() & 0xFF;
+        this.pos = pos;
+        this.nextPos = nextPos;
+        this.operands = operands;
+        this.resolved = resolved;
+        this.fusedOpcodes = fusedOpcodes;
+    }
+
+    public Instruction quicken(QuickOpCode quickOpCode, Object resolved) {
+        return new Instruction(quickOpCode, pos, nextPos, operands, resolved);
+    }
+
+    public OpCode getOpCode() {
+        return opCode;
+    }
+
+    // getOpCode().getByte() as an unsigned value
+    public int getOpcodeByte() {
+        return opcodeByte;
+    }
+
+    public int getPos() {
+        return pos;
+    }
+
+    public int getNextPos() {
+        return nextPos;
+    }
+
+    public int getOperand(int i) {
+        return operands[i];
+    }
+
+    public int getOperandCount() {
+        return operands.length;
+    }
+
+    public Object getResolved() {
+        return resolved;
+    }
+
+    public int[] getFusedOpcodes() {
+        return fusedOpcodes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%4d: %s", pos, opCode);
+    }
+}
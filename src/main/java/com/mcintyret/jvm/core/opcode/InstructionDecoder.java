@@ -0,0 +1,82 @@
+package com.mcintyret.jvm.core.opcode;
+
+import com.mcintyret.jvm.core.exec.OperationContext;
+import com.mcintyret.jvm.core.util.ByteBufferIterator;
+import com.mcintyret.jvm.core.util.ByteIterator;
+
+public class InstructionDecoder {
+
+    /**
+     * Decodes a method's bytecode into an array indexed by bytecode position. Only positions at which an instruction
+     * starts are populated.
+     */
+    public static Instruction[] decode(byte[] code) {
+        Instruction[] instructions = new Instruction[code.length];
+        ByteIterator bytes = new ByteBufferIterator(code);
+
+        while (bytes.getPos() < code.length) {
+            int pos = bytes.getPos();
+            byte b = bytes.nextByte();
+            OpCode opCode = OpCodes.findOpcode(b);
+            if (opCode == null) {
+                opCode = new Unimplemented(b);
+            }
+            instructions[pos] = opCode.decode(bytes, pos);
+        }
+        return instructions;
+    }
+
+    // Lets methods containing opcodes we don't support yet still be decoded: they only fail if the instruction is
+    // actually reached, as they would have if we were interpreting the raw bytes
+    private static class Unimplemented extends OpCode {
+
+        private final byte b;
+
+        private Unimplemented(byte b) {
+            this.b = b;
+        }
+
+        @Override
+        public void execute(OperationContext ctx) {
+            throw new IllegalArgumentException("No opcode corresponds to byte '" + String.format("%02X", b) + "'");
+        }
+
+        @Override
+        protected int[] readOperands(ByteIterator bytes, int pos) {
+            switch (0xFF & b) {
+                case 0xA9: // ret
+                    bytes.seek(1);
+                    break;
+                case 0xA8: // jsr
+                    bytes.seek(2);
+                    break;
+                case 0xC5: // multianewarray
+                    bytes.seek(3);
+                    break;
+                case 0xBA: // invokedynamic
+                case 0xC9: // jsr_w
+                    bytes.seek(4);
+                    break;
+                case 0xC4: // wide
+                    bytes.seek((0xFF & bytes.nextByte()) == 0x84 ? 4 : 2);
+                    break;
+                case 0xAA: // tableswitch
+                    bytes.seek(3 - (pos % 4));
+                    bytes.nextInt(); // default
+                    int low = bytes.nextInt();
+                    int high = bytes.nextInt();
+                    bytes.seek((high - low + 1) * 4);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown opcode '" + String.format("%02X", b) + "'");
+            }
+            return NO_OPERANDS;
+        }
+
+        @Override
+        public byte getByte() {
+            return b;
+        }
+    }
+
+}
@@ -1,15 +1,31 @@
 package com.mcintyret.jvm.core.opcode;
 
+import com.mcintyret.jvm.build.RegisteredOpCode;
 import com.mcintyret.jvm.core.exec.OperationContext;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
+@RegisteredOpCode
 public abstract class OpCode {
 
+    protected static final int[] NO_OPERANDS = new int[0];
+
     public abstract void execute(OperationContext ctx);
 
     public abstract byte getByte();
 
+    public final Instruction decode(ByteIterator bytes, int pos) {
+        int[] operands = readOperands(bytes, pos);
+        return new Instruction(this, pos, bytes.getPos(), operands);
+    }
+
+    // bytes is positioned just after this OpCode's byte, which was at pos. Any branch offsets should be returned as
+    // absolute positions
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return NO_OPERANDS;
+    }
+
     @Override
-    public final String toString() {
+    public String toString() {
         return getClass().getSimpleName().toLowerCase();
     }
 
@@ -1,55 +1,48 @@
 package com.mcintyret.jvm.core.opcode;
 
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Modifier;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.TreeMap;
 
-import org.reflections.Reflections;
-
+/**
+ * Every OpCode that corresponds to a byte of its own, indexed by that byte. The table is generated at build time by
+ * OpCodeProcessor (see OpCodeRegistry), so nothing needs to be looked up reflectively.
+ */
 public class OpCodes {
 
-    private static final Map<Byte, OpCode> OP_CODE_MAP = loadOpCodes();
-
-    private static Map<Byte, OpCode> loadOpCodes() {
-        Reflections reflections = new Reflections("com.mcintyret.jvm.core.opcode");
-
-        Map<Byte, OpCode> map = new HashMap<>();
-        for (Class<? extends OpCode> clazz : reflections.getSubTypesOf(OpCode.class)) {
-            if (!Modifier.isAbstract(clazz.getModifiers())) {
-                try {
-                    OpCode opCode = newInstance(clazz);
-                    if (map.put(opCode.getByte(), opCode) != null) {
-                        throw new AssertionError("Duplicate OpCode: " + opCode.getByte() + " for " + clazz.getSimpleName());
-                    }
-                } catch (Throwable t) {
-                    throw new IllegalStateException("Unable to create OpCode " + clazz, t);
-                }
+    private static final OpCode[] OP_CODES = loadOpCodes();
+
+    private static OpCode[] loadOpCodes() {
+        OpCode[] opCodes = new OpCode[256];
+        for (OpCode opCode : OpCodeRegistry.create()) {
+            int i = opCode.getByte() & 0xFF;
+            if (opCodes[i] != null) {
+                throw new AssertionError("Duplicate OpCode: " + opCode.getByte() + " for " + opCode.getClass().getSimpleName());
             }
+            opCodes[i] = opCode;
         }
-        return Collections.unmodifiableMap(map);
-    }
-
-    private static OpCode newInstance(Class<? extends OpCode> clazz) throws IllegalAccessException, InvocationTargetException, InstantiationException {
-        Constructor constructor = clazz.getDeclaredConstructors()[0];
-        constructor.setAccessible(true);
-        return (OpCode) constructor.newInstance();
+        return opCodes;
     }
 
     public static OpCode getOpcode(byte b) {
-        OpCode opCode = OP_CODE_MAP.get(b);
+        OpCode opCode = findOpcode(b);
         if (opCode == null) {
             throw new IllegalArgumentException("No opcode corresponds to byte '" + String.format("%02X", b) + "'");
         }
         return opCode;
     }
 
+    public static OpCode findOpcode(byte b) {
+        return OP_CODES[b & 0xFF];
+    }
+
     public static void main(String[] args) {
-        Map<Byte, OpCode> orderedOpCodes = new TreeMap<>(OP_CODE_MAP);
+        Map<Byte, OpCode> orderedOpCodes = new TreeMap<>();
+        for (OpCode opCode : OP_CODES) {
+            if (opCode != null) {
+                orderedOpCodes.put(opCode.getByte(), opCode);
+            }
+        }
 
         System.out.println(orderedOpCodes.size() + " opcodes implemented:");
         for (OpCode opCode : orderedOpCodes.values()) {
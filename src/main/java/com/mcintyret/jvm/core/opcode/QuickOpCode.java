@@ -0,0 +1,25 @@
+package com.mcintyret.jvm.core.opcode;
+
+/**
+ * The rewritten form of an OpCode whose constant pool operand has been resolved. The first execution of a quickenable
+ * instruction resolves its operand and replaces itself with an Instruction for the OpCode's QuickOpCode, carrying the
+ * resolved object, so that later executions don't need to go to the constant pool at all.
+ */
+public abstract class QuickOpCode extends OpCode {
+
+    private final OpCode original;
+
+    protected QuickOpCode(OpCode original) {
+        this.original = original;
+    }
+
+    @Override
+    public byte getByte() {
+        return original.getByte();
+    }
+
+    @Override
+    public String toString() {
+        return original + "_quick";
+    }
+}
@@ -0,0 +1,448 @@
+package com.mcintyret.jvm.core.opcode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.mcintyret.jvm.core.clazz.Field;
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.exec.OperationContext;
+import com.mcintyret.jvm.core.exec.VariableStack;
+import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.metrics.MetricsSnapshot;
+import com.mcintyret.jvm.core.metrics.ThreadMetrics;
+import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.parse.attribute.Code;
+import com.mcintyret.jvm.parse.attribute.CodeException;
+
+/**
+ * Single handlers for short sequences of instructions that are executed often enough to be worth one dispatch rather than
+ * several, without their intermediate values going through the operand stack. Once a method is warm (one thread has
+ * invoked it jvm.superinstructions.threshold times, or taken that many backward branches in it) a copy of its instructions is made in
+ * which the first instruction of each such sequence is replaced with one for the sequence as a whole, whose next
+ * position is that after the sequence. The rest of the sequence stays where it was, so branches into the middle of it
+ * still work. A sequence whose instructions haven't all been quickened yet is fused once they have been (see
+ * Method.quicken()), and Method.getInstructions() is left alone for the Jit. A superinstruction's executions are counted
+ * as those of each instruction it stands for, so ExecutionMetrics sees the same opcodes and pairs with fusion as without.
+ *
+ * jvm.superinstructions is a comma-separated list of the Fusions to make, or none. The default is all of them. To choose
+ * a set for a particular workload, run it with jvm.metrics.pairs=true and jvm.superinstructions=none, and pass the
+ * ExecutionMetrics snapshot to suggest().
+ */
+public class SuperInstructions {
+
+    private static final int THRESHOLD = Integer.getInteger("jvm.superinstructions.threshold", 2);
+
+    private static final int ICONST_M1 = 0x02, ICONST_5 = 0x08, BIPUSH = 0x10, SIPUSH = 0x11;
+
+    private static final int ILOAD = 0x15, ILOAD_0 = 0x1A, ALOAD = 0x19, ALOAD_0 = 0x2A, DUP = 0x59, GETFIELD = 0xB4;
+
+    private static final int[] ILOADS = {ILOAD, ILOAD_0, ILOAD_0 + 1, ILOAD_0 + 2, ILOAD_0 + 3};
+
+    private static final int[] ALOADS = {ALOAD, ALOAD_0, ALOAD_0 + 1, ALOAD_0 + 2, ALOAD_0 + 3};
+
+    private static final int[] CONSTS = {ICONST_M1, 0x03, 0x04, 0x05, 0x06, 0x07, ICONST_5, BIPUSH, SIPUSH};
+
+    private static final int[] ARITHS = {0x60, 0x64, 0x68, 0x7E, 0x80, 0x82}; // iadd, isub, imul, iand, ior, ixor
+
+    private static final int[] IF_ICMPS = {0x9F, 0xA0, 0xA1, 0xA2, 0xA3, 0xA4}; // if_icmpeq, ne, lt, ge, gt, le
+
+    public enum Fusion {
+        ALOAD_GETFIELD(ALOADS, new int[]{GETFIELD}) {
+            @Override
+            Instruction fuse(Instruction[] parts) {
+                return parts[1].getResolved() == null ? null
+                    : instruction(LOAD_GET_FIELD, parts, parts[1].getResolved(), slot(parts[0], ALOAD, ALOAD_0));
+            }
+        },
+        DUP_GETFIELD(new int[]{DUP}, new int[]{GETFIELD}) {
+            @Override
+            Instruction fuse(Instruction[] parts) {
+                return parts[1].getResolved() == null ? null : instruction(DUP_GET_FIELD, parts, parts[1].getResolved());
+            }
+        },
+        ILOAD_ILOAD_ARITH(ILOADS, ILOADS, ARITHS) {
+            @Override
+            Instruction fuse(Instruction[] parts) {
+                return instruction(LOAD_LOAD_ARITH[index(ARITHS, parts[2])], parts, null,
+                    slot(parts[0], ILOAD, ILOAD_0), slot(parts[1], ILOAD, ILOAD_0));
+            }
+        },
+        ILOAD_ILOAD_IF_ICMP(ILOADS, ILOADS, IF_ICMPS) {
+            @Override
+            Instruction fuse(Instruction[] parts) {
+                return instruction(LOAD_LOAD_IF_ICMP[index(IF_ICMPS, parts[2])], parts, null,
+                    slot(parts[0], ILOAD, ILOAD_0), slot(parts[1], ILOAD, ILOAD_0), parts[2].getOperand(0));
+            }
+        },
+        ILOAD_CONST_IF_ICMP(ILOADS, CONSTS, IF_ICMPS) {
+            @Override
+            Instruction fuse(Instruction[] parts) {
+                return instruction(LOAD_CONST_IF_ICMP[index(IF_ICMPS, parts[2])], parts, null,
+                    slot(parts[0], ILOAD, ILOAD_0), constant(parts[1]), parts[2].getOperand(0));
+            }
+        };
+
+        // The opcodes that may appear at each position in the sequence
+        private final int[][] opcodes;
+
+        Fusion(int[]... opcodes) {
+            this.opcodes = opcodes;
+        }
+
+        // parts match this Fusion's opcodes. Returns null if they can't be fused after all, eg if not yet quickened
+        abstract Instruction fuse(Instruction[] parts);
+
+        // How often this sequence could have been executed according to snapshot's opcode pair counts: the least
+        // frequent of its consecutive pairs
+        long getEstimatedCount(MetricsSnapshot snapshot) {
+            long estimate = Long.MAX_VALUE;
+            for (int i = 1; i < opcodes.length; i++) {
+                long count = 0;
+                for (int first : opcodes[i - 1]) {
+                    for (int second : opcodes[i]) {
+                        count += snapshot.getPairCount(first, second);
+                    }
+                }
+                estimate = Math.min(estimate, count);
+            }
+            return estimate;
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    private static final OpCode LOAD_GET_FIELD = new LoadGetField();
+
+    private static final OpCode DUP_GET_FIELD = new DupGetField();
+
+    private static final OpCode[] LOAD_LOAD_ARITH = new OpCode[ARITHS.length];
+
+    private static final OpCode[] LOAD_LOAD_IF_ICMP = new OpCode[IF_ICMPS.length];
+
+    private static final OpCode[] LOAD_CONST_IF_ICMP = new OpCode[IF_ICMPS.length];
+
+    static {
+        for (int i = 0; i < ARITHS.length; i++) {
+            LOAD_LOAD_ARITH[i] = new LoadLoadArith(ARITHS[i]);
+        }
+        for (int i = 0; i < IF_ICMPS.length; i++) {
+            LOAD_LOAD_IF_ICMP[i] = new LoadLoadIfICmp(IF_ICMPS[i]);
+            LOAD_CONST_IF_ICMP[i] = new LoadConstIfICmp(IF_ICMPS[i]);
+        }
+    }
+
+    // After the arrays above, which Fusion uses
+    private static final Set<Fusion> ENABLED = parse(System.getProperty("jvm.superinstructions",
+        "iload_const_if_icmp,iload_iload_if_icmp,iload_iload_arith,aload_getfield,dup_getfield"));
+
+    // The instructions a new frame of method should execute
+    public static Instruction[] forFrame(Method method, ThreadMetrics metrics) {
+        Instruction[] fused = method.getFusedInstructions();
+        if (fused == null && !ENABLED.isEmpty() && metrics.getInvocations(method) >= THRESHOLD) {
+            fused = fuse(method);
+        }
+        return fused == null ? method.getInstructions() : fused;
+    }
+
+    // Called on each interpreted backward branch, the backedges'th this thread has taken in method. Returns the
+    // instructions the frame should carry on with
+    public static Instruction[] onBackedge(Method method, Instruction[] current, long backedges) {
+        Instruction[] fused = method.getFusedInstructions();
+        if (fused == null && !ENABLED.isEmpty() && backedges >= THRESHOLD) {
+            fused = fuse(method);
+        }
+        return fused == null ? current : fused;
+    }
+
+    // The Fusions that would be executed at all according to snapshot's opcode pair counts, in the form
+    // jvm.superinstructions takes, the most frequently executed first
+    public static String suggest(MetricsSnapshot snapshot) {
+        List<Fusion> fusions = new ArrayList<>();
+        for (Fusion fusion : Fusion.values()) {
+            if (fusion.getEstimatedCount(snapshot) > 0) {
+                fusions.add(fusion);
+            }
+        }
+        fusions.sort(Comparator.comparingLong((Fusion f) -> f.getEstimatedCount(snapshot)).reversed());
+        return fusions.isEmpty() ? "none" : fusions.stream().map(Fusion::toString).collect(Collectors.joining(","));
+    }
+
+    private static synchronized Instruction[] fuse(Method method) {
+        Instruction[] fused = method.getFusedInstructions();
+        if (fused != null) {
+            return fused;
+        }
+        Instruction[] instructions = method.getInstructions();
+        fused = Arrays.copyOf(instructions, instructions.length);
+        fuse(instructions, fused, method.getCode());
+        method.setFusedInstructions(fused);
+        return fused;
+    }
+
+    // Called once an instruction of method has been quickened, after its fused instructions have been
+    public static synchronized void refuse(Method method) {
+        fuse(method.getInstructions(), method.getFusedInstructions(), method.getCode());
+    }
+
+    // Fuses each sequence in instructions that starts where fused still has the same, unfused instruction. Frames may be
+    // executing fused meanwhile, but an unfused instruction and its superinstruction have the same effect
+    private static void fuse(Instruction[] instructions, Instruction[] fused, Code code) {
+        for (int pos = 0; pos < fused.length; pos++) {
+            if (fused[pos] != null && fused[pos] == instructions[pos]) {
+                for (Fusion fusion : ENABLED) {
+                    Instruction instruction = fuse(fusion, instructions, pos, code);
+                    if (instruction != null) {
+                        fused[pos] = instruction;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    private static Instruction fuse(Fusion fusion, Instruction[] instructions, int pos, Code code) {
+        Instruction[] parts = new Instruction[fusion.opcodes.length];
+        for (int i = 0; i < parts.length; i++) {
+            if (pos >= instructions.length || instructions[pos] == null
+                || index(fusion.opcodes[i], instructions[pos]) < 0) {
+                return null;
+            }
+            // An exception thrown from inside a superinstruction is taken to come from its start
+            if (i > 0 && isExceptionBoundary(code, pos)) {
+                return null;
+            }
+            parts[i] = instructions[pos];
+            pos = parts[i].getNextPos();
+        }
+        return fusion.fuse(parts);
+    }
+
+    private static boolean isExceptionBoundary(Code code, int pos) {
+        for (CodeException exception : code.getCodeExceptions()) {
+            if (exception.getStartPc() == pos || exception.getEndPc() == pos || exception.getHandlerPc() == pos) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Instruction instruction(OpCode opCode, Instruction[] parts, Object resolved, int... operands) {
+        int[] opcodes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            opcodes[i] = parts[i].getOpcodeByte();
+        }
+        return new Instruction(opCode, parts[0].getPos(), parts[parts.length - 1].getNextPos(), operands, resolved,
+            opcodes);
+    }
+
+    private static int index(int[] opcodes, Instruction instruction) {
+        for (int i = 0; i < opcodes.length; i++) {
+            if (opcodes[i] == instruction.getOpcodeByte()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int slot(Instruction load, int indexedOpcode, int zeroOpcode) {
+        return load.getOpcodeByte() == indexedOpcode ? load.getOperand(0) : load.getOpcodeByte() - zeroOpcode;
+    }
+
+    // As pushed by iconst_<n>, bipush or sipush
+    private static int constant(Instruction push) {
+        switch (push.getOpcodeByte()) {
+            case BIPUSH:
+                return (byte) push.getOperand(0);
+            case SIPUSH:
+                return push.getOperand(0);
+            default:
+                return push.getOpcodeByte() - ICONST_M1 - 1;
+        }
+    }
+
+    private static Set<Fusion> parse(String fusions) {
+        Set<Fusion> set = EnumSet.noneOf(Fusion.class);
+        for (String fusion : fusions.split(",")) {
+            if (!fusion.trim().isEmpty() && !fusion.trim().equals("none")) {
+                set.add(Fusion.valueOf(fusion.trim().toUpperCase()));
+            }
+        }
+        return set;
+    }
+
+    private static boolean compare(int ifICmp, int value1, int value2) {
+        switch (ifICmp) {
+            case 0x9F:
+                return value1 == value2;
+            case 0xA0:
+                return value1 != value2;
+            case 0xA1:
+                return value1 < value2;
+            case 0xA2:
+                return value1 >= value2;
+            case 0xA3:
+                return value1 > value2;
+            default:
+                return value1 <= value2;
+        }
+    }
+
+    private static String name(int opcode) {
+        return OpCodes.getOpcode((byte) opcode).toString();
+    }
+
+    // The OpCodes below are nested so that OpCodeProcessor doesn't take them for real ones. Each reports the byte of the indexed
+    // form of the instruction it starts with
+
+    private static class LoadGetField extends OpCode {
+
+        @Override
+        public void execute(OperationContext ctx) {
+            Instruction instruction = ctx.getInstruction();
+            Oop oop = ctx.getLocalVariables().getOop(instruction.getOperand(0));
+            ((Field) instruction.getResolved()).get(oop, ctx.getStack());
+        }
+
+        @Override
+        public byte getByte() {
+            return (byte) ALOAD;
+        }
+
+        @Override
+        public String toString() {
+            return "aload_getfield";
+        }
+    }
+
+    private static class DupGetField extends OpCode {
+
+        @Override
+        public void execute(OperationContext ctx) {
+            VariableStack stack = ctx.getStack();
+            Oop oop = stack.popOop();
+            stack.pushOop(oop);
+            ((Field) ctx.getInstruction().getResolved()).get(oop, stack);
+        }
+
+        @Override
+        public byte getByte() {
+            return (byte) DUP;
+        }
+
+        @Override
+        public String toString() {
+            return "dup_getfield";
+        }
+    }
+
+    private static class LoadLoadArith extends OpCode {
+
+        private final int arith;
+
+        private LoadLoadArith(int arith) {
+            this.arith = arith;
+        }
+
+        @Override
+        public void execute(OperationContext ctx) {
+            Instruction instruction = ctx.getInstruction();
+            Variables locals = ctx.getLocalVariables();
+            int a = locals.getInt(instruction.getOperand(0));
+            int b = locals.getInt(instruction.getOperand(1));
+            int result;
+            switch (arith) {
+                case 0x60:
+                    result = a + b;
+                    break;
+                case 0x64:
+                    result = a - b;
+                    break;
+                case 0x68:
+                    result = a * b;
+                    break;
+                case 0x7E:
+                    result = a & b;
+                    break;
+                case 0x80:
+                    result = a | b;
+                    break;
+                default:
+                    result = a ^ b;
+            }
+            ctx.getStack().pushInt(result);
+        }
+
+        @Override
+        public byte getByte() {
+            return (byte) ILOAD;
+        }
+
+        @Override
+        public String toString() {
+            return "iload_iload_" + name(arith);
+        }
+    }
+
+    private static class LoadLoadIfICmp extends OpCode {
+
+        private final int ifICmp;
+
+        private LoadLoadIfICmp(int ifICmp) {
+            this.ifICmp = ifICmp;
+        }
+
+        @Override
+        public void execute(OperationContext ctx) {
+            Instruction instruction = ctx.getInstruction();
+            Variables locals = ctx.getLocalVariables();
+            if (compare(ifICmp, locals.getInt(instruction.getOperand(0)), locals.getInt(instruction.getOperand(1)))) {
+                ctx.jump(instruction.getOperand(2));
+            }
+        }
+
+        @Override
+        public byte getByte() {
+            return (byte) ILOAD;
+        }
+
+        @Override
+        public String toString() {
+            return "iload_iload_" + name(ifICmp);
+        }
+    }
+
+    private static class LoadConstIfICmp extends OpCode {
+
+        private final int ifICmp;
+
+        private LoadConstIfICmp(int ifICmp) {
+            this.ifICmp = ifICmp;
+        }
+
+        @Override
+        public void execute(OperationContext ctx) {
+            Instruction instruction = ctx.getInstruction();
+            if (compare(ifICmp, ctx.getLocalVariables().getInt(instruction.getOperand(0)), instruction.getOperand(1))) {
+                ctx.jump(instruction.getOperand(2));
+            }
+        }
+
+        @Override
+        public byte getByte() {
+            return (byte) ILOAD;
+        }
+
+        @Override
+        public String toString() {
+            return "iload_const_" + name(ifICmp);
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.mcintyret.jvm.core.opcode;
 
 import com.mcintyret.jvm.core.exec.OperationContext;
-import com.mcintyret.jvm.core.exec.Variable;
-import com.mcintyret.jvm.core.exec.VariableStack;
 
 /**
  * User: tommcintyre
@@ -12,12 +10,7 @@ class Swap extends OpCode {
 
     @Override
     public void execute(OperationContext ctx) {
-        VariableStack stack = ctx.getStack();
-        Variable one = stack.pop();
-        Variable two = stack.pop();
-
-        stack.push(one);
-        stack.push(two);
+        ctx.getStack().swap();
     }
 
     @Override
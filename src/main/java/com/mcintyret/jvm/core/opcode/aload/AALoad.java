@@ -1,5 +1,6 @@
 package com.mcintyret.jvm.core.opcode.aload;
 
+import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.opcode.RefTyped;
 
 class AALoad extends SingleWidthALoad implements RefTyped {
@@ -9,4 +10,8 @@ class AALoad extends SingleWidthALoad implements RefTyped {
         return 0x32;
     }
 
+    @Override
+    protected int load(OopArray array, int index) {
+        return array.getField(index);
+    }
 }
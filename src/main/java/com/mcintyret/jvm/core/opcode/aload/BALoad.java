@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.aload;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopByteArray;
 import com.mcintyret.jvm.core.opcode.ByteTyped;
 
 class BALoad extends SingleWidthALoad implements ByteTyped {
@@ -8,4 +10,9 @@ class BALoad extends SingleWidthALoad implements ByteTyped {
     public byte getByte() {
         return 0x33;
     }
+
+    @Override
+    protected int load(OopArray array, int index) {
+        return ((OopByteArray) array).getArray()[index];
+    }
 }
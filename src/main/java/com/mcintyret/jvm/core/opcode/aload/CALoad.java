@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.aload;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopCharArray;
 import com.mcintyret.jvm.core.opcode.CharTyped;
 
 class CALoad extends SingleWidthALoad implements CharTyped {
@@ -8,4 +10,9 @@ class CALoad extends SingleWidthALoad implements CharTyped {
     public byte getByte() {
         return 0x34;
     }
+
+    @Override
+    protected int load(OopArray array, int index) {
+        return ((OopCharArray) array).getArray()[index];
+    }
 }
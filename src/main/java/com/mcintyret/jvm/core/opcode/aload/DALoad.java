@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.aload;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopDoubleArray;
 import com.mcintyret.jvm.core.opcode.DoubleTyped;
 
 class DALoad extends DoubleWidthALoad implements DoubleTyped {
@@ -8,4 +10,9 @@ class DALoad extends DoubleWidthALoad implements DoubleTyped {
     public byte getByte() {
         return 0x31;
     }
+
+    @Override
+    protected long load(OopArray array, int index) {
+        return Double.doubleToRawLongBits(((OopDoubleArray) array).getArray()[index]);
+    }
 }
@@ -5,7 +5,6 @@ import com.mcintyret.jvm.core.exec.VariableStack;
 import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.opcode.OpCode;
 import com.mcintyret.jvm.core.opcode.Typed;
-import com.mcintyret.jvm.core.type.SimpleType;
 
 abstract class DoubleWidthALoad extends OpCode implements Typed {
 
@@ -13,12 +12,12 @@ abstract class DoubleWidthALoad extends OpCode implements Typed {
     public final void execute(OperationContext ctx) {
         VariableStack stack = ctx.getStack();
 
-        int index = stack.popInt() * 2;
+        int index = stack.popInt();
         OopArray array = stack.popOop();
 
-        SimpleType type = getType();
-        stack.pushSingleWidth(array.getFields()[index], type);
-        stack.pushSingleWidth(array.getFields()[index + 1], type);
+        stack.pushDoubleWidth(load(array, index), getType());
     }
 
+    protected abstract long load(OopArray array, int index);
+
 }
@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.aload;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopFloatArray;
 import com.mcintyret.jvm.core.opcode.FloatTyped;
 
 class FALoad extends SingleWidthALoad implements FloatTyped {
@@ -8,4 +10,9 @@ class FALoad extends SingleWidthALoad implements FloatTyped {
     public byte getByte() {
         return 0x30;
     }
+
+    @Override
+    protected int load(OopArray array, int index) {
+        return Float.floatToRawIntBits(((OopFloatArray) array).getArray()[index]);
+    }
 }
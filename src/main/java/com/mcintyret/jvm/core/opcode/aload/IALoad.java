@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.aload;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopIntArray;
 import com.mcintyret.jvm.core.opcode.IntTyped;
 
 class IALoad extends SingleWidthALoad implements IntTyped {
@@ -8,4 +10,9 @@ class IALoad extends SingleWidthALoad implements IntTyped {
     public byte getByte() {
         return 0x2E;
     }
+
+    @Override
+    protected int load(OopArray array, int index) {
+        return ((OopIntArray) array).getArray()[index];
+    }
 }
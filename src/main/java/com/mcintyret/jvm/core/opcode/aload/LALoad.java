@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.aload;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopLongArray;
 import com.mcintyret.jvm.core.opcode.LongTyped;
 
 class LALoad extends DoubleWidthALoad implements LongTyped {
@@ -8,4 +10,9 @@ class LALoad extends DoubleWidthALoad implements LongTyped {
     public byte getByte() {
         return 0x2F;
     }
+
+    @Override
+    protected long load(OopArray array, int index) {
+        return ((OopLongArray) array).getArray()[index];
+    }
 }
@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.aload;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopShortArray;
 import com.mcintyret.jvm.core.opcode.ShortTyped;
 
 class SALoad extends SingleWidthALoad implements ShortTyped {
@@ -8,4 +10,9 @@ class SALoad extends SingleWidthALoad implements ShortTyped {
     public byte getByte() {
         return 0x35;
     }
+
+    @Override
+    protected int load(OopArray array, int index) {
+        return ((OopShortArray) array).getArray()[index];
+    }
 }
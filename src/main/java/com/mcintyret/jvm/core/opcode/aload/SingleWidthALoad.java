@@ -16,7 +16,9 @@ abstract class SingleWidthALoad extends OpCode implements Typed {
 
         OopArray array = stack.popOop();
 
-        stack.pushSingleWidth(array.getFields()[index], getType());
+        stack.pushSingleWidth(load(array, index), getType());
     }
 
+    protected abstract int load(OopArray array, int index);
+
 }
@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.astore;
 
+import com.mcintyret.jvm.core.gc.CardTable;
+import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.opcode.RefTyped;
 
 class AAStore extends SingleWidthAStore implements RefTyped {
@@ -8,4 +10,10 @@ class AAStore extends SingleWidthAStore implements RefTyped {
     public byte getByte() {
         return 0x53;
     }
+
+    @Override
+    protected void store(OopArray array, int index, int val) {
+        array.setField(index, val);
+        CardTable.mark(array);
+    }
 }
@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.astore;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopByteArray;
 import com.mcintyret.jvm.core.opcode.ByteTyped;
 
 class BAStore extends SingleWidthAStore implements ByteTyped {
@@ -8,4 +10,9 @@ class BAStore extends SingleWidthAStore implements ByteTyped {
     public byte getByte() {
         return 0x54;
     }
+
+    @Override
+    protected void store(OopArray array, int index, int val) {
+        ((OopByteArray) array).getArray()[index] = (byte) val;
+    }
 }
@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.astore;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopCharArray;
 import com.mcintyret.jvm.core.opcode.CharTyped;
 
 class CAStore extends SingleWidthAStore implements CharTyped {
@@ -8,4 +10,9 @@ class CAStore extends SingleWidthAStore implements CharTyped {
     public byte getByte() {
         return 0x55;
     }
+
+    @Override
+    protected void store(OopArray array, int index, int val) {
+        ((OopCharArray) array).getArray()[index] = (char) val;
+    }
 }
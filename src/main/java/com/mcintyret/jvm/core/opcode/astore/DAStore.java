@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.astore;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopDoubleArray;
 import com.mcintyret.jvm.core.opcode.DoubleTyped;
 
 class DAStore extends DoubleWidthAStore implements DoubleTyped {
@@ -8,4 +10,9 @@ class DAStore extends DoubleWidthAStore implements DoubleTyped {
     public byte getByte() {
         return 0x52;
     }
+
+    @Override
+    protected void store(OopArray array, int index, long val) {
+        ((OopDoubleArray) array).getArray()[index] = Double.longBitsToDouble(val);
+    }
 }
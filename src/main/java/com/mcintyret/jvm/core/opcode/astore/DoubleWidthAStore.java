@@ -5,24 +5,22 @@ import com.mcintyret.jvm.core.exec.VariableStack;
 import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.opcode.OpCode;
 import com.mcintyret.jvm.core.opcode.Typed;
-import com.mcintyret.jvm.core.type.SimpleType;
 
 abstract class DoubleWidthAStore extends OpCode implements Typed {
 
     @Override
     public final void execute(OperationContext ctx) {
         VariableStack stack = ctx.getStack();
-        SimpleType type = getType();
 
-        int val2 = stack.popSingleWidth(type);
-        int val1 = stack.popSingleWidth(type);
+        long val = stack.popDoubleWidth(getType());
 
-        int index = stack.popInt() * 2;
+        int index = stack.popInt();
 
         OopArray array = stack.popOop();
 
-        array.getFields()[index] = val1;
-        array.getFields()[index] = val2;
+        store(array, index, val);
     }
 
+    protected abstract void store(OopArray array, int index, long val);
+
 }
@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.astore;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopFloatArray;
 import com.mcintyret.jvm.core.opcode.FloatTyped;
 
 class FAStore extends SingleWidthAStore implements FloatTyped {
@@ -8,4 +10,9 @@ class FAStore extends SingleWidthAStore implements FloatTyped {
     public byte getByte() {
         return 0x51;
     }
+
+    @Override
+    protected void store(OopArray array, int index, int val) {
+        ((OopFloatArray) array).getArray()[index] = Float.intBitsToFloat(val);
+    }
 }
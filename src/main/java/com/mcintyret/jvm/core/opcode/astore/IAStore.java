@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.astore;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopIntArray;
 import com.mcintyret.jvm.core.opcode.IntTyped;
 
 class IAStore extends SingleWidthAStore implements IntTyped {
@@ -8,4 +10,9 @@ class IAStore extends SingleWidthAStore implements IntTyped {
     public byte getByte() {
         return 0x4F;
     }
+
+    @Override
+    protected void store(OopArray array, int index, int val) {
+        ((OopIntArray) array).getArray()[index] = val;
+    }
 }
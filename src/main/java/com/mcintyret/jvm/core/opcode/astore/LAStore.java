@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.astore;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopLongArray;
 import com.mcintyret.jvm.core.opcode.LongTyped;
 
 class LAStore extends DoubleWidthAStore implements LongTyped {
@@ -8,4 +10,9 @@ class LAStore extends DoubleWidthAStore implements LongTyped {
     public byte getByte() {
         return 0x50;
     }
+
+    @Override
+    protected void store(OopArray array, int index, long val) {
+        ((OopLongArray) array).getArray()[index] = val;
+    }
 }
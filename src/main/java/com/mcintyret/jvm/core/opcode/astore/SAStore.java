@@ -1,5 +1,7 @@
 package com.mcintyret.jvm.core.opcode.astore;
 
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopShortArray;
 import com.mcintyret.jvm.core.opcode.ShortTyped;
 
 class SAStore extends SingleWidthAStore implements ShortTyped {
@@ -8,4 +10,9 @@ class SAStore extends SingleWidthAStore implements ShortTyped {
     public byte getByte() {
         return 0x56;
     }
+
+    @Override
+    protected void store(OopArray array, int index, int val) {
+        ((OopShortArray) array).getArray()[index] = (short) val;
+    }
 }
@@ -16,7 +16,9 @@ abstract class SingleWidthAStore extends OpCode implements Typed {
         int index = stack.popInt();
         OopArray array = stack.popOop();
 
-        array.getFields()[index] = val;
+        store(array, index, val);
     }
 
+    protected abstract void store(OopArray array, int index, int val);
+
 }
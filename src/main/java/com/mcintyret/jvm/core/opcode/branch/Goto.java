@@ -2,6 +2,7 @@ package com.mcintyret.jvm.core.opcode.branch;
 
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.opcode.OpCode;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
 /**
  * User: tommcintyre
@@ -11,7 +12,12 @@ class Goto extends OpCode {
 
     @Override
     public void execute(OperationContext ctx) {
-        ctx.getByteIterator().seek(ctx.getByteIterator().nextShort() - 3);
+        ctx.jump(ctx.getInstruction().getOperand(0));
+    }
+
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{pos + bytes.nextShort()};
     }
 
     @Override
@@ -1,9 +1,7 @@
 package com.mcintyret.jvm.core.opcode.branch;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import com.mcintyret.jvm.core.exec.OperationContext;
+import com.mcintyret.jvm.core.opcode.Instruction;
 import com.mcintyret.jvm.core.opcode.OpCode;
 import com.mcintyret.jvm.core.util.ByteIterator;
 
@@ -15,27 +13,44 @@ class LookupSwitch extends OpCode {
 
     @Override
     public void execute(OperationContext ctx) {
-        ByteIterator bi = ctx.getByteIterator();
-        int startPos = bi.getPos();
+        Instruction instruction = ctx.getInstruction();
+        int key = ctx.getStack().popRaw();
+
+        // operands are [default, key0, target0, key1, target1...], keys sorted as the spec requires
+        int low = 0;
+        int high = (instruction.getOperandCount() - 1) / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midKey = instruction.getOperand(1 + mid * 2);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                ctx.jump(instruction.getOperand(2 + mid * 2));
+                return;
+            }
+        }
+        ctx.jump(instruction.getOperand(0));
+    }
 
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
         // first get rid of the padding
-        bi.seek(4 - (startPos % 4));
-
-        int defaultOffset = bi.nextInt();
-
-        int npairs = bi.nextInt();
+        for (int i = 0; i < 3 - (pos % 4); i++) {
+            bytes.nextByte();
+        }
 
-        Map<Integer, Integer> lookupMap = new HashMap<>(npairs);
+        int defaultTarget = pos + bytes.nextInt();
+        int npairs = bytes.nextInt();
 
+        int[] operands = new int[1 + npairs * 2];
+        operands[0] = defaultTarget;
         for (int i = 0; i < npairs; i++) {
-            lookupMap.put(bi.nextInt(), bi.nextInt());
+            operands[1 + i * 2] = bytes.nextInt();
+            operands[2 + i * 2] = pos + bytes.nextInt();
         }
-
-        Integer res = lookupMap.get(ctx.getStack().popRaw());
-
-        int offset = res == null ? defaultOffset : res;
-
-        bi.seek(offset - (bi.getPos() - startPos + 1)); // -1 because we popped 1 to know it was a LookupSwitch!
+        return operands;
     }
 
     @Override
@@ -3,17 +3,22 @@ package com.mcintyret.jvm.core.opcode.branch;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.opcode.OpCode;
 import com.mcintyret.jvm.core.type.SimpleType;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
 abstract class UnaryCondition extends OpCode {
 
     @Override
     public void execute(OperationContext ctx) {
-        int jump = ctx.getByteIterator().nextShort();
         if (conditionMet(ctx.getStack().popSingleWidth(getType()))) {
-            ctx.getByteIterator().seek(jump - 3);
+            ctx.jump(ctx.getInstruction().getOperand(0));
         }
     }
 
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{pos + bytes.nextShort()};
+    }
+
     protected abstract boolean conditionMet(int pop);
 
     protected abstract SimpleType getType();
@@ -1,13 +1,12 @@
 package com.mcintyret.jvm.core.opcode.constant;
 
-import com.mcintyret.jvm.core.exec.OperationContext;
-import com.mcintyret.jvm.core.opcode.OpCode;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
-class Ldc_W extends OpCode {
+class Ldc_W extends LoadConstant {
 
     @Override
-    public void execute(OperationContext ctx) {
-        ctx.getConstantPool().getConstant(ctx.getByteIterator().nextShort(), ctx.getStack());
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextShortUnsigned()};
     }
 
     @Override
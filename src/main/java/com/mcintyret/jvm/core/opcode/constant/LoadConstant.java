@@ -0,0 +1,31 @@
+package com.mcintyret.jvm.core.opcode.constant;
+
+import com.mcintyret.jvm.core.constantpool.ConstantPool;
+import com.mcintyret.jvm.core.exec.OperationContext;
+import com.mcintyret.jvm.core.opcode.OpCode;
+import com.mcintyret.jvm.core.opcode.QuickOpCode;
+
+abstract class LoadConstant extends OpCode {
+
+    private final QuickOpCode quick = new Quick();
+
+    @Override
+    public final void execute(OperationContext ctx) {
+        Object constant = ctx.getConstantPool().resolveConstant(ctx.getInstruction().getOperand(0));
+        ctx.quicken(quick, constant);
+
+        ConstantPool.receiveConstant(constant, ctx.getStack());
+    }
+
+    private class Quick extends QuickOpCode {
+
+        private Quick() {
+            super(LoadConstant.this);
+        }
+
+        @Override
+        public void execute(OperationContext ctx) {
+            ConstantPool.receiveConstant(ctx.getInstruction().getResolved(), ctx.getStack());
+        }
+    }
+}
@@ -1,20 +1,13 @@
 package com.mcintyret.jvm.core.opcode.dup;
 
 import com.mcintyret.jvm.core.exec.OperationContext;
-import com.mcintyret.jvm.core.exec.Variable;
-import com.mcintyret.jvm.core.exec.VariableStack;
 import com.mcintyret.jvm.core.opcode.OpCode;
 
 class Dup extends OpCode {
 
     @Override
     public void execute(OperationContext ctx) {
-        VariableStack stack = ctx.getStack();
-
-        Variable v = stack.pop();
-
-        stack.push(v);
-        stack.push(v);
+        ctx.getStack().dup(1, 0);
     }
 
     @Override
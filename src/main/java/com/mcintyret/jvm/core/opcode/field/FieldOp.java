@@ -3,15 +3,37 @@ package com.mcintyret.jvm.core.opcode.field;
 import com.mcintyret.jvm.core.clazz.Field;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.opcode.OpCode;
+import com.mcintyret.jvm.core.opcode.QuickOpCode;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
 abstract class FieldOp extends OpCode {
 
+    private final QuickOpCode quick = new Quick();
+
     @Override
     public final void execute(OperationContext ctx) {
-        Field field = ctx.getConstantPool().getField(ctx.getByteIterator().nextShortUnsigned());
+        Field field = ctx.getConstantPool().getField(ctx.getInstruction().getOperand(0));
+        ctx.quicken(quick, field);
 
         doExecute(field, ctx);
     }
 
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextShortUnsigned()};
+    }
+
     protected abstract void doExecute(Field field, OperationContext ctx);
+
+    private class Quick extends QuickOpCode {
+
+        private Quick() {
+            super(FieldOp.this);
+        }
+
+        @Override
+        public void execute(OperationContext ctx) {
+            doExecute((Field) ctx.getInstruction().getResolved(), ctx);
+        }
+    }
 }
@@ -1,36 +1,64 @@
 package com.mcintyret.jvm.core.opcode.invoke;
 
-import java.util.List;
-import java.util.ListIterator;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import com.mcintyret.jvm.core.Heap;
 import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.clazz.NativeMethod;
+import com.mcintyret.jvm.core.exec.ExecutionListener;
+import com.mcintyret.jvm.core.exec.ExecutionListeners;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.jit.CompiledMethod;
+import com.mcintyret.jvm.core.jit.GuestException;
+import com.mcintyret.jvm.core.jit.Jit;
 import com.mcintyret.jvm.core.nativeimpls.NativeImplementation;
 import com.mcintyret.jvm.core.nativeimpls.NativeReturn;
 import com.mcintyret.jvm.core.opcode.AThrow;
 import com.mcintyret.jvm.core.opcode.OpCode;
-import com.mcintyret.jvm.core.type.SimpleType;
-import com.mcintyret.jvm.core.type.Type;
+import com.mcintyret.jvm.core.opcode.QuickOpCode;
+import com.mcintyret.jvm.core.util.ByteIterator;
+import com.mcintyret.jvm.core.util.Utils;
 
 abstract class Invoke extends OpCode {
 
-    private static final Logger LOG = LoggerFactory.getLogger(Invoke.class);
+    private final QuickOpCode quick = new Quick();
 
     @Override
     public final void execute(OperationContext ctx) {
-        Method method = ctx.getConstantPool().getMethod(ctx.getByteIterator().nextShortUnsigned());
-        LOG.info("Invoking {}.{}", method.getClassObject().getClassName(), method.getSignature());
+        Method method = ctx.getConstantPool().getMethod(ctx.getInstruction().getOperand(0));
+        ctx.quicken(quick, method);
 
-        doInvoke(method, ctx);
+        invoke(method, ctx);
+    }
+
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextShortUnsigned()};
     }
 
     protected abstract void doInvoke(Method method, OperationContext ctx);
 
+    private class Quick extends QuickOpCode {
+
+        private Quick() {
+            super(Invoke.this);
+        }
+
+        @Override
+        public void execute(OperationContext ctx) {
+            invoke((Method) ctx.getInstruction().getResolved(), ctx);
+        }
+    }
+
+    private void invoke(Method method, OperationContext ctx) {
+        ctx.getExecutionStack().getMetrics().onInvoke(method);
+        ExecutionListener listener = ExecutionListeners.get();
+        if (listener != null) {
+            listener.onInvoke(method);
+        }
+
+        doInvoke(method, ctx);
+    }
+
     protected void invokeNativeMethod(NativeMethod nativeMethod, Variables args, OperationContext ctx) {
         NativeImplementation nativeImplementation = nativeMethod.getNativeImplementation();
         if (nativeImplementation == null) {
@@ -43,37 +71,24 @@ abstract class Invoke extends OpCode {
         }
     }
 
-    protected Variables getMethodArgs(OperationContext ctx, Method method) {
-        boolean isStatic = method.isStatic();
-
-        int shift = isStatic ? 0 : 1;
-
-        Variables args = method.newArgArray();
-
-        List<Type> argTypes = method.getSignature().getArgTypes();
-        int argCount = argTypes.size();
-        ListIterator<Type> it = argTypes.listIterator(argCount);
-
-        int pos = method.getSignature().getTotalWidth();
-        while (it.hasPrevious()) {
-            Type argType = it.previous();
-            SimpleType simpleType = argType.asSimpleType();
-            pos -= argType.getWidth();
-
-            // +1 because 0 is this if non-static
-            // TODO: this needs to be better
-            if (argType.isDoubleWidth()) {
-                args.putWide(pos + shift, simpleType, ctx.getStack().popDoubleWidth(simpleType));
-            } else {
-                args.put(pos + shift, simpleType, ctx.getStack().popSingleWidth(simpleType));
+    protected void invokeInterpretedMethod(Method method, Variables args, OperationContext ctx) {
+        CompiledMethod compiled = Jit.onInvoke(method, ctx.getExecutionStack().getMetrics());
+        if (compiled != null) {
+            try {
+                ctx.getExecutionStack().enterCompiledCode();
+                try {
+                    compiled.invoke(args, ctx.getStack());
+                } finally {
+                    ctx.getExecutionStack().exitCompiledCode();
+                }
+            } catch (GuestException e) {
+                ctx.getStack().pushOop(Heap.getOop(e.getThrowable()));
+                new AThrow().execute(ctx);
             }
+        } else if (!ctx.getExecutionStack().push(method, args)) {
+            ctx.getStack().pushOop(Utils.toThrowableOop(new StackOverflowError(), ctx.getThread()));
+            new AThrow().execute(ctx);
         }
-
-        if (!isStatic) {
-            args.putOop(0, ctx.getStack().popOop());
-        }
-
-        return args;
     }
 
 }
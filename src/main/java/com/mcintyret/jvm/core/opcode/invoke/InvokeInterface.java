@@ -2,9 +2,9 @@ package com.mcintyret.jvm.core.opcode.invoke;
 
 import com.mcintyret.jvm.core.clazz.InterfaceMethod;
 import com.mcintyret.jvm.core.clazz.Method;
-import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.oop.Oop;
 import com.mcintyret.jvm.core.oop.OopClass;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
 class InvokeInterface extends InvokeIndirect {
 
@@ -19,7 +19,9 @@ class InvokeInterface extends InvokeIndirect {
     }
 
     @Override
-    protected final void afterInvoke(OperationContext ctx) {
-        ctx.getByteIterator().nextShort(); // InvokeInterface has 2 extra args which can be ignored
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        int[] operands = super.readOperands(bytes, pos);
+        bytes.nextShort(); // InvokeInterface has 2 extra args which can be ignored
+        return operands;
     }
 }
@@ -2,7 +2,6 @@ package com.mcintyret.jvm.core.opcode.invoke;
 
 import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.clazz.NativeMethod;
-import com.mcintyret.jvm.core.exec.ExecutionStackElement;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
 import com.mcintyret.jvm.parse.Modifier;
@@ -15,13 +14,12 @@ abstract class InvokeSimple extends Invoke {
 
     @Override
     protected final void doInvoke(Method method, OperationContext ctx) {
-        Variables args = getMethodArgs(ctx, method);
+        Variables args = ctx.getStack().popArgs(method.getArgWidth());
 
         if (method.hasModifier(Modifier.NATIVE)) {
             invokeNativeMethod((NativeMethod) method, args, ctx);
         } else {
-            ctx.getExecutionStack().push(
-                new ExecutionStackElement(method, args, method.getClassObject().getConstantPool(), ctx.getExecutionStack()));
+            invokeInterpretedMethod(method, args, ctx);
         }
     }
 
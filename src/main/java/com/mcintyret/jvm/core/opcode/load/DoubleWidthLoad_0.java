@@ -1,11 +1,11 @@
 package com.mcintyret.jvm.core.opcode.load;
 
-import com.mcintyret.jvm.core.util.ByteIterator;
+import com.mcintyret.jvm.core.opcode.Instruction;
 
 abstract class DoubleWidthLoad_0 extends DoubleWidthLoad {
     
     @Override
-    protected final int getIndex(ByteIterator bytes) {
+    protected final int getIndex(Instruction instruction) {
         return 0;
     }
 }
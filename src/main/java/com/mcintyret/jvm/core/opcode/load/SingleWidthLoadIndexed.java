@@ -1,11 +1,17 @@
 package com.mcintyret.jvm.core.opcode.load;
 
+import com.mcintyret.jvm.core.opcode.Instruction;
 import com.mcintyret.jvm.core.util.ByteIterator;
 
 abstract class SingleWidthLoadIndexed extends SingleWidthLoad {
 
     @Override
-    protected final int getIndex(ByteIterator bytes) {
-        return bytes.nextByte();
+    protected final int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextByteUnsigned()};
+    }
+
+    @Override
+    protected final int getIndex(Instruction instruction) {
+        return instruction.getOperand(0);
     }
 }
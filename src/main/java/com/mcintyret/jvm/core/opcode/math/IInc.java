@@ -1,6 +1,7 @@
 package com.mcintyret.jvm.core.opcode.math;
 
 import com.mcintyret.jvm.core.exec.OperationContext;
+import com.mcintyret.jvm.core.opcode.Instruction;
 import com.mcintyret.jvm.core.opcode.OpCode;
 import com.mcintyret.jvm.core.util.ByteIterator;
 
@@ -12,12 +13,17 @@ class IInc extends OpCode {
 
     @Override
     public void execute(OperationContext ctx) {
-        ByteIterator bi = ctx.getByteIterator();
+        Instruction instruction = ctx.getInstruction();
 
-        int index = bi.nextByte();
+        int index = instruction.getOperand(0);
         int val = ctx.getLocalVariables().getInt(index);
 
-        ctx.getLocalVariables().putInt(index, val + bi.nextByte());
+        ctx.getLocalVariables().putInt(index, val + instruction.getOperand(1));
+    }
+
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextByteUnsigned(), bytes.nextByte()};
     }
 
     @Override
@@ -1,12 +1,13 @@
 package com.mcintyret.jvm.core.opcode.monitor;
 
-import java.util.concurrent.locks.Lock;
+import com.mcintyret.jvm.core.oop.MarkRef;
+import com.mcintyret.jvm.core.oop.Oop;
 
 class MonitorEnter extends Monitor {
 
     @Override
-    protected void handleMonitor(Lock monitor) {
-        monitor.lock();
+    protected void handleMonitor(Oop oop) {
+        MarkRef.enter(oop);
     }
 
     @Override
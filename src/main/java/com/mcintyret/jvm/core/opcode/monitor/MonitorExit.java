@@ -1,12 +1,13 @@
 package com.mcintyret.jvm.core.opcode.monitor;
 
-import java.util.concurrent.locks.Lock;
+import com.mcintyret.jvm.core.oop.MarkRef;
+import com.mcintyret.jvm.core.oop.Oop;
 
 class MonitorExit extends Monitor {
 
     @Override
-    protected void handleMonitor(Lock monitor) {
-        monitor.unlock();
+    protected void handleMonitor(Oop oop) {
+        MarkRef.exit(oop);
     }
 
     @Override
@@ -5,17 +5,23 @@ import com.mcintyret.jvm.core.clazz.AbstractClassObject;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.opcode.OpCode;
 import com.mcintyret.jvm.core.type.SimpleType;
+import com.mcintyret.jvm.core.util.ByteIterator;
 import com.mcintyret.jvm.core.util.Utils;
 
 class ANewArray extends OpCode {
 
     @Override
     public void execute(OperationContext ctx) {
-        AbstractClassObject clazz = ctx.getConstantPool().getClassObject(ctx.getByteIterator().nextShort());
+        AbstractClassObject clazz = ctx.getConstantPool().getClassObject(ctx.getInstruction().getOperand(0));
 
         ctx.getStack().pushSingleWidth(Heap.allocate(Utils.newArray(clazz.getType(), ctx.getStack().popInt())), SimpleType.REF);
     }
 
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextShortUnsigned()};
+    }
+
     @Override
     public byte getByte() {
         return (byte) 0xBD;
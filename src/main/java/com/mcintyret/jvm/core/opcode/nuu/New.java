@@ -4,19 +4,45 @@ import com.mcintyret.jvm.core.Heap;
 import com.mcintyret.jvm.core.clazz.ClassObject;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.opcode.OpCode;
+import com.mcintyret.jvm.core.opcode.QuickOpCode;
 import com.mcintyret.jvm.core.type.SimpleType;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
 class New extends OpCode {
 
+    private final QuickOpCode quick = new Quick();
+
     @Override
     public void execute(OperationContext ctx) {
-        ClassObject clazz = (ClassObject) ctx.getConstantPool().getClassObject(ctx.getByteIterator().nextShort());
+        ClassObject clazz = (ClassObject) ctx.getConstantPool().getClassObject(ctx.getInstruction().getOperand(0));
+        ctx.quicken(quick, clazz);
+
+        allocate(clazz, ctx);
+    }
 
+    private static void allocate(ClassObject clazz, OperationContext ctx) {
         ctx.getStack().pushSingleWidth(Heap.allocate(clazz.newObject()), SimpleType.REF);
     }
 
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextShortUnsigned()};
+    }
+
     @Override
     public byte getByte() {
         return (byte) 0xBB;
     }
+
+    private class Quick extends QuickOpCode {
+
+        private Quick() {
+            super(New.this);
+        }
+
+        @Override
+        public void execute(OperationContext ctx) {
+            allocate((ClassObject) ctx.getInstruction().getResolved(), ctx);
+        }
+    }
 }
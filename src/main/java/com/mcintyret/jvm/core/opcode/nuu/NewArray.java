@@ -4,17 +4,23 @@ import com.mcintyret.jvm.core.Heap;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.opcode.OpCode;
 import com.mcintyret.jvm.core.type.SimpleType;
+import com.mcintyret.jvm.core.util.ByteIterator;
 import com.mcintyret.jvm.core.util.Utils;
 
 class NewArray extends OpCode {
 
     @Override
     public void execute(OperationContext ctx) {
-        SimpleType type = SimpleType.forByte(ctx.getByteIterator().nextByte());
+        SimpleType type = SimpleType.forByte((byte) ctx.getInstruction().getOperand(0));
 
         ctx.getStack().pushSingleWidth(Heap.allocate(Utils.newArray(type, ctx.getStack().popInt())), SimpleType.REF);
     }
 
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextByte()};
+    }
+
     @Override
     public byte getByte() {
         return (byte) 0xBC;
@@ -2,11 +2,17 @@ package com.mcintyret.jvm.core.opcode.push;
 
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.opcode.OpCode;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
 class BIPush extends OpCode {
     @Override
     public void execute(OperationContext ctx) {
-        ctx.getStack().pushByte(ctx.getByteIterator().nextByte());
+        ctx.getStack().pushByte((byte) ctx.getInstruction().getOperand(0));
+    }
+
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextByte()};
     }
 
     @Override
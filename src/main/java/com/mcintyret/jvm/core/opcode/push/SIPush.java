@@ -2,16 +2,22 @@ package com.mcintyret.jvm.core.opcode.push;
 
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.opcode.OpCode;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
 class SIPush extends OpCode {
 
     @Override
     public void execute(OperationContext ctx) {
-        ctx.getStack().pushInt(ctx.getByteIterator().nextShortUnsigned()); // TODO: why unsigned?
+        ctx.getStack().pushInt(ctx.getInstruction().getOperand(0));
+    }
+
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextShort()};
     }
 
     @Override
     public byte getByte() {
         return 0x11;
     }
-}
\ No newline at end of file
+}
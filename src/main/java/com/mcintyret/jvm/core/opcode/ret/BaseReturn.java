@@ -1,8 +1,7 @@
 package com.mcintyret.jvm.core.opcode.ret;
 
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
+import com.mcintyret.jvm.core.exec.ExecutionListener;
+import com.mcintyret.jvm.core.exec.ExecutionListeners;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.opcode.OpCode;
 
@@ -12,15 +11,16 @@ import com.mcintyret.jvm.core.opcode.OpCode;
  */
 abstract class BaseReturn extends OpCode {
 
-    private static final Logger LOG = LoggerFactory.getLogger(BaseReturn.class);
-
     @Override
     public final void execute(OperationContext ctx) {
         ctx.getExecutionStack().pop();
 
         returnValue(ctx);
 
-        LOG.info("Returning from {}", ctx.getMethod());
+        ExecutionListener listener = ExecutionListeners.get();
+        if (listener != null) {
+            listener.onReturn(ctx.getMethod());
+        }
     }
 
     protected abstract void returnValue(OperationContext ctx);
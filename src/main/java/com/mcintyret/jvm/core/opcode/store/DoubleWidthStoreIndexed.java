@@ -1,12 +1,18 @@
 package com.mcintyret.jvm.core.opcode.store;
 
+import com.mcintyret.jvm.core.opcode.Instruction;
 import com.mcintyret.jvm.core.util.ByteIterator;
 
 abstract class DoubleWidthStoreIndexed extends DoubleWidthStore {
 
     @Override
-    protected final int getIndex(ByteIterator bytes) {
-        return bytes.nextByte();
+    protected final int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextByteUnsigned()};
+    }
+
+    @Override
+    protected final int getIndex(Instruction instruction) {
+        return instruction.getOperand(0);
     }
 
 }
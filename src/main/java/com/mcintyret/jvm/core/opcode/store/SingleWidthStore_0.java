@@ -1,11 +1,11 @@
 package com.mcintyret.jvm.core.opcode.store;
 
-import com.mcintyret.jvm.core.util.ByteIterator;
+import com.mcintyret.jvm.core.opcode.Instruction;
 
 abstract class SingleWidthStore_0 extends SingleWidthStore {
 
     @Override
-    protected final int getIndex(ByteIterator bytes) {
+    protected final int getIndex(Instruction instruction) {
         return 0;
     }
 }
@@ -7,6 +7,7 @@ import com.mcintyret.jvm.core.exec.VariableStack;
 import com.mcintyret.jvm.core.oop.Oop;
 import com.mcintyret.jvm.core.opcode.OpCode;
 import com.mcintyret.jvm.core.type.SimpleType;
+import com.mcintyret.jvm.core.util.ByteIterator;
 
 abstract class TypeOp extends OpCode {
 
@@ -14,7 +15,7 @@ abstract class TypeOp extends OpCode {
     public final void execute(OperationContext ctx) {
         VariableStack stack = ctx.getStack();
         int address = stack.popSingleWidth(SimpleType.REF);
-        AbstractClassObject type = ctx.getConstantPool().getClassObject(ctx.getByteIterator().nextShort());
+        AbstractClassObject type = ctx.getConstantPool().getClassObject(ctx.getInstruction().getOperand(0));
         if (address == Heap.NULL_POINTER) {
             handleNull(stack);
         } else {
@@ -23,6 +24,11 @@ abstract class TypeOp extends OpCode {
         }
     }
 
+    @Override
+    protected int[] readOperands(ByteIterator bytes, int pos) {
+        return new int[]{bytes.nextShortUnsigned()};
+    }
+
     protected abstract void handleType(boolean instanceOf, VariableStack stack, int address);
 
     protected abstract void handleNull(VariableStack stack);
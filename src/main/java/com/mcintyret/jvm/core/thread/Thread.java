@@ -7,7 +7,6 @@ import com.mcintyret.jvm.core.clazz.ClassObject;
 import com.mcintyret.jvm.core.clazz.Field;
 import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.exec.ExecutionStack;
-import com.mcintyret.jvm.core.exec.ExecutionStackElement;
 import com.mcintyret.jvm.core.exec.Variables;
 import com.mcintyret.jvm.core.oop.Oop;
 import com.mcintyret.jvm.core.oop.OopClass;
@@ -84,25 +83,24 @@ public class Thread {
     }
 
     private static String getThreadName(Oop thread) {
-        return Utils.toString(Heap.getOopArray(thread.getFields()[NAME_FIELD.getOffset()]));
+        return Utils.toString(Heap.getOopArray(thread.getField(NAME_FIELD.getOffset())));
     }
 
     static long getThreadId(Oop thread) {
         int offset = ID_FIELD.getOffset();
-        int[] fields = thread.getFields();
-        return Utils.toLong(fields[offset], fields[offset + 1]);
+        return Utils.toLong(thread.getField(offset), thread.getField(offset + 1));
     }
 
     private class ActualThread extends java.lang.Thread {
 
-        private final ExecutionStack executionStack = new ExecutionStack(Thread.this);
-
         @Override
         public void run() {
             try {
+                // Created here, as its frames are held by the thread it runs on
+                ExecutionStack executionStack = new ExecutionStack(Thread.this);
                 Variables args = THREAD_RUN.newArgArray();
                 args.putOop(0, thisThread);
-                executionStack.push(new ExecutionStackElement(THREAD_RUN, args, THREAD_CLASS.getConstantPool(), executionStack));
+                executionStack.push(THREAD_RUN, args);
                 executionStack.execute();
             } finally {
                 Threads.deregister(Thread.this);
@@ -1,6 +1,8 @@
 package com.mcintyret.jvm.core.thread;
 
+import java.util.ArrayList;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.mcintyret.jvm.core.oop.OopClass;
@@ -13,17 +15,21 @@ public class Threads {
 
     private static final Map<OopClass, Thread> THREADS = new IdentityHashMap<>();
 
-    public static Thread get(OopClass oopThread) {
+    public static synchronized Thread get(OopClass oopThread) {
         return THREADS.get(oopThread);
     }
 
-    public static void register(Thread thread) {
+    public static synchronized List<Thread> getAll() {
+        return new ArrayList<>(THREADS.values());
+    }
+
+    public static synchronized void register(Thread thread) {
         if (THREADS.put(thread.getThisThread(), thread) != null) {
 //            throw new AssertionError("Multiple live threads with id " + thread.getId());
         }
     }
 
-    public static void deregister(Thread thread) {
+    public static synchronized void deregister(Thread thread) {
         if (THREADS.remove(thread.getThisThread()) != thread) {
 //            throw new AssertionError("Thread with id '" + thread.getId() + "' not registered");
         }
@@ -14,6 +14,11 @@ public final class ArrayType extends ReferenceType {
     private static final Map<ArrayType, ArrayType> CACHE = new HashMap<>();
 
     public static ArrayType create(Type type, int dimensions) {
+        // An array of String[] is a String[][], whether it came from a descriptor or from anewarray
+        if (type instanceof ArrayType) {
+            ArrayType component = (ArrayType) type;
+            return create(component.componentType, component.dimensions + dimensions);
+        }
         ArrayType at = new ArrayType(type, dimensions);
         ArrayType canonical = CACHE.get(at);
         if (canonical == null) {
@@ -61,6 +66,10 @@ public final class ArrayType extends ReferenceType {
         return componentType;
     }
 
+    public int getDimensions() {
+        return dimensions;
+    }
+
     @Override
     public ArrayClassObject getClassObject() {
         return ArrayClassObject.forType(this);
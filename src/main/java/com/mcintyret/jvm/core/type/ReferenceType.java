@@ -34,8 +34,13 @@ public abstract class ReferenceType implements Type {
     @Override
     public OopClassClass getOopClassClass() {
         return oopClassClass == null ? (oopClassClass = Heap.allocateAndGet(
-            Utils.getClassObject(ImportantClasses.JAVA_LANG_CLASS).newObject((clazz, fields) ->
-                new OopClassClass(clazz, fields, this)))) : oopClassClass;
+            Utils.getClassObject(ImportantClasses.JAVA_LANG_CLASS).newObject((clazz, fieldCount) ->
+                new OopClassClass(clazz, fieldCount, this)))) : oopClassClass;
+    }
+
+    @Override
+    public void setOopClassClass(OopClassClass oopClassClass) {
+        this.oopClassClass = oopClassClass;
     }
 
 }
@@ -99,8 +99,13 @@ public enum SimpleType implements Type {
     @Override
     public OopClassClass getOopClassClass() {
         return classOop == null ? (classOop = Heap.allocateAndGet(
-            getClassObject(ImportantClasses.JAVA_LANG_CLASS).newObject((clazz, fields) ->
-                new OopClassClass(clazz, fields, SimpleType.this)))) : classOop;
+            getClassObject(ImportantClasses.JAVA_LANG_CLASS).newObject((clazz, fieldCount) ->
+                new OopClassClass(clazz, fieldCount, SimpleType.this)))) : classOop;
+    }
+
+    @Override
+    public void setOopClassClass(OopClassClass oopClassClass) {
+        this.classOop = oopClassClass;
     }
 
     @Override
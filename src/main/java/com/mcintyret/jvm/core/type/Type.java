@@ -8,6 +8,9 @@ public interface Type {
 
     OopClassClass getOopClassClass();
 
+    // For restoring a HeapSnapshot, which already has the type's Class Oop
+    void setOopClassClass(OopClassClass oopClassClass);
+
     boolean isArray();
 
     boolean isInterface();
@@ -12,11 +12,12 @@ import com.mcintyret.jvm.core.clazz.ClassObject;
 import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.clazz.ValueReceiver;
 import com.mcintyret.jvm.core.exec.ExecutionStack;
-import com.mcintyret.jvm.core.exec.ExecutionStackElement;
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.gc.CardTable;
 import com.mcintyret.jvm.core.nativeimpls.NativeReturn;
 import com.mcintyret.jvm.core.oop.Oop;
 import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopCharArray;
 import com.mcintyret.jvm.core.oop.OopClass;
 import com.mcintyret.jvm.core.thread.Thread;
 import com.mcintyret.jvm.core.type.ArrayType;
@@ -26,8 +27,7 @@ import com.mcintyret.jvm.core.type.Type;
 public class Utils {
 
     public static OopArray newArray(Type type, int size) {
-        ArrayClassObject aco = ArrayClassObject.forType(ArrayType.create(type, 1));
-        return new OopArray(aco, new int[size * type.getWidth()]);
+        return ArrayClassObject.forType(ArrayType.create(type, 1)).newArray(size);
     }
 
     public static long toLong(double d) {
@@ -50,18 +50,14 @@ public class Utils {
         if (stringOop == null) {
             return null;
         }
-        return toString((OopArray) Heap.getOop(stringOop.getFields()[0]));
+        return toString((OopArray) Heap.getOop(stringOop.getField(0)));
     }
 
     public static String toString(OopArray charArrayOop) {
         if (charArrayOop == null) {
             return null;
         }
-        char[] chars = new char[charArrayOop.getLength()];
-        for (int i = 0; i < chars.length; i++) {
-            chars[i] = (char) charArrayOop.getFields()[i];
-        }
-        return new String(chars);
+        return new String(((OopCharArray) charArrayOop).getArray());
     }
 
     public static String toString(Oop oop) {
@@ -85,15 +81,12 @@ public class Utils {
         OopClass stringOop = stringClass.newObject();
         Heap.allocate(stringOop);
 
-        int[] chars = new int[string.length()];
-        for (int i = 0; i < string.length(); i++) {
-            chars[i] = string.charAt(i);
-        }
         ArrayClassObject co = ArrayClassObject.forType(ArrayType.create(SimpleType.CHAR, 1));
-        OopArray charArrayOop = new OopArray(co, chars);
+        OopArray charArrayOop = new OopCharArray(co, string.toCharArray());
         int charArrayAddress = Heap.allocate(charArrayOop);
 
-        stringOop.getFields()[0] = charArrayAddress;
+        stringOop.setField(0, charArrayAddress);
+        CardTable.mark(stringOop); // In case allocating the chars promoted it
         // The only other field, hash, is initially 0 and so doesn't need changing
 
         return stringOop;
@@ -102,8 +95,9 @@ public class Utils {
     public static NativeReturn executeMethodAndThrow(Method method, Variables args, Thread thread) {
         ExecutionStack stack = new ExecutionStack(thread);
 
-        stack.push(new ExecutionStackElement(method, args,
-            method.getClassObject().getConstantPool(), stack));
+        if (!stack.push(method, args)) {
+            throw new StackOverflowError("No room to execute " + method);
+        }
 
         stack.execute();
 
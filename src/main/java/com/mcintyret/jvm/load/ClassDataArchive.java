@@ -0,0 +1,225 @@
+package com.mcintyret.jvm.load;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.mcintyret.jvm.parse.ClassFile;
+import com.mcintyret.jvm.parse.ClassFileCodec;
+import com.mcintyret.jvm.parse.ClassFileReader;
+
+/**
+ * A class data sharing archive: standard library classes, already parsed (see ClassFileCodec) and indexed by class name
+ * in a single file, which later runs map and read them from rather than indexing the jar's twenty thousand entries, and
+ * inflating and parsing the classes they need. The archive records the jar's checksum (see ZipClassPath.getChecksum()),
+ * and is ignored if it no longer matches.
+ *
+ * Classes are archived as parsed ClassFiles rather than linked ClassObjects: a ClassObject's statics live on the heap,
+ * and its Methods pick up quickened and compiled code as they run, so classes are still linked afresh in each run.
+ * Classes that aren't in the archive are found in the jar, which is only indexed once one is asked for.
+ *
+ * An archive is written either at the end of a run with jvm.cds.dump=true, of the classes that run loaded, or by
+ * running this class's main() with jvm.cds.archive, java.lib.jar.path and jvm.preload set, of the classes in the
+ * preload list.
+ *
+ * Each class's original class file is archived alongside its encoded form, so that an archived class is still a
+ * ClassFileResource like any other.
+ *
+ * The file is big-endian: magic, version, checksum, the number of classes, then each class's name, offset, and the
+ * lengths of its class file and encoded class, then each class's class file followed by its encoded class.
+ */
+public final class ClassDataArchive {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClassDataArchive.class);
+
+    private static final int MAGIC = 0x4A434453;
+
+    private static final int VERSION = 3;
+
+    private ClassDataArchive() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        String archive = System.getProperty("jvm.cds.archive");
+        String jar = System.getProperty("java.lib.jar.path");
+        String classList = System.getProperty("jvm.preload");
+        if (archive == null || jar == null || classList == null) {
+            System.err.println("Usage: java -Djvm.cds.archive=<archive> -Djava.lib.jar.path=<rt.jar> "
+                + "-Djvm.preload=<class list> " + ClassDataArchive.class.getName());
+            System.exit(1);
+        }
+        dump(Paths.get(archive), new ZipClassPath(jar), Runner.readClassList(Paths.get(classList)));
+    }
+
+    // Returns the archived classes, or null if there's no archive or it was made from a different jar
+    public static ClassPath open(Path archive, ZipClassPath jar) {
+        if (!Files.isRegularFile(archive)) {
+            return null;
+        }
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            LOG.warn("Couldn't map class data archive " + archive, e);
+            return null;
+        }
+        if (file.limit() < 20 || file.getInt() != MAGIC || file.getInt() != VERSION) {
+            LOG.warn("{} isn't a class data archive", archive);
+            return null;
+        }
+        if (file.getLong() != jar.getChecksum()) {
+            LOG.info("Ignoring class data archive {}, as the standard library has changed since it was made", archive);
+            return null;
+        }
+
+        int count = file.getInt();
+        List<ClassFileResource> resources = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] name = new byte[file.getShort() & 0xFFFF];
+            file.get(name);
+            resources.add(new ArchivedClassFileResource(archive, file, new String(name, StandardCharsets.UTF_8),
+                file.getInt(), file.getInt(), file.getInt()));
+        }
+        LOG.info("Using class data archive {} of {} classes", archive, count);
+        return resources::iterator;
+    }
+
+    // Archives those classes in classNames that are in jar. The archive is written to a temporary file first, so that a
+    // run starting meanwhile never sees half of it
+    public static void dump(Path archive, ZipClassPath jar, Collection<String> classNames) throws IOException {
+        Map<String, ClassFileResource> jarClassFiles = new HashMap<>();
+        for (ClassFileResource resource : jar) {
+            jarClassFiles.put(resource.getClassName(), resource);
+        }
+
+        ClassFileReader reader = new ClassFileReader();
+        List<String> names = new ArrayList<>();
+        List<byte[]> classFiles = new ArrayList<>();
+        List<byte[]> encodedClasses = new ArrayList<>();
+        for (String className : classNames) {
+            ClassFileResource resource = jarClassFiles.get(className);
+            if (resource != null) {
+                ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+                ClassFileCodec.write(resource.readClassFile(reader), new DataOutputStream(encoded));
+                names.add(className);
+                classFiles.add(resource.read(bytes -> {
+                    byte[] copy = new byte[bytes.remaining()];
+                    bytes.get(copy);
+                    return copy;
+                }));
+                encodedClasses.add(encoded.toByteArray());
+            }
+        }
+
+        List<byte[]> encodedNames = new ArrayList<>();
+        int offset = 20;
+        for (String name : names) {
+            byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+            encodedNames.add(encoded);
+            offset += 2 + encoded.length + 12;
+        }
+
+        Path temp = Files.createTempFile(archive.toAbsolutePath().getParent(), archive.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(jar.getChecksum());
+            out.writeInt(names.size());
+            for (int i = 0; i < names.size(); i++) {
+                out.writeShort(encodedNames.get(i).length);
+                out.write(encodedNames.get(i));
+                out.writeInt(offset);
+                out.writeInt(classFiles.get(i).length);
+                out.writeInt(encodedClasses.get(i).length);
+                offset += classFiles.get(i).length + encodedClasses.get(i).length;
+            }
+            for (int i = 0; i < names.size(); i++) {
+                out.write(classFiles.get(i));
+                out.write(encodedClasses.get(i));
+            }
+        }
+        Files.move(temp, archive, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOG.info("Wrote class data archive {} of {} classes", archive, names.size());
+    }
+
+    private static final class ArchivedClassFileResource implements ClassFileResource {
+
+        private final Path archive;
+
+        private final ByteBuffer file;
+
+        private final String className;
+
+        private final int offset;
+
+        private final int classFileLength;
+
+        private final int encodedLength;
+
+        private ArchivedClassFileResource(Path archive, ByteBuffer file, String className, int offset,
+                                          int classFileLength, int encodedLength) {
+            this.archive = archive;
+            this.file = file;
+            this.className = className;
+            this.offset = offset;
+            this.classFileLength = classFileLength;
+            this.encodedLength = encodedLength;
+        }
+
+        @Override
+        public String getName() {
+            return archive + "!" + className + ".class";
+        }
+
+        @Override
+        public String getClassName() {
+            return className;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return read(bytes -> {
+                byte[] copy = new byte[bytes.remaining()];
+                bytes.get(copy);
+                return new ByteArrayInputStream(copy);
+            });
+        }
+
+        @Override
+        public <T> T read(Function<ByteBuffer, T> reader) {
+            return reader.apply(slice(offset, classFileLength));
+        }
+
+        // The encoded class, which is quicker to read than parsing the class file
+        @Override
+        public ClassFile readClassFile(ClassFileReader reader) {
+            return ClassFileCodec.read(slice(offset + classFileLength, encodedLength));
+        }
+
+        private ByteBuffer slice(int start, int length) {
+            ByteBuffer bytes = file.duplicate();
+            bytes.position(start).limit(start + length);
+            return bytes.slice();
+        }
+    }
+}
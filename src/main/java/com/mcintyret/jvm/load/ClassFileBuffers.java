@@ -0,0 +1,47 @@
+package com.mcintyret.jvm.load;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Inflater;
+
+/**
+ * Each thread's buffers for the class files that can't be read in place, reused from one class file to the next as
+ * ClassFileReader copies out everything it keeps. They grow to fit the largest class file the thread has read.
+ */
+final class ClassFileBuffers {
+
+    private static final ThreadLocal<ClassFileBuffers> CURRENT = ThreadLocal.withInitial(ClassFileBuffers::new);
+
+    private final Inflater inflater = new Inflater(true);
+
+    private byte[] input = new byte[16 * 1024];
+
+    private byte[] output = new byte[32 * 1024];
+
+    private ClassFileBuffers() {
+    }
+
+    static ClassFileBuffers current() {
+        return CURRENT.get();
+    }
+
+    Inflater getInflater() {
+        inflater.reset();
+        return inflater;
+    }
+
+    // Compressed bytes, to be passed to the Inflater
+    byte[] input(int size) {
+        if (input.length < size) {
+            input = new byte[Math.max(size, input.length * 2)];
+        }
+        return input;
+    }
+
+    // A buffer with size bytes remaining
+    ByteBuffer output(int size) {
+        if (output.length < size) {
+            output = new byte[Math.max(size, output.length * 2)];
+        }
+        return ByteBuffer.wrap(output, 0, size);
+    }
+}
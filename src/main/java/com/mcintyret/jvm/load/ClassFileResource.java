@@ -2,6 +2,12 @@ package com.mcintyret.jvm.load;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+import com.google.common.io.ByteStreams;
+import com.mcintyret.jvm.parse.ClassFile;
+import com.mcintyret.jvm.parse.ClassFileReader;
 
 /**
  * User: tommcintyre
@@ -13,4 +19,21 @@ public interface ClassFileResource {
 
     InputStream getInputStream() throws IOException;
 
+    // Applies reader to the file's bytes, which may be a view of a mapped file or a pooled buffer, so mustn't be held on
+    // to once it returns
+    default <T> T read(Function<ByteBuffer, T> reader) throws IOException {
+        try (InputStream is = getInputStream()) {
+            return reader.apply(ByteBuffer.wrap(ByteStreams.toByteArray(is)));
+        }
+    }
+
+    default ClassFile readClassFile(ClassFileReader reader) throws IOException {
+        return read(reader::read);
+    }
+
+    // The name of the class in the file, eg java/lang/Object, which only the start of the file need be parsed for
+    default String getClassName() throws IOException {
+        return read(new ClassFileReader()::readClassName);
+    }
+
 }
@@ -5,7 +5,9 @@ import static java.util.Arrays.asList;
 import static java.util.Collections.emptySet;
 
 import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashMap;
@@ -15,6 +17,9 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,6 +31,8 @@ import com.mcintyret.jvm.core.clazz.Field;
 import com.mcintyret.jvm.core.clazz.InterfaceMethod;
 import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.clazz.NativeMethod;
+import com.mcintyret.jvm.core.exec.ExecutionListener;
+import com.mcintyret.jvm.core.exec.ExecutionListeners;
 import com.mcintyret.jvm.core.constantpool.ConstantPool;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
@@ -68,18 +75,41 @@ public class ClassLoader {
         }
     };
 
+    private static final int PARSE_PARALLELISM =
+        Integer.getInteger("jvm.preload.parallelism", Runtime.getRuntime().availableProcessors());
+
     private static final ClassLoader BOOTSTRAP_CLASSLOADER = makeBootstrapClassLoader();
 
     private static ClassLoader makeBootstrapClassLoader() {
         String libJarPath = System.getProperty("java.lib.jar.path");
+        String archivePath = System.getProperty("jvm.cds.archive");
         try {
-            return new ClassLoader(new ZipClassPath(libJarPath));
+            ZipClassPath jar = new ZipClassPath(libJarPath);
+            ClassPath archived = archivePath == null || Boolean.getBoolean("jvm.cds.dump")
+                ? null : ClassDataArchive.open(Paths.get(archivePath), jar);
+            if (archived == null) {
+                return new ClassLoader(jar);
+            }
+            ClassLoader loader = new ClassLoader(archived);
+            loader.fallbackClassPath = jar;
+            return loader;
         } catch (IOException e) {
             throw new IllegalStateException("Java standard library not found at " + libJarPath);
         }
     }
 
-    private final Map<String, ClassFile> classFiles = new HashMap<>();
+    // Where to find the class file of each class that hasn't been loaded yet. A class file is only read and parsed once
+    // its class is first asked for: most of those in the standard library never are
+    private final Map<String, ClassFileResource> classFiles = new ConcurrentHashMap<>();
+
+    // The rest of the standard library when the bootstrap class loader reads most of it from a ClassDataArchive, only
+    // indexed once a class that isn't archived is asked for
+    private ClassPath fallbackClassPath;
+
+    // Class files parsed ahead of their classes being asked for, by parse()
+    private final Map<String, ClassFile> parsedClassFiles = new ConcurrentHashMap<>();
+
+    private final ClassFileReader reader = new ClassFileReader();
 
     private final Map<FieldKey, Field> fields = new HashMap<>();
 
@@ -87,6 +117,9 @@ public class ClassLoader {
 
     private final Map<String, ClassObject> classes = new HashMap<>();
 
+    // Set while restoring a HeapSnapshot, which has the static field values the classes' initializers left behind
+    private boolean skipStaticInit;
+
     protected ClassLoader() {
 
     }
@@ -96,13 +129,10 @@ public class ClassLoader {
     }
 
     public void load(ClassPath classPath) throws IOException {
-        ClassFileReader reader = new ClassFileReader();
         boolean firstLoad = classFiles.isEmpty();
 
         for (ClassFileResource resource : classPath) {
-            LOG.debug("Reading: {}", resource.getName());
-            ClassFile file = reader.read(resource.getInputStream());
-            classFiles.put(getClassName(file.getThisClass(), file.getConstantPool()), file);
+            classFiles.put(resource.getClassName(), resource);
         }
 
         if (firstLoad) {
@@ -110,6 +140,106 @@ public class ClassLoader {
         }
     }
 
+    // Parses the class files of classNames across a ForkJoinPool, so that loading their classes later, which has to be
+    // done one at a time in dependency order, only has to link them. Names with no class file, or whose class file can't
+    // be parsed, are left to fail if and when they're asked for
+    public void parse(Collection<String> classNames) {
+        List<ClassFileResource> resources = new ArrayList<>();
+        for (String className : classNames) {
+            ClassFileResource resource = findClassFile(className);
+            if (resource != null && !parsedClassFiles.containsKey(className)) {
+                resources.add(resource);
+            }
+        }
+        if (resources.isEmpty()) {
+            return;
+        }
+        LOG.info("Parsing {} class files with {} threads", resources.size(), PARSE_PARALLELISM);
+        ForkJoinPool pool = new ForkJoinPool(PARSE_PARALLELISM);
+        try {
+            pool.invoke(new ParseTask(resources, 0, resources.size()));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Loads and initializes the classes in order, skipping any with no class file
+    public void link(List<String> classNames) {
+        for (String className : classNames) {
+            if (classes.containsKey(className) || findClassFile(className) != null) {
+                getClassObject(className);
+            }
+        }
+    }
+
+    // Loads the classes without running their static initializers, for restoring a HeapSnapshot
+    public void linkWithoutInitializing(Collection<String> classNames) {
+        skipStaticInit = true;
+        try {
+            for (String className : classNames) {
+                getClassObject(className);
+            }
+        } finally {
+            skipStaticInit = false;
+        }
+    }
+
+    private ClassFileResource findClassFile(String className) {
+        ClassFileResource resource = classFiles.get(className);
+        if (resource == null && fallbackClassPath != null) {
+            LOG.info("{} isn't in the class data archive, so indexing the rest of the standard library", className);
+            ClassPath fallback = fallbackClassPath;
+            fallbackClassPath = null;
+            try {
+                for (ClassFileResource fallbackResource : fallback) {
+                    String name = fallbackResource.getClassName();
+                    if (!classes.containsKey(name)) {
+                        classFiles.putIfAbsent(name, fallbackResource);
+                    }
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+            resource = classFiles.get(className);
+        }
+        return resource;
+    }
+
+    private class ParseTask extends RecursiveAction {
+
+        private static final int THRESHOLD = 16;
+
+        private final List<ClassFileResource> resources;
+
+        private final int from;
+
+        private final int to;
+
+        ParseTask(List<ClassFileResource> resources, int from, int to) {
+            this.resources = resources;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > THRESHOLD) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new ParseTask(resources, from, mid), new ParseTask(resources, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                ClassFileResource resource = resources.get(i);
+                try {
+                    ClassFile file = read(resource);
+                    parsedClassFiles.put(getClassName(file.getThisClass(), file.getConstantPool()), file);
+                } catch (RuntimeException e) {
+                    LOG.warn("Couldn't parse " + resource.getName(), e);
+                }
+            }
+        }
+    }
+
     public void afterInitialLoad() {
         if (this == BOOTSTRAP_CLASSLOADER) {
             // Do this somewhere else!
@@ -165,11 +295,20 @@ public class ClassLoader {
 //        SystemNatives.SET_OUT_0.execute(new int[]{ps.getAddress()}, null);
 //    }
 
+    public List<ClassObject> getLoadedClasses() {
+        return new ArrayList<>(classes.values());
+    }
+
     public ClassObject getClassObject(String className) {
         ClassObject co = classes.get(className);
         if (co == null) {
             LOG.debug("Loading: {}", className);
-            ClassFile file = assertNotNull(classFiles.remove(className), "No class file for " + className);
+            ClassFileResource resource = findClassFile(className);
+            classFiles.remove(className);
+            ClassFile file = parsedClassFiles.remove(className);
+            if (file == null) {
+                file = read(assertNotNull(resource, "No class file for " + className));
+            }
 
             ClassObject parent = null;
             int parentIndex = file.getSuperClass();
@@ -180,12 +319,25 @@ public class ClassLoader {
 
             co = makeClassObject(className, file, parent);
             classes.put(className, co);
+            ExecutionListener listener = ExecutionListeners.get();
+            if (listener != null) {
+                listener.onClassLoad(co);
+            }
             executeStaticInitMethod(co);
             LOG.debug("Done Loading: {}", className);
         }
         return co;
     }
 
+    private ClassFile read(ClassFileResource resource) {
+        LOG.debug("Reading: {}", resource.getName());
+        try {
+            return resource.readClassFile(reader);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     // Superclasses and interfaces are recursively loaded
     private ClassObject makeClassObject(String className, ClassFile file, ClassObject parent) {
         boolean isInterface = file.hasModifier(Modifier.INTERFACE);
@@ -394,6 +546,9 @@ public class ClassLoader {
     }
 
     private void executeStaticInitMethod(ClassObject co) {
+        if (skipStaticInit) {
+            return;
+        }
         Method staticInit = co.findMethod("<clinit>", "()V", true);
         if (staticInit != null) {
             Utils.executeMethodAndThrow(staticInit, new Variables(staticInit.getCode().getMaxLocals()), Runner.MAIN_THREAD);
@@ -442,13 +597,13 @@ public class ClassLoader {
             if (obj instanceof CpInt) {
                 constantPool[i] = ((CpInt) obj).getIntBits();
             } else if (obj instanceof CpFloat) {
-                constantPool[i] = ((CpFloat) obj).getFloatBits();
+                constantPool[i] = Float.intBitsToFloat(((CpFloat) obj).getFloatBits());
             } else if (obj instanceof CpLong) {
                 CpLong cpLong = (CpLong) obj;
                 constantPool[i] = Utils.toLong(cpLong.getHighBits(), cpLong.getLowBits());
             } else if (obj instanceof CpDouble) {
                 CpDouble cpDouble = (CpDouble) obj;
-                constantPool[i] = Utils.toLong(cpDouble.getHighBits(), cpDouble.getLowBits());
+                constantPool[i] = Double.longBitsToDouble(Utils.toLong(cpDouble.getHighBits(), cpDouble.getLowBits()));
             }
         }
     }
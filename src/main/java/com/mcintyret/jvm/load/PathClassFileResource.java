@@ -2,8 +2,12 @@ package com.mcintyret.jvm.load;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Function;
 
 /**
  * User: tommcintyre
@@ -11,6 +15,9 @@ import java.nio.file.Path;
  */
 public class PathClassFileResource implements ClassFileResource {
 
+    // Mapping a file costs more than reading a small one into a pooled buffer
+    private static final long MIN_MAPPED_SIZE = 64 * 1024;
+
     private final Path path;
 
     public PathClassFileResource(Path path) {
@@ -26,4 +33,22 @@ public class PathClassFileResource implements ClassFileResource {
     public InputStream getInputStream() throws IOException {
         return Files.newInputStream(path);
     }
+
+    @Override
+    public <T> T read(Function<ByteBuffer, T> reader) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MIN_MAPPED_SIZE) {
+                return reader.apply(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+            }
+            ByteBuffer buffer = ClassFileBuffers.current().output((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Unexpected end of " + path);
+                }
+            }
+            buffer.flip();
+            return reader.apply(buffer);
+        }
+    }
 }
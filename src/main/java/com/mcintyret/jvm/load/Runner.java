@@ -1,6 +1,15 @@
 package com.mcintyret.jvm.load;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.mcintyret.jvm.core.Heap;
 import com.mcintyret.jvm.core.clazz.ArrayClassObject;
@@ -10,6 +19,7 @@ import com.mcintyret.jvm.core.clazz.Method;
 import com.mcintyret.jvm.core.exec.VariableStack;
 import com.mcintyret.jvm.core.exec.VariableStackImpl;
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.gc.HeapSnapshot;
 import com.mcintyret.jvm.core.nativeimpls.NativeReturn;
 import com.mcintyret.jvm.core.oop.OopArray;
 import com.mcintyret.jvm.core.oop.OopClass;
@@ -23,6 +33,8 @@ import com.mcintyret.jvm.core.util.Utils;
 
 public class Runner {
 
+    private static final Logger LOG = LoggerFactory.getLogger(Runner.class);
+
     private static final MethodSignature MAIN_METHOD_SIGNATURE = MethodSignature.parse("main", "([Ljava/lang/String;)V");
 
     public static Thread MAIN_THREAD;
@@ -30,12 +42,28 @@ public class Runner {
     public void run(ClassPath classPath, String mainClassName, String... args) throws IOException {
         ClassLoader loader = ClassLoader.getDefaultClassLoader();
 
+        // Checked now rather than finding out once the program has run
+        boolean dumpArchive = Boolean.getBoolean("jvm.cds.dump") && canDumpClassDataArchive();
+
         loader.load(classPath);
 
-        // This happens early!
-        MAIN_THREAD = createMainThread();
+        List<String> preload = readPreloadList();
+        loader.parse(preload);
+
+        String snapshot = System.getProperty("jvm.bootstrapSnapshot");
+        MAIN_THREAD = snapshot == null ? null : HeapSnapshot.restore(Paths.get(snapshot), loader);
+        if (MAIN_THREAD == null) {
+            // This happens early!
+            MAIN_THREAD = createMainThread();
+
+            loader.afterInitialLoad(); // Sets System.out. Can I do this anywhere else??
+
+            if (snapshot != null) {
+                HeapSnapshot.write(Paths.get(snapshot), loader, MAIN_THREAD);
+            }
+        }
 
-        loader.afterInitialLoad(); // Sets System.out. Can I do this anywhere else??
+        loader.link(preload);
 
         ClassObject mainClass = loader.getClassObject(mainClassName);
 
@@ -44,7 +72,7 @@ public class Runner {
         ArrayClassObject aco = ArrayClassObject.forType(ArrayType.create(NonArrayType.forClass("java/lang/String"), 1));
         OopArray array = aco.newArray(args.length);
         for (int i = 0; i < args.length; i++) {
-            array.getFields()[i] = Heap.intern(args[i]);
+            array.setField(i, Heap.intern(args[i]));
         }
         Variables actualArgs = new Variables(1);
         actualArgs.put(0, SimpleType.REF, Heap.allocate(array));
@@ -66,8 +94,54 @@ public class Runner {
         }
 
         System.out.println("DONE!!!");
+
+        if (dumpArchive) {
+            dumpClassDataArchive(loader);
+        }
     }
 
+    // Archives the standard library classes this run loaded at jvm.cds.archive, for later runs to start from (see
+    // ClassDataArchive)
+    public static void dumpClassDataArchive(ClassLoader loader) throws IOException {
+        if (!canDumpClassDataArchive()) {
+            return;
+        }
+        List<String> classNames = new ArrayList<>();
+        for (ClassObject classObject : loader.getLoadedClasses()) {
+            classNames.add(classObject.getClassName());
+        }
+        ClassDataArchive.dump(Paths.get(System.getProperty("jvm.cds.archive")),
+            new ZipClassPath(System.getProperty("java.lib.jar.path")), classNames);
+    }
+
+    private static boolean canDumpClassDataArchive() {
+        if (System.getProperty("jvm.cds.archive") == null || System.getProperty("java.lib.jar.path") == null) {
+            LOG.error("Not dumping a class data archive: jvm.cds.dump needs -Djvm.cds.archive=<archive> and "
+                + "-Djava.lib.jar.path=<rt.jar>");
+            return false;
+        }
+        return true;
+    }
+
+
+    // The classes named, one per line, in the file jvm.preload, which are parsed in parallel up front and then loaded
+    // in that order before main runs
+    private static List<String> readPreloadList() throws IOException {
+        String file = System.getProperty("jvm.preload");
+        return file == null ? Collections.emptyList() : readClassList(Paths.get(file));
+    }
+
+    // Class names one per line, in either binary or internal form, ignoring blank lines and #comments
+    static List<String> readClassList(Path file) throws IOException {
+        List<String> classNames = new ArrayList<>();
+        for (String line : Files.readAllLines(file)) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                classNames.add(line.replace('.', '/'));
+            }
+        }
+        return classNames;
+    }
 
     private Method findMainMethod(ClassObject mainClass) {
         for (Method method : mainClass.getStaticMethods()) {
@@ -79,7 +153,8 @@ public class Runner {
     }
 
 
-    private static Thread createMainThread() {
+    // The guest main Thread, built by hand as its constructor needs a current Thread to run
+    public static Thread createMainThread() {
         ClassObject threadClass = ClassLoader.getDefaultClassLoader().getClassObject("java/lang/Thread");
         ClassObject threadGroupClass = ClassLoader.getDefaultClassLoader().getClassObject("java/lang/ThreadGroup");
 
@@ -115,7 +190,7 @@ public class Runner {
         // are there more fields we care about?
         Field name = threadClass.findField("name", false);
         // Thread.name is a char array!
-        name.set(mainThread, Heap.getOop(mainString.getFields()[0]));
+        name.set(mainThread, Heap.getOop(mainString.getField(0)));
 
         Field group = threadClass.findField("group", false);
         group.set(mainThread, mainThreadGroup);
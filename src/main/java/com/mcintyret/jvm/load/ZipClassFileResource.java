@@ -1,9 +1,14 @@
 package com.mcintyret.jvm.load;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
 
 /**
  * User: tommcintyre
@@ -11,22 +16,96 @@ import java.util.zip.ZipFile;
  */
 public class ZipClassFileResource implements ClassFileResource {
 
-    private final ZipFile file;
+    private static final int LOCAL_HEADER = 0x04034b50;
 
-    private final ZipEntry entry;
+    // The whole of the mapped jar, little-endian
+    private final ByteBuffer file;
 
-    public ZipClassFileResource(ZipFile file, ZipEntry entry) {
+    private final String name;
+
+    private final int method;
+
+    private final int compressedSize;
+
+    private final int size;
+
+    private final int localHeaderOffset;
+
+    ZipClassFileResource(ByteBuffer file, String name, int method, int compressedSize, int size,
+                         int localHeaderOffset) {
         this.file = file;
-        this.entry = entry;
+        this.name = name;
+        this.method = method;
+        this.compressedSize = compressedSize;
+        this.size = size;
+        this.localHeaderOffset = localHeaderOffset;
     }
 
     @Override
     public String getName() {
-        return entry.getName();
+        return name;
+    }
+
+    // Jars are laid out by package, so the entry's name is the class's
+    @Override
+    public String getClassName() {
+        return name.substring(0, name.length() - ".class".length());
     }
 
     @Override
     public InputStream getInputStream() throws IOException {
-        return file.getInputStream(entry);
+        return read(bytes -> {
+            byte[] copy = new byte[bytes.remaining()];
+            bytes.get(copy);
+            return new ByteArrayInputStream(copy);
+        });
+    }
+
+    @Override
+    public <T> T read(Function<ByteBuffer, T> reader) throws IOException {
+        ByteBuffer data = data();
+        if (method == ZipEntry.STORED) {
+            return reader.apply(data);
+        } else if (method != ZipEntry.DEFLATED) {
+            throw new IOException("Unsupported compression method " + method + " for " + name);
+        }
+
+        ClassFileBuffers buffers = ClassFileBuffers.current();
+        // A raw Inflater needs a byte past the end of the compressed data
+        byte[] input = buffers.input(compressedSize + 1);
+        data.get(input, 0, compressedSize);
+        input[compressedSize] = 0;
+
+        ByteBuffer output = buffers.output(size);
+        Inflater inflater = buffers.getInflater();
+        inflater.setInput(input, 0, compressedSize + 1);
+        try {
+            int inflated = 0;
+            while (inflated < size && !inflater.finished()) {
+                int n = inflater.inflate(output.array(), inflated, size - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != size) {
+                throw new IOException("Inflated " + inflated + " bytes of " + name + " rather than " + size);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt entry " + name, e);
+        }
+        return reader.apply(output);
+    }
+
+    // A big-endian view of the entry's (possibly compressed) bytes, which start after its local header
+    private ByteBuffer data() throws IOException {
+        if (file.getInt(localHeaderOffset) != LOCAL_HEADER) {
+            throw new IOException("Corrupt local header for " + name);
+        }
+        int start = localHeaderOffset + 30 + (file.getShort(localHeaderOffset + 26) & 0xFFFF)
+            + (file.getShort(localHeaderOffset + 28) & 0xFFFF);
+        ByteBuffer data = file.duplicate();
+        data.position(start).limit(start + compressedSize);
+        return data.slice().order(ByteOrder.BIG_ENDIAN);
     }
 }
@@ -2,45 +2,119 @@ package com.mcintyret.jvm.load;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Enumeration;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
+import java.util.NoSuchElementException;
+import java.util.zip.CRC32;
 
 /**
- * User: tommcintyre
- * Date: 5/20/14
+ * A jar, which is mapped into memory rather than opened as a ZipFile, so that the entries' bytes can be read from it
+ * without going through streams: stored entries are read in place, and deflated ones are inflated into pooled buffers
+ * (see ClassFileBuffers). The entries are found by walking the zip's central directory. ZIP64 jars aren't supported.
  */
 public class ZipClassPath implements ClassPath {
 
-    private final ZipFile file;
+    private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+
+    private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+
+    private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+    private final String name;
+
+    // Little-endian, as zips are
+    private final ByteBuffer file;
+
+    private final int entryCount;
+
+    private final int centralDirectoryOffset;
+
+    private final int centralDirectorySize;
 
     public ZipClassPath(File file) {
-        try {
-            this.file = new ZipFile(file);
+        this.name = file.getPath();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            this.file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
+
+        int end = findEndOfCentralDirectory();
+        entryCount = this.file.getShort(end + 10) & 0xFFFF;
+        long offset = this.file.getInt(end + 16) & 0xFFFFFFFFL;
+        if (entryCount == 0xFFFF || offset == 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("ZIP64 jars aren't supported: " + name);
+        }
+        centralDirectoryOffset = (int) offset;
+        centralDirectorySize = this.file.getInt(end + 12);
     }
 
     public ZipClassPath(String file) {
         this(new File(file));
     }
 
+    // The end of central directory record is the last thing in the file, followed only by a comment of up to 64k
+    private int findEndOfCentralDirectory() {
+        int last = file.limit() - END_OF_CENTRAL_DIRECTORY_SIZE;
+        for (int pos = last; pos >= Math.max(0, last - 0xFFFF); pos--) {
+            if (file.getInt(pos) == END_OF_CENTRAL_DIRECTORY) {
+                return pos;
+            }
+        }
+        throw new IllegalArgumentException("Not a zip file: " + name);
+    }
+
+    // A CRC32 of the central directory, which holds each entry's own CRC32, so changes whenever any entry does
+    public long getChecksum() {
+        ByteBuffer centralDirectory = file.duplicate();
+        centralDirectory.position(centralDirectoryOffset).limit(centralDirectoryOffset + centralDirectorySize);
+        CRC32 crc = new CRC32();
+        crc.update(centralDirectory);
+        return crc.getValue();
+    }
+
     @Override
     public Iterator<ClassFileResource> iterator() {
         return classFileFilteringIterator(new Iterator<ClassFileResource>() {
 
-            private final Enumeration<? extends ZipEntry> it = file.entries();
+            private int remaining = entryCount;
+
+            private int pos = centralDirectoryOffset;
 
             @Override
             public boolean hasNext() {
-                return it.hasMoreElements();
+                return remaining > 0;
             }
 
             @Override
             public ClassFileResource next() {
-                return new ZipClassFileResource(file, it.nextElement());
+                if (remaining == 0) {
+                    throw new NoSuchElementException();
+                }
+                if (file.getInt(pos) != CENTRAL_DIRECTORY_ENTRY) {
+                    throw new IllegalStateException("Corrupt central directory in " + name + " at " + pos);
+                }
+                int method = file.getShort(pos + 10) & 0xFFFF;
+                int compressedSize = file.getInt(pos + 20);
+                int size = file.getInt(pos + 24);
+                int nameLength = file.getShort(pos + 28) & 0xFFFF;
+                int extraLength = file.getShort(pos + 30) & 0xFFFF;
+                int commentLength = file.getShort(pos + 32) & 0xFFFF;
+                int localHeaderOffset = file.getInt(pos + 42);
+
+                byte[] entryName = new byte[nameLength];
+                ByteBuffer nameBytes = file.duplicate();
+                nameBytes.position(pos + 46);
+                nameBytes.get(entryName);
+
+                pos += 46 + nameLength + extraLength + commentLength;
+                remaining--;
+                return new ZipClassFileResource(file, new String(entryName, StandardCharsets.UTF_8), method,
+                    compressedSize, size, localHeaderOffset);
             }
         });
     }
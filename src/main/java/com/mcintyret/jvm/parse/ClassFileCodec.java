@@ -0,0 +1,249 @@
+package com.mcintyret.jvm.parse;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.mcintyret.jvm.parse.attribute.Attribute;
+import com.mcintyret.jvm.parse.attribute.AttributeType;
+import com.mcintyret.jvm.parse.attribute.Attributes;
+import com.mcintyret.jvm.parse.attribute.Code;
+import com.mcintyret.jvm.parse.attribute.CodeException;
+import com.mcintyret.jvm.parse.cp.CpClass;
+import com.mcintyret.jvm.parse.cp.CpDouble;
+import com.mcintyret.jvm.parse.cp.CpFieldReference;
+import com.mcintyret.jvm.parse.cp.CpFloat;
+import com.mcintyret.jvm.parse.cp.CpInt;
+import com.mcintyret.jvm.parse.cp.CpInterfaceMethodReference;
+import com.mcintyret.jvm.parse.cp.CpInvokeDynamicInfo;
+import com.mcintyret.jvm.parse.cp.CpLong;
+import com.mcintyret.jvm.parse.cp.CpMethodHandle;
+import com.mcintyret.jvm.parse.cp.CpMethodReference;
+import com.mcintyret.jvm.parse.cp.CpMethodType;
+import com.mcintyret.jvm.parse.cp.CpReference;
+import com.mcintyret.jvm.parse.cp.CpString;
+import com.mcintyret.jvm.parse.cp.NameAndType;
+
+/**
+ * Writes a parsed ClassFile out in a form that can be read back without going through ClassFileReader: the constant
+ * pool already split into its entries, with its strings decoded, and the members with their Code. Only the attributes
+ * that the VM reads are kept, which is just each method's Code (without the debugging attributes inside it).
+ *
+ * Everything is big-endian. Constant pool entries start with their ConstantPoolConstant's tag, or 0 for the unused
+ * slots after longs and doubles, and strings are a count of chars followed by the chars.
+ */
+public final class ClassFileCodec {
+
+    private static final Attributes NO_ATTRIBUTES = new Attributes(Collections.emptyList());
+
+    private ClassFileCodec() {
+    }
+
+    public static void write(ClassFile file, DataOutput out) throws IOException {
+        out.writeShort(file.getMinorVersion());
+        out.writeShort(file.getMajorVersion());
+
+        Object[] cp = file.getConstantPool();
+        out.writeShort(cp.length);
+        for (Object constant : cp) {
+            writeConstant(constant, out);
+        }
+
+        out.writeShort(Modifier.translate(file.getModifiers()));
+        out.writeShort(file.getThisClass());
+        out.writeShort(file.getSuperClass());
+        out.writeShort(file.getInterfaces().length);
+        for (int anInterface : file.getInterfaces()) {
+            out.writeShort(anInterface);
+        }
+
+        writeMembers(file.getFields(), out);
+        writeMembers(file.getMethods(), out);
+    }
+
+    public static ClassFile read(ByteBuffer in) {
+        ClassFile file = new ClassFile();
+        file.setMinorVersion(nextShort(in));
+        file.setMajorVersion(nextShort(in));
+
+        Object[] cp = new Object[nextShort(in)];
+        for (int i = 0; i < cp.length; i++) {
+            cp[i] = readConstant(in);
+        }
+        file.setConstantPool(cp);
+
+        file.setAccessFlags(nextShort(in));
+        file.setThisClass(nextShort(in));
+        file.setSuperClass(nextShort(in));
+        int[] interfaces = new int[nextShort(in)];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = nextShort(in);
+        }
+        file.setInterfaces(interfaces);
+
+        file.setFields(readMembers(in));
+        file.setMethods(readMembers(in));
+        file.setAttributes(NO_ATTRIBUTES);
+        return file;
+    }
+
+    private static void writeConstant(Object constant, DataOutput out) throws IOException {
+        if (constant == null) {
+            out.writeByte(0);
+        } else if (constant instanceof String) {
+            out.writeByte(1);
+            writeString((String) constant, out);
+        } else if (constant instanceof CpInt) {
+            out.writeByte(3);
+            out.writeInt(((CpInt) constant).getIntBits());
+        } else if (constant instanceof CpFloat) {
+            out.writeByte(4);
+            out.writeInt(((CpFloat) constant).getFloatBits());
+        } else if (constant instanceof CpLong) {
+            out.writeByte(5);
+            out.writeInt(((CpLong) constant).getHighBits());
+            out.writeInt(((CpLong) constant).getLowBits());
+        } else if (constant instanceof CpDouble) {
+            out.writeByte(6);
+            out.writeInt(((CpDouble) constant).getHighBits());
+            out.writeInt(((CpDouble) constant).getLowBits());
+        } else if (constant instanceof CpClass) {
+            out.writeByte(7);
+            out.writeShort(((CpClass) constant).getNameIndex());
+        } else if (constant instanceof CpString) {
+            out.writeByte(8);
+            out.writeShort(((CpString) constant).getStringIndex());
+        } else if (constant instanceof CpReference) {
+            // CpInterfaceMethodReference extends CpMethodReference, so must be checked first
+            out.writeByte(constant instanceof CpFieldReference ? 9 : constant instanceof CpInterfaceMethodReference ? 11 : 10);
+            out.writeShort(((CpReference) constant).getClassIndex());
+            out.writeShort(((CpReference) constant).getNameAndTypeIndex());
+        } else if (constant instanceof NameAndType) {
+            out.writeByte(12);
+            out.writeShort(((NameAndType) constant).getNameIndex());
+            out.writeShort(((NameAndType) constant).getDescriptorIndex());
+        } else if (constant instanceof CpMethodHandle) {
+            out.writeByte(15);
+            out.writeByte(((CpMethodHandle) constant).getReferenceKind());
+            out.writeShort(((CpMethodHandle) constant).getReferenceIndex());
+        } else if (constant instanceof CpMethodType) {
+            out.writeByte(16);
+            out.writeShort(((CpMethodType) constant).getDescriptorIndex());
+        } else if (constant instanceof CpInvokeDynamicInfo) {
+            out.writeByte(18);
+            out.writeShort(((CpInvokeDynamicInfo) constant).getBootstrapMethodAttrIndex());
+            out.writeShort(((CpInvokeDynamicInfo) constant).getNameAndTypeIndex());
+        } else {
+            throw new IllegalArgumentException("Unknown constant pool entry " + constant);
+        }
+    }
+
+    private static Object readConstant(ByteBuffer in) {
+        int tag = in.get();
+        switch (tag) {
+            case 0:
+                return null;
+            case 1:
+                return readString(in);
+            case 3:
+                return new CpInt(in.getInt());
+            case 4:
+                return new CpFloat(in.getInt());
+            case 5:
+                return new CpLong(in.getInt(), in.getInt());
+            case 6:
+                return new CpDouble(in.getInt(), in.getInt());
+            case 7:
+                return new CpClass(nextShort(in));
+            case 8:
+                return new CpString(nextShort(in));
+            case 9:
+                return new CpFieldReference(nextShort(in), nextShort(in));
+            case 10:
+                return new CpMethodReference(nextShort(in), nextShort(in));
+            case 11:
+                return new CpInterfaceMethodReference(nextShort(in), nextShort(in));
+            case 12:
+                return new NameAndType(nextShort(in), nextShort(in));
+            case 15:
+                return new CpMethodHandle(in.get(), nextShort(in));
+            case 16:
+                return new CpMethodType(nextShort(in));
+            case 18:
+                return new CpInvokeDynamicInfo(nextShort(in), nextShort(in));
+            default:
+                throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+        }
+    }
+
+    private static void writeMembers(List<MemberInfo> members, DataOutput out) throws IOException {
+        out.writeShort(members.size());
+        for (MemberInfo member : members) {
+            out.writeShort(Modifier.translate(member.getModifiers()));
+            out.writeShort(member.getNameIndex());
+            out.writeShort(member.getDescriptorIndex());
+
+            Code code = (Code) member.getAttributes().getAttribute(AttributeType.CODE);
+            out.writeBoolean(code != null);
+            if (code != null) {
+                out.writeShort(code.getMaxStack());
+                out.writeShort(code.getMaxLocals());
+                out.writeInt(code.getCode().length);
+                out.write(code.getCode());
+                out.writeShort(code.getCodeExceptions().size());
+                for (CodeException exception : code.getCodeExceptions()) {
+                    out.writeShort(exception.getStartPc());
+                    out.writeShort(exception.getEndPc());
+                    out.writeShort(exception.getHandlerPc());
+                    out.writeShort(exception.getCatchType());
+                }
+            }
+        }
+    }
+
+    private static List<MemberInfo> readMembers(ByteBuffer in) {
+        int count = nextShort(in);
+        List<MemberInfo> members = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int accessFlags = nextShort(in);
+            int nameIndex = nextShort(in);
+            int descriptorIndex = nextShort(in);
+
+            Attributes attributes = NO_ATTRIBUTES;
+            if (in.get() != 0) {
+                int maxStack = nextShort(in);
+                int maxLocals = nextShort(in);
+                byte[] bytecode = new byte[in.getInt()];
+                in.get(bytecode);
+                List<CodeException> exceptions = new ArrayList<>();
+                for (int j = nextShort(in); j > 0; j--) {
+                    exceptions.add(new CodeException(nextShort(in), nextShort(in), nextShort(in), nextShort(in)));
+                }
+                List<Attribute> code = Collections.singletonList(
+                    new Code(maxStack, maxLocals, bytecode, exceptions, NO_ATTRIBUTES));
+                attributes = new Attributes(code);
+            }
+            members.add(new MemberInfo(accessFlags, nameIndex, descriptorIndex, attributes));
+        }
+        return members;
+    }
+
+    private static void writeString(String string, DataOutput out) throws IOException {
+        out.writeInt(string.length());
+        out.writeChars(string);
+    }
+
+    private static String readString(ByteBuffer in) {
+        char[] chars = new char[in.getInt()];
+        in.asCharBuffer().get(chars);
+        in.position(in.position() + 2 * chars.length);
+        return new String(chars);
+    }
+
+    private static int nextShort(ByteBuffer in) {
+        return in.getShort() & 0xFFFF;
+    }
+}
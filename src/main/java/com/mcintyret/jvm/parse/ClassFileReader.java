@@ -2,6 +2,7 @@ package com.mcintyret.jvm.parse;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 
@@ -13,13 +14,19 @@ import com.mcintyret.jvm.parse.attribute.AttributeParser;
 import com.mcintyret.jvm.parse.attribute.Attributes;
 import com.mcintyret.jvm.parse.attribute.Parser;
 import com.mcintyret.jvm.parse.cp.ConstantPoolConstant;
+import com.mcintyret.jvm.parse.cp.CpClass;
 
 public class ClassFileReader {
 
     private static final int MAGIC_NUMBER = 0xCAFEBABE;
 
     public ClassFile read(InputStream is) throws IOException {
-        ByteIterator bi = new ByteBufferIterator(ByteStreams.toByteArray(is));
+        return read(ByteBuffer.wrap(ByteStreams.toByteArray(is)));
+    }
+
+    // Everything the ClassFile needs is copied out of bytes, so they can be reused once this returns
+    public ClassFile read(ByteBuffer bytes) {
+        ByteIterator bi = new ByteBufferIterator(bytes);
         verifyMagicNumber(bi);
 
         ClassFile classFile = new ClassFile();
@@ -27,15 +34,7 @@ public class ClassFileReader {
         classFile.setMinorVersion(bi.nextShort());
         classFile.setMajorVersion(bi.nextShort());
 
-        int cpCount = bi.nextShort();
-        Object[] cp = new Object[cpCount];
-        for (int i = 1; i < cpCount; i++) {
-            ConstantPoolConstant cpc = ConstantPoolConstant.forByte(bi.nextByte());
-            cp[i] = cpc.parse(bi);
-            if (cpc == ConstantPoolConstant.DOUBLE || cpc == ConstantPoolConstant.LONG) {
-                i++;
-            }
-        }
+        Object[] cp = readConstantPool(bi);
         classFile.setConstantPool(cp);
 
         classFile.setAccessFlags(bi.nextShort());
@@ -60,6 +59,32 @@ public class ClassFileReader {
         return classFile;
     }
 
+    // Reads only as far as the name of the class, eg java/lang/Object
+    public String readClassName(ByteBuffer bytes) {
+        ByteIterator bi = new ByteBufferIterator(bytes);
+        verifyMagicNumber(bi);
+        bi.nextShort();
+        bi.nextShort();
+
+        Object[] cp = readConstantPool(bi);
+        bi.nextShort();
+        CpClass thisClass = (CpClass) cp[bi.nextShort()];
+        return (String) cp[thisClass.getNameIndex()];
+    }
+
+    private static Object[] readConstantPool(ByteIterator bi) {
+        int cpCount = bi.nextShort();
+        Object[] cp = new Object[cpCount];
+        for (int i = 1; i < cpCount; i++) {
+            ConstantPoolConstant cpc = ConstantPoolConstant.forByte(bi.nextByte());
+            cp[i] = cpc.parse(bi);
+            if (cpc == ConstantPoolConstant.DOUBLE || cpc == ConstantPoolConstant.LONG) {
+                i++;
+            }
+        }
+        return cp;
+    }
+
     private static void verifyMagicNumber(ByteIterator bi) {
         if (bi.nextInt() != MAGIC_NUMBER) {
             throw new IllegalArgumentException();
@@ -28,7 +28,7 @@ public class AttributeParser implements Parser<Attribute> {
         AttributeType at = AttributeType.forString(name);
         if (at == null) {
             // not found - need to skip the buffer!
-            bi.nextBytes(bi.nextInt());
+            bi.seek(bi.nextInt());
             return null;
         }
         return at.parse(bi, this);
@@ -14,7 +14,7 @@ public class Code extends Attribute {
 
     private final Attributes attributes;
 
-    Code(int maxStack, int maxLocals, byte[] code, List<CodeException> codeExceptions, Attributes attributes) {
+    public Code(int maxStack, int maxLocals, byte[] code, List<CodeException> codeExceptions, Attributes attributes) {
         super(AttributeType.CODE);
         this.maxStack = maxStack;
         this.maxLocals = maxLocals;
@@ -27,6 +27,10 @@ public class Code extends Attribute {
         return code;
     }
 
+    public int getMaxStack() {
+        return maxStack;
+    }
+
     public int getMaxLocals() {
         return maxLocals;
     }
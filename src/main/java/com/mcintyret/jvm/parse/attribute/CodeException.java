@@ -12,7 +12,7 @@ public class CodeException {
 
     private final int catchType;
 
-    private CodeException(int startPc, int endPc, int handlerPc, int catchType) {
+    public CodeException(int startPc, int endPc, int handlerPc, int catchType) {
         this.startPc = startPc;
         this.endPc = endPc;
         this.handlerPc = handlerPc;
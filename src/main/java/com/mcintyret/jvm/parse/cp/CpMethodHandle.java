@@ -14,4 +14,12 @@ public class CpMethodHandle {
         this.referenceKind = referenceKind;
         this.referenceIndex = referenceIndex;
     }
+
+    public byte getReferenceKind() {
+        return referenceKind;
+    }
+
+    public int getReferenceIndex() {
+        return referenceIndex;
+    }
 }
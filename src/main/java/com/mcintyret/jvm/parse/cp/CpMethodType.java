@@ -11,4 +11,8 @@ public class CpMethodType {
     public CpMethodType(int descriptorIndex) {
         this.descriptorIndex = descriptorIndex;
     }
+
+    public int getDescriptorIndex() {
+        return descriptorIndex;
+    }
 }
@@ -3,6 +3,7 @@ import java.io.IOException;
 import com.mcintyret.jvm.core.exec.ExecutionStackElement;
 import com.mcintyret.jvm.core.exec.OperationContext;
 import com.mcintyret.jvm.core.exec.Variables;
+import com.mcintyret.jvm.core.metrics.ExecutionMetrics;
 import com.mcintyret.jvm.core.nativeimpls.NativeImplementationAdapter;
 import com.mcintyret.jvm.core.nativeimpls.NativeImplementationRegistry;
 import com.mcintyret.jvm.core.nativeimpls.NativeReturn;
@@ -33,7 +34,7 @@ public class GiveItAllAGo {
         } catch (Throwable t) {
             t.printStackTrace();
         } finally {
-            System.out.println("Total operations: " + ExecutionStackElement.TOTAL_OPCODES_EXECUTED.get());
+            System.out.println("Total operations: " + ExecutionMetrics.snapshot().getTotalOpcodes());
             System.out.println("Current method: " + ExecutionStackElement.current.getMethod());
         }
     }
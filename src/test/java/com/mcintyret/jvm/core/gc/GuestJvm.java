@@ -0,0 +1,68 @@
+package com.mcintyret.jvm.core.gc;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.mcintyret.jvm.core.clazz.Method;
+import com.mcintyret.jvm.core.exec.VariableStackImpl;
+import com.mcintyret.jvm.core.thread.Thread;
+import com.mcintyret.jvm.core.util.Utils;
+import com.mcintyret.jvm.load.ClassLoader;
+import com.mcintyret.jvm.load.DirectoryClassPath;
+
+// The Heap and class loader are static, so tests that need a fresh VM run their guests in a host JVM of their own
+final class GuestJvm {
+
+    private GuestJvm() {
+    }
+
+    // Runs mainClass's main() in a new host JVM with the given system properties, and returns what it printed
+    static List<String> run(Class<?> mainClass, List<String> properties, String... args)
+        throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+        command.add("-Djava.lib.jar.path=" + Paths.get(System.getProperty("java.home"), "lib", "rt.jar"));
+        command.addAll(properties);
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"), mainClass.getName()));
+        command.addAll(Arrays.asList(args));
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+
+        List<String> output = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                output.add(line);
+            }
+        }
+        assertEquals(mainClass.getSimpleName() + " " + Arrays.toString(args) + " failed:\n"
+            + String.join("\n", output), 0, process.waitFor());
+        return output;
+    }
+
+    // Makes the test classes in testClass's package loadable by the guest VM
+    static ClassLoader load(Class<?> testClass) throws IOException {
+        File directory = new File(testClass.getResource(testClass.getSimpleName() + ".class").getPath()).getParentFile();
+        ClassLoader loader = ClassLoader.getDefaultClassLoader();
+        loader.load(new DirectoryClassPath(directory, false));
+        return loader;
+    }
+
+    // Runs guest's static int driver()
+    static int runDriver(ClassLoader loader, Class<?> guest, Thread thread) {
+        Method driver = loader.getClassObject(internalName(guest)).findMethod("driver", true);
+        VariableStackImpl stack = new VariableStackImpl();
+        Utils.executeMethodAndThrow(driver, driver.newArgArray(), thread).applyValue(stack);
+        return stack.popInt();
+    }
+
+    static String internalName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/');
+    }
+}
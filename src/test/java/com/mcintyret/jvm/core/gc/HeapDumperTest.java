@@ -0,0 +1,451 @@
+package com.mcintyret.jvm.core.gc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mcintyret.jvm.load.ClassLoader;
+
+// Reads dumps back with a minimal HPROF parser, checking that every record is well formed and that the objects' fields
+// and references agree with the class dumps, as heap analysers assume
+public class HeapDumperTest {
+
+    private static final int TREE_DEPTH = 10;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void dumpsATree() throws Exception {
+        Path dump = folder.getRoot().toPath().resolve("tree.hprof");
+        GuestJvm.run(HeapDumperTest.class, Collections.emptyList(), "tree", dump.toString());
+
+        Hprof hprof = new Hprof(dump);
+        hprof.checkConsistent();
+
+        long nodeClass = hprof.classNamed(GuestJvm.internalName(TreeGuest.Node.class));
+        List<Long> nodes = hprof.instancesOf(nodeClass);
+        assertEquals((1 << (TREE_DEPTH + 1)) - 1, nodes.size());
+        long sum = 0;
+        for (long node : nodes) {
+            Map<String, Long> fields = hprof.fields(node);
+            sum += fields.get("value");
+            for (String child : Arrays.asList("left", "right")) {
+                long address = fields.get(child);
+                assertTrue(address == 0 || hprof.instances.get(address).classId == nodeClass);
+            }
+        }
+        assertEquals(((1L << (TREE_DEPTH + 1)) - 1) * (1L << (TREE_DEPTH + 1)) / 2, sum);
+
+        // The root is held by a static
+        long root = hprof.classes.get(hprof.classNamed(GuestJvm.internalName(TreeGuest.class))).statics.get("root");
+        assertEquals(1, (long) hprof.fields(root).get("value"));
+    }
+
+    @Test
+    public void dumpsOnOutOfMemory() throws Exception {
+        Path dump = folder.getRoot().toPath().resolve("oom.hprof");
+        List<String> output = GuestJvm.run(HeapDumperTest.class,
+            Arrays.asList("-Djvm.Xmx=4m", "-Djvm.heapDumpOnOutOfMemory=" + dump), "oom", dump.toString());
+        assertTrue(String.join("\n", output), output.contains("RESULT ok"));
+
+        Hprof hprof = new Hprof(dump);
+        hprof.checkConsistent();
+
+        // The kept arrays fill the heap
+        long keep = hprof.classes.get(hprof.classNamed(GuestJvm.internalName(OomGuest.class))).statics.get("keep");
+        long[] kept = hprof.objectArrays.get(keep);
+        assertEquals(OomGuest.KEEP, kept.length);
+        int count = 0;
+        for (long address : kept) {
+            if (address != 0) {
+                PrimitiveArray array = hprof.primitiveArrays.get(address);
+                assertEquals(10, array.type); // int
+                assertEquals(1000, array.length);
+                count++;
+            }
+        }
+        assertTrue(count * 4000L > 2 * 1024 * 1024);
+    }
+
+    // Runs the tree guest and dumps the heap, or runs the OutOfMemoryError guest with jvm.heapDumpOnOutOfMemory set
+    public static void main(String[] args) throws Exception {
+        ClassLoader loader = GuestJvm.load(HeapDumperTest.class);
+        if (args[0].equals("tree")) {
+            GuestJvm.runDriver(loader, TreeGuest.class, null);
+            HeapDumper.dump(Paths.get(args[1]));
+        } else {
+            int kept = GuestJvm.runDriver(loader, OomGuest.class, null);
+            System.out.println(kept > 0 && Files.isRegularFile(Paths.get(args[1])) ? "RESULT ok" : "RESULT " + kept);
+        }
+        System.exit(0);
+    }
+
+    private static final class ClassDump {
+
+        long superClass;
+
+        int instanceSize;
+
+        final Map<String, Long> statics = new HashMap<>();
+
+        // Name and type of each field this class declares
+        final Map<String, Integer> fields = new LinkedHashMap<>();
+    }
+
+    private static final class Instance {
+
+        final long classId;
+
+        final byte[] values;
+
+        Instance(long classId, byte[] values) {
+            this.classId = classId;
+            this.values = values;
+        }
+    }
+
+    private static final class PrimitiveArray {
+
+        final int type;
+
+        final int length;
+
+        PrimitiveArray(int type, int length) {
+            this.type = type;
+            this.length = length;
+        }
+    }
+
+    private static final class Hprof {
+
+        final Map<Long, String> strings = new HashMap<>();
+
+        final Map<Long, String> classNames = new HashMap<>();
+
+        final Map<Long, ClassDump> classes = new HashMap<>();
+
+        final Map<Long, Instance> instances = new HashMap<>();
+
+        final Map<Long, long[]> objectArrays = new HashMap<>();
+
+        final Map<Long, PrimitiveArray> primitiveArrays = new HashMap<>();
+
+        final List<Long> roots = new ArrayList<>();
+
+        Hprof(Path file) throws IOException {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            byte[] header = new byte["JAVA PROFILE 1.0.2".length()];
+            in.get(header);
+            assertEquals("JAVA PROFILE 1.0.2", new String(header, StandardCharsets.US_ASCII));
+            assertEquals(0, in.get());
+            assertEquals(8, in.getInt());
+            in.getLong(); // timestamp
+
+            boolean ended = false;
+            while (in.hasRemaining()) {
+                int tag = in.get() & 0xFF;
+                in.getInt(); // time
+                int end = in.getInt() + in.position();
+                switch (tag) {
+                    case 0x01:
+                        long id = in.getLong();
+                        byte[] bytes = new byte[end - in.position()];
+                        in.get(bytes);
+                        strings.put(id, new String(bytes, StandardCharsets.UTF_8));
+                        break;
+                    case 0x02:
+                        in.getInt(); // serial
+                        long classId = in.getLong();
+                        in.getInt(); // stack trace serial
+                        classNames.put(classId, strings.get(in.getLong()));
+                        break;
+                    case 0x1C:
+                        while (in.position() < end) {
+                            readSubRecord(in);
+                        }
+                        break;
+                    case 0x2C:
+                        ended = true;
+                        break;
+                    default:
+                        in.position(end);
+                }
+                assertEquals("Length of record " + tag, end, in.position());
+            }
+            assertTrue(ended);
+        }
+
+        private void readSubRecord(ByteBuffer in) {
+            int tag = in.get() & 0xFF;
+            switch (tag) {
+                case 0x01: // JNI global
+                    roots.add(in.getLong());
+                    in.getLong();
+                    break;
+                case 0x03: // Java frame
+                case 0x08: // thread object
+                    roots.add(in.getLong());
+                    in.getInt();
+                    in.getInt();
+                    break;
+                case 0x05: // sticky class
+                case 0xFF: // unknown
+                    roots.add(in.getLong());
+                    break;
+                case 0x20:
+                    readClassDump(in);
+                    break;
+                case 0x21: {
+                    long id = in.getLong();
+                    in.getInt();
+                    long classId = in.getLong();
+                    byte[] values = new byte[in.getInt()];
+                    in.get(values);
+                    instances.put(id, new Instance(classId, values));
+                    break;
+                }
+                case 0x22: {
+                    long id = in.getLong();
+                    in.getInt();
+                    long[] elements = new long[in.getInt()];
+                    assertTrue(classNames.containsKey(in.getLong()));
+                    for (int i = 0; i < elements.length; i++) {
+                        elements[i] = in.getLong();
+                    }
+                    objectArrays.put(id, elements);
+                    break;
+                }
+                case 0x23: {
+                    long id = in.getLong();
+                    in.getInt();
+                    int length = in.getInt();
+                    int type = in.get();
+                    in.position(in.position() + length * size(type));
+                    primitiveArrays.put(id, new PrimitiveArray(type, length));
+                    break;
+                }
+                default:
+                    throw new AssertionError("Unknown heap dump sub-record " + Integer.toHexString(tag));
+            }
+        }
+
+        private void readClassDump(ByteBuffer in) {
+            long id = in.getLong();
+            in.getInt();
+            ClassDump dump = new ClassDump();
+            dump.superClass = in.getLong();
+            in.position(in.position() + 5 * 8); // loader, signers, protection domain, reserved
+            dump.instanceSize = in.getInt();
+            for (int i = in.getShort(); i > 0; i--) {
+                in.getShort();
+                readValue(in, in.get());
+            }
+            for (int i = in.getShort(); i > 0; i--) {
+                String name = strings.get(in.getLong());
+                dump.statics.put(name, readValue(in, in.get()));
+            }
+            for (int i = in.getShort(); i > 0; i--) {
+                String name = strings.get(in.getLong());
+                dump.fields.put(name, (int) in.get());
+            }
+            classes.put(id, dump);
+        }
+
+        void checkConsistent() {
+            assertTrue(instances.size() + objectArrays.size() + primitiveArrays.size() > 0);
+            for (Map.Entry<Long, ClassDump> entry : classes.entrySet()) {
+                assertNotNull("No name for class " + entry.getKey(), classNames.get(entry.getKey()));
+                long superClass = entry.getValue().superClass;
+                assertTrue(superClass == 0 || classes.containsKey(superClass));
+                int size = 0;
+                for (long c = entry.getKey(); c != 0; c = classes.get(c).superClass) {
+                    for (int type : classes.get(c).fields.values()) {
+                        size += size(type);
+                    }
+                }
+                assertEquals(classNames.get(entry.getKey()), size, entry.getValue().instanceSize);
+                for (Map.Entry<String, Long> value : entry.getValue().statics.entrySet()) {
+                    assertNotNull(value.getKey(), value.getValue());
+                }
+            }
+            for (Map.Entry<Long, Instance> instance : instances.entrySet()) {
+                ClassDump classDump = classes.get(instance.getValue().classId);
+                assertNotNull(classDump);
+                assertEquals(classDump.instanceSize, instance.getValue().values.length);
+                for (long reference : references(instance.getKey())) {
+                    assertReference(reference);
+                }
+            }
+            for (long[] elements : objectArrays.values()) {
+                for (long element : elements) {
+                    assertReference(element);
+                }
+            }
+            for (long root : roots) {
+                assertTrue(isObject(root) || classes.containsKey(root));
+            }
+        }
+
+        private void assertReference(long reference) {
+            assertTrue("Dangling reference " + reference, reference == 0 || isObject(reference));
+        }
+
+        private boolean isObject(long id) {
+            return instances.containsKey(id) || objectArrays.containsKey(id) || primitiveArrays.containsKey(id);
+        }
+
+        long classNamed(String name) {
+            for (Map.Entry<Long, String> entry : classNames.entrySet()) {
+                if (entry.getValue().equals(name)) {
+                    return entry.getKey();
+                }
+            }
+            throw new AssertionError("No class " + name);
+        }
+
+        List<Long> instancesOf(long classId) {
+            List<Long> ids = new ArrayList<>();
+            instances.forEach((id, instance) -> {
+                if (instance.classId == classId) {
+                    ids.add(id);
+                }
+            });
+            return ids;
+        }
+
+        // The instance's field values, its class's fields first and then each superclass's, as HPROF orders them
+        Map<String, Long> fields(long id) {
+            Instance instance = instances.get(id);
+            ByteBuffer values = ByteBuffer.wrap(instance.values);
+            Map<String, Long> fields = new HashMap<>();
+            for (long c = instance.classId; c != 0; c = classes.get(c).superClass) {
+                for (Map.Entry<String, Integer> field : classes.get(c).fields.entrySet()) {
+                    fields.putIfAbsent(field.getKey(), readValue(values, field.getValue()));
+                }
+            }
+            assertEquals(0, values.remaining());
+            return fields;
+        }
+
+        private Set<Long> references(long id) {
+            Instance instance = instances.get(id);
+            ByteBuffer values = ByteBuffer.wrap(instance.values);
+            Set<Long> references = new HashSet<>();
+            for (long c = instance.classId; c != 0; c = classes.get(c).superClass) {
+                for (int type : classes.get(c).fields.values()) {
+                    long value = readValue(values, type);
+                    if (type == 2) {
+                        references.add(value);
+                    }
+                }
+            }
+            return references;
+        }
+
+        private static long readValue(ByteBuffer in, int type) {
+            switch (size(type)) {
+                case 1:
+                    return in.get();
+                case 2:
+                    return in.getShort();
+                case 4:
+                    return in.getInt();
+                default:
+                    return in.getLong();
+            }
+        }
+
+        private static int size(int type) {
+            switch (type) {
+                case 4: // boolean
+                case 8: // byte
+                    return 1;
+                case 5: // char
+                case 9: // short
+                    return 2;
+                case 6: // float
+                case 10: // int
+                    return 4;
+                case 2: // object
+                case 7: // double
+                case 11: // long
+                    return 8;
+                default:
+                    throw new AssertionError("Unknown basic type " + type);
+            }
+        }
+    }
+
+    // Run in the guest VM
+    public static class TreeGuest {
+
+        static Node root;
+
+        static final class Node {
+
+            final int value;
+
+            Node left;
+
+            Node right;
+
+            Node(int value) {
+                this.value = value;
+            }
+        }
+
+        static Node build(int depth, int value) {
+            Node node = new Node(value);
+            if (depth > 0) {
+                node.left = build(depth - 1, value * 2);
+                node.right = build(depth - 1, value * 2 + 1);
+            }
+            return node;
+        }
+
+        public static int driver() {
+            root = build(TREE_DEPTH, 1);
+            return root.value;
+        }
+    }
+
+    // Run in the guest VM, with a small heap
+    public static class OomGuest {
+
+        static final int KEEP = 100000;
+
+        static Object[] keep = new Object[KEEP];
+
+        public static int driver() {
+            int n = 0;
+            try {
+                while (true) {
+                    keep[n++] = new int[1000];
+                }
+            } catch (OutOfMemoryError e) {
+                return n;
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.mcintyret.jvm.core.gc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.mcintyret.jvm.core.Heap;
+import com.mcintyret.jvm.core.clazz.ClassObject;
+import com.mcintyret.jvm.core.oop.Oop;
+import com.mcintyret.jvm.core.oop.OopArray;
+import com.mcintyret.jvm.core.oop.OopByteArray;
+import com.mcintyret.jvm.core.oop.OopCharArray;
+import com.mcintyret.jvm.core.oop.OopClassClass;
+import com.mcintyret.jvm.core.oop.OopDoubleArray;
+import com.mcintyret.jvm.core.oop.OopFloatArray;
+import com.mcintyret.jvm.core.oop.OopIntArray;
+import com.mcintyret.jvm.core.oop.OopLongArray;
+import com.mcintyret.jvm.core.oop.OopRefArray;
+import com.mcintyret.jvm.core.oop.OopShortArray;
+import com.mcintyret.jvm.core.thread.Thread;
+import com.mcintyret.jvm.core.type.ArrayType;
+import com.mcintyret.jvm.core.type.Types;
+import com.mcintyret.jvm.load.ClassLoader;
+import com.mcintyret.jvm.load.Runner;
+
+// Each side of the snapshot runs in its own host JVM (see GuestJvm), which prints the state it sees
+public class HeapSnapshotTest {
+
+    private static final String STATE = "STATE ";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void restoredHeapMatchesTheOneSnapshotted() throws Exception {
+        String snapshot = folder.getRoot().toPath().resolve("heap.snapshot").toString();
+        List<String> written = state(GuestJvm.run(HeapSnapshotTest.class, Collections.emptyList(), "write", snapshot));
+        List<String> restored = state(GuestJvm.run(HeapSnapshotTest.class, Collections.emptyList(), "restore", snapshot));
+
+        assertEquals(written, restored);
+        assertTrue(written.contains("result 8"));
+        assertContains(written, "statics " + GuestJvm.internalName(Guest.class) + " [");
+        assertContains(written, "interned hello @");
+        assertContains(written, "array [I [3, 1, 4, 1, 5]");
+        assertContains(written, "array [J [1099511627776, -7]");
+        assertContains(written, "array [D [0.5, -2.0]");
+        assertContains(written, "array [C [x, y]");
+        // The mirrors of int[] and String[][] are the ones their types hand out, at the same addresses as before
+        assertContains(written, "mirror [I same");
+        assertContains(written, "mirror [[Ljava/lang/String; same");
+        assertFalse(written.stream().anyMatch(line -> line.contains(" different ")));
+    }
+
+    // Runs the guest, snapshots the heap and prints its state; or restores the snapshot into a fresh heap, prints its
+    // state and runs the guest again
+    public static void main(String[] args) throws Exception {
+        ClassLoader loader = GuestJvm.load(HeapSnapshotTest.class);
+        Path snapshot = Paths.get(args[1]);
+
+        Thread thread;
+        if (args[0].equals("write")) {
+            thread = Runner.createMainThread();
+            GuestJvm.runDriver(loader, Guest.class, thread);
+            HeapSnapshot.write(snapshot, loader, thread);
+            printState(loader);
+        } else {
+            thread = HeapSnapshot.restore(snapshot, loader);
+            if (thread == null) {
+                throw new IllegalStateException("Didn't restore " + snapshot);
+            }
+            printState(loader);
+        }
+        System.out.println(STATE + "result " + GuestJvm.runDriver(loader, Guest.class, thread));
+        System.exit(0);
+    }
+
+    private static void printState(ClassLoader loader) {
+        Map<String, String> statics = new TreeMap<>();
+        for (ClassObject classObject : loader.getLoadedClasses()) {
+            statics.put(classObject.getClassName(), Arrays.toString(classObject.getStaticFieldValues()));
+        }
+        statics.forEach((className, values) -> System.out.println(STATE + "statics " + className + " " + values));
+
+        new TreeMap<>(Heap.getInternedStrings()).forEach((string, address) ->
+            System.out.println(STATE + "interned " + string + " @" + address));
+
+        for (int address = 1; address < Heap.getAddressLimit(); address++) {
+            Oop oop = Heap.findOop(address);
+            if (oop instanceof OopArray) {
+                System.out.println(STATE + "array " + ((OopArray) oop).getClassObject().getType() + " "
+                    + elements((OopArray) oop) + " @" + address);
+            } else if (oop instanceof OopClassClass && ((OopClassClass) oop).getThisType() instanceof ArrayType) {
+                String type = ((OopClassClass) oop).getThisType().toString();
+                System.out.println(STATE + "mirror " + type
+                    + (Types.parseType(type).getOopClassClass() == oop ? " same" : " different") + " @" + address);
+            }
+        }
+    }
+
+    private static String elements(OopArray array) {
+        if (array instanceof OopRefArray) {
+            int[] refs = new int[array.getLength()];
+            for (int i = 0; i < refs.length; i++) {
+                refs[i] = array.getField(i);
+            }
+            return Arrays.toString(refs);
+        } else if (array instanceof OopByteArray) {
+            return Arrays.toString(((OopByteArray) array).getArray());
+        } else if (array instanceof OopCharArray) {
+            return Arrays.toString(((OopCharArray) array).getArray());
+        } else if (array instanceof OopShortArray) {
+            return Arrays.toString(((OopShortArray) array).getArray());
+        } else if (array instanceof OopIntArray) {
+            return Arrays.toString(((OopIntArray) array).getArray());
+        } else if (array instanceof OopLongArray) {
+            return Arrays.toString(((OopLongArray) array).getArray());
+        } else if (array instanceof OopFloatArray) {
+            return Arrays.toString(((OopFloatArray) array).getArray());
+        } else {
+            return Arrays.toString(((OopDoubleArray) array).getArray());
+        }
+    }
+
+    private static List<String> state(List<String> output) {
+        List<String> state = new ArrayList<>();
+        for (String line : output) {
+            if (line.startsWith(STATE)) {
+                state.add(line.substring(STATE.length()));
+            }
+        }
+        return state;
+    }
+
+    private static void assertContains(List<String> state, String prefix) {
+        assertTrue(prefix, state.stream().anyMatch(line -> line.startsWith(prefix)));
+    }
+
+    // Run in the guest VM
+    public static class Guest {
+
+        static int[] counts = {3, 1, 4, 1, 5};
+
+        static long[] longs = {1L << 40, -7};
+
+        static double[] doubles = {0.5, -2};
+
+        static char[] chars = {'x', 'y'};
+
+        static String[][] names = {{"alpha", "beta"}, {"gamma"}};
+
+        static Object[] objects = {"one", counts, null};
+
+        static String greeting = "hello";
+
+        static Class<?> intArrayClass = int[].class;
+
+        static Class<?> namesClass;
+
+        // 8 if getClass() and the class literal agree on String[][]'s mirror
+        public static int driver() {
+            namesClass = names.getClass();
+            return counts[2] + names[1][0].length() - (namesClass == String[][].class ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.mcintyret.jvm.core.oop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.Test;
+
+import com.mcintyret.jvm.core.clazz.AbstractClassObject;
+
+public class MarkRefTest {
+
+    private static final long INFLATED = -1;
+
+    private static final int MAX_COUNT = (1 << 16) - 1;
+
+    private final Oop oop = new Oop(new int[0]) {
+        @Override
+        public AbstractClassObject getClassObject() {
+            return null;
+        }
+    };
+
+    @Test
+    public void secondThreadInflatesContendedThinLock() throws Exception {
+        MarkRef.enter(oop);
+        assertThinLocked(1);
+
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread contender = start(() -> {
+            MarkRef.enter(oop);
+            locked.countDown();
+            await(release);
+            MarkRef.exit(oop);
+        });
+
+        waitUntilBlocked(contender);
+        assertFalse(locked.await(50, TimeUnit.MILLISECONDS));
+        assertThinLocked(1);
+
+        MarkRef.exit(oop);
+        assertTrue(locked.await(10, TimeUnit.SECONDS));
+        assertEquals(INFLATED, oop.lockWord);
+        assertTrue(monitor().isLocked());
+        assertFalse(monitor().isHeldByCurrentThread());
+
+        release.countDown();
+        contender.join();
+        assertFalse(monitor().isLocked());
+
+        // Never deflated
+        MarkRef.enter(oop);
+        assertEquals(INFLATED, oop.lockWord);
+        assertTrue(monitor().isHeldByCurrentThread());
+        MarkRef.exit(oop);
+    }
+
+    @Test
+    public void recursionPastMaxCountInflatesWithCountCarriedOver() {
+        for (int i = 0; i < MAX_COUNT; i++) {
+            MarkRef.enter(oop);
+        }
+        assertThinLocked(MAX_COUNT);
+        assertNull(oop.markRef);
+
+        MarkRef.enter(oop);
+        assertEquals(INFLATED, oop.lockWord);
+        assertEquals(MAX_COUNT + 1, monitor().getHoldCount());
+
+        for (int i = 0; i < MAX_COUNT; i++) {
+            MarkRef.exit(oop);
+        }
+        assertTrue(monitor().isHeldByCurrentThread());
+        MarkRef.exit(oop);
+        assertFalse(monitor().isLocked());
+    }
+
+    @Test
+    public void waitInflatesThinLockAndNotifyWakesWaiter() throws Exception {
+        CountDownLatch waiting = new CountDownLatch(1);
+        CountDownLatch woken = new CountDownLatch(1);
+        AtomicReference<Boolean> thinUntilWait = new AtomicReference<>();
+        Thread waiter = start(() -> {
+            MarkRef.enter(oop);
+            boolean thin = MarkRef.isThinLockedByCurrentThread(oop) && oop.markRef == null;
+            MarkRef markRef = oop.getMarkRef(); // As Object.wait() does
+            thinUntilWait.set(thin && oop.lockWord == INFLATED && monitor().getHoldCount() == 1);
+            waiting.countDown();
+            markRef.getMonitorCondition().awaitUninterruptibly();
+            MarkRef.exit(oop);
+            woken.countDown();
+        });
+
+        assertTrue(waiting.await(10, TimeUnit.SECONDS));
+        assertTrue(thinUntilWait.get());
+
+        // The waiter gives the monitor up as it waits
+        MarkRef.enter(oop);
+        assertFalse(MarkRef.isThinLockedByCurrentThread(oop));
+        oop.getMarkRef().getMonitorCondition().signal(); // As Object.notify() does
+        assertFalse(woken.await(50, TimeUnit.MILLISECONDS));
+
+        MarkRef.exit(oop);
+        assertTrue(woken.await(10, TimeUnit.SECONDS));
+        waiter.join();
+        assertFalse(monitor().isLocked());
+    }
+
+    @Test
+    public void nonOwnerCantExitOrInflateThinLock() throws Exception {
+        assertIllegalMonitorState(() -> MarkRef.exit(oop));
+        assertIllegalMonitorState(oop::getMarkRef);
+
+        MarkRef.enter(oop);
+        assertNotNull(runElsewhere(() -> MarkRef.exit(oop)));
+        assertNotNull(runElsewhere(oop::getMarkRef));
+        assertThinLocked(1);
+
+        oop.getMarkRef();
+        assertNotNull(runElsewhere(() -> MarkRef.exit(oop)));
+        MarkRef.exit(oop);
+        assertIllegalMonitorState(() -> MarkRef.exit(oop));
+    }
+
+    private void assertThinLocked(int count) {
+        assertTrue(MarkRef.isThinLockedByCurrentThread(oop));
+        assertEquals((Thread.currentThread().getId() << 16) | count, oop.lockWord);
+    }
+
+    private ReentrantLock monitor() {
+        return (ReentrantLock) oop.markRef.getMonitor();
+    }
+
+    private static void assertIllegalMonitorState(Runnable action) {
+        try {
+            action.run();
+            fail("Expected an IllegalMonitorStateException");
+        } catch (IllegalMonitorStateException expected) {
+            // Expected
+        }
+    }
+
+    // Returns the IllegalMonitorStateException that running action on another thread threw
+    private static IllegalMonitorStateException runElsewhere(Runnable action) throws InterruptedException {
+        AtomicReference<IllegalMonitorStateException> thrown = new AtomicReference<>();
+        Thread thread = start(() -> {
+            try {
+                action.run();
+            } catch (IllegalMonitorStateException e) {
+                thrown.set(e);
+            }
+        });
+        thread.join();
+        return thrown.get();
+    }
+
+    private static Thread start(Runnable action) {
+        Thread thread = new Thread(action);
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    // A contended thin lock is waited for by parking
+    private static void waitUntilBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (thread.getState() != Thread.State.TIMED_WAITING && thread.getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
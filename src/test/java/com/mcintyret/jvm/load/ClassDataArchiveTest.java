@@ -0,0 +1,200 @@
+package com.mcintyret.jvm.load;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+import com.mcintyret.jvm.parse.ClassFile;
+import com.mcintyret.jvm.parse.ClassFileCodec;
+import com.mcintyret.jvm.parse.ClassFileReader;
+import com.mcintyret.jvm.parse.MemberInfo;
+import com.mcintyret.jvm.parse.attribute.AttributeType;
+import com.mcintyret.jvm.parse.attribute.Code;
+import com.mcintyret.jvm.parse.attribute.CodeException;
+
+public class ClassDataArchiveTest {
+
+    // Between them: try/catch, lambdas (so invokedynamic and method handles), longs, strings and interfaces
+    private static final List<Class<?>> CLASSES = Arrays.asList(ZipClassPath.class, ClassDataArchive.class,
+        ClassFileCodec.class, ClassFileReader.class, ClassPath.class);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void archivedClassesMatchTheJarsParsedClassFiles() throws IOException {
+        ZipClassPath jar = new ZipClassPath(jar(CLASSES));
+        Path archive = folder.getRoot().toPath().resolve("classes.jsa");
+        ClassDataArchive.dump(archive, jar, Arrays.asList(internalName(ZipClassPath.class),
+            internalName(ClassDataArchive.class), internalName(ClassFileCodec.class), internalName(ClassFileReader.class),
+            internalName(ClassPath.class), "not/in/the/Jar"));
+
+        assertArchiveMatches(archive, jar);
+    }
+
+    @Test
+    public void archiveFromAnotherJarIsIgnored() throws IOException {
+        Path archive = folder.getRoot().toPath().resolve("classes.jsa");
+        ClassDataArchive.dump(archive, new ZipClassPath(jar(CLASSES)), Arrays.asList(internalName(ClassPath.class)));
+
+        ZipClassPath changed = new ZipClassPath(jar(CLASSES.subList(0, 2)));
+        assertNull(ClassDataArchive.open(archive, changed));
+        assertNull(ClassDataArchive.open(folder.getRoot().toPath().resolve("missing.jsa"), changed));
+    }
+
+    @Test
+    public void mainDumpsThePreloadList() throws IOException {
+        File jar = jar(CLASSES);
+        Path archive = folder.getRoot().toPath().resolve("preloaded.jsa");
+        File classList = folder.newFile("classlist");
+        Files.write(classList.toPath(), Arrays.asList("# Archived", ZipClassPath.class.getName(), "",
+            internalName(ClassFileCodec.class)));
+
+        System.setProperty("jvm.cds.archive", archive.toString());
+        System.setProperty("java.lib.jar.path", jar.getPath());
+        System.setProperty("jvm.preload", classList.getPath());
+        try {
+            ClassDataArchive.main(new String[0]);
+        } finally {
+            System.clearProperty("jvm.cds.archive");
+            System.clearProperty("java.lib.jar.path");
+            System.clearProperty("jvm.preload");
+        }
+
+        assertEquals(2, assertArchiveMatches(archive, new ZipClassPath(jar)));
+    }
+
+    // Returns the number of classes archived
+    private static int assertArchiveMatches(Path archive, ZipClassPath jar) throws IOException {
+        ClassPath archived = ClassDataArchive.open(archive, jar);
+        assertNotNull(archived);
+
+        Map<String, ClassFileResource> jarClassFiles = new HashMap<>();
+        for (ClassFileResource resource : jar) {
+            jarClassFiles.put(resource.getClassName(), resource);
+        }
+        ClassFileReader reader = new ClassFileReader();
+        int count = 0;
+        for (ClassFileResource resource : archived) {
+            ClassFileResource jarResource = jarClassFiles.get(resource.getClassName());
+            assertClassFilesEqual(resource.getClassName(), jarResource.readClassFile(reader),
+                resource.readClassFile(reader));
+            // The class file itself is archived too
+            try (InputStream expected = jarResource.getInputStream(); InputStream actual = resource.getInputStream()) {
+                assertArrayEquals(resource.getClassName(), ByteStreams.toByteArray(expected),
+                    ByteStreams.toByteArray(actual));
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private static void assertClassFilesEqual(String name, ClassFile expected, ClassFile actual) {
+        assertEquals(name, expected.getMinorVersion(), actual.getMinorVersion());
+        assertEquals(name, expected.getMajorVersion(), actual.getMajorVersion());
+        assertEquals(name, expected.getModifiers(), actual.getModifiers());
+        assertEquals(name, expected.getThisClass(), actual.getThisClass());
+        assertEquals(name, expected.getSuperClass(), actual.getSuperClass());
+        assertArrayEquals(name, expected.getInterfaces(), actual.getInterfaces());
+
+        Object[] expectedCp = expected.getConstantPool();
+        Object[] actualCp = actual.getConstantPool();
+        assertEquals(name, expectedCp.length, actualCp.length);
+        for (int i = 0; i < expectedCp.length; i++) {
+            assertConstantsEqual(name + " cp#" + i, expectedCp[i], actualCp[i]);
+        }
+
+        assertMembersEqual(name, expected.getFields(), actual.getFields());
+        assertMembersEqual(name, expected.getMethods(), actual.getMethods());
+    }
+
+    private static void assertMembersEqual(String name, List<MemberInfo> expected, List<MemberInfo> actual) {
+        assertEquals(name, expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            MemberInfo expectedMember = expected.get(i);
+            MemberInfo actualMember = actual.get(i);
+            String member = name + " member " + expectedMember;
+            assertEquals(member, expectedMember.getModifiers(), actualMember.getModifiers());
+            assertEquals(member, expectedMember.getNameIndex(), actualMember.getNameIndex());
+            assertEquals(member, expectedMember.getDescriptorIndex(), actualMember.getDescriptorIndex());
+
+            Code expectedCode = (Code) expectedMember.getAttributes().getAttribute(AttributeType.CODE);
+            Code actualCode = (Code) actualMember.getAttributes().getAttribute(AttributeType.CODE);
+            if (expectedCode == null) {
+                assertNull(member, actualCode);
+                continue;
+            }
+            assertEquals(member, expectedCode.getMaxStack(), actualCode.getMaxStack());
+            assertEquals(member, expectedCode.getMaxLocals(), actualCode.getMaxLocals());
+            assertArrayEquals(member, expectedCode.getCode(), actualCode.getCode());
+            assertEquals(member, expectedCode.getCodeExceptions().size(), actualCode.getCodeExceptions().size());
+            for (int j = 0; j < expectedCode.getCodeExceptions().size(); j++) {
+                CodeException expectedException = expectedCode.getCodeExceptions().get(j);
+                CodeException actualException = actualCode.getCodeExceptions().get(j);
+                assertEquals(member, expectedException.getStartPc(), actualException.getStartPc());
+                assertEquals(member, expectedException.getEndPc(), actualException.getEndPc());
+                assertEquals(member, expectedException.getHandlerPc(), actualException.getHandlerPc());
+                assertEquals(member, expectedException.getCatchType(), actualException.getCatchType());
+            }
+        }
+    }
+
+    // The constant pool entries don't implement equals(), so compare their fields
+    private static void assertConstantsEqual(String message, Object expected, Object actual) {
+        if (expected == null || expected instanceof String) {
+            assertEquals(message, expected, actual);
+            return;
+        }
+        assertNotNull(message, actual);
+        assertEquals(message, expected.getClass(), actual.getClass());
+        for (Class<?> type = expected.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                field.setAccessible(true);
+                try {
+                    assertEquals(message + " " + field.getName(), field.get(expected), field.get(actual));
+                } catch (IllegalAccessException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        }
+    }
+
+    private File jar(List<Class<?>> classes) throws IOException {
+        File jar = folder.newFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            for (Class<?> clazz : classes) {
+                String name = internalName(clazz) + ".class";
+                out.putNextEntry(new ZipEntry(name));
+                try (InputStream in = clazz.getClassLoader().getResourceAsStream(name)) {
+                    out.write(ByteStreams.toByteArray(in));
+                }
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static String internalName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/');
+    }
+}
@@ -0,0 +1,193 @@
+package com.mcintyret.jvm.load;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.ByteStreams;
+
+public class ZipClassPathTest {
+
+    private static final int CENTRAL_DIRECTORY_ENTRY = 0x02014b50;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsStoredDeflatedAndCommentedEntriesAsZipFileDoes() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/Stored.class", bytes(1, 300));
+        entries.put("a/Deflated.class", bytes(2, 5000));
+        entries.put("b/Commented.class", bytes(3, 70000));
+        entries.put("b/Empty.class", new byte[0]);
+        entries.put("META-INF/MANIFEST.MF", bytes(4, 10));
+        File jar = folder.newFile("test.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.setComment("A comment on the whole zip, after its central directory");
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (entry.getKey().contains("Stored")) {
+                    stored(zipEntry, entry.getValue());
+                }
+                if (entry.getKey().contains("Commented")) {
+                    zipEntry.setComment("A comment on the entry");
+                    zipEntry.setExtra(new byte[]{(byte) 0xCA, (byte) 0xFE, 2, 0, 1, 2});
+                }
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+
+        Map<String, byte[]> read = new HashMap<>();
+        for (ClassFileResource resource : new ZipClassPath(jar)) {
+            byte[] viaRead = resource.read(ZipClassPathTest::copy);
+            byte[] viaStream;
+            try (InputStream in = resource.getInputStream()) {
+                viaStream = ByteStreams.toByteArray(in);
+            }
+            assertArrayEquals(viaRead, viaStream);
+            read.put(resource.getName(), viaRead);
+        }
+
+        // Only the class files, but every one of them
+        assertEquals(4, read.size());
+        try (ZipFile zipFile = new ZipFile(jar)) {
+            for (String name : read.keySet()) {
+                try (InputStream in = zipFile.getInputStream(zipFile.getEntry(name))) {
+                    assertArrayEquals(name, ByteStreams.toByteArray(in), read.get(name));
+                }
+                assertArrayEquals(name, entries.get(name), read.get(name));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsZip64() throws IOException {
+        File jar = folder.newFile("zip64.jar");
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            // More entries than the end of central directory record can count
+            for (int i = 0; i <= 0xFFFF; i++) {
+                out.putNextEntry(new ZipEntry("C" + i + ".class"));
+                out.closeEntry();
+            }
+        }
+        try {
+            new ZipClassPath(jar);
+            fail("Expected ZIP64 to be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("ZIP64 jars aren't supported"));
+        }
+    }
+
+    @Test
+    public void failsIfEntryInflatesToFewerBytesThanItsSize() throws IOException {
+        File jar = jar("Short.class", bytes(5, 1000));
+        patch(jar, buffer -> {
+            int entry = find(buffer, CENTRAL_DIRECTORY_ENTRY);
+            buffer.putInt(entry + 24, 1010);
+        });
+        try {
+            only(new ZipClassPath(jar)).read(ZipClassPathTest::copy);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("Inflated 1000 bytes of Short.class rather than 1010", e.getMessage());
+        }
+    }
+
+    @Test
+    public void failsOnCorruptLocalHeader() throws IOException {
+        File jar = jar("Corrupt.class", bytes(6, 100));
+        patch(jar, buffer -> buffer.put(0, (byte) 0));
+        try {
+            only(new ZipClassPath(jar)).read(ZipClassPathTest::copy);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("Corrupt local header for Corrupt.class", e.getMessage());
+        }
+    }
+
+    @Test
+    public void checksumChangesWithAnEntry() throws IOException {
+        long checksum = new ZipClassPath(jar("A.class", bytes(7, 100))).getChecksum();
+        assertEquals(checksum, new ZipClassPath(jar("A.class", bytes(7, 100))).getChecksum());
+        assertNotEquals(checksum, new ZipClassPath(jar("A.class", bytes(8, 100))).getChecksum());
+    }
+
+    // Compressible, but not trivially
+    private static byte[] bytes(long seed, int length) {
+        Random random = new Random(seed);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) ('a' + random.nextInt(8));
+        }
+        return bytes;
+    }
+
+    private static void stored(ZipEntry entry, byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(bytes.length);
+        entry.setCompressedSize(bytes.length);
+        entry.setCrc(crc.getValue());
+    }
+
+    private File jar(String name, byte[] bytes) throws IOException {
+        File jar = folder.newFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(jar))) {
+            out.putNextEntry(new ZipEntry(name));
+            out.write(bytes);
+            out.closeEntry();
+        }
+        return jar;
+    }
+
+    private static void patch(File jar, Consumer<ByteBuffer> patch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(jar.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        patch.accept(buffer);
+        Files.write(jar.toPath(), buffer.array());
+    }
+
+    private static int find(ByteBuffer buffer, int signature) {
+        for (int pos = 0; pos <= buffer.limit() - 4; pos++) {
+            if (buffer.getInt(pos) == signature) {
+                return pos;
+            }
+        }
+        throw new AssertionError("No " + Integer.toHexString(signature));
+    }
+
+    private static ClassFileResource only(ZipClassPath classPath) {
+        return classPath.iterator().next();
+    }
+
+    private static byte[] copy(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}